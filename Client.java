@@ -18,6 +18,23 @@ public class Client implements Serializable {
     * Used for serialization also
     */
    private static final String CLIENT_STRING = "C";
+
+   /**
+    * The fields written when a client is serialized, which keep the balance a float so the data saved before
+    * balances were held in cents can still be read. Data saved before the totals were kept has them worked out
+    * from the invoices and the balance
+    */
+   private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("name", String.class),
+      new ObjectStreamField("id", String.class),
+      new ObjectStreamField("balance", Float.TYPE),
+      new ObjectStreamField("invoiced", Long.TYPE),
+      new ObjectStreamField("paid", Long.TYPE),
+      new ObjectStreamField("invoices", List.class),
+      new ObjectStreamField("transactions", List.class),
+      new ObjectStreamField("orders", List.class),
+      new ObjectStreamField("waitlistedOrders", List.class)
+   };
    
    /**
     * Client's name
@@ -30,9 +47,19 @@ public class Client implements Serializable {
    private String id;
 
    /**
-    * Store the balance that increases when orders are made and decreases when payments are made
+    * Store the balance, in cents, that increases when orders are made and decreases when payments are made
+    */
+   private long balance;
+
+   /**
+    * The total cost, in cents, of every invoice the client has been given
+    */
+   private long invoiced;
+
+   /**
+    * The total, in cents, of every payment the client has made
     */
-   private float balance;
+   private long paid;
 
    /**
     * Data structure to hold the invoices
@@ -40,7 +67,8 @@ public class Client implements Serializable {
    private List<Invoice> invoices;
 
    /**
-    * Data structure to hold the transactions
+    * Data structure to hold the transactions that haven't been archived, in the order they occured, which is also
+    * the order of their times, so the transactions within a range of time are found with a binary search
     */
    private List<Transaction> transactions;
 
@@ -50,22 +78,71 @@ public class Client implements Serializable {
    private List<Order> orders;
 
    /**
-    * Data structure to hold the waitlisted orders
+    * Data structure to hold the waitlisted orders, in the order they were waitlisted, where an order is only held
+    * once however many of its items are waitlisted, and is removed without searching for it. It is serialized as a
+    * list
+    */
+   private Set<Order> waitlistedOrders;
+
+   /**
+    * Index of the orders keyed by order id, while the orders list keeps them in the order they were made.
+    * This isn't serialized, it is rebuilt from the orders the first time it is needed
     */
-   private List<Order> waitlistedOrders;
+   private transient Map<String, Order> orderIndex;
+
+   /**
+    * Index of the invoices keyed by invoice id, while the invoices list keeps them in the order they were made.
+    * This isn't serialized, it is rebuilt from the invoices the first time it is needed
+    */
+   private transient Map<String, Invoice> invoiceIndex;
+
+   /**
+    * The client's orders, invoices, transactions, and waitlisted orders, within the snapshot the client was read
+    * from, while they haven't been read yet. They are read the first time any of them are used
+    */
+   private transient volatile Snapshot.Region storedHistory;
+
+   /**
+    * How far into the client's archive its older transactions go, or null when none have been archived. This
+    * isn't serialized, the archived transactions are serialized with the rest
+    */
+   private transient volatile HistoryArchive.Extent archived;
 
    /**
     * Constructor for the Client
     * @param       name of the client
     */
    public Client(String name) {
-      this.id = CLIENT_STRING + (ClientIdServer.instance()).getId();
+      this.id = CLIENT_STRING + (IdServer.instance()).getId(IdServer.CLIENT);
       this.name = name;
       this.balance = 0;
+      this.invoiced = 0;
+      this.paid = 0;
       this.invoices = new LinkedList<Invoice>();
-      this.transactions = new LinkedList<Transaction>();
+      this.transactions = new ArrayList<Transaction>();
       this.orders = new LinkedList<Order>();
-      this.waitlistedOrders = new LinkedList<Order>();
+      this.waitlistedOrders = new LinkedHashSet<Order>();
+   }
+
+   /**
+    * Constructor for a Client read from a snapshot, which keeps the id it was given
+    * @param       id of the client
+    * @param       name of the client
+    * @param       balance on the client's account, in cents
+    * @param       invoiced is the total cost of the client's invoices, in cents
+    * @param       paid is the total of the client's payments, in cents
+    * @see         Snapshot
+    */
+   private Client(String id, String name, long balance, long invoiced, long paid) {
+      this.id = id;
+      this.name = name;
+      this.balance = balance;
+      this.invoiced = invoiced;
+      this.paid = paid;
+      this.invoices = new LinkedList<Invoice>();
+      this.transactions = new ArrayList<Transaction>();
+      this.orders = new LinkedList<Order>();
+      this.waitlistedOrders = new LinkedHashSet<Order>();
    }
 
    /**
@@ -83,7 +160,7 @@ public class Client implements Serializable {
     * @return      Returns the client's id
     * @pre         None
     * @post        None
-    * @see         ClientIdServer
+    * @see         IdServer
     */
    public String getId() {
       return id;
@@ -97,6 +174,7 @@ public class Client implements Serializable {
     * @see         Order
     */
    public Iterator<Order> getOrders(){ 
+      loadHistory();
       return orders.iterator(); 
    }
 
@@ -108,6 +186,7 @@ public class Client implements Serializable {
     * @see         Order
     */
    public Iterator<Order> getWaitlistedOrders(){ 
+      loadHistory();
       return waitlistedOrders.iterator(); 
    }
 
@@ -119,7 +198,171 @@ public class Client implements Serializable {
     * @see         Transaction
     */
    public Iterator<Transaction> getTransactions(){ 
-      return transactions.iterator(); 
+      loadHistory();
+      if (archived == null) {
+         return transactions.iterator(); 
+      }
+      return getTransactions(Long.MIN_VALUE, Long.MAX_VALUE);
+   }
+
+   /**
+    * Query the client's transactions that occured within a range of time
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @return      Returns an iterator of the client's transactions within the range, in the order they occured,
+    *              which reads the archived transactions within the range back from the archive
+    * @pre         None
+    * @post        None
+    * @see         Transaction
+    * @see         HistoryArchive
+    */
+   public Iterator<Transaction> getTransactions(long from, long to) {
+      loadHistory();
+      int start = firstTransactionAt(from);
+      List<Transaction> recent = transactions.subList(start, Math.max(start, firstTransactionAt(to)));
+      List<Transaction> older = getArchivedTransactions(from, to);
+      if (older.isEmpty()) {
+         return recent.iterator();
+      }
+      older.addAll(recent);
+      return older.iterator();
+   }
+
+   /**
+    * Reads the client's archived transactions that occured within a range of time
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @return      the archived transactions within the range, in the order they occured
+    * @pre         None
+    * @post        None
+    * @see         HistoryArchive
+    */
+   List<Transaction> getArchivedTransactions(long from, long to) {
+      try {
+         return HistoryArchive.instance().read(id, archived, from, to);
+      } catch(IOException ioe) {
+         throw new UncheckedIOException("Failed to read the archived history of client " + id, ioe);
+      }
+   }
+
+   /**
+    * Queries the client's transactions that haven't been archived
+    * @return      Returns an iterator of the transactions kept in memory, in the order they occured
+    * @pre         None
+    * @post        None
+    */
+   Iterator<Transaction> getRecentTransactions() {
+      loadHistory();
+      return transactions.iterator();
+   }
+
+   /**
+    * Query the client's transactions that occured within a range of time, without reading the client's history
+    * into memory when it is still in the snapshot the client was read from
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @return      the transactions within the range, in the order they occured, read back from the archive, and
+    *              from the snapshot if the history hasn't been read
+    * @pre         The caller holds the client's lock
+    * @post        None
+    * @see         Snapshot
+    * @see         HistoryArchive
+    */
+   List<Transaction> findTransactions(long from, long to) {
+      synchronized (this) {
+         Snapshot.Region history = storedHistory;
+         if (history != null) {
+            List<Transaction> found = getArchivedTransactions(from, to);
+            found.addAll(readStoredTransactions(history, from, to));
+            return found;
+         }
+      }
+      List<Transaction> found = new ArrayList<Transaction>();
+      for (Iterator<Transaction> within = getTransactions(from, to); within.hasNext();) {
+         found.add(within.next());
+      }
+      return found;
+   }
+
+   /**
+    * Reads the transactions, within a range of time, that haven't been archived from the client's history within
+    * the snapshot the client was read from, leaving the history in the snapshot
+    * @param       history of this client within the snapshot
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @return      the transactions within the range, in the order they occured
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   List<Transaction> readStoredTransactions(Snapshot.Region history, long from, long to) {
+      try {
+         Snapshot.Input input = history.open();
+
+         // the transactions follow the orders and invoices, which are read past
+         for (int count = input.readVarInt(); count > 0; count--) {
+            Order.readSnapshot(input, this);
+         }
+         for (int count = input.readVarInt(); count > 0; count--) {
+            Invoice.readSnapshot(input, this);
+         }
+         List<Transaction> found = new ArrayList<Transaction>();
+         for (int count = input.readVarInt(); count > 0; count--) {
+            Transaction transaction = Transaction.readSnapshot(input);
+            if (transaction.getTime() >= from && transaction.getTime() < to) {
+               found.add(transaction);
+            }
+         }
+         return found;
+      } catch(IOException ioe) {
+         throw new UncheckedIOException("Failed to read the history of client " + id, ioe);
+      }
+   }
+
+   /**
+    * Queries the times of the client's first and last transactions that haven't been archived
+    * @return      the times, in milliseconds since the epoch, of the first and last transactions in memory; or null
+    *              if there are none
+    * @pre         The client's history has been read
+    * @post        None
+    */
+   long[] getTransactionTimes() {
+      if (transactions.isEmpty()) {
+         return null;
+      }
+      return new long[] { transactions.get(0).getTime(), transactions.get(transactions.size() - 1).getTime() };
+   }
+
+   /**
+    * Queries the time of the client's last archived transaction
+    * @return      the time, in milliseconds since the epoch, if transactions have been archived; otherwise, the
+    *              earliest time there is
+    * @pre         None
+    * @post        None
+    */
+   long getArchivedUntil() {
+      HistoryArchive.Extent extent = archived;
+      return (extent == null) ? Long.MIN_VALUE : extent.getUntil();
+   }
+
+   /**
+    * Searches for the first of the client's transactions that occured at, or after, the given time
+    * @param       time to search for, in milliseconds since the epoch
+    * @return      the position of the first transaction at, or after, the time; or the number of transactions if
+    *              there is none
+    */
+   private int firstTransactionAt(long time) {
+      int low = 0;
+      int high = transactions.size();
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         if (transactions.get(middle).getTime() < time) {
+            low = middle + 1;
+         } else {
+            high = middle;
+         }
+      }
+      return low;
    }
 
    /**
@@ -130,16 +373,18 @@ public class Client implements Serializable {
     * @see         Invoice
     */
    public Iterator<Invoice> getInvoices(){ 
+      loadHistory();
       return invoices.iterator(); 
    }
 
    /**
     * Query the client's balance
-    * @return      Returns the client's balance
+    * @return      Returns the client's balance, in cents
     * @pre         None
     * @post        None
+    * @see         Money
     */
-   public float getBalance() {
+   public long getBalance() {
       return balance;
    }
 
@@ -150,7 +395,38 @@ public class Client implements Serializable {
     * @post        None
     */
    public String getFormattedBalance() {
-      return String.format("$%.2f", balance);
+      return Money.format(balance);
+   }
+
+   /**
+    * Query the total cost of every invoice the client has been given, without reading the client's invoices
+    * @return      Returns the total invoiced, in cents
+    * @pre         None
+    * @post        None
+    * @see         Invoice
+    */
+   public long getInvoicedTotal() {
+      return invoiced;
+   }
+
+   /**
+    * Query the total of every payment the client has made
+    * @return      Returns the total paid, in cents
+    * @pre         None
+    * @post        None
+    */
+   public long getPaidTotal() {
+      return paid;
+   }
+
+   /**
+    * Query the amount the client still owes, which is the client's balance
+    * @return      Returns the amount outstanding, in cents
+    * @pre         None
+    * @post        None
+    */
+   public long getOutstanding() {
+      return balance;
    }
    
    /**
@@ -161,8 +437,11 @@ public class Client implements Serializable {
     * @see         Order
     */
    public void addOrder(Order order) {
+      loadHistory();
+      Snapshot.preserve(this);
       this.orders.add(order);
-      transactions.add(new Transaction("ORDER", String.format("Order recieved: [%s]", order)));
+      orderIndex().put(order.getId(), order);
+      appendTransaction(Transaction.order(order));
    }
 
    /**
@@ -173,7 +452,68 @@ public class Client implements Serializable {
     * @see         Transaction
     */
    public void addTransaction(Transaction transaction) {
-      this.transactions.add(transaction);
+      loadHistory();
+      Snapshot.preserve(this);
+      appendTransaction(transaction);
+   }
+
+   /**
+    * Appends a transaction to the client's transactions, and to the warehouse's index of transactions. A
+    * transaction is never recorded as occuring before the one recorded before it, which can happen when the clock
+    * is set back, so the transactions stay in the order of their times
+    * @param       transaction that occured
+    * @see         ClientList
+    */
+   private void appendTransaction(Transaction transaction) {
+      if (!transactions.isEmpty()) {
+         transaction.notBefore(transactions.get(transactions.size() - 1).getTime());
+      }
+      transactions.add(transaction);
+      ClientList.instance().recordTransaction(this, transaction);
+      HistoryArchive archive = HistoryArchive.instance();
+      if (archive.isFull(transactions.size())) {
+         archive.schedule(this);
+      }
+   }
+
+   /**
+    * Moves the client's oldest transactions to its archive, once enough of them are old enough to be archived.
+    * The client's lock is only held while the transactions are picked, and while they are dropped from memory, so
+    * calls on the client don't wait for the archive to be written. A transaction that can't be archived stays in
+    * memory, to be archived with the next segment
+    * @throws      IOException when the segment can't be written
+    * @pre         The caller is the HistoryArchive's background thread, which is the only one archiving the client
+    * @post        The transactions archived will only be in the client's archive
+    * @see         HistoryArchive
+    */
+   void archiveTransactions() throws IOException {
+      HistoryArchive archive = HistoryArchive.instance();
+      LockStripes locks = Warehouse.getLocks();
+      List<Transaction> oldest;
+      HistoryArchive.Extent extent;
+      int[] held = locks.lock(id);
+      try {
+         int count = archive.archivable(transactions.size(), firstTransactionAt(archive.getCutoff()));
+         if (count == 0) {
+            return;
+         }
+         oldest = new ArrayList<Transaction>(transactions.subList(0, count));
+         extent = archived;
+      } finally {
+         locks.unlock(held);
+      }
+
+      // only ever appended to, so the oldest transactions are still the first ones once the segment is written
+      HistoryArchive.Extent appended = archive.append(id, extent, oldest);
+      held = locks.lock(id);
+      try {
+         Snapshot.preserve(this);
+         archived = appended;
+         ClientList.instance().archiveTransactions(this, oldest);
+         transactions = new ArrayList<Transaction>(transactions.subList(oldest.size(), transactions.size()));
+      } finally {
+         locks.unlock(held);
+      }
    }
 
    /**
@@ -184,15 +524,13 @@ public class Client implements Serializable {
     * @see         Invoice
     */
    public void addInvoice(Invoice invoice) {
+      loadHistory();
+      Snapshot.preserve(this);
       this.invoices.add(invoice);
-      transactions.add(new Transaction(
-         "INVOICE", 
-         String.format(
-            "Invoice created: [%s], total cost: [$%.2f]", 
-            invoice, 
-            invoice.calculateCost()
-         )
-      ));
+      invoiceIndex().put(invoice.getId(), invoice);
+      long cost = invoice.calculateCost();
+      invoiced += cost;
+      appendTransaction(Transaction.invoice(invoice, cost));
    }
    
    /**
@@ -204,13 +542,9 @@ public class Client implements Serializable {
     * @see         Order
     */
    public Order findOrder(String orderId) {
-      for (Iterator<Order> o = orders.iterator(); o.hasNext();) {
-         Order order = o.next();
-         if (order.getId().equals(orderId)) {
-            return order;
-         }
-      }
-      return null;
+      loadHistory();
+      Snapshot.preserve(this);
+      return orderIndex().get(orderId);
    }
 
    /**
@@ -222,13 +556,58 @@ public class Client implements Serializable {
     * @see         Invoice
     */
    public Invoice findInvoice(String invoiceId) {
-      for (Iterator<Invoice> i = invoices.iterator(); i.hasNext();) {
-         Invoice invoice = i.next();
-         if (invoice.getId().equals(invoiceId)) {
-            return invoice;
+      loadHistory();
+      return invoiceIndex().get(invoiceId);
+   }
+
+   /**
+    * Queries the invoice this client was given last
+    * @return      The last invoice given to this client if the client has invoices; otherwise, null
+    * @pre         None
+    * @post        None
+    * @see         Invoice
+    */
+   public Invoice getLatestInvoice() {
+      loadHistory();
+      return invoices.isEmpty() ? null : invoices.get(invoices.size() - 1);
+   }
+
+   /**
+    * Queries the index of this client's orders, building it from the orders if it doesn't exist yet
+    * (which is the case after the client has been retrieved)
+    * @return      The index of this client's orders keyed by order id
+    * @pre         None
+    * @post        The index will hold every order of this client
+    * @see         Order
+    */
+   private Map<String, Order> orderIndex() {
+      if (orderIndex == null) {
+         orderIndex = new HashMap<String, Order>();
+         for (Iterator<Order> o = orders.iterator(); o.hasNext();) {
+            Order order = o.next();
+            orderIndex.put(order.getId(), order);
          }
       }
-      return null;
+      return orderIndex;
+   }
+
+   /**
+    * Queries the index of this client's invoices, building it from the invoices if it doesn't exist yet
+    * (which is the case after the client has been retrieved)
+    * @return      The index of this client's invoices keyed by invoice id
+    * @pre         None
+    * @post        The index will hold every invoice of this client
+    * @see         Invoice
+    */
+   private Map<String, Invoice> invoiceIndex() {
+      if (invoiceIndex == null) {
+         invoiceIndex = new HashMap<String, Invoice>();
+         for (Iterator<Invoice> i = invoices.iterator(); i.hasNext();) {
+            Invoice invoice = i.next();
+            invoiceIndex.put(invoice.getId(), invoice);
+         }
+      }
+      return invoiceIndex;
    }
    
    /**
@@ -239,6 +618,7 @@ public class Client implements Serializable {
     * @see         Order
     */
    public boolean hasOrders() {
+      loadHistory();
       return orders.size() != 0;
    }
 
@@ -250,6 +630,7 @@ public class Client implements Serializable {
     * @see         Order
     */
    public boolean hasWaitlistedOrders() {
+      loadHistory();
       return waitlistedOrders.size() != 0;
    }
 
@@ -261,6 +642,7 @@ public class Client implements Serializable {
     * @see         Invoice
     */
    public boolean hasInvoices() {
+      loadHistory();
       return invoices.size() != 0;
    }
 
@@ -272,42 +654,39 @@ public class Client implements Serializable {
     * @see         Transaction
     */
    public boolean hasTransactions() {
-      return transactions.size() != 0;
+      loadHistory();
+      return transactions.size() != 0 || archived != null;
    }
    
    /**
     * Change this client the amount specified, which will increase the balance owed
-    * @param       amount is the amount that the balance is to increase, or the amount this client is being charged
+    * @param       amount is the amount, in cents, that the balance is to increase, or the amount this client is
+    *              being charged
     * @pre         The amount given is a positive value
     * @post        The balance on the account will be increased the amount given
     */
-   public void charge(float amount) {
+   public void charge(long amount) {
+      loadHistory();
+      Snapshot.preserve(this);
       balance += amount;
-      transactions.add(new Transaction(
-         "BILLING", 
-         String.format(
-            "Charge was applied for [$%.2f]. Updated balance on account [$%.2f]",
-            amount, 
-            balance
-         )
-      ));
+      ClientList.instance().updateBalance(this);
+      appendTransaction(Transaction.charge(amount, balance));
    }
 
    /**
     * Deduct the amount specified from this client's balance
-    * @param       amount is the amount that the balance is to decrease, or the amount this client is paying
+    * @param       amount is the amount, in cents, that the balance is to decrease, or the amount this client is
+    *              paying
     * @pre         The amount specified is less that the balance on the account, and the amount specified is positive
     * @post        The amount specified will be deduced from the balance on the account
     */
-   public void acceptPayment(float amount) {
+   public void acceptPayment(long amount) {
+      loadHistory();
+      Snapshot.preserve(this);
       balance -= amount;
-      transactions.add(new Transaction("BILLING", 
-         String.format(
-            "Payment was received for [$%.2f]. Remaining balance on account [$%.2f]",
-            amount, 
-            balance
-         )
-      ));
+      paid += amount;
+      ClientList.instance().updateBalance(this);
+      appendTransaction(Transaction.payment(amount, balance));
    }
 
    /**
@@ -325,28 +704,40 @@ public class Client implements Serializable {
     * @see         Product
     */
    public int processWaitlistedOrderItem(Order order, WaitlistItem item, int quantity) {
-
       Invoice invoice = new Invoice(this);
-      int wantedQuantity = item.getQuantity();
-      int remainingQuantity;
+      int filledQuantity = Math.min(item.getQuantity(), quantity);
+      fillWaitlistedOrderItem(order, item, filledQuantity, invoice);
 
-      // not enough to fill entirely
-      if (wantedQuantity > quantity) {
+      // charge for amount filled
+      bill(invoice);
+      return quantity - filledQuantity;
+   }
 
-         Record invoiceRecord = new Record(item.getProduct(), quantity, item.getProduct().getPrice());
-         invoice.addRecord(invoiceRecord);
+   /**
+    * Fills a waitlisted item, within an order, with the given quantity, adding what was filled to the given invoice
+    * without charging for it, so many items can be filled on one invoice
+    * @param       order the item belongs to
+    * @param       item within the order to be filled
+    * @param       quantity to fill the item with, which is no more than the item is waiting for
+    * @param       invoice of this client that the filled quantity is added to
+    * @pre         None
+    * @post        The waitlisted item will be filled the quantity given, and the waitlist item will be removed from
+    *              the order, and the order from this client's waitlisted orders, once they are filled entirely
+    * @see         WaitlistItem
+    * @see         Shipment
+    */
+   void fillWaitlistedOrderItem(Order order, WaitlistItem item, int quantity, Invoice invoice) {
+      loadHistory();
+      Snapshot.preserve(this);
+      invoice.addLine(item.getProduct(), quantity, item.getProduct().getPrice());
 
-         // reduce the amount the order is waiting for
+      // not enough to fill entirely, so reduce the amount the order is waiting for
+      if (quantity < item.getQuantity()) {
          item.decreaseQuantity(quantity);
-         remainingQuantity = 0;
       }
 
       // enough to fill entirely
       else {
-         
-         Record invoiceRecord = new Record(item.getProduct(), wantedQuantity, item.getProduct().getPrice());
-         invoice.addRecord(invoiceRecord);
-         remainingQuantity = quantity - wantedQuantity;
 
          // remove the waitlisted item from the order
          order.removeWaitlistItem(item);
@@ -356,12 +747,19 @@ public class Client implements Serializable {
             waitlistedOrders.remove(order);
          }
       }
+   }
 
-      // charge for amount filled
-      float total = invoice.calculateCost();
+   /**
+    * Gives this client the given invoice, and charges for it
+    * @param       invoice of this client, holding what was filled
+    * @pre         The invoice isn't empty
+    * @post        The invoice will be one of this client's invoices, and its cost will be on the balance
+    * @see         Invoice
+    */
+   void bill(Invoice invoice) {
+      long total = invoice.calculateCost();
       addInvoice(invoice);
       charge(total);
-      return remainingQuantity;
    }
 
    /**
@@ -378,27 +776,56 @@ public class Client implements Serializable {
     * @see         Product
     */
    public void processOrder(Order order) {
+      LineItems lines = order.getLines();
+      int[] reserved = new int[lines.size()];
+      for (int line = 0; line < lines.size(); line++) {
+
+         // take what is in stock in one step, so another order can't take the same stock
+         reserved[line] = lines.getProduct(line).reserveUpTo(lines.getQuantity(line));
+      }
 
+      WaitlistItem[] waitlisted = fillOrder(order, reserved);
+      for (WaitlistItem item : waitlisted) {
+         if (item != null) {
+
+            // add waitlist item to product
+            item.getProduct().addToWaitlist(item);
+         }
+      }
+   }
+
+   /**
+    * Fills an order with stock that has already been taken from its products, invoicing and charging for what was
+    * filled, and waitlisting the rest on the order and with this client. The waitlist items aren't added to the
+    * products, so a caller filling many orders can add them in the order the orders were given stock
+    * @param       order to be filled
+    * @param       reserved is the quantity taken from stock for each record of the order, in the order of the records
+    * @return      the waitlist item made for each record of the order that wasn't filled entirely, in the order of
+    *              the records, and null for each record that was
+    * @pre         The order is completed, and the reserved quantities have been taken from the products' stock
+    * @post        The order will be filled with the reserved quantities, and the rest will be waitlisted on the order
+    * @see         OrderBatch
+    */
+   WaitlistItem[] fillOrder(Order order, int[] reserved) {
+      loadHistory();
+      Snapshot.preserve(this);
       Invoice invoice = new Invoice(this);
-      Iterator<Record> records = order.getRecords();
-      while(records.hasNext()) {
+      WaitlistItem[] waitlisted = new WaitlistItem[reserved.length];
+      LineItems lines = order.getLines();
+      for (int line = 0; line < lines.size(); line++) {
 
-         Record record = records.next();
-         Product product = record.getProduct();
-         int orderQuantity = record.getQuantity();
-         int productQuantity = product.getQuantity();
+         Product product = lines.getProduct(line);
+         int orderQuantity = lines.getQuantity(line);
    
          // not enough in stock
-         if (productQuantity < orderQuantity) {
+         if (reserved[line] < orderQuantity) {
 
             // if product quantity not zero, create invoice
-            if (productQuantity != 0) {
-               Record invoiceRecord = new Record(product, productQuantity, product.getPrice());
-               invoice.addRecord(invoiceRecord);
-               product.setQuantity(0);
+            if (reserved[line] != 0) {
+               invoice.addLine(product, reserved[line], product.getPrice());
             }
             
-            int difference = orderQuantity - productQuantity;
+            int difference = orderQuantity - reserved[line];
             WaitlistItem item = new WaitlistItem(product, order, difference);
 
             // add item to order waitlist
@@ -406,26 +833,235 @@ public class Client implements Serializable {
 
             // add order to client's waitlisted orders
             waitlistedOrders.add(order);
-
-            // add waitlist item to product
-            product.addToWaitlist(item);
-      
+            waitlisted[line] = item;
          }
    
          // enough in stock
          else {
-            int difference = productQuantity - orderQuantity;
-            Record invoiceRecord = new Record(product, orderQuantity, product.getPrice());
-            invoice.addRecord(invoiceRecord);
-            product.setQuantity(difference);
+            invoice.addLine(product, orderQuantity, product.getPrice());
          }
       }
    
       if (!invoice.isEmpty()) {
-         float total = invoice.calculateCost();
-         addInvoice(invoice);
-         charge(total);
+         bill(invoice);
+      }
+      return waitlisted;
+   }
+
+   /**
+    * Reads this client's orders, invoices, transactions, and waitlisted orders from the snapshot the client was
+    * read from, if they haven't been read yet
+    * @pre         None
+    * @post        This client's history will be in memory
+    * @see         Snapshot
+    */
+   private void loadHistory() {
+      if (storedHistory == null) {
+         return;
+      }
+      synchronized (this) {
+         Snapshot.Region history = storedHistory;
+         if (history != null) {
+            try {
+               readHistory(history.open());
+            } catch(IOException ioe) {
+               throw new UncheckedIOException("Failed to read the history of client " + id, ioe);
+            }
+            storedHistory = null;
+            ClientList.instance().indexHistory(this);
+         }
+      }
+   }
+
+   /**
+    * Leaves this client's history in the snapshot it was read from, to be read the first time it is used
+    * @param       history of this client within the snapshot
+    * @pre         The client was just read from the snapshot
+    * @post        The history will be read the first time it is used
+    * @see         Snapshot
+    */
+   void deferHistory(Snapshot.Region history) {
+      storedHistory = history;
+   }
+
+   /**
+    * Queries this client's history within the snapshot the client was read from, if it hasn't been read yet
+    * @return      the history within the snapshot if it hasn't been read; otherwise, null
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   Snapshot.Region getStoredHistory() {
+      return storedHistory;
+   }
+
+   /**
+    * Writes this client to the index of a snapshot
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeSnapshot(Snapshot.Output output) throws IOException {
+      output.writeId(id);
+      output.writeString(name);
+      output.writeMoney(balance);
+      output.writeMoney(invoiced);
+      output.writeMoney(paid);
+      HistoryArchive.Extent.writeSnapshot(output, archived);
+   }
+
+   /**
+    * Reads a client written by writeSnapshot, without its history
+    * @param       input is the snapshot being read
+    * @return      the client read
+    * @throws      IOException when the snapshot can't be read
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   static Client readSnapshot(Snapshot.Input input) throws IOException {
+      String id = input.readId(CLIENT_STRING);
+      String name = input.readString();
+      long balance = input.readMoney();
+      Client client = new Client(id, name, balance, input.readMoney(), input.readMoney());
+      client.archived = HistoryArchive.Extent.readSnapshot(input);
+      return client;
+   }
+
+   /**
+    * Writes this client's orders, invoices, transactions, and references to its waitlisted orders to a snapshot
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         The history has been read
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeHistory(Snapshot.Output output) throws IOException {
+      output.writeVarInt(orders.size());
+      for (Iterator<Order> o = orders.iterator(); o.hasNext();) {
+         o.next().writeSnapshot(output);
+      }
+      output.writeVarInt(invoices.size());
+      for (Iterator<Invoice> i = invoices.iterator(); i.hasNext();) {
+         i.next().writeSnapshot(output);
+      }
+      output.writeVarInt(transactions.size());
+      for (Iterator<Transaction> t = transactions.iterator(); t.hasNext();) {
+         t.next().writeSnapshot(output);
+      }
+      output.writeVarInt(waitlistedOrders.size());
+      for (Iterator<Order> o = waitlistedOrders.iterator(); o.hasNext();) {
+         output.writeId(o.next().getId());
+      }
+   }
+
+   /**
+    * Reads this client's history written by writeHistory
+    * @param       input is the history being read
+    * @throws      IOException when the history can't be read
+    * @pre         The client's history hasn't been read
+    * @post        The client's history will be in memory
+    * @see         Snapshot
+    */
+   void readHistory(Snapshot.Input input) throws IOException {
+      for (int count = input.readVarInt(); count > 0; count--) {
+         orders.add(Order.readSnapshot(input, this));
+      }
+      for (int count = input.readVarInt(); count > 0; count--) {
+         invoices.add(Invoice.readSnapshot(input, this));
+      }
+      for (int count = input.readVarInt(); count > 0; count--) {
+         transactions.add(Transaction.readSnapshot(input));
+      }
+      orderIndex = null;
+      invoiceIndex = null;
+      for (int count = input.readVarInt(); count > 0; count--) {
+         Order order = orderIndex().get(input.readId(Order.ORDER_STRING));
+         if (order == null) {
+            throw new IOException("Reference to a missing order");
+         }
+         waitlistedOrders.add(order);
+      }
+   }
+
+   /**
+    * Helper function for the save function in Warehouse, which will be used during serialization
+    * @throws      IOException when the serialized output stream fails to write successfully
+    * @pre         None
+    * @post        This client, with its history, will have been written, with its balance in dollars
+    */
+   private void writeObject(ObjectOutputStream output) throws IOException {
+      loadHistory();
+      ObjectOutputStream.PutField fields = output.putFields();
+      fields.put("name", name);
+      fields.put("id", id);
+      fields.put("balance", Money.toFloat(balance));
+      fields.put("invoiced", invoiced);
+      fields.put("paid", paid);
+      fields.put("invoices", invoices);
+      if (archived == null) {
+         fields.put("transactions", transactions);
+      } else {
+
+         // the archive isn't serialized, so the archived transactions are written with the rest
+         List<Transaction> all = getArchivedTransactions(Long.MIN_VALUE, Long.MAX_VALUE);
+         all.addAll(transactions);
+         fields.put("transactions", all);
+      }
+      fields.put("orders", orders);
+      fields.put("waitlistedOrders", new LinkedList<Order>(waitlistedOrders));
+      output.writeFields();
+   }
+
+   /**
+    * Helper function for the retrieve function in Warehouse, which will be used during deserialization
+    * @throws      IOException when the serialized input stream fails to read successfully
+    * @throws      ClassNotFoundException when a serialized class can't be found
+    * @pre         None
+    * @post        This client, with its history, will have been read, with its balance converted to cents, and
+    *              without the orders that no longer have waitlisted items once everything has been read
+    */
+   @SuppressWarnings("unchecked")
+   private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = input.readFields();
+      name = (String) fields.get("name", null);
+      id = (String) fields.get("id", null);
+      balance = Money.fromFloat(fields.get("balance", 0f));
+      invoices = (List<Invoice>) fields.get("invoices", null);
+      transactions = new ArrayList<Transaction>((List<Transaction>) fields.get("transactions", null));
+      orders = (List<Order>) fields.get("orders", null);
+      waitlistedOrders = new LinkedHashSet<Order>((List<Order>) fields.get("waitlistedOrders", null));
+      input.registerValidation(new ObjectInputValidation() {
+         public void validateObject() {
+            for (Iterator<Order> waitlist = waitlistedOrders.iterator(); waitlist.hasNext();) {
+               if (!waitlist.next().hasWaitlistedItems()) {
+                  waitlist.remove();
+               }
+            }
+         }
+      }, 0);
+      if (fields.defaulted("invoiced")) {
+         totalHistory();
+      } else {
+         invoiced = fields.get("invoiced", 0L);
+         paid = fields.get("paid", 0L);
+      }
+   }
+
+   /**
+    * Works out the totals for a client read from data saved before the totals were kept, from the client's
+    * invoices and balance, since every charge to a client's balance comes from an invoice
+    * @pre         The client's invoices and balance have been read
+    * @post        The totals invoiced and paid will match the invoices and balance
+    */
+   private void totalHistory() {
+      invoiced = 0;
+      for (Iterator<Invoice> i = invoices.iterator(); i.hasNext();) {
+         invoiced += i.next().calculateCost();
       }
+      paid = invoiced - balance;
    }
 
    /**
@@ -1,8 +1,15 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 /**
  * Collection of suppliers
+ * <p>
+ * Clients are found, and billed, from several threads at once without taking a lock shared by every client: the
+ * indexes are concurrent, and the entries of a client are only changed while the Warehouse holds the client's
+ * lock. Adding a client, and building an index, are synchronized, and the iterators handed out go through a copy of
+ * the clients
+ * <p>
  * @author      Shion Steel Hart <shionhart@gmail.com>
  * @version     1.0
  * @since       1.0
@@ -17,7 +24,7 @@ public class ClientList implements Serializable {
    /**
     * Singleton instance of self
     */
-   private static ClientList clientList;
+   private static volatile ClientList clientList;
    
    /**
     * The data structure used to hold the clients, so ClientList can manage
@@ -25,9 +32,36 @@ public class ClientList implements Serializable {
    private List<Client> clients = new LinkedList<Client>();
    
    /**
-    * The data structure used to hold the clients with a balance, so ClientList can manage
+    * The clients with an unpaid balance, ordered from the largest balance owed to the smallest. This isn't
+    * serialized, it is rebuilt from the list of clients the first time it is needed
     */
-   private List<Client> clientsWithBalance = new LinkedList<Client>();
+   private transient volatile NavigableSet<Receivable> receivables;
+
+   /**
+    * The entry in receivables for each client with an unpaid balance, keyed by client id
+    */
+   private transient volatile Map<String, Receivable> receivableIndex;
+
+   /**
+    * The transactions of every client that haven't been archived, keyed by the time they occured, with the
+    * transactions of the same time in the order they were recorded. Each list of transactions of the same time is
+    * locked while it is used, since clients recording at the same time share it. This isn't serialized, it is built
+    * from the clients' histories the first time it is needed, and kept up to date from then on
+    */
+   private transient volatile ConcurrentNavigableMap<Long, List<Activity>> activity;
+
+   /**
+    * The times of the first, and last, transactions of each client whose history was still in the snapshot when the
+    * index of transactions was built. Their transactions are left out of the index, so building it doesn't read
+    * every history into memory, and are read back from the snapshot until the history is read
+    */
+   private transient volatile Map<Client, long[]> unindexed;
+
+   /**
+    * Index of the clients keyed by client id, so lookups don't need to walk the list of clients.
+    * This isn't serialized, it is rebuilt from the list of clients the first time it is needed
+    */
+   private transient volatile Map<String, Client> clientIndex;
    
    /**
     * Private ClientList constructor
@@ -42,11 +76,26 @@ public class ClientList implements Serializable {
     * @return the ClientList singleton instance 
     */
    public static ClientList instance() {
-      if (clientList == null) {
-         return (clientList = new ClientList());
-      } else {
-         return clientList;
+      ClientList current = clientList;
+      if (current == null) {
+         synchronized (ClientList.class) {
+            if (clientList == null) {
+               clientList = new ClientList();
+            }
+            current = clientList;
+         }
       }
+      return current;
+   }
+
+   /**
+    * Drops the ClientList, so the next call to instance creates an empty one
+    * @pre         None
+    * @post        The ClientList will be empty the next time it is used
+    * @see         Warehouse
+    */
+   static void clear() {
+      clientList = null;
    }
 
    /**
@@ -56,7 +105,7 @@ public class ClientList implements Serializable {
     * @post        None
     * @see         Supplier
     */
-   public boolean isEmpty() {
+   public synchronized boolean isEmpty() {
       return clients.size() == 0;
    }
 
@@ -68,19 +117,30 @@ public class ClientList implements Serializable {
     * @post        The client specified will exist in the system
     * @see         Client
     */
-   public boolean insertClient(Client client) {
-      return clients.add(client);
+   public synchronized boolean insertClient(Client client) {
+      if (index().containsKey(client.getId())) {
+         return false;
+      }
+      if (clients.add(client)) {
+         index().put(client.getId(), client);
+         if (receivables != null) {
+            addReceivable(client);
+         }
+         return true;
+      }
+      return false;
    }
 
    /**
     * Queries the list of clients
-    * @return      An iterator to navigate through the list of clients
+    * @return      An iterator to navigate through the list of clients as it is now, which isn't affected by
+    *              clients added while it is used
     * @pre         None
     * @post        None
     * @see         Client
     */
-   public Iterator<Client> getClients(){
-      return clients.iterator();
+   public synchronized Iterator<Client> getClients(){
+      return new ArrayList<Client>(clients).iterator();
    }
 
    /**
@@ -91,31 +151,346 @@ public class ClientList implements Serializable {
     * @see         Client
     */
    public boolean hasUnpaid() {
+      return !receivables().isEmpty();
+   }
+
+   /**
+    * Queries the list of clients with unpaid balances
+    * @return      An iterator to navigate through the clients with unpaid balances, from the largest balance owed
+    *              to the smallest
+    * @pre         None
+    * @post        None
+    * @see         Client
+    */
+   public Iterator<Client> getUnpaid() {
+      return getTopDebtors(Integer.MAX_VALUE);
+   }
+
+   /**
+    * Queries the clients that owe the most
+    * @param       count is the largest number of clients to be returned
+    * @return      An iterator to navigate through, at most, the count clients with the largest unpaid balances,
+    *              from the largest balance owed to the smallest
+    * @pre         None
+    * @post        None
+    * @see         Client
+    */
+   public Iterator<Client> getTopDebtors(int count) {
+      NavigableSet<Receivable> owing = receivables();
+      List<Client> debtors = new ArrayList<Client>(Math.min(count, owing.size()));
+
+      // a client whose balance changes while the receivables are gone through may be passed twice
+      Set<Client> listed = Collections.newSetFromMap(new IdentityHashMap<Client, Boolean>());
+      for (Iterator<Receivable> owed = owing.iterator(); owed.hasNext() && debtors.size() < count;) {
+         Client client = owed.next().client;
+         if (listed.add(client)) {
+            debtors.add(client);
+         }
+      }
+      return debtors.iterator();
+   }
+
+   /**
+    * Updates the receivables after the balance of the given client has changed
+    * @param       client whose balance has changed
+    * @pre         The caller holds the client's lock, so its entry isn't updated by two threads at once
+    * @post        The client will be listed as unpaid if, and only if, the client has a balance
+    * @see         Client
+    */
+   public void updateBalance(Client client) {
+      if (index().get(client.getId()) != client) {
+         return;
+      }
+      NavigableSet<Receivable> owing = receivables();
+      Receivable previous = receivableIndex.remove(client.getId());
+      if (previous != null) {
+         owing.remove(previous);
+      }
+      addReceivable(client);
+   }
+
+   /**
+    * Records a transaction of the given client in the index of transactions, if the index has been built
+    * @param       client the transaction belongs to
+    * @param       transaction that occured
+    * @pre         The transaction is the client's latest, and the caller holds the client's lock
+    * @post        The transaction will be found by getActivity
+    * @see         Transaction
+    */
+   public void recordTransaction(Client client, Transaction transaction) {
+      if (activity != null && index().get(client.getId()) == client) {
+         addActivity(client, transaction);
+      }
+   }
+
+   /**
+    * Queries whether the index of transactions has been built
+    * @return      true if the index has been built; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   public boolean hasActivity() {
+      return activity != null;
+   }
+
+   /**
+    * Builds the index of transactions from the histories in memory, and the bounds of the histories that are still
+    * in the snapshot, if it doesn't exist yet
+    * @pre         The caller holds the lock of every client
+    * @post        The index of transactions will hold every transaction of every client whose history is in memory
+    * @see         Transaction
+    */
+   public synchronized void buildActivity() {
+      if (activity != null) {
+         return;
+      }
+      ConcurrentNavigableMap<Long, List<Activity>> built = new ConcurrentSkipListMap<Long, List<Activity>>();
+      Map<Client, long[]> stored = new ConcurrentHashMap<Client, long[]>();
       for (Iterator<Client> allClients = clients.iterator(); allClients.hasNext();) {
          Client client = allClients.next();
-         if (client.getBalance() > 0) {
-            return true;
+         Snapshot.Region history = client.getStoredHistory();
+         if (history == null) {
+            for (Iterator<Transaction> transactions = client.getRecentTransactions(); transactions.hasNext();) {
+               addActivity(built, client, transactions.next());
+            }
+         } else {
+
+            // the snapshot's index holds the times of each history's transactions, so the history isn't read
+            long[] times = history.getTransactionTimes();
+            if (times != null) {
+               stored.put(client, times);
+            }
          }
       }
-      return false;
+      unindexed = stored;
+      activity = built;
    }
 
    /**
-    * Queries the list of clients with unpaid balances, after compiling the list
-    * @return      An iterator to navigate through the list of clients with unpaid balances
+    * Queries the clients whose transactions within a range of time are left out of the index of transactions,
+    * because their histories are still in the snapshot
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @return      the clients left out of the index with transactions within the range
+    * @pre         The index of transactions has been built
+    * @post        None
+    */
+   public Set<Client> getUnindexedClients(long from, long to) {
+      Set<Client> found = new HashSet<Client>();
+      for (Map.Entry<Client, long[]> bounds : unindexed.entrySet()) {
+         if (bounds.getValue()[0] < to && bounds.getValue()[1] >= from) {
+            found.add(bounds.getKey());
+         }
+      }
+      return found;
+   }
+
+   /**
+    * Adds the clients with archived transactions within a range of time to the given clients
+    * @param       found is the set of clients the clients are added to
+    * @param       from is the start of the range, in milliseconds since the epoch
     * @pre         None
+    * @post        The clients that have archived transactions at, or after, the start of the range will be found
+    */
+   public void addArchivedClients(Set<Client> found, long from) {
+      for (Client client : index().values()) {
+         if (client.getArchivedUntil() >= from) {
+            found.add(client);
+         }
+      }
+   }
+
+   /**
+    * Queries the transactions in the index of transactions that occured within a range of time
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @param       type of the transactions to be returned, or null for every type
+    * @return      the transactions within the range, in the order they occured
+    * @pre         The index of transactions has been built
+    * @post        None
+    * @see         Transaction
+    */
+   public List<Activity> getIndexedActivity(long from, long to, String type) {
+      List<Activity> found = new ArrayList<Activity>();
+      if (from >= to) {
+         return found;
+      }
+      for (List<Activity> atTime : activity.subMap(from, true, to, false).values()) {
+         synchronized (atTime) {
+            for (Activity entry : atTime) {
+               if (type == null || type.equals(entry.transaction.getType())) {
+                  found.add(entry);
+               }
+            }
+         }
+      }
+      return found;
+   }
+
+   /**
+    * Queries the transactions of a single client that occured within a range of time, reading its archived
+    * transactions, and its history if it is still in the snapshot, rather than the index of transactions
+    * @param       client whose transactions are wanted
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @param       type of the transactions to be returned, or null for every type
+    * @return      the client's transactions within the range, in the order they occured
+    * @pre         The caller holds the client's lock
     * @post        None
+    * @see         HistoryArchive
+    */
+   public List<Activity> getClientActivity(Client client, long from, long to, String type) {
+      List<Activity> found = new ArrayList<Activity>();
+      for (Transaction transaction : client.findTransactions(from, to)) {
+         if (type == null || type.equals(transaction.getType())) {
+            found.add(new Activity(client, transaction));
+         }
+      }
+      return found;
+   }
+
+   /**
+    * Adds the transactions of a client whose history has just been read from the snapshot to the index of
+    * transactions, if they were left out of it
+    * @param       client whose history was read
+    * @pre         The client's history has just been read into memory, and the caller holds the client's monitor
+    * @post        The client's transactions will be in the index if it has been built
+    */
+   void indexHistory(Client client) {
+      Map<Client, long[]> stored = unindexed;
+      if (stored != null && stored.remove(client) != null) {
+         for (Iterator<Transaction> transactions = client.getRecentTransactions(); transactions.hasNext();) {
+            addActivity(client, transactions.next());
+         }
+      }
+   }
+
+   /**
+    * Removes transactions that were archived from the index of transactions, if the index has been built
+    * @param       client the transactions belong to
+    * @param       transactions that were archived
+    * @pre         The caller holds the client's lock
+    * @post        The transactions will only be found by getActivity by reading them back from the archive
+    * @see         HistoryArchive
+    */
+   public void archiveTransactions(Client client, List<Transaction> transactions) {
+      ConcurrentNavigableMap<Long, List<Activity>> index = activity;
+      if (index == null) {
+         return;
+      }
+      for (Transaction transaction : transactions) {
+         List<Activity> atTime = index.get(transaction.getTime());
+         if (atTime == null) {
+            continue;
+         }
+         synchronized (atTime) {
+            for (Iterator<Activity> entries = atTime.iterator(); entries.hasNext();) {
+               if (entries.next().transaction == transaction) {
+                  entries.remove();
+                  break;
+               }
+            }
+
+            // emptied while locked, so a client recording at the same time adds to a new list instead
+            if (atTime.isEmpty()) {
+               index.remove(transaction.getTime(), atTime);
+            }
+         }
+      }
+   }
+
+   /**
+    * Adds a transaction to the index of transactions
+    * @param       client the transaction belongs to
+    * @param       transaction to be added
+    * @pre         The index has been built
+    * @post        The transaction will be in the index, after the transactions of the same time
+    */
+   private void addActivity(Client client, Transaction transaction) {
+      addActivity(activity, client, transaction);
+   }
+
+   /**
+    * Adds a transaction to the given index of transactions
+    * @param       index of transactions the transaction is added to
+    * @param       client the transaction belongs to
+    * @param       transaction to be added
+    * @pre         None
+    * @post        The transaction will be in the index, after the transactions of the same time
+    */
+   private static void addActivity(ConcurrentNavigableMap<Long, List<Activity>> index, Client client,
+      Transaction transaction) {
+      while (true) {
+         List<Activity> atTime = index.get(transaction.getTime());
+         if (atTime == null) {
+            atTime = new ArrayList<Activity>(1);
+            List<Activity> existing = index.putIfAbsent(transaction.getTime(), atTime);
+            if (existing != null) {
+               atTime = existing;
+            }
+         }
+         synchronized (atTime) {
+
+            // a list emptied, and removed, by archiving before it was locked is no longer in the index
+            if (index.get(transaction.getTime()) == atTime) {
+               atTime.add(new Activity(client, transaction));
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * Adds the given client to the receivables if the client has a balance
+    * @param       client to be added to the receivables
+    * @pre         The receivables have been built, and the client isn't in them
+    * @post        The client will be listed as unpaid if, and only if, the client has a balance
     * @see         Client
     */
-   public Iterator<Client> getUnpaid() {
+   private void addReceivable(Client client) {
+      addReceivable(receivables, client);
+   }
 
-      for (Iterator<Client> allClients = clients.iterator(); allClients.hasNext();) {
-         Client client = allClients.next();
-         if (client.getBalance() > 0) {
-            clientsWithBalance.add(client);
+   /**
+    * Adds the given client to the given receivables if the client has a balance
+    * @param       owing is the receivables the client is added to
+    * @param       client to be added to the receivables
+    * @pre         The client isn't in the receivables
+    * @post        The client will be listed as unpaid if, and only if, the client has a balance
+    * @see         Client
+    */
+   private void addReceivable(NavigableSet<Receivable> owing, Client client) {
+      if (client.getBalance() > 0) {
+         Receivable receivable = new Receivable(client);
+         receivableIndex.put(client.getId(), receivable);
+         owing.add(receivable);
+      }
+   }
+
+   /**
+    * Queries the receivables, building them from the list of clients if they don't exist yet
+    * (which is the case after the ClientList has been retrieved)
+    * @return      The clients with an unpaid balance, ordered from the largest balance owed to the smallest
+    * @pre         None
+    * @post        The receivables will hold every client with a balance
+    * @see         Client
+    */
+   private NavigableSet<Receivable> receivables() {
+      NavigableSet<Receivable> owing = receivables;
+      if (owing == null) {
+         synchronized (this) {
+            if (receivables == null) {
+               receivableIndex = new ConcurrentHashMap<String, Receivable>();
+               owing = new ConcurrentSkipListSet<Receivable>();
+               for (Iterator<Client> allClients = clients.iterator(); allClients.hasNext();) {
+                  addReceivable(owing, allClients.next());
+               }
+               receivables = owing;
+            }
+            owing = receivables;
          }
       }
-      return clientsWithBalance.iterator();
+      return owing;
    }
 
    /**
@@ -127,13 +502,33 @@ public class ClientList implements Serializable {
     * @see         Client
     */
    public Client find(String clientId) {
-      for (Iterator<Client> allClients = clients.iterator(); allClients.hasNext();) {
-         Client client = allClients.next();
-         if (client.getId().equals(clientId)) {
-            return client;
+      return index().get(clientId);
+   }
+
+   /**
+    * Queries the index of clients keyed by client id, building it from the list of clients if it doesn't exist yet
+    * (which is the case after the ClientList has been retrieved)
+    * @return      The index of clients keyed by client id
+    * @pre         None
+    * @post        The index will hold every client in the list of clients
+    * @see         Client
+    */
+   private Map<String, Client> index() {
+      Map<String, Client> index = clientIndex;
+      if (index == null) {
+         synchronized (this) {
+            if (clientIndex == null) {
+               index = new ConcurrentHashMap<String, Client>();
+               for (Iterator<Client> allClients = clients.iterator(); allClients.hasNext();) {
+                  Client client = allClients.next();
+                  index.put(client.getId(), client);
+               }
+               clientIndex = index;
+            }
+            index = clientIndex;
          }
       }
-      return null;
+      return index;
    }
 
    /**
@@ -142,7 +537,7 @@ public class ClientList implements Serializable {
     * @pre         None
     * @post        None
     */
-   public String toString() {
+   public synchronized String toString() {
       return clients.toString();
    }
   
@@ -185,4 +580,100 @@ public class ClientList implements Serializable {
          cnfe.printStackTrace();
       }
    }
+
+   /**
+    * A transaction, with the client it belongs to
+    */
+   public static class Activity {
+
+      /**
+       * The client the transaction belongs to
+       */
+      private final Client client;
+
+      /**
+       * The transaction
+       */
+      private final Transaction transaction;
+
+      /**
+       * Constructor for the Activity
+       * @param       client the transaction belongs to
+       * @param       transaction that occured
+       */
+      private Activity(Client client, Transaction transaction) {
+         this.client = client;
+         this.transaction = transaction;
+      }
+
+      /**
+       * Query the client the transaction belongs to
+       * @return      Returns the client
+       * @pre         None
+       * @post        None
+       */
+      public Client getClient() {
+         return client;
+      }
+
+      /**
+       * Query the transaction
+       * @return      Returns the transaction
+       * @pre         None
+       * @post        None
+       */
+      public Transaction getTransaction() {
+         return transaction;
+      }
+
+      /**
+       * Generate a string when the object is used is scalar context which holds are relevent information
+       * @return      Returns the formated string of relevant information about the object
+       * @pre         None
+       * @post        None
+       */
+      public String toString() {
+         return client.getId() + "\t" + transaction;
+      }
+   }
+
+   /**
+    * A client's unpaid balance at the time it was recorded, so the receivables stay ordered while the balance
+    * of the client changes
+    */
+   private static class Receivable implements Comparable<Receivable> {
+
+      /**
+       * The balance the client owed when this was recorded
+       */
+      private final long balance;
+
+      /**
+       * The client that owes the balance
+       */
+      private final Client client;
+
+      /**
+       * Constructor for the Receivable
+       * @param       client that owes a balance
+       */
+      private Receivable(Client client) {
+         this.balance = client.getBalance();
+         this.client = client;
+      }
+
+      /**
+       * Orders receivables from the largest balance owed to the smallest, and then by client id
+       * @param       other receivable to be compared against this receivable
+       * @return      a negative number, zero, or a positive number as this receivable comes before, is the same
+       *              as, or comes after the other receivable
+       */
+      public int compareTo(Receivable other) {
+         int byBalance = Long.compare(other.balance, balance);
+         if (byBalance != 0) {
+            return byBalance;
+         }
+         return client.getId().compareTo(other.client.getId());
+      }
+   }
 }
@@ -0,0 +1,606 @@
+import java.util.*;
+import java.util.zip.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.io.*;
+
+/**
+ * The cold tier of the clients' transaction histories. A client keeps its latest transactions, and the ones from
+ * the last days, in memory, and once enough older transactions have built up they are moved to the end of the
+ * client's archive file as one compressed segment. A client's archive is only ever appended to, so a snapshot
+ * records how far into it the client's transactions go, and anything after that, such as a segment written after
+ * the snapshot by a run that crashed, is dropped the next time a segment is appended
+ * <p>
+ * Each segment holds a header with the number of transactions, the times of the first and last of them, and the
+ * length and CRC32 checksum of the compressed transactions, so a range of time is read by skipping the segments
+ * outside of it. The transactions are written the way a snapshot writes them
+ * <p>
+ * Segments are written by a background thread, so a call that fills up a client's memory doesn't wait for the
+ * disk while holding the client's lock. The client is handed to the thread, which takes the client's oldest
+ * transactions under its lock, writes them without it, and then takes the lock again to drop them from memory. A
+ * segment that fails to be written leaves the transactions in memory, to be archived the next time the client is
+ * handed over, and the failure is counted so it can be monitored through the WarehouseMetrics
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Client
+ * @see         Snapshot
+ */
+public class HistoryArchive {
+
+   /**
+    * The directory the archive files are kept in, which holds a file for each client with archived transactions
+    */
+   public static final String ARCHIVE_DIRECTORY = "WarehouseHistory";
+
+   /**
+    * Marks the start of a segment
+    */
+   private static final int SEGMENT_MAGIC = 0x57485347; // "WHSG"
+
+   /**
+    * The version of the segment format, in which transactions are written the way version 7 of the snapshot format
+    * wrote them
+    */
+   private static final int SEGMENT_VERSION = 7;
+
+   /**
+    * The size of the header of a segment
+    */
+   private static final int SEGMENT_HEADER_LENGTH = 40;
+
+   /**
+    * The largest segment the archive will read back, so a damaged length can't exhaust the heap
+    */
+   private static final int MAX_SEGMENT_LENGTH = 1 << 26;
+
+   /**
+    * Singleton instance of self
+    */
+   private static volatile HistoryArchive archive;
+
+   /**
+    * The number of transactions each client keeps in memory however old they are, which is also the fewest
+    * transactions a segment is written with
+    */
+   private volatile int hotTransactions = 1000;
+
+   /**
+    * How long, in milliseconds, a transaction is kept in memory after it occured
+    */
+   private volatile long hotMillis = 90L * 24 * 60 * 60 * 1000;
+
+   /**
+    * Whether transactions are archived at all, which benchmarks that build throwaway warehouses may turn off
+    */
+   private volatile boolean enabled = true;
+
+   /**
+    * The clients handed over to be archived, in the order they were handed over, where a client is only held once
+    * however many times it is handed over
+    */
+   private final Set<Client> queued = new LinkedHashSet<Client>();
+
+   /**
+    * The client being archived, or null when none is
+    */
+   private Client archiving;
+
+   /**
+    * Thread that archives the clients handed over, which is started the first time a client is handed over
+    */
+   private Thread archiver;
+
+   /**
+    * The number of segments written
+    */
+   private long segments;
+
+   /**
+    * The number of segments that failed to be written
+    */
+   private long failures;
+
+   /**
+    * Why the last segment that failed to be written failed, or null if none has failed
+    */
+   private String lastFailure;
+
+   /**
+    * Private HistoryArchive constructor
+    */
+   private HistoryArchive() {}
+
+   /**
+    * Singleton HistoryArchive Constructor
+    * <p>
+    * This grabs, or creates, the HistoryArchive
+    * <p>
+    * @return the HistoryArchive singleton instance
+    */
+   public static HistoryArchive instance() {
+      HistoryArchive current = archive;
+      if (current == null) {
+         synchronized (HistoryArchive.class) {
+            if (archive == null) {
+               archive = new HistoryArchive();
+            }
+            current = archive;
+         }
+      }
+      return current;
+   }
+
+   /**
+    * Clears the HistoryArchive, once the clients handed over to it have been archived
+    */
+   static void clear() {
+      HistoryArchive current;
+      synchronized (HistoryArchive.class) {
+         current = archive;
+         archive = null;
+      }
+      if (current != null) {
+         current.await();
+         current.stop();
+      }
+   }
+
+   /**
+    * Set which transactions are kept in memory. A client's transactions are archived once it has at least twice
+    * the number given, and only the ones older than the age given are archived
+    * @param       transactions is the number of latest transactions each client keeps in memory
+    * @param       millis is how long, in milliseconds, a transaction is kept in memory after it occured
+    * @pre         transactions is positive, and millis isn't negative
+    * @post        Transactions will be archived as specified
+    */
+   public void setRetention(int transactions, long millis) {
+      hotTransactions = Math.max(1, transactions);
+      hotMillis = Math.max(0, millis);
+   }
+
+   /**
+    * Turns archiving on or off. While archiving is off, every transaction stays in memory
+    * @param       enabled is true if transactions are to be archived; otherwise, false
+    * @pre         None
+    * @post        Transactions will only be archived while archiving is on
+    */
+   public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+   }
+
+   /**
+    * Works out how many of a client's oldest transactions are to be archived
+    * @param       transactions is the number of transactions the client has in memory
+    * @param       older is the number of those transactions that occured before the time returned by getCutoff
+    * @return      the number of oldest transactions to archive, which is 0 when too few can be archived for a
+    *              segment
+    * @pre         None
+    * @post        None
+    */
+   int archivable(int transactions, int older) {
+      int count = Math.min(transactions - hotTransactions, older);
+      return (enabled && count >= hotTransactions) ? count : 0;
+   }
+
+   /**
+    * Queries whether a client with the given number of transactions in memory may have transactions to archive,
+    * so the time of its transactions is only looked at when it might
+    * @param       transactions is the number of transactions the client has in memory
+    * @return      true if the client has enough transactions to archive some; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   boolean isFull(int transactions) {
+      return enabled && transactions >= 2 * hotTransactions;
+   }
+
+   /**
+    * Queries the time before which transactions may be archived
+    * @return      the time, in milliseconds since the epoch
+    * @pre         None
+    * @post        None
+    */
+   long getCutoff() {
+      return System.currentTimeMillis() - hotMillis;
+   }
+
+   /**
+    * Hands a client over to be archived on the background thread, once it may have transactions to archive
+    * @param       client with transactions to archive
+    * @pre         None
+    * @post        The client will be archived on the background thread, unless it is already waiting to be
+    */
+   synchronized void schedule(Client client) {
+      if (!queued.add(client)) {
+         return;
+      }
+      if (archiver == null) {
+         archiver = new Thread("history-archiver") {
+            public void run() {
+               archivePeriodically();
+            }
+         };
+         archiver.setDaemon(true);
+         archiver.start();
+      }
+      notifyAll();
+   }
+
+   /**
+    * Waits until the clients handed over have been archived
+    * @pre         None
+    * @post        No client will be waiting to be archived, or being archived
+    */
+   public synchronized void await() {
+      boolean interrupted = false;
+      while (!queued.isEmpty() || archiving != null) {
+         try {
+            wait();
+         } catch(InterruptedException ie) {
+            interrupted = true;
+         }
+      }
+      if (interrupted) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Stops the thread archiving the clients handed over
+    */
+   private synchronized void stop() {
+      if (archiver != null) {
+         archiver.interrupt();
+         archiver = null;
+      }
+   }
+
+   /**
+    * Archives the clients handed over, one at a time, in the order they were handed over, until the thread is
+    * interrupted
+    */
+   private void archivePeriodically() {
+      while (true) {
+         Client client;
+         synchronized (this) {
+            while (queued.isEmpty()) {
+               try {
+                  wait();
+               } catch(InterruptedException ie) {
+                  return;
+               }
+            }
+            Iterator<Client> next = queued.iterator();
+            client = next.next();
+            next.remove();
+            archiving = client;
+         }
+
+         String failure = null;
+         try {
+            client.archiveTransactions();
+         } catch(IOException ioe) {
+            failure = ioe.toString();
+         } catch(RuntimeException re) {
+            failure = re.toString();
+         }
+
+         synchronized (this) {
+            if (failure == null) {
+               segments++;
+            } else {
+               failures++;
+               lastFailure = failure;
+            }
+            archiving = null;
+            notifyAll();
+         }
+      }
+   }
+
+   /**
+    * Queries the number of segments written
+    * @return      the number of segments written
+    * @pre         None
+    * @post        None
+    */
+   public synchronized long getSegments() {
+      return segments;
+   }
+
+   /**
+    * Queries the number of segments that failed to be written
+    * @return      the number of segments that failed to be written
+    * @pre         None
+    * @post        None
+    */
+   public synchronized long getFailures() {
+      return failures;
+   }
+
+   /**
+    * Queries why the last segment that failed to be written failed
+    * @return      the reason it failed, or null if no segment has failed
+    * @pre         None
+    * @post        None
+    */
+   public synchronized String getLastFailure() {
+      return lastFailure;
+   }
+
+   /**
+    * Appends a segment holding the given transactions to the end of a client's archive
+    * @param       clientId of the client the transactions belong to
+    * @param       extent is how far into the archive the client's transactions go, or null if it has none
+    * @param       transactions to be archived, in the order they occured
+    * @return      how far into the archive the client's transactions go once the segment is appended
+    * @throws      IOException when the segment can't be written
+    * @pre         The caller is the only one archiving the client, and there is at least one transaction
+    * @post        The segment will be durable, and anything after the extent given will have been dropped
+    */
+   Extent append(String clientId, Extent extent, List<Transaction> transactions) throws IOException {
+      ByteArrayOutputStream raw = new ByteArrayOutputStream();
+      Snapshot.Output output = Snapshot.segmentOutput(new DataOutputStream(raw));
+      for (Transaction transaction : transactions) {
+         transaction.writeSnapshot(output);
+      }
+
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      Deflater deflater = new Deflater();
+      try (DeflaterOutputStream deflating = new DeflaterOutputStream(compressed, deflater)) {
+         raw.writeTo(deflating);
+      } finally {
+         deflater.end();
+      }
+      byte[] body = compressed.toByteArray();
+      CRC32 checksum = new CRC32();
+      checksum.update(body);
+
+      long first = transactions.get(0).getTime();
+      long last = transactions.get(transactions.size() - 1).getTime();
+      ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+      header.putInt(SEGMENT_MAGIC).putInt(SEGMENT_VERSION).putInt(transactions.size());
+      header.putLong(first).putLong(last);
+      header.putInt(raw.size()).putInt(body.length).putInt((int) checksum.getValue());
+      header.flip();
+
+      long length = (extent == null) ? 0 : extent.length;
+      Files.createDirectories(Paths.get(ARCHIVE_DIRECTORY));
+      try (FileChannel channel = FileChannel.open(
+            file(clientId), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+         if (channel.size() < length) {
+            throw new IOException("The archived history of client " + clientId + " is missing segments");
+         }
+         channel.truncate(length);
+         channel.position(length);
+         ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+         while (header.hasRemaining() || bodyBuffer.hasRemaining()) {
+            channel.write(new ByteBuffer[] { header, bodyBuffer });
+         }
+         channel.force(false);
+      }
+
+      return new Extent(
+         (extent == null ? 0 : extent.count) + transactions.size(),
+         length + SEGMENT_HEADER_LENGTH + body.length,
+         (extent == null) ? first : extent.from,
+         last
+      );
+   }
+
+   /**
+    * Reads a client's archived transactions that occured within a range of time, skipping the segments outside
+    * of the range without decompressing them
+    * @param       clientId of the client the transactions belong to
+    * @param       extent is how far into the archive the client's transactions go
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @return      the transactions within the range, in the order they occured
+    * @throws      IOException when the archive can't be read, or is damaged
+    * @pre         None
+    * @post        None
+    */
+   List<Transaction> read(String clientId, Extent extent, long from, long to) throws IOException {
+      List<Transaction> transactions = new ArrayList<Transaction>();
+      if (extent == null || from >= to || to <= extent.from || from > extent.until) {
+         return transactions;
+      }
+      try (FileChannel channel = FileChannel.open(file(clientId), StandardOpenOption.READ)) {
+         ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+         for (long position = 0; position < extent.length;) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            int count = header.getInt();
+            long first = header.getLong();
+            long last = header.getLong();
+            int rawLength = header.getInt();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (magic != SEGMENT_MAGIC || version != SEGMENT_VERSION || rawLength < 0 || rawLength > MAX_SEGMENT_LENGTH
+               || length < 0 || length > MAX_SEGMENT_LENGTH
+               || position + SEGMENT_HEADER_LENGTH + length > extent.length) {
+               throw new IOException("The archived history of client " + clientId + " is damaged");
+            }
+            if (last >= from && first < to) {
+               Snapshot.Input input = Snapshot.segmentInput(
+                  ByteBuffer.wrap(inflate(channel, position + SEGMENT_HEADER_LENGTH, length, rawLength, checksum))
+               );
+               for (int i = 0; i < count; i++) {
+                  Transaction transaction = Transaction.readSnapshot(input);
+                  if (transaction.getTime() >= from && transaction.getTime() < to) {
+                     transactions.add(transaction);
+                  }
+               }
+            }
+            position += SEGMENT_HEADER_LENGTH + length;
+         }
+      } catch(NoSuchFileException nsfe) {
+         throw new IOException("The archived history of client " + clientId + " is missing", nsfe);
+      }
+      return transactions;
+   }
+
+   /**
+    * Reads, checks, and decompresses the transactions of a segment
+    * @param       channel the archive is read through
+    * @param       position of the compressed transactions in the archive
+    * @param       length of the compressed transactions
+    * @param       rawLength of the transactions once decompressed
+    * @param       checksum of the compressed transactions
+    * @return      the decompressed transactions
+    * @throws      IOException when the segment can't be read, or is damaged
+    */
+   private static byte[] inflate(FileChannel channel, long position, int length, int rawLength, int checksum)
+      throws IOException {
+      ByteBuffer body = ByteBuffer.allocate(length);
+      readFully(channel, body, position);
+      CRC32 crc = new CRC32();
+      crc.update(body.array(), 0, length);
+      if ((int) crc.getValue() != checksum) {
+         throw new IOException("An archived history segment is damaged");
+      }
+
+      byte[] raw = new byte[rawLength];
+      Inflater inflater = new Inflater();
+      try {
+         inflater.setInput(body.array(), 0, length);
+         int inflated = 0;
+         while (inflated < rawLength && !inflater.finished()) {
+            int read = inflater.inflate(raw, inflated, rawLength - inflated);
+            if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+               break;
+            }
+            inflated += read;
+         }
+         if (inflated != rawLength) {
+            throw new IOException("An archived history segment is damaged");
+         }
+      } catch(DataFormatException dfe) {
+         throw new IOException("An archived history segment is damaged", dfe);
+      } finally {
+         inflater.end();
+      }
+      return raw;
+   }
+
+   /**
+    * Fills a buffer from the given position of a channel
+    * @param       channel to be read
+    * @param       buffer to be filled
+    * @param       position of the channel to read from
+    * @throws      IOException when the channel ends before the buffer is filled
+    */
+   private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+      while (buffer.hasRemaining()) {
+         int read = channel.read(buffer, position);
+         if (read < 0) {
+            throw new IOException("An archived history ends early");
+         }
+         position += read;
+      }
+   }
+
+   /**
+    * Queries the archive file of a client
+    * @param       clientId of the client
+    * @return      the path of the client's archive file
+    */
+   private static Path file(String clientId) {
+      return Paths.get(ARCHIVE_DIRECTORY, clientId + ".hist");
+   }
+
+   /**
+    * How far into its archive a client's transactions go, which a snapshot records with the client
+    */
+   static class Extent {
+
+      /**
+       * The number of transactions archived
+       */
+      private final int count;
+
+      /**
+       * The length of the archive that holds the client's transactions, in bytes
+       */
+      private final long length;
+
+      /**
+       * The time of the first transaction archived, in milliseconds since the epoch
+       */
+      private final long from;
+
+      /**
+       * The time of the last transaction archived, in milliseconds since the epoch
+       */
+      private final long until;
+
+      /**
+       * Constructor for the Extent
+       * @param       count of the transactions archived
+       * @param       length of the archive that holds the transactions, in bytes
+       * @param       from is the time of the first transaction archived
+       * @param       until is the time of the last transaction archived
+       */
+      Extent(int count, long length, long from, long until) {
+         this.count = count;
+         this.length = length;
+         this.from = from;
+         this.until = until;
+      }
+
+      /**
+       * Query the number of transactions archived
+       * @return      Returns the number of transactions archived
+       */
+      int getCount() {
+         return count;
+      }
+
+      /**
+       * Query the time of the last transaction archived
+       * @return      Returns the time, in milliseconds since the epoch
+       */
+      long getUntil() {
+         return until;
+      }
+
+      /**
+       * Writes an extent to a snapshot, where a client with nothing archived is written as a count of 0
+       * @param       output is the snapshot being written
+       * @param       extent to be written, or null when nothing has been archived
+       * @throws      IOException when the snapshot can't be written
+       * @see         Snapshot
+       */
+      static void writeSnapshot(Snapshot.Output output, Extent extent) throws IOException {
+         if (extent == null) {
+            output.writeVarInt(0);
+            return;
+         }
+         output.writeVarInt(extent.count);
+         output.writeVarLong(extent.length);
+         output.writeVarLong(extent.from);
+         output.writeVarLong(extent.until);
+      }
+
+      /**
+       * Reads an extent written by writeSnapshot
+       * @param       input is the snapshot being read
+       * @return      the extent read, or null when nothing was archived
+       * @throws      IOException when the snapshot can't be read
+       * @see         Snapshot
+       */
+      static Extent readSnapshot(Snapshot.Input input) throws IOException {
+         int count = input.readVarInt();
+         if (count == 0) {
+            return null;
+         }
+         return new Extent(count, input.readVarLong(), input.readVarLong(), input.readVarLong());
+      }
+   }
+}
@@ -0,0 +1,348 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+
+/**
+ * Id server that hands out the ids for clients, products, suppliers, orders, and invoices. Ids are handed out
+ * without locking, and callers creating many objects at once can reserve a block of ids so they don't contend
+ * on the shared counter
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+public class IdServer implements Serializable {
+
+   /**
+    * Used for serialization
+    */
+   private static final long serialVersionUID = 1L;
+
+   public static final int CLIENT   = 0; // Used to hand out client ids
+   public static final int PRODUCT  = 1; // Used to hand out product ids
+   public static final int SUPPLIER = 2; // Used to hand out supplier ids
+   public static final int ORDER    = 3; // Used to hand out order ids
+   public static final int INVOICE  = 4; // Used to hand out invoice ids
+
+   /**
+    * The number of kinds of ids handed out
+    */
+   private static final int KINDS = 5;
+
+   /**
+    * Singleton instance of self
+    */
+   private static volatile IdServer server;
+
+   /**
+    * The next id to be handed out for each kind of id, which is also the high-water mark of ids handed out
+    */
+   private final AtomicIntegerArray idCounters;
+
+   /**
+    * The number of ids each thread reserves at a time, where 1 means every id is taken from the shared counter
+    */
+   private volatile int blockSize;
+
+   /**
+    * The block of ids currently reserved by each thread, for each kind of id
+    */
+   private transient ThreadLocal<IdBlock[]> threadBlocks;
+
+   /**
+    * The ids to be handed out next, in place of ids from the counter, while the journal is replayed, each held as
+    * its kind followed by its number, in the order they are to be handed out. This is null when no id is pinned
+    */
+   private transient volatile List<int[]> pinnedIds;
+
+   /**
+    * Private IdServer constructor
+    */
+   private IdServer() {
+      idCounters = new AtomicIntegerArray(KINDS);
+      for (int kind = 0; kind < KINDS; kind++) {
+         idCounters.set(kind, 1);
+      }
+      blockSize = 1;
+      threadBlocks = newThreadBlocks();
+   }
+
+   /**
+    * Singleton IdServer Constructor
+    * <p>
+    * This grabs, or creates, the IdServer
+    * <p>
+    * @return the IdServer singleton instance
+    */
+   public static IdServer instance() {
+      IdServer current = server;
+      if (current == null) {
+         synchronized (IdServer.class) {
+            if (server == null) {
+               server = new IdServer();
+            }
+            current = server;
+         }
+      }
+      return current;
+   }
+
+   /**
+    * Drops the IdServer, so the warehouse it handed out ids for can be started over
+    * @pre         None
+    * @post        The IdServer will start handing out ids from the first id of each kind the next time it is used
+    * @see         Warehouse
+    */
+   static void clear() {
+      server = null;
+   }
+
+   /**
+    * Queries the next id for the given kind of id, taking it from this thread's reserved block when blocks are used
+    * @param       kind of id wanted (CLIENT, PRODUCT, SUPPLIER, ORDER, or INVOICE)
+    * @return      the next id
+    * @pre         None
+    * @post        The id returned will not be handed out again
+    */
+   public int getId(int kind) {
+      List<int[]> pins = pinnedIds;
+      if (pins != null) {
+         for (Iterator<int[]> p = pins.iterator(); p.hasNext();) {
+            int[] pin = p.next();
+            if (pin[0] == kind) {
+               p.remove();
+               advancePast(kind, pin[1]);
+               return pin[1];
+            }
+         }
+      }
+
+      if (blockSize <= 1) {
+         return idCounters.getAndIncrement(kind);
+      }
+
+      IdBlock[] blocks = threadBlocks.get();
+      IdBlock block = blocks[kind];
+      if (block == null || !block.hasNext()) {
+         block = blocks[kind] = reserve(kind, blockSize);
+      }
+      return block.next();
+   }
+
+   /**
+    * Reserves a contiguous block of ids for the given kind of id, for a caller that will create many objects
+    * @param       kind of id wanted (CLIENT, PRODUCT, SUPPLIER, ORDER, or INVOICE)
+    * @param       count of ids to be reserved
+    * @return      the block of reserved ids
+    * @pre         count is a positive integer
+    * @post        None of the ids in the block will be handed out to anyone else
+    * @see         IdBlock
+    */
+   public IdBlock reserve(int kind, int count) {
+      int first = idCounters.getAndAdd(kind, count);
+      return new IdBlock(first, first + count);
+   }
+
+   /**
+    * Set the number of ids each thread reserves at a time. Larger blocks mean less contention between threads
+    * creating objects, but ids are then no longer handed out in the order the objects were created
+    * @param       size of the blocks, where 1 means every id is taken from the shared counter
+    * @pre         size is a positive integer
+    * @post        Ids will be reserved the amount specified at a time
+    */
+   public void setBlockSize(int size) {
+      blockSize = Math.max(1, size);
+   }
+
+   /**
+    * Moves the counter for the given kind of id forward, so ids up to, and including, the number given are never
+    * handed out again
+    * @param       kind of id (CLIENT, PRODUCT, SUPPLIER, ORDER, or INVOICE)
+    * @param       number of an id that is already in use
+    * @pre         None
+    * @post        The next id handed out for the kind given will be greater than the number given
+    */
+   public void advancePast(int kind, int number) {
+      int next;
+      do {
+         next = idCounters.get(kind);
+      } while (next <= number && !idCounters.compareAndSet(kind, next, number + 1));
+   }
+
+   /**
+    * Moves the counter for the given kind of id past the given id that is already in use
+    * @param       kind of id (CLIENT, PRODUCT, SUPPLIER, ORDER, or INVOICE)
+    * @param       id already in use, which is a one letter prefix followed by the number handed out
+    * @throws      IllegalArgumentException when the id isn't a one letter prefix followed by a number
+    * @pre         None
+    * @post        The next id handed out for the kind given will be greater than the number within the id given
+    */
+   public void advancePast(int kind, String id) {
+      advancePast(kind, parseNumber(id));
+   }
+
+   /**
+    * Makes the given id the next id handed out for the given kind of id, even when later ids have been handed out
+    * already. The journal uses this to hand out the ids changes were journaled with, since changes made at the
+    * same time may be journaled in a different order than their ids were handed out. Ids pinned for the same kind
+    * are handed out in the order they were pinned
+    * @param       kind of id (CLIENT, PRODUCT, SUPPLIER, ORDER, or INVOICE)
+    * @param       id to be handed out next, which is a one letter prefix followed by a number
+    * @throws      IllegalArgumentException when the id isn't a one letter prefix followed by a number
+    * @pre         No other thread is taking ids, which is the case while the journal is replayed
+    * @post        The id given will be handed out once the ids pinned before it have been, and the counter will be
+    *              past it
+    */
+   public void pin(int kind, String id) {
+      int number = parseNumber(id);
+      if (number > 0) {
+         List<int[]> pins = pinnedIds;
+         if (pins == null) {
+            pins = new LinkedList<int[]>();
+         }
+         pins.add(new int[] { kind, number });
+         pinnedIds = pins;
+      }
+   }
+
+   /**
+    * Drops the ids pinned, but not handed out, so ids come from the counter again
+    * @pre         None
+    * @post        The next id handed out for every kind of id will come from the counter
+    */
+   public void unpin() {
+      pinnedIds = null;
+   }
+
+   /**
+    * Parses the number within the given id
+    * @param       id which is a one letter prefix followed by the number handed out
+    * @return      the number within the id
+    * @throws      IllegalArgumentException when the id isn't a one letter prefix followed by a number
+    */
+   private static int parseNumber(String id) {
+      try {
+         return Integer.parseInt(id.substring(1));
+      } catch(NumberFormatException nfe) {
+         throw new IllegalArgumentException("Malformed id " + id, nfe);
+      } catch(IndexOutOfBoundsException ioobe) {
+         throw new IllegalArgumentException("Malformed id " + id, ioobe);
+      }
+   }
+
+   /**
+    * Queries the high-water mark for the given kind of id
+    * @param       kind of id (CLIENT, PRODUCT, SUPPLIER, ORDER, or INVOICE)
+    * @return      the id that will be handed out, or reserved, next
+    * @pre         None
+    * @post        None
+    */
+   public int getHighWaterMark(int kind) {
+      return idCounters.get(kind);
+   }
+
+   /**
+    * Creates the holder of the blocks reserved by each thread
+    * @return      the holder of the blocks reserved by each thread
+    */
+   private static ThreadLocal<IdBlock[]> newThreadBlocks() {
+      return new ThreadLocal<IdBlock[]>() {
+         protected IdBlock[] initialValue() {
+            return new IdBlock[KINDS];
+         }
+      };
+   }
+
+   /**
+    * Generate a string when the object is used is scalar context which holds are relevent information
+    * @return      Returns the formated string of relevant information about the object
+    * @pre         None
+    * @post        None
+    */
+   public String toString() {
+      return ("IdServer" + idCounters);
+   }
+
+   /**
+    * Retrieve a previously stored state for the IdServer
+    * @return      true if the IdServer was read; otherwise, false, which is the case for data saved with the
+    *              separate id server for each kind of id that this replaced
+    * @pre         None
+    * @post        None
+    */
+   public static boolean retrieve(ObjectInputStream input) {
+      try {
+         server = (IdServer) input.readObject();
+         return true;
+      } catch(ClassNotFoundException cnfe) {
+         return false;
+      } catch(IOException ioe) {
+         ioe.printStackTrace();
+         return false;
+      } catch(Exception e) {
+         e.printStackTrace();
+         return false;
+      }
+   }
+
+   /**
+    * Helper function for the retrieve function in Warehouse, which will be used during serialization
+    * @throws      IOException when the serialized input stream fails to read successfully
+    * @throws      ClassNotFoundException when the serialized input stream fails to find the class needed for the next
+    *              serialized block
+    * @pre         This id server needs to be read
+    * @post        This id server will have been read, without any blocks reserved
+    * @see         Warehouse
+    */
+   private void readObject(java.io.ObjectInputStream input) throws IOException, ClassNotFoundException {
+      input.defaultReadObject();
+      threadBlocks = newThreadBlocks();
+   }
+
+   /**
+    * A contiguous block of ids reserved from the IdServer. A block belongs to the thread, or batch, that reserved it
+    * and isn't safe to share
+    */
+   public static class IdBlock {
+
+      /**
+       * The next id in the block
+       */
+      private int next;
+
+      /**
+       * The id just after the last id in the block
+       */
+      private final int end;
+
+      /**
+       * Constructor for the IdBlock
+       * @param       first id in the block
+       * @param       end is the id just after the last id in the block
+       */
+      private IdBlock(int first, int end) {
+         this.next = first;
+         this.end = end;
+      }
+
+      /**
+       * Queries the block to find out if it has ids left
+       * @return      true if there are ids left in the block; otherwise, false
+       */
+      public boolean hasNext() {
+         return next < end;
+      }
+
+      /**
+       * Queries the next id in the block
+       * @return      the next id in the block
+       * @pre         The block has ids left
+       * @post        The id returned will not be handed out again
+       */
+      public int next() {
+         if (next >= end) {
+            throw new NoSuchElementException();
+         }
+         return next++;
+      }
+   }
+}
@@ -1,9 +1,15 @@
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.lang.*;
 import java.io.*;
 
 /**
  * Collection of products
+ * <p>
+ * Products are looked up from several threads at once without taking a lock, by reading the product index, which
+ * is replaced by a larger copy when it grows. Adding a product is synchronized, and getProducts hands out a copy of
+ * the products
+ * <p>
  * @author      Shion Steel Hart <shionhart@gmail.com>
  * @version     1.0
  * @since       1.0
@@ -18,12 +24,29 @@ public class Inventory implements Serializable {
    /**
     * Singleton instance of self
     */
-   private static Inventory inventory;
+   private static volatile Inventory inventory;
    
    /**
     * The data structure used to hold the products, so Inventory can manage
     */
    private List<Product> products = new LinkedList<Product>();
+
+   /**
+    * Index of the products, where the product with id "P" + n is stored at position n. Product ids are handed
+    * out by the IdServer, so the array stays dense. This isn't serialized, it is rebuilt from
+    * the list of products the first time it is needed
+    */
+   private transient volatile AtomicReferenceArray<Product> productIndex;
+
+   /**
+    * Initial size of the product index
+    */
+   private static final int INITIAL_INDEX_SIZE = 64;
+
+   /**
+    * The prefix each product id starts with
+    */
+   private static final char PRODUCT_PREFIX = 'P';
    
    /**
     * Private Inventory constructor
@@ -38,11 +61,26 @@ public class Inventory implements Serializable {
     * @return the Inventory singleton instance 
     */
    public static Inventory instance() {
-      if (inventory == null) {
-         return (inventory = new Inventory());
-      } else {
-         return inventory;
+      Inventory current = inventory;
+      if (current == null) {
+         synchronized (Inventory.class) {
+            if (inventory == null) {
+               inventory = new Inventory();
+            }
+            current = inventory;
+         }
       }
+      return current;
+   }
+
+   /**
+    * Drops the Inventory, so the next call to instance creates an empty one
+    * @pre         None
+    * @post        The Inventory will be empty the next time it is used
+    * @see         Warehouse
+    */
+   static void clear() {
+      inventory = null;
    }
 
    /**
@@ -52,7 +90,7 @@ public class Inventory implements Serializable {
     * @post        None
     * @see         Product
     */
-   public boolean isEmpty() {
+   public synchronized boolean isEmpty() {
       return products.size() == 0;
    }
   
@@ -64,20 +102,32 @@ public class Inventory implements Serializable {
     * @post        The product specified will exist in the system
     * @see         Product
     */
-   public boolean insertProduct(Product product) {
+   public synchronized boolean insertProduct(Product product) {
+      int number = parseId(product.getId());
+      if (number < 0) {
+         return false;
+      }
+
+      AtomicReferenceArray<Product> index = index();
+      if (number < index.length() && index.get(number) != null) {
+         return false;
+      }
+
       products.add(product);
+      indexProduct(number, product);
       return true;
    }
 
    /**
     * Queries the list of products
-    * @return      An iterator to navigate through the list of products
+    * @return      An iterator to navigate through the list of products as it is now, which isn't affected by
+    *              products added while it is used
     * @pre         None
     * @post        None
     * @see         Product
     */
-   public Iterator<Product> getProducts() {
-      return products.iterator();
+   public synchronized Iterator<Product> getProducts() {
+      return new ArrayList<Product>(products).iterator();
    }
 
    /**
@@ -89,13 +139,116 @@ public class Inventory implements Serializable {
     * @see         Product
     */
    public Product find(String productId) {
-      for (Iterator<Product> allProducts = products.iterator(); allProducts.hasNext();) {
-         Product product = allProducts.next();
-         if (product.getId().equals(productId)) {
-            return product;
+      int number = parseId(productId);
+      AtomicReferenceArray<Product> index = index();
+      if (number < 0 || number >= index.length()) {
+         return null;
+      }
+      return index.get(number);
+   }
+
+   /**
+    * Parses the numeric part of a product id, without allocating or hashing the id
+    * @param       productId of the product, which is "P" followed by the number given by the IdServer
+    * @return      The number within the product id if the product id is well formed; otherwise, -1
+    * @pre         None
+    * @post        None
+    * @see         IdServer
+    */
+   public static int parseId(String productId) {
+      if (productId == null) {
+         return -1;
+      }
+
+      int length = productId.length();
+      if (length < 2 || length > 10 || productId.charAt(0) != PRODUCT_PREFIX) {
+         return -1;
+      }
+
+      // ids are never zero padded, so "P01" is not the same product as "P1"
+      if (length > 2 && productId.charAt(1) == '0') {
+         return -1;
+      }
+
+      int number = 0;
+      for (int i = 1; i < length; i++) {
+         char digit = productId.charAt(i);
+         if (digit < '0' || digit > '9') {
+            return -1;
+         }
+         number = (number * 10) + (digit - '0');
+      }
+      return number;
+   }
+
+   /**
+    * Stores the given product in the product index at the position given, growing the index if needed
+    * @param       number of the product, taken from its product id
+    * @param       product to be stored in the product index
+    * @pre         The number given is not negative, and the caller holds the lock on this Inventory
+    * @post        The product will be found at the position given in the product index
+    * @see         Product
+    */
+   private void indexProduct(int number, Product product) {
+      productIndex = indexProduct(productIndex, number, product);
+   }
+
+   /**
+    * Stores the given product in the given product index at the position given, copying the index into a larger
+    * one if needed, so a product index that has been handed out is only ever added to
+    * @param       index the product is stored in
+    * @param       number of the product, taken from its product id
+    * @param       product to be stored in the product index
+    * @return      the product index holding the product, which is a new one when the index given was too small
+    * @pre         The number given is not negative
+    * @post        The product will be found at the position given in the product index returned
+    * @see         Product
+    */
+   private static AtomicReferenceArray<Product> indexProduct(AtomicReferenceArray<Product> index, int number,
+      Product product) {
+      if (number >= index.length()) {
+         int size = index.length();
+         while (size <= number) {
+            size *= 2;
+         }
+         AtomicReferenceArray<Product> grown = new AtomicReferenceArray<Product>(size);
+         for (int i = 0; i < index.length(); i++) {
+            grown.lazySet(i, index.get(i));
+         }
+         grown.set(number, product);
+         return grown;
+      }
+      index.set(number, product);
+      return index;
+   }
+
+   /**
+    * Queries the product index, building it from the list of products if it doesn't exist yet
+    * (which is the case after the Inventory has been retrieved)
+    * @return      The product index, where the product with id "P" + n is stored at position n
+    * @pre         None
+    * @post        The index will hold every product in the list of products
+    * @see         Product
+    */
+   private AtomicReferenceArray<Product> index() {
+      AtomicReferenceArray<Product> index = productIndex;
+      if (index == null) {
+         synchronized (this) {
+            if (productIndex == null) {
+               index = new AtomicReferenceArray<Product>(INITIAL_INDEX_SIZE);
+               for (Iterator<Product> allProducts = products.iterator(); allProducts.hasNext();) {
+                  Product product = allProducts.next();
+                  int number = parseId(product.getId());
+                  if (number >= 0) {
+                     index = indexProduct(index, number, product);
+                  }
+               }
+               productIndex = index;
+            }
+            index = productIndex;
          }
       }
-      return null;
+      return index;
    }
   
    /**
@@ -104,7 +257,7 @@ public class Inventory implements Serializable {
     * @pre         None
     * @post        None
     */
-   public String toString() {
+   public synchronized String toString() {
       return products.toString();
    }
 
@@ -17,7 +17,17 @@ public class Invoice implements Serializable {
    /**
     * Used for serialization also
     */
-   private static final String INVOICE_STRING = "I";
+   static final String INVOICE_STRING = "I";
+
+   /**
+    * The fields that are serialized, which keep the records as a list so the data saved before the records were
+    * held as line items can still be read
+    */
+   private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("id", String.class),
+      new ObjectStreamField("items", List.class),
+      new ObjectStreamField("client", Client.class)
+   };
    
    /**
     * Store the id that was given from the id server
@@ -25,9 +35,15 @@ public class Invoice implements Serializable {
    private String id;
 
    /**
-    * Data structure to hold the records of the invoice
+    * Data structure to hold the records of the invoice, as line items
+    */
+   private LineItems items; 
+
+   /**
+    * The total cost of the records, in cents, kept as records are added so it isn't summed up each time it is
+    * needed. This isn't serialized, it is summed up from the records when the invoice is read
     */
-   private List<Record> items; 
+   private transient long total;
 
    /**
     * The client for this invoice
@@ -39,8 +55,20 @@ public class Invoice implements Serializable {
     * @param       client with which the invoice is associated with
     */
    public Invoice(Client client) {
-      this.id = INVOICE_STRING + (InvoiceIdServer.instance()).getId();
-      this.items = new LinkedList<Record>();
+      this.id = INVOICE_STRING + (IdServer.instance()).getId(IdServer.INVOICE);
+      this.items = new LineItems();
+      this.client = client;
+   }
+
+   /**
+    * Constructor for an Invoice read from a snapshot, which keeps the id it was given
+    * @param       id of the invoice
+    * @param       client with which the invoice is associated with
+    * @see         Snapshot
+    */
+   private Invoice(String id, Client client) {
+      this.id = id;
+      this.items = new LineItems();
       this.client = client;
    }
 
@@ -49,7 +77,7 @@ public class Invoice implements Serializable {
     * @return      Returns the invoice's id
     * @pre         None
     * @post        None
-    * @see         InvoiceIdServer
+    * @see         IdServer
     */
    public String getId() {
       return id;
@@ -74,7 +102,21 @@ public class Invoice implements Serializable {
     * @see         Record
     */
    public void addRecord(Record record) {
-      items.add(record);
+      addLine(record.getProduct(), record.getQuantity(), record.getPrice());
+   }
+
+   /**
+    * Adds a line to the invoice's records, without making a record for it
+    * @param       product of the line
+    * @param       quantity of the product
+    * @param       price per item of the product, in cents
+    * @pre         None
+    * @post        The line will be added to the invoice
+    * @see         LineItems
+    */
+   void addLine(Product product, int quantity, long price) {
+      items.add(product, quantity, price);
+      total += price * quantity;
    }
 
    /**
@@ -88,6 +130,17 @@ public class Invoice implements Serializable {
       return items.iterator();
    }
 
+   /**
+    * Query the number of records in the invoice
+    * @return      Returns the number of the invoice's records
+    * @pre         None
+    * @post        None
+    * @see         Record
+    */
+   public int getRecordCount() {
+      return items.size();
+   }
+
    /**
     * Queries this invoice's records to find out if there are any records
     * @return      true if there are records; otherwise, false
@@ -100,21 +153,76 @@ public class Invoice implements Serializable {
    }
 
    /**
-    * Calculate the total cost of all the records within the invoice
-    * @return      The total cost of all records summed up in the invoice
+    * Query the total cost of all the records within the invoice
+    * @return      The total cost of all records summed up in the invoice, in cents
     * @pre         None
     * @post        None
     * @see         Record
     */
-   public float calculateCost() {
-      float total = 0;
-      for (Iterator<Record> records = items.iterator(); records.hasNext();) {
-         Record record = records.next();
-         total += (record.getPrice() * record.getQuantity());
-      }
+   public long calculateCost() {
       return total;
    }
 
+   /**
+    * Writes this invoice to a snapshot, with its records
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeSnapshot(Snapshot.Output output) throws IOException {
+      output.writeId(id);
+      items.writeSnapshot(output);
+   }
+
+   /**
+    * Reads an invoice written by writeSnapshot
+    * @param       input is the snapshot being read
+    * @param       client with which the invoice is associated with
+    * @return      the invoice read
+    * @throws      IOException when the snapshot can't be read
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   static Invoice readSnapshot(Snapshot.Input input, Client client) throws IOException {
+      Invoice invoice = new Invoice(input.readId(INVOICE_STRING), client);
+      invoice.items.readSnapshot(input);
+      invoice.total = invoice.items.total();
+      return invoice;
+   }
+
+   /**
+    * Helper function for the save function in Warehouse, which will be used during serialization
+    * @throws      IOException when the serialized output stream fails to write successfully
+    * @pre         None
+    * @post        This invoice will have been written, with its line items as a list of records
+    */
+   private void writeObject(ObjectOutputStream output) throws IOException {
+      ObjectOutputStream.PutField fields = output.putFields();
+      fields.put("id", id);
+      fields.put("items", items.toList());
+      fields.put("client", client);
+      output.writeFields();
+   }
+
+   /**
+    * Helper function for the retrieve function in Warehouse, which will be used during deserialization
+    * @throws      IOException when the serialized input stream fails to read successfully
+    * @throws      ClassNotFoundException when a serialized class can't be found
+    * @pre         None
+    * @post        This invoice will have been read, with its total summed up from its records
+    */
+   @SuppressWarnings("unchecked")
+   private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = input.readFields();
+      id = (String) fields.get("id", null);
+      items = new LineItems((List<Record>) fields.get("items", null));
+      client = (Client) fields.get("client", null);
+      total = items.total();
+   }
+
    /**
     * Generate a string when the object is used is scalar context which holds are relevent information
     * @return      Returns the formated string of relevant information about the object
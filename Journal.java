@@ -0,0 +1,985 @@
+import java.util.*;
+import java.util.zip.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.io.*;
+
+/**
+ * Append-only journal of the changes made through the Warehouse, so every change is durable without saving the
+ * whole warehouse. Warehouse.save() records how far into the journal the saved data goes, and Warehouse.retrieve()
+ * replays the changes made after that on top of the saved data
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+public class Journal {
+
+   public static final byte ADD_CLIENT                        = 1;  // Used to journal Warehouse.addClient
+   public static final byte ADD_SUPPLIER                      = 2;  // Used to journal Warehouse.addSupplier
+   public static final byte ADD_PRODUCT                       = 3;  // Used to journal Warehouse.addProduct
+   public static final byte ASSOCIATE_PRODUCT_AND_SUPPLIER    = 4;  // Used to journal Warehouse.associateProductAndSupplier
+   public static final byte DISASSOCIATE_PRODUCT_AND_SUPPLIER = 5;  // Used to journal Warehouse.disassociateProductAndSupplier
+   public static final byte CREATE_ORDER                      = 6;  // Used to journal Warehouse.createOrder
+   public static final byte ADD_TO_ORDER                      = 7;  // Used to journal Warehouse.addToOrder
+   public static final byte PROCESS_CLIENT_ORDER              = 8;  // Used to journal Warehouse.processClientOrder(s)
+   public static final byte PROCESS_SHIPMENT                  = 9;  // Used to journal Warehouse.processShipment
+   public static final byte ACCEPT_CLIENT_PAYMENT             = 10; // Used to journal Warehouse.acceptClientPayment
+   public static final byte RECEIVE_SHIPMENT                  = 11; // Used to journal Warehouse.receiveShipment
+   public static final byte NEW_WAREHOUSE                     = 12; // Used to journal the start of an empty warehouse
+
+   /**
+    * The file the journal is kept in
+    */
+   public static final String JOURNAL_FILE = "WarehouseJournal";
+
+   /**
+    * The end of the name of a journal set aside, which follows the name of the journal and a number
+    */
+   private static final String SET_ASIDE_SUFFIX = ".unreplayed";
+
+   /**
+    * The largest entry the journal will read back, so a damaged length can't exhaust the heap
+    */
+   private static final int MAX_ENTRY_LENGTH = 1 << 20;
+
+   /**
+    * Singleton instance of self
+    */
+   private static volatile Journal journal;
+
+   /**
+    * The channel the journal is written through, which is null until the journal is opened
+    */
+   private FileChannel channel;
+
+   /**
+    * Entries that have been appended, but not yet written to the journal file
+    */
+   private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+   /**
+    * Entries taken from the pending entries whose write, or force, failed, which are written again ahead of the
+    * pending entries by the next sync. This is null when every entry taken has been forced to disk
+    */
+   private byte[] unwritten;
+
+   /**
+    * The sequence number of the last entry appended
+    */
+   private long appendedSequence;
+
+   /**
+    * The sequence number of the last entry forced to disk
+    */
+   private long durableSequence;
+
+   /**
+    * The number of entries appended since the journal was last forced to disk
+    */
+   private int unsyncedEntries;
+
+   /**
+    * The number of entries that may be appended before the journal is forced to disk, where 1 means every entry
+    * is durable before append returns
+    */
+   private int syncBatchSize = 1;
+
+   /**
+    * The longest time, in milliseconds, an appended entry waits to be forced to disk when entries are batched
+    */
+   private long syncIntervalMillis = 50;
+
+   /**
+    * Thread that forces batched entries to disk when nobody else does
+    */
+   private Thread syncThread;
+
+   /**
+    * Whether the journal is being replayed, during which nothing is appended
+    */
+   private boolean replaying;
+
+   /**
+    * Whether changes are journaled at all, which bulk loads and benchmarks may turn off
+    */
+   private volatile boolean enabled = true;
+
+   /**
+    * Guards the pending entries and the sequence numbers
+    */
+   private final Object appendLock = new Object();
+
+   /**
+    * Held by the thread writing and forcing the pending entries, so concurrent appenders share one force
+    */
+   private final Object syncLock = new Object();
+
+   /**
+    * Private Journal constructor
+    */
+   private Journal() {}
+
+   /**
+    * Singleton Journal Constructor
+    * <p>
+    * This grabs, or creates, the Journal
+    * <p>
+    * @return the Journal singleton instance
+    */
+   public static Journal instance() {
+      Journal current = journal;
+      if (current == null) {
+         synchronized (Journal.class) {
+            if (journal == null) {
+               journal = new Journal();
+            }
+            current = journal;
+         }
+      }
+      return current;
+   }
+
+   /**
+    * Set how often the journal is forced to disk. Forcing after every entry makes every change durable before the
+    * Warehouse returns; batching trades the last few changes on a crash for throughput
+    * @param       batchSize is the number of entries that may be appended before the journal is forced to disk
+    * @param       intervalMillis is the longest time a batched entry waits before it is forced to disk
+    * @pre         batchSize and intervalMillis are positive
+    * @post        The journal will be forced to disk as specified
+    */
+   public void setSyncPolicy(int batchSize, long intervalMillis) {
+      synchronized (appendLock) {
+         syncBatchSize = Math.max(1, batchSize);
+         syncIntervalMillis = Math.max(1, intervalMillis);
+      }
+   }
+
+   /**
+    * Turns journaling on or off. While journaling is off, changes are only kept by saving the warehouse
+    * @param       enabled is true if changes are to be journaled; otherwise, false
+    * @pre         None
+    * @post        Entries will only be appended while journaling is on
+    */
+   public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+   }
+
+   /**
+    * Queries the sequence number of the last entry appended to the journal
+    * @return      the sequence number of the last entry appended
+    * @pre         None
+    * @post        None
+    */
+   public long getSequence() {
+      synchronized (appendLock) {
+         return appendedSequence;
+      }
+   }
+
+   /**
+    * Queries whether the journal is being replayed
+    * @return      true if the journal is being replayed; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   public boolean isReplaying() {
+      return replaying;
+   }
+
+   /**
+    * Queries whether the journal has been opened for appending
+    * @return      true if the journal has been opened; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   public synchronized boolean isOpen() {
+      return channel != null;
+   }
+
+   /**
+    * Appends the given entry to the journal. Depending on the sync policy, this waits until the entry, and any
+    * other entries appended with it, have been forced to disk
+    * @param       entry to be appended
+    * @pre         None
+    * @post        The entry will be in the journal
+    * @see         Entry
+    */
+   public void append(Entry entry) {
+      commit(enqueue(entry));
+   }
+
+   /**
+    * Gives the given entry its place in the journal, without waiting for it to be forced to disk, so a caller
+    * holding locks can take its place in the journal while it holds them, and wait for the entry once it has
+    * released them
+    * @param       entry to be appended
+    * @return      the sequence number of the entry, to be given to commit, or 0 when nothing is being journaled
+    * @pre         None
+    * @post        The entry will follow every entry enqueued before it in the journal
+    * @see         Entry
+    */
+   public long enqueue(Entry entry) {
+      if (replaying || !enabled) {
+         return 0;
+      }
+      open();
+
+      synchronized (appendLock) {
+         long sequence = ++appendedSequence;
+         entry.writeTo(pending, sequence);
+         unsyncedEntries++;
+         return sequence;
+      }
+   }
+
+   /**
+    * Waits for an enqueued entry to be forced to disk, when the sync policy asks for it. When every entry is to be
+    * durable, this waits for the entry itself, even when another thread has already taken it to be written
+    * @param       sequence of the entry, as returned by enqueue
+    * @throws      UncheckedIOException when the entry could not be forced to disk
+    * @pre         None
+    * @post        The entry will be on disk if the sync policy asks for every entry to be durable
+    */
+   public void commit(long sequence) {
+      if (sequence == 0) {
+         return;
+      }
+      boolean syncNow;
+      synchronized (appendLock) {
+         syncNow = (syncBatchSize == 1 || unsyncedEntries >= syncBatchSize);
+      }
+      if (syncNow) {
+         sync(sequence);
+      }
+   }
+
+   /**
+    * Writes the pending entries to the journal file and forces them to disk, unless another thread already did.
+    * Entries that fail to be written, or forced, are kept, and written again by the next sync
+    * @param       sequence of the entry that needs to be durable
+    * @throws      UncheckedIOException when the entries could not be written, or forced to disk
+    * @pre         None
+    * @post        The entry with the given sequence number, and every entry before it, will be on disk
+    */
+   public void sync(long sequence) {
+      synchronized (syncLock) {
+         if (durableSequence >= sequence) {
+            return;
+         }
+
+         byte[] batch;
+         long batchSequence;
+         synchronized (appendLock) {
+            batch = pending.toByteArray();
+            batchSequence = appendedSequence;
+            pending.reset();
+            unsyncedEntries = 0;
+         }
+         if (unwritten != null) {
+            byte[] retried = Arrays.copyOf(unwritten, unwritten.length + batch.length);
+            System.arraycopy(batch, 0, retried, unwritten.length, batch.length);
+            batch = retried;
+         }
+         unwritten = batch;
+
+         long position = -1;
+         try {
+            position = channel.position();
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+               channel.write(buffer);
+            }
+            channel.force(false);
+         } catch(IOException ioe) {
+            rewind(position, ioe);
+            throw new UncheckedIOException("The journal could not be forced to disk", ioe);
+         }
+         unwritten = null;
+         durableSequence = batchSequence;
+      }
+   }
+
+   /**
+    * Cuts off what a failed write left in the journal file, so the entries written again follow the last entry
+    * forced to disk
+    * @param       position the failed write started at, or -1 when it isn't known
+    * @param       failure of the write, which any failure to cut the file is added to
+    * @pre         The caller holds the sync lock
+    * @post        The journal file will end where the failed write started, if it could be cut
+    */
+   private void rewind(long position, IOException failure) {
+      if (position < 0) {
+         return;
+      }
+      try {
+         channel.truncate(position);
+         channel.position(position);
+      } catch(IOException ioe) {
+         failure.addSuppressed(ioe);
+      }
+   }
+
+   /**
+    * Forces every entry appended so far to disk
+    * @throws      UncheckedIOException when the entries could not be forced to disk
+    * @pre         None
+    * @post        Every entry appended will be on disk
+    */
+   public void sync() {
+      if (isOpen()) {
+         sync(getSequence());
+      }
+   }
+
+   /**
+    * Opens the journal for a warehouse that wasn't retrieved, if it hasn't been opened. The journal left by an
+    * earlier run, which was never replayed, is set aside rather than appended to, and the journal starts with an
+    * entry marking the start of the new warehouse, numbered after every entry of the stored data and of the
+    * journal set aside, so retrieving replays the new warehouse rather than the stored data
+    * @throws      UncheckedIOException when the journal could not be opened
+    * @pre         None
+    * @post        The journal will be open, and its sequence numbers will follow every sequence number used before
+    */
+   public void open() {
+      if (replaying || isOpen()) {
+         return;
+      }
+      try {
+         open(0, true);
+      } catch(IOException ioe) {
+         throw new UncheckedIOException("The journal could not be opened", ioe);
+      }
+   }
+
+   /**
+    * Opens the journal file for appending
+    * @param       sequence of the last entry already applied to the warehouse
+    * @param       fresh is true if the journal belongs to a new warehouse, whose sequence numbers follow the ones
+    *              used before, rather than the sequence given
+    * @throws      IOException when the journal file can't be opened, or the journal of an earlier run set aside
+    * @pre         None
+    * @post        Entries appended will be written after the existing entries in the journal file
+    */
+   private synchronized void open(long sequence, boolean fresh) throws IOException {
+      if (channel != null) {
+         return;
+      }
+      if (fresh) {
+         sequence = Math.max(Snapshot.readSequence(new File(Warehouse.DATA_FILE)), setAside(new File(JOURNAL_FILE)));
+      }
+      channel = FileChannel.open(Paths.get(JOURNAL_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      channel.position(channel.size());
+
+      synchronized (appendLock) {
+         appendedSequence = sequence;
+         durableSequence = sequence;
+         if (fresh) {
+            new Entry(NEW_WAREHOUSE).writeTo(pending, ++appendedSequence);
+            unsyncedEntries++;
+         }
+      }
+
+      syncThread = new Thread("journal-sync") {
+         public void run() {
+            syncPeriodically();
+         }
+      };
+      syncThread.setDaemon(true);
+      syncThread.start();
+
+      Runtime.getRuntime().addShutdownHook(new Thread("journal-close") {
+         public void run() {
+            try {
+               sync();
+            } catch(UncheckedIOException uioe) {
+               uioe.printStackTrace();
+            }
+         }
+      });
+   }
+
+   /**
+    * Renames the journal left by an earlier run out of the way, when it holds anything, since the changes in it
+    * were never replayed and nothing else holds them
+    * @param       file holding the journal
+    * @return      the sequence number of the last entry in the journal, or 0 when it has none
+    * @throws      IOException when the journal can't be read, or renamed
+    * @pre         The journal hasn't been opened
+    * @post        No journal will be left in the file given
+    */
+   private static long setAside(File file) throws IOException {
+      if (file.length() == 0) {
+         return 0;
+      }
+      long last = 0;
+      try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+         Entry entry;
+         while ((entry = Entry.readFrom(input)) != null) {
+            last = Math.max(last, entry.sequence);
+         }
+      }
+      int number = 0;
+      while (new File(file.getPath() + "." + number + SET_ASIDE_SUFFIX).exists()) {
+         number++;
+      }
+      Files.move(file.toPath(), Paths.get(file.getPath() + "." + number + SET_ASIDE_SUFFIX));
+      return last;
+   }
+
+   /**
+    * Drops the journal without forcing the entries that haven't been forced to disk, as a crash would, so the
+    * warehouse can be retrieved again by the same program
+    * @pre         Nothing is being journaled
+    * @post        The journal will be unopened the next time it is used
+    */
+   static void clear() {
+      Journal current;
+      synchronized (Journal.class) {
+         current = journal;
+         journal = null;
+      }
+      if (current != null) {
+         current.close();
+      }
+   }
+
+   /**
+    * Stops the thread forcing batched entries to disk, and closes the journal file
+    */
+   private synchronized void close() {
+      if (syncThread != null) {
+         syncThread.interrupt();
+      }
+      if (channel != null) {
+         try {
+            channel.close();
+         } catch(IOException ioe) {
+            ioe.printStackTrace();
+         }
+         channel = null;
+      }
+   }
+
+   /**
+    * Forces batched entries to disk at least as often as the sync policy asks for
+    */
+   private void syncPeriodically() {
+      while (true) {
+         long interval;
+         synchronized (appendLock) {
+            interval = syncIntervalMillis;
+         }
+         try {
+            Thread.sleep(interval);
+         } catch(InterruptedException ie) {
+            return;
+         }
+
+         // the entries that failed are kept, so the next round tries them again
+         try {
+            sync();
+         } catch(UncheckedIOException uioe) {
+            uioe.printStackTrace();
+         }
+      }
+   }
+
+   /**
+    * Discards the entries up to, and including, the given sequence number, because they are part of saved data.
+    * Entries appended since the data was saved stay in the journal
+    * @param       sequence of the last entry that is part of the saved data
+    * @pre         The saved data holds every change up to the sequence number given
+    * @post        The journal file will only hold entries after the sequence number given
+    */
+   public void checkpoint(long sequence) {
+      synchronized (syncLock) {
+         if (channel == null) {
+            return;
+         }
+         boolean saved;
+         synchronized (appendLock) {
+            saved = (appendedSequence == sequence);
+            if (saved) {
+               pending.reset();
+               unsyncedEntries = 0;
+            }
+         }
+         if (saved) {
+            unwritten = null;
+         }
+         try {
+            if (saved) {
+               channel.truncate(0);
+               channel.position(0);
+               channel.force(false);
+               durableSequence = sequence;
+            } else {
+               compact(sequence);
+            }
+         } catch(IOException ioe) {
+            ioe.printStackTrace();
+         }
+      }
+   }
+
+   /**
+    * Rewrites the journal file without the entries up to, and including, the given sequence number. The entries
+    * are in sequence order, so the entries kept are the end of the file, which is copied to a new file that then
+    * replaces the journal file
+    * @param       sequence of the last entry that is part of the saved data
+    * @throws      IOException when the journal file can't be rewritten
+    * @pre         The caller holds the sync lock, so nothing is written to the journal file meanwhile
+    * @post        The journal file will only hold entries after the sequence number given
+    */
+   private void compact(long sequence) throws IOException {
+      File file = new File(JOURNAL_FILE);
+      long keepFrom = 0;
+      long end = 0;
+      try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+         Entry entry;
+         while ((entry = Entry.readFrom(input)) != null) {
+            end += entry.length();
+            if (entry.sequence <= sequence) {
+               keepFrom = end;
+            }
+         }
+      }
+      if (keepFrom == 0) {
+         return;
+      }
+
+      Path temporary = Paths.get(JOURNAL_FILE + ".tmp");
+      try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+           FileChannel target = FileChannel.open(temporary,
+              StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+         for (long position = keepFrom; position < end;) {
+            position += source.transferTo(position, end - position, target);
+         }
+         target.force(false);
+      }
+      Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      synchronized (this) {
+         channel.close();
+         channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+         channel.position(channel.size());
+      }
+   }
+
+   /**
+    * Replays the journal on top of the warehouse, applying every entry after the given sequence number, and then
+    * opens the journal so later changes are appended after them. An entry marking the start of a new warehouse
+    * drops what the warehouse held before it. Only a partly written, or damaged, entry at the end of the journal
+    * is cut off; an entry that can't be applied leaves the journal as it is, and unopened
+    * @param       warehouse that the entries are applied to
+    * @param       sequence of the last entry already applied to the warehouse by the saved data
+    * @return      the number of entries replayed
+    * @throws      IOException when the journal can't be read or opened, or an entry in it can't be applied the way
+    *              it was journaled
+    * @throws      IllegalStateException when the journal has already been opened, so the entries in it are already
+    *              part of the warehouse
+    * @pre         The journal hasn't been opened yet
+    * @post        The warehouse will hold every change in the journal
+    * @see         Warehouse
+    */
+   public int replay(Warehouse warehouse, long sequence) throws IOException {
+      if (isOpen()) {
+         throw new IllegalStateException("The journal has already been opened");
+      }
+
+      int replayed = 0;
+      long lastSequence = sequence;
+      long validLength = 0;
+      File file = new File(JOURNAL_FILE);
+      if (file.exists()) {
+         replaying = true;
+         WarehouseMetrics.instance().startReplay();
+         try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Entry entry;
+            while ((entry = Entry.readFrom(input)) != null) {
+               if (entry.sequence > lastSequence && entry.operation == NEW_WAREHOUSE) {
+
+                  // the warehouse was started afresh after the stored data was stored
+                  Warehouse.clear();
+                  warehouse = Warehouse.instance();
+                  lastSequence = entry.sequence;
+               } else if (entry.sequence > lastSequence) {
+                  applyReplayed(warehouse, entry);
+                  lastSequence = entry.sequence;
+                  replayed++;
+               }
+               validLength += entry.length();
+            }
+         } finally {
+            replaying = false;
+            WarehouseMetrics.instance().endReplay();
+         }
+
+         // drop a partly written entry left behind by a crash, so new entries follow the last good one
+         try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(validLength);
+         } catch(IOException ioe) {
+            ioe.printStackTrace();
+         }
+      }
+
+      open(lastSequence, false);
+      return replayed;
+   }
+
+   /**
+    * Applies the given entry to the warehouse while the journal is replayed, turning any failure to apply it into
+    * an IOException that names the entry
+    * @param       warehouse that the entry is applied to
+    * @param       entry to be applied
+    * @throws      IOException when the entry can't be applied the way it was journaled
+    * @pre         The journal is being replayed
+    * @post        The change in the entry will have been made to the warehouse
+    */
+   private void applyReplayed(Warehouse warehouse, Entry entry) throws IOException {
+      try {
+         apply(warehouse, entry);
+      } catch(IOException ioe) {
+         throw new IOException("Journal entry " + entry.sequence + " could not be replayed", ioe);
+      } catch(RuntimeException re) {
+         throw new IOException("Journal entry " + entry.sequence + " could not be replayed", re);
+      }
+   }
+
+   /**
+    * Applies the given entry to the warehouse, by calling the Warehouse method it was journaled by
+    * @param       warehouse that the entry is applied to
+    * @param       entry to be applied
+    * @throws      IOException when the entry is malformed
+    * @pre         The journal is being replayed
+    * @post        The change in the entry will have been made to the warehouse
+    */
+   private void apply(Warehouse warehouse, Entry entry) throws IOException {
+      IdServer ids = IdServer.instance();
+      Long unpinnedTime = Transaction.pinTime(entry.millis);
+      try {
+         applyPinned(warehouse, entry, ids);
+      } finally {
+         ids.unpin();
+         Transaction.restoreTime(unpinnedTime);
+      }
+   }
+
+   /**
+    * Applies the given entry to the warehouse, with the ids it was journaled with pinned in the IdServer, and its
+    * time pinned for the transactions it makes, so the objects it creates get the ids, and the transactions the
+    * times, they had when it was journaled
+    * @param       warehouse that the entry is applied to
+    * @param       entry to be applied
+    * @param       ids is the IdServer the ids are pinned in
+    * @throws      IOException when the entry is malformed
+    * @pre         The journal is being replayed
+    * @post        The change in the entry will have been made to the warehouse
+    */
+   private void applyPinned(Warehouse warehouse, Entry entry, IdServer ids) throws IOException {
+      String id;
+      switch (entry.operation) {
+         case ADD_CLIENT:
+            String clientName = entry.readString();
+            id = entry.readString();
+            ids.pin(IdServer.CLIENT, id);
+            checkId(id, warehouse.addClient(clientName).getId());
+            break;
+         case ADD_SUPPLIER:
+            String supplierName = entry.readString();
+            id = entry.readString();
+            ids.pin(IdServer.SUPPLIER, id);
+            checkId(id, warehouse.addSupplier(supplierName).getId());
+            break;
+         case ADD_PRODUCT:
+            String productName = entry.readString();
+            long price = entry.readLong();
+            id = entry.readString();
+            ids.pin(IdServer.PRODUCT, id);
+            checkId(id, warehouse.addProduct(productName, price).getId());
+            break;
+         case ASSOCIATE_PRODUCT_AND_SUPPLIER:
+            warehouse.associateProductAndSupplier(entry.readString(), entry.readString());
+            break;
+         case DISASSOCIATE_PRODUCT_AND_SUPPLIER:
+            warehouse.disassociateProductAndSupplier(entry.readString(), entry.readString());
+            break;
+         case CREATE_ORDER:
+            String clientId = entry.readString();
+            id = entry.readString();
+            ids.pin(IdServer.ORDER, id);
+            checkId(id, warehouse.createOrder(clientId));
+            break;
+         case ADD_TO_ORDER:
+            warehouse.addToOrder(entry.readString(), entry.readString(), entry.readString(), entry.readInt());
+            break;
+         case PROCESS_CLIENT_ORDER:
+            clientId = entry.readString();
+            String processedId = entry.readString();
+            pinInvoice(entry, ids);
+            warehouse.processClientOrder(clientId, processedId);
+            break;
+         case PROCESS_SHIPMENT:
+            String productId = entry.readString();
+            int quantity = entry.readInt();
+            String orderId = entry.readString();
+            pinInvoice(entry, ids);
+
+            // only an item still waitlisted is found, so an item filled since it was looked up is passed over for
+            // the next item in line, as it was when this was journaled
+            WaitlistItem item = orderId.length() == 0 ? null : warehouse.findWaitlistItem(productId, orderId);
+            warehouse.processShipment(productId, quantity, item);
+            break;
+         case ACCEPT_CLIENT_PAYMENT:
+            warehouse.acceptClientPayment(entry.readString(), entry.readLong());
+            break;
+         case RECEIVE_SHIPMENT:
+            Shipment shipment = new Shipment();
+            for (int lines = entry.readInt(); lines > 0; lines--) {
+               shipment.add(entry.readString(), entry.readInt());
+            }
+
+            // the invoices were given in the order their clients were first filled, which replaying repeats
+            for (int invoices = entry.readInt(); invoices > 0; invoices--) {
+               ids.pin(IdServer.INVOICE, entry.readString());
+            }
+            warehouse.receiveShipment(shipment);
+            break;
+         default:
+            throw new IOException("Unknown journal operation " + entry.operation);
+      }
+   }
+
+   /**
+    * Pins the id of the invoice the given entry created. Entries that didn't create an invoice were journaled with
+    * an empty id, and leave the invoice id to the counter
+    * @param       entry being replayed, whose other fields have been read
+    * @param       ids is the IdServer the invoice id is pinned in
+    * @throws      IOException when the entry is malformed
+    */
+   private static void pinInvoice(Entry entry, IdServer ids) throws IOException {
+      String invoiceId = entry.readString();
+      if (invoiceId.length() > 0) {
+         ids.pin(IdServer.INVOICE, invoiceId);
+      }
+   }
+
+   /**
+    * Checks that replaying an entry created an object with the same id it had when it was journaled, since every
+    * later entry refers to the object by that id
+    * @param       journaled id of the object
+    * @param       replayed id of the object
+    * @throws      IOException when the ids differ, so the replay has diverged from what was journaled
+    */
+   private static void checkId(String journaled, String replayed) throws IOException {
+      if (!journaled.equals(replayed)) {
+         throw new IOException("Journal replay created " + replayed + " in place of " + journaled);
+      }
+   }
+
+   /**
+    * A single change to the warehouse, as it is stored in the journal
+    * <p>
+    * Each entry is stored as its length, its sequence number, its operation, the time of its change, its fields,
+    * and a CRC32 checksum of everything after the length, so a partly written entry is detected when the journal is
+    * replayed
+    * <p>
+    */
+   public static class Entry {
+
+      /**
+       * The operation that made the change
+       */
+      private final byte operation;
+
+      /**
+       * The time the change was made, in milliseconds since the epoch, which is the time pinned for the transactions
+       * of the change when the entry is made
+       */
+      private final long millis;
+
+      /**
+       * The fields of the entry, while it is being built
+       */
+      private ByteArrayOutputStream bytes;
+
+      /**
+       * Used to write the fields of the entry, while it is being built
+       */
+      private DataOutputStream output;
+
+      /**
+       * Used to read the fields of the entry, when it is being replayed
+       */
+      private DataInputStream input;
+
+      /**
+       * The sequence number of the entry, when it is being replayed
+       */
+      private long sequence;
+
+      /**
+       * The number of bytes the entry takes up in the journal, when it is being replayed
+       */
+      private int storedLength;
+
+      /**
+       * Constructor for the Entry
+       * @param       operation that made the change
+       */
+      public Entry(byte operation) {
+         this.operation = operation;
+         this.millis = Transaction.now();
+         this.bytes = new ByteArrayOutputStream(64);
+         this.output = new DataOutputStream(bytes);
+      }
+
+      /**
+       * Constructor for an Entry read from the journal
+       * @param       sequence of the entry
+       * @param       operation that made the change
+       * @param       millis is the time the change was made
+       * @param       fields of the entry
+       * @param       storedLength is the number of bytes the entry takes up in the journal
+       */
+      private Entry(long sequence, byte operation, long millis, byte[] fields, int storedLength) {
+         this.sequence = sequence;
+         this.operation = operation;
+         this.millis = millis;
+         this.input = new DataInputStream(new ByteArrayInputStream(fields));
+         this.storedLength = storedLength;
+      }
+
+      /**
+       * Adds a string field to the entry
+       * @param       value of the field
+       * @return      this entry
+       */
+      public Entry putString(String value) {
+         try {
+            output.writeUTF(value == null ? "" : value);
+         } catch(IOException ioe) {
+            throw new UncheckedIOException(ioe);
+         }
+         return this;
+      }
+
+      /**
+       * Adds an integer field to the entry
+       * @param       value of the field
+       * @return      this entry
+       */
+      public Entry putInt(int value) {
+         try {
+            output.writeInt(value);
+         } catch(IOException ioe) {
+            throw new UncheckedIOException(ioe);
+         }
+         return this;
+      }
+
+      /**
+       * Adds a long field to the entry
+       * @param       value of the field
+       * @return      this entry
+       */
+      public Entry putLong(long value) {
+         try {
+            output.writeLong(value);
+         } catch(IOException ioe) {
+            throw new UncheckedIOException(ioe);
+         }
+         return this;
+      }
+
+      /**
+       * Reads the next string field of the entry
+       * @return      the value of the field
+       * @throws      IOException when the entry has no more fields
+       */
+      public String readString() throws IOException {
+         return input.readUTF();
+      }
+
+      /**
+       * Reads the next integer field of the entry
+       * @return      the value of the field
+       * @throws      IOException when the entry has no more fields
+       */
+      public int readInt() throws IOException {
+         return input.readInt();
+      }
+
+      /**
+       * Reads the next long field of the entry
+       * @return      the value of the field
+       * @throws      IOException when the entry has no more fields
+       */
+      public long readLong() throws IOException {
+         return input.readLong();
+      }
+
+      /**
+       * Queries the number of bytes the entry takes up in the journal
+       * @return      the number of bytes the entry takes up in the journal
+       */
+      private int length() {
+         return storedLength;
+      }
+
+      /**
+       * Writes the entry, with the given sequence number, to the given stream in the journal format
+       * @param       stream to write the entry to
+       * @param       sequence number of the entry
+       */
+      private void writeTo(ByteArrayOutputStream stream, long sequence) {
+         byte[] fields = bytes.toByteArray();
+         ByteBuffer body = ByteBuffer.allocate(8 + 1 + 8 + fields.length);
+         body.putLong(sequence).put(operation).putLong(millis).put(fields);
+
+         CRC32 crc = new CRC32();
+         crc.update(body.array(), 0, body.capacity());
+
+         ByteBuffer stored = ByteBuffer.allocate(4 + body.capacity() + 4);
+         stored.putInt(body.capacity()).put(body.array()).putInt((int) crc.getValue());
+         stream.write(stored.array(), 0, stored.capacity());
+      }
+
+      /**
+       * Reads the next entry from the journal
+       * @param       input to read the entry from
+       * @return      the entry read if a whole, valid, entry was read; otherwise, null
+       * @throws      IOException when the journal can't be read
+       */
+      private static Entry readFrom(DataInputStream input) throws IOException {
+         byte[] body;
+         int checksum;
+         try {
+            int length = input.readInt();
+            if (length < 8 + 1 + 8 || length > MAX_ENTRY_LENGTH) {
+               return null;
+            }
+            body = new byte[length];
+            input.readFully(body);
+            checksum = input.readInt();
+         } catch(EOFException eofe) {
+            return null;
+         }
+
+         CRC32 crc = new CRC32();
+         crc.update(body, 0, body.length);
+         if ((int) crc.getValue() != checksum) {
+            return null;
+         }
+
+         ByteBuffer buffer = ByteBuffer.wrap(body);
+         long sequence = buffer.getLong();
+         byte operation = buffer.get();
+         long millis = buffer.getLong();
+         return new Entry(
+            sequence, operation, millis, Arrays.copyOfRange(body, buffer.position(), body.length), 4 + body.length + 4
+         );
+      }
+   }
+}
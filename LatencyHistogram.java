@@ -0,0 +1,195 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts how long something took, in nanoseconds, in buckets whose width grows with the time, so any time from a
+ * nanosecond to hundreds of years is counted within about one and a half percent of what it was. Each power of two
+ * is split into the same number of buckets, the way an HDR histogram is, so finding the bucket of a time takes a
+ * few shifts, and counting it takes one atomic add, however many threads count times at once. The number of times,
+ * and their average, are found from the buckets when they are asked for, rather than kept as times are counted
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+public class LatencyHistogram {
+
+   /**
+    * The number of bits of a time kept below its highest bit, which sets how many buckets each power of two is split
+    * into
+    */
+   private static final int SUB_BUCKET_BITS = 6;
+
+   /**
+    * The number of buckets each power of two is split into
+    */
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+   /**
+    * The number of buckets, which is enough for any positive long
+    */
+   private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+   /**
+    * The number of times counted in each bucket
+    */
+   private final AtomicLongArray counts;
+
+   /**
+    * The longest time counted, in nanoseconds
+    */
+   private final AtomicLong max;
+
+   /**
+    * Constructor for LatencyHistogram without any times counted
+    */
+   public LatencyHistogram() {
+      this.counts = new AtomicLongArray(BUCKETS);
+      this.max = new AtomicLong();
+   }
+
+   /**
+    * Counts a time
+    * @param       nanos is the time taken, in nanoseconds, where a negative time is counted as no time
+    * @pre         None
+    * @post        The time will be counted
+    */
+   public void record(long nanos) {
+      if (nanos < 0) {
+         nanos = 0;
+      }
+      counts.incrementAndGet(bucket(nanos));
+      long longest = max.get();
+      while (nanos > longest && !max.compareAndSet(longest, nanos)) {
+         longest = max.get();
+      }
+   }
+
+   /**
+    * Counts every time the given histogram has counted
+    * @param       other histogram whose times are counted
+    * @pre         None
+    * @post        This histogram will have counted the times of both histograms
+    */
+   public void add(LatencyHistogram other) {
+      for (int i = 0; i < BUCKETS; i++) {
+         long n = other.counts.get(i);
+         if (n != 0) {
+            counts.addAndGet(i, n);
+         }
+      }
+      long longest = max.get();
+      long otherLongest = other.max.get();
+      while (otherLongest > longest && !max.compareAndSet(longest, otherLongest)) {
+         longest = max.get();
+      }
+   }
+
+   /**
+    * Queries the number of times counted
+    * @return      the number of times counted
+    * @pre         None
+    * @post        None
+    */
+   public long getCount() {
+      long n = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         n += counts.get(i);
+      }
+      return n;
+   }
+
+   /**
+    * Queries the average of the times counted, taking each time to be the middle of its bucket
+    * @return      the average time, in nanoseconds, which is 0 when no time has been counted
+    * @pre         None
+    * @post        None
+    */
+   public double getMean() {
+      long n = 0;
+      double total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         long inBucket = counts.get(i);
+         if (inBucket != 0) {
+            n += inBucket;
+            total += inBucket * ((double) lowest(i) + highest(i)) / 2;
+         }
+      }
+      return n == 0 ? 0 : Math.min(total / n, max.get());
+   }
+
+   /**
+    * Queries the longest time counted
+    * @return      the longest time, in nanoseconds, which is 0 when no time has been counted
+    * @pre         None
+    * @post        None
+    */
+   public long getMax() {
+      return max.get();
+   }
+
+   /**
+    * Queries the time the given percent of the times counted took no longer than
+    * @param       percentile of the times, from 0 to 100
+    * @return      the highest time counted in the same bucket as the time at the percentile, in nanoseconds, which
+    *              is 0 when no time has been counted
+    * @pre         None
+    * @post        None
+    */
+   public long getPercentile(double percentile) {
+      long n = getCount();
+      if (n == 0) {
+         return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * n));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += counts.get(i);
+         if (seen >= rank) {
+            return Math.min(highest(i), max.get());
+         }
+      }
+      return max.get();
+   }
+
+   /**
+    * Finds the bucket a time is counted in. Times below the number of buckets a power of two is split into each have
+    * a bucket of their own, and every longer time is counted by its highest bits
+    * @param       nanos is the time, which isn't negative
+    * @return      the bucket of the time
+    */
+   private static int bucket(long nanos) {
+      if (nanos < SUB_BUCKETS) {
+         return (int) nanos;
+      }
+      int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+      return (shift + 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+   }
+
+   /**
+    * Finds the lowest time counted in a bucket
+    * @param       bucket of the time
+    * @return      the lowest time the bucket counts, in nanoseconds
+    */
+   private static long lowest(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+         return bucket;
+      }
+      int shift = bucket / SUB_BUCKETS - 1;
+      long bits = SUB_BUCKETS + bucket % SUB_BUCKETS;
+      return bits << shift;
+   }
+
+   /**
+    * Finds the highest time counted in a bucket
+    * @param       bucket of the time
+    * @return      the highest time the bucket counts, in nanoseconds
+    */
+   private static long highest(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+         return bucket;
+      }
+      int shift = bucket / SUB_BUCKETS - 1;
+      long bits = SUB_BUCKETS + bucket % SUB_BUCKETS;
+      return ((bits + 1) << shift) - 1;
+   }
+}
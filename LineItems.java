@@ -0,0 +1,214 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * The line items of an order, or invoice, held as parallel arrays of products, quantities, and prices, so a line
+ * costs a reference, an int, and a long, instead of a list node and a Record. The lines are gone through by their
+ * position, and a Record is only made for a line when the lines are handed out through an iterator
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Order
+ * @see         Invoice
+ * @see         Record
+ */
+public class LineItems {
+
+   /**
+    * The number of lines room is made for when the first line is added
+    */
+   private static final int INITIAL_CAPACITY = 4;
+
+   /**
+    * The product of each line
+    */
+   private Product[] products;
+
+   /**
+    * The quantity of each line
+    */
+   private int[] quantities;
+
+   /**
+    * The price per item of each line, in cents
+    */
+   private long[] prices;
+
+   /**
+    * The number of lines
+    */
+   private int size;
+
+   /**
+    * Constructor for LineItems without any lines
+    */
+   LineItems() {
+      this.products = new Product[0];
+      this.quantities = new int[0];
+      this.prices = new long[0];
+   }
+
+   /**
+    * Constructor for LineItems holding the given records, such as the records of an order that was serialized
+    * @param       records to be held, in order
+    */
+   LineItems(List<Record> records) {
+      this.products = new Product[records.size()];
+      this.quantities = new int[records.size()];
+      this.prices = new long[records.size()];
+      for (Record record : records) {
+         add(record.getProduct(), record.getQuantity(), record.getPrice());
+      }
+   }
+
+   /**
+    * Adds a line after the last line
+    * @param       product of the line
+    * @param       quantity of the product
+    * @param       price per item of the product, in cents
+    * @pre         None
+    * @post        The line will be the last line
+    */
+   void add(Product product, int quantity, long price) {
+      if (size == products.length) {
+         int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+         products = Arrays.copyOf(products, capacity);
+         quantities = Arrays.copyOf(quantities, capacity);
+         prices = Arrays.copyOf(prices, capacity);
+      }
+      products[size] = product;
+      quantities[size] = quantity;
+      prices[size] = price;
+      size++;
+   }
+
+   /**
+    * Queries the number of lines
+    * @return      the number of lines
+    * @pre         None
+    * @post        None
+    */
+   int size() {
+      return size;
+   }
+
+   /**
+    * Queries the product of a line
+    * @param       line is the position of the line
+    * @return      the product of the line
+    * @pre         The line is less than the number of lines
+    * @post        None
+    */
+   Product getProduct(int line) {
+      return products[line];
+   }
+
+   /**
+    * Queries the quantity of a line
+    * @param       line is the position of the line
+    * @return      the quantity of the line
+    * @pre         The line is less than the number of lines
+    * @post        None
+    */
+   int getQuantity(int line) {
+      return quantities[line];
+   }
+
+   /**
+    * Queries the price per item of a line
+    * @param       line is the position of the line
+    * @return      the price of the line, in cents
+    * @pre         The line is less than the number of lines
+    * @post        None
+    */
+   long getPrice(int line) {
+      return prices[line];
+   }
+
+   /**
+    * Sums up the cost of every line
+    * @return      the total of the quantity times the price of each line, in cents
+    * @pre         None
+    * @post        None
+    */
+   long total() {
+      long total = 0;
+      for (int line = 0; line < size; line++) {
+         total += prices[line] * quantities[line];
+      }
+      return total;
+   }
+
+   /**
+    * Queries the lines as records
+    * @return      An iterator to navigate through the lines in order, which makes a record for each line as it
+    *              is reached, so nothing is kept for the lines that aren't reached
+    * @pre         None
+    * @post        None
+    * @see         Record
+    */
+   Iterator<Record> iterator() {
+      return new Iterator<Record>() {
+         private int next = 0;
+
+         public boolean hasNext() {
+            return next < size;
+         }
+
+         public Record next() {
+            if (next >= size) {
+               throw new NoSuchElementException();
+            }
+            Record record = new Record(products[next], quantities[next], prices[next]);
+            next++;
+            return record;
+         }
+      };
+   }
+
+   /**
+    * Copies the lines into a list of records, which is how they are serialized
+    * @return      a list holding a record for each line, in order
+    * @pre         None
+    * @post        None
+    */
+   List<Record> toList() {
+      List<Record> records = new LinkedList<Record>();
+      for (int line = 0; line < size; line++) {
+         records.add(new Record(products[line], quantities[line], prices[line]));
+      }
+      return records;
+   }
+
+   /**
+    * Writes the lines to a snapshot, each referring to its product by id
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeSnapshot(Snapshot.Output output) throws IOException {
+      output.writeVarInt(size);
+      for (int line = 0; line < size; line++) {
+         output.writeId(products[line].getId());
+         output.writeVarInt(quantities[line]);
+         output.writeMoney(prices[line]);
+      }
+   }
+
+   /**
+    * Reads lines written by writeSnapshot, adding them after the last line
+    * @param       input is the snapshot being read
+    * @throws      IOException when the snapshot can't be read
+    * @pre         The products of the lines have been read
+    * @post        None
+    * @see         Snapshot
+    */
+   void readSnapshot(Snapshot.Input input) throws IOException {
+      for (int count = input.readVarInt(); count > 0; count--) {
+         add(input.readProduct(), input.readVarInt(), input.readMoney());
+      }
+   }
+}
@@ -0,0 +1,338 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.io.*;
+
+/**
+ * Drives a mix of orders, shipments, payments, and queries through the Warehouse from a number of threads, and
+ * reports the throughput, and the latency percentiles, of each kind of operation. The warehouse is retrieved from
+ * the stored data in the working directory, such as what WarehouseGenerator stores, and is generated when there is
+ * none. Nothing is journaled, archived, or saved, so every run starts from the same warehouse, and each thread picks
+ * its operations from a seeded random, so a run picks the same operations as the run before it with the same seed
+ * <p>
+ * In a closed loop, each thread starts its next operation as soon as its last one is done, which finds the most the
+ * warehouse can do. In an open loop, the operations are started at the rate given whether or not the operations
+ * before them are done, and each is timed from when it was meant to start, so time spent waiting behind slow
+ * operations counts against the latency the way it would for the clients waiting on them
+ * <p>
+ * The run is warmed up for a fifth of its length first, at the same load, and what is timed while warming up isn't
+ * reported
+ * <p>
+ * Usage: java LoadDriver [closed|open] [threads] [seconds] [operationsPerSecond] [mix] [seed]
+ * <p>
+ * where the mix is the weight of each kind of operation, such as order=40,shipment=10,payment=20,query=30, and the
+ * operations per second are only used by the open loop
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         WarehouseGenerator
+ * @see         LatencyHistogram
+ */
+public class LoadDriver {
+
+   /**
+    * The kinds of operation, in the order they are reported
+    */
+   private static final String[] OPERATIONS = {"order", "shipment", "payment", "query"};
+
+   /**
+    * Used to indicate an order is placed, for the lines given, and processed
+    */
+   private static final int ORDER = 0;
+
+   /**
+    * Used to indicate a shipment of a product is processed
+    */
+   private static final int SHIPMENT = 1;
+
+   /**
+    * Used to indicate a payment is accepted from a client
+    */
+   private static final int PAYMENT = 2;
+
+   /**
+    * Used to indicate a client, or product, is looked up, and what it holds is gone through
+    */
+   private static final int QUERY = 3;
+
+   /**
+    * The number of lines each order placed has
+    */
+   private static final int LINES_PER_ORDER = 3;
+
+   /**
+    * The most of a product ordered on one line, or shipped at once
+    */
+   private static final int MOST_PER_LINE = 5;
+
+   /**
+    * The ids of the clients of the warehouse driven
+    */
+   private final String[] clientIds;
+
+   /**
+    * The ids of the products of the warehouse driven
+    */
+   private final String[] productIds;
+
+   /**
+    * The running total of the weights of the kinds of operation, in the order of OPERATIONS, so a kind is picked by
+    * where a random number falls
+    */
+   private final int[] weights;
+
+   /**
+    * Where the results of the queries are put, so the queries aren't optimized away
+    */
+   private volatile long sink;
+
+   /**
+    * Constructor for a LoadDriver driving the warehouse
+    * @param       mix is the weight of each kind of operation, in the order of OPERATIONS
+    * @pre         The warehouse has clients, and products
+    */
+   LoadDriver(int[] mix) {
+      List<String> clients = new ArrayList<String>();
+      for (Iterator<Client> i = Warehouse.instance().getClients(); i.hasNext();) {
+         clients.add(i.next().getId());
+      }
+      List<String> products = new ArrayList<String>();
+      for (Iterator<Product> i = Warehouse.instance().getProducts(); i.hasNext();) {
+         products.add(i.next().getId());
+      }
+      this.clientIds = clients.toArray(new String[clients.size()]);
+      this.productIds = products.toArray(new String[products.size()]);
+      this.weights = new int[mix.length];
+      int total = 0;
+      for (int i = 0; i < mix.length; i++) {
+         total += Math.max(0, mix[i]);
+         weights[i] = total;
+      }
+   }
+
+   /**
+    * Retrieves, or generates, the warehouse, and drives it for a warm up, and then for the run reported
+    * @param       args are the loop, threads, seconds, operations per second, mix, and seed
+    */
+   public static void main(String[] args) throws InterruptedException {
+      boolean open = args.length > 0 && args[0].equals("open");
+      int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+      int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+      int rate = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+      int[] mix = parseMix(args.length > 4 ? args[4] : "order=40,shipment=10,payment=20,query=30");
+      long seed = args.length > 5 ? Long.parseLong(args[5]) : 42;
+
+      Journal.instance().setEnabled(false);
+      HistoryArchive.instance().setEnabled(false);
+      if (new File(Warehouse.DATA_FILE).exists()) {
+         System.out.println("Retrieving the warehouse from " + Warehouse.DATA_FILE);
+         Warehouse.retrieve();
+      } else {
+         WarehouseGenerator generator = new WarehouseGenerator();
+         System.out.println("Generating " + generator);
+         generator.generate(seed);
+      }
+
+      LoadDriver driver = new LoadDriver(mix);
+      System.out.println(
+         "Driving " + driver.clientIds.length + " clients, and " + driver.productIds.length + " products, in "
+         + (open ? "an open loop at " + rate + " operations/s" : "a closed loop") + " from " + threads + " threads"
+      );
+      Random[] randoms = new Random[threads];
+      for (int t = 0; t < threads; t++) {
+         randoms[t] = new Random(seed * 31 + t);
+      }
+
+      driver.drive(open, threads, rate, Math.max(1, seconds / 5) * 1000000000L, randoms);
+      LatencyHistogram[] histograms = driver.drive(open, threads, rate, seconds * 1000000000L, randoms);
+      report(histograms, seconds);
+   }
+
+   /**
+    * Parses the weights of the kinds of operation
+    * @param       text holding the kinds, and their weights, such as order=40,query=60
+    * @return      the weight of each kind of operation, in the order of OPERATIONS, which is 0 for the kinds not
+    *              given
+    * @throws      IllegalArgumentException when a kind isn't known, or hasn't a weight
+    */
+   static int[] parseMix(String text) {
+      int[] mix = new int[OPERATIONS.length];
+      for (String part : text.split(",")) {
+         String[] pair = part.split("=");
+         int kind = Arrays.asList(OPERATIONS).indexOf(pair[0].trim());
+         if (kind < 0 || pair.length != 2) {
+            throw new IllegalArgumentException("Unknown operation in the mix: " + part);
+         }
+         mix[kind] = Integer.parseInt(pair[1].trim());
+      }
+      return mix;
+   }
+
+   /**
+    * Drives the warehouse from the threads given for the time given
+    * @param       open is true if the operations are started at the rate given; otherwise, each thread starts
+    *              its next operation once its last is done
+    * @param       threads to drive the warehouse from
+    * @param       rate is the number of operations started each second in an open loop
+    * @param       nanos is how long the warehouse is driven for
+    * @param       randoms each thread picks its operations with, which carry on from one drive to the next
+    * @return      the latency of each kind of operation, in the order of OPERATIONS
+    */
+   private LatencyHistogram[] drive(final boolean open, int threads, int rate, final long nanos,
+      final Random[] randoms) throws InterruptedException {
+      final LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+      for (int i = 0; i < histograms.length; i++) {
+         histograms[i] = new LatencyHistogram();
+      }
+      final long interval = 1000000000L / Math.max(1, rate);
+      final AtomicLong scheduled = new AtomicLong();
+      final long start = System.nanoTime();
+      final long end = start + nanos;
+
+      Thread[] workers = new Thread[threads];
+      for (int t = 0; t < threads; t++) {
+         final Random random = randoms[t];
+         workers[t] = new Thread("load-driver-" + t) {
+            public void run() {
+               while (true) {
+                  long intended;
+                  if (open) {
+
+                     // the operation is timed from when the schedule meant it to start, however late it starts
+                     intended = start + scheduled.getAndIncrement() * interval;
+                     if (intended >= end) {
+                        return;
+                     }
+                     for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                     }
+                  } else {
+                     intended = System.nanoTime();
+                     if (intended >= end) {
+                        return;
+                     }
+                  }
+                  int kind = pick(random);
+                  apply(kind, random);
+                  histograms[kind].record(System.nanoTime() - intended);
+               }
+            }
+         };
+         workers[t].start();
+      }
+      for (Thread worker : workers) {
+         worker.join();
+      }
+      return histograms;
+   }
+
+   /**
+    * Picks the kind of the next operation by the weights of the mix
+    * @param       random to pick with
+    * @return      the kind of operation picked
+    */
+   int pick(Random random) {
+      int n = random.nextInt(Math.max(1, weights[weights.length - 1]));
+      int kind = 0;
+      while (kind < weights.length - 1 && n >= weights[kind]) {
+         kind++;
+      }
+      return kind;
+   }
+
+   /**
+    * Runs an operation of the kind given on clients, and products, picked at random
+    * @param       kind of operation
+    * @param       random to pick with
+    */
+   private void apply(int kind, Random random) {
+      Warehouse warehouse = Warehouse.instance();
+      String clientId = clientIds[random.nextInt(clientIds.length)];
+      String productId = productIds[random.nextInt(productIds.length)];
+      switch (kind) {
+         case ORDER:
+            String orderId = warehouse.createOrder(clientId);
+            warehouse.addToOrder(clientId, orderId, productId, 1 + random.nextInt(MOST_PER_LINE));
+            for (int l = 1; l < LINES_PER_ORDER; l++) {
+               String other = productIds[random.nextInt(productIds.length)];
+               warehouse.addToOrder(clientId, orderId, other, 1 + random.nextInt(MOST_PER_LINE));
+            }
+            warehouse.processClientOrder(clientId, orderId);
+            break;
+         case SHIPMENT:
+            warehouse.processShipment(productId, 1 + random.nextInt(MOST_PER_LINE * 4), null);
+            break;
+         case PAYMENT:
+            warehouse.acceptClientPayment(clientId, 100 + random.nextInt(10000));
+            break;
+         case QUERY:
+            long seen = 0;
+            switch (random.nextInt(4)) {
+               case 0:
+                  seen += count(warehouse.getClientTransactions(clientId));
+                  break;
+               case 1:
+                  seen += count(warehouse.getOrders(clientId));
+                  break;
+               case 2:
+                  seen += count(warehouse.getClientWaitlistedOrders(clientId));
+                  break;
+               default:
+                  seen += count(warehouse.getProductWaitlistedOrderItems(productId));
+                  break;
+            }
+            sink += seen;
+            break;
+      }
+   }
+
+   /**
+    * Goes through what an iterator navigates through
+    * @param       elements to be gone through, which may be null
+    * @return      the number of elements
+    */
+   private static long count(Iterator<?> elements) {
+      long n = 0;
+      while (elements != null && elements.hasNext()) {
+         elements.next();
+         n++;
+      }
+      return n;
+   }
+
+   /**
+    * Prints the throughput, and latency percentiles, of each kind of operation, and of every operation
+    * @param       histograms of each kind of operation, in the order of OPERATIONS
+    * @param       seconds the run took
+    */
+   private static void report(LatencyHistogram[] histograms, int seconds) {
+      System.out.printf(
+         "%-10s %10s %10s %10s %10s %10s %10s %10s %10s%n",
+         "operation", "count", "ops/s", "mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"
+      );
+      LatencyHistogram all = new LatencyHistogram();
+      for (int i = 0; i < histograms.length; i++) {
+         if (histograms[i].getCount() > 0) {
+            report(OPERATIONS[i], histograms[i], seconds);
+            all.add(histograms[i]);
+         }
+      }
+      report("all", all, seconds);
+   }
+
+   /**
+    * Prints the throughput, and latency percentiles, of one kind of operation
+    * @param       name of the kind of operation
+    * @param       histogram of the kind of operation
+    * @param       seconds the run took
+    */
+   private static void report(String name, LatencyHistogram histogram, int seconds) {
+      System.out.printf(
+         "%-10s %10d %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+         (double) histogram.getCount() / seconds, histogram.getMean() / 1e3, histogram.getPercentile(50) / 1e3,
+         histogram.getPercentile(90) / 1e3, histogram.getPercentile(99) / 1e3, histogram.getPercentile(99.9) / 1e3,
+         histogram.getMax() / 1e3
+      );
+   }
+}
@@ -0,0 +1,138 @@
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * A fixed set of locks that ids are spread across, so callers working on different clients and products hold
+ * different locks, without a lock for every client and product. Two ids may share a lock, which only means the
+ * callers holding them wait on each other
+ * <p>
+ * The locks for several ids are always taken in the order of the locks, never in the order the ids are given,
+ * so two callers locking overlapping ids can't each hold a lock the other is waiting for
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Warehouse
+ */
+public class LockStripes {
+
+   /**
+    * The locks the ids are spread across
+    */
+   private final ReentrantLock[] locks;
+
+   /**
+    * The number of bits the hash of an id is shifted by to give the position of its lock
+    */
+   private final int shift;
+
+   /**
+    * Constructor for the LockStripes
+    * @param       count is the smallest number of locks wanted, which is rounded up to a power of two
+    */
+   public LockStripes(int count) {
+      int size = Integer.highestOneBit(Math.max(2, count) - 1) << 1;
+      this.locks = new ReentrantLock[size];
+      for (int i = 0; i < size; i++) {
+         locks[i] = new ReentrantLock();
+      }
+      this.shift = 32 - Integer.numberOfTrailingZeros(size);
+   }
+
+   /**
+    * Queries the position of the lock for the given id
+    * @param       id of a client, product, or supplier
+    * @return      the position of the lock the id is spread to
+    * @pre         None
+    * @post        None
+    */
+   private int stripe(String id) {
+      // spread the hash, since ids only differ in their last few characters
+      return (id.hashCode() * 0x9E3779B9) >>> shift;
+   }
+
+   /**
+    * Takes the locks for the given ids, in the order of the locks, waiting until they are free
+    * @param       ids of the clients, products, and suppliers to be locked, where null ids are skipped
+    * @return      the positions of the locks taken, to be given to unlock
+    * @pre         None
+    * @post        The caller will hold the lock for every id given
+    */
+   public int[] lock(String... ids) {
+      int[] stripes = new int[ids.length];
+      int count = 0;
+      for (String id : ids) {
+         if (id != null) {
+            stripes[count++] = stripe(id);
+         }
+      }
+      Arrays.sort(stripes, 0, count);
+
+      int held = 0;
+      for (int i = 0; i < count; i++) {
+         if (held == 0 || stripes[held - 1] != stripes[i]) {
+            stripes[held++] = stripes[i];
+         }
+      }
+      stripes = Arrays.copyOf(stripes, held);
+      for (int stripe : stripes) {
+         locks[stripe].lock();
+      }
+      return stripes;
+   }
+
+   /**
+    * Takes the locks for the given ids
+    * @param       ids of the clients, products, and suppliers to be locked
+    * @return      the positions of the locks taken, to be given to unlock
+    * @pre         None
+    * @post        The caller will hold the lock for every id given
+    */
+   public int[] lock(Collection<String> ids) {
+      return lock(ids.toArray(new String[ids.size()]));
+   }
+
+   /**
+    * Queries whether the locks for the given ids are among the locks given
+    * @param       stripes are the positions of locks taken by lock
+    * @param       ids to be checked
+    * @return      true if the lock for every id is among the locks given; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   public boolean covers(int[] stripes, Collection<String> ids) {
+      for (String id : ids) {
+         if (Arrays.binarySearch(stripes, stripe(id)) < 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Releases locks taken by lock
+    * @param       stripes are the positions of the locks taken
+    * @pre         The caller holds the locks given
+    * @post        The caller will no longer hold the locks given
+    */
+   public void unlock(int[] stripes) {
+      for (int i = stripes.length - 1; i >= 0; i--) {
+         locks[stripes[i]].unlock();
+      }
+   }
+
+   /**
+    * Takes every lock, in order, so nothing guarded by these locks changes until they are released
+    * @return      the positions of the locks taken, to be given to unlock
+    * @pre         The caller holds none of the locks
+    * @post        The caller will hold every lock
+    */
+   public int[] lockAll() {
+      int[] stripes = new int[locks.length];
+      for (int i = 0; i < locks.length; i++) {
+         stripes[i] = i;
+         locks[i].lock();
+      }
+      return stripes;
+   }
+}
@@ -0,0 +1,156 @@
+/**
+ * Amounts of money held as a whole number of cents in a long, so adding, subtracting, and multiplying amounts is
+ * exact and doesn't create any objects. This replaces the floats prices and balances were held in, which drifted
+ * from the amounts they were meant to hold as they were added to over and over
+ * <p>
+ * Amounts are formatted as a dollar sign, a minus sign if the amount is negative, the whole dollars, and two digits
+ * of cents, which is what formatting a float with "$%.2f" printed
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+public final class Money {
+
+   /**
+    * The number of digits after the decimal point an amount is held to
+    */
+   public static final int SCALE = 2;
+
+   /**
+    * The number of cents in a dollar
+    */
+   public static final long CENTS_PER_DOLLAR = 100;
+
+   /**
+    * Private Money constructor, since amounts are held as longs and only worked with through the static methods
+    */
+   private Money() {}
+
+   /**
+    * Converts an amount held as a float, the way prices and balances were held before, to cents
+    * @param       amount in dollars
+    * @return      the amount in cents, rounded to the nearest cent
+    * @pre         None
+    * @post        None
+    */
+   public static long fromFloat(float amount) {
+      return Math.round((double) amount * CENTS_PER_DOLLAR);
+   }
+
+   /**
+    * Converts an amount in cents to a float, so it can be stored where a float was stored before
+    * @param       cents is the amount
+    * @return      the amount in dollars
+    * @pre         None
+    * @post        None
+    */
+   public static float toFloat(long cents) {
+      return (float) ((double) cents / CENTS_PER_DOLLAR);
+   }
+
+   /**
+    * Parses an amount in dollars, such as "12", "12.5", "$12.50", or "-0.75". Digits past the cents are rounded
+    * half up
+    * @param       text holding the amount
+    * @return      the amount in cents
+    * @throws      NumberFormatException when the text doesn't hold an amount, or the amount is too large
+    * @pre         None
+    * @post        None
+    */
+   public static long parse(String text) {
+      try {
+         return parseExact(text);
+      } catch(ArithmeticException ae) {
+         throw new NumberFormatException("Amount of money too large: \"" + text + "\"");
+      }
+   }
+
+   /**
+    * Parses an amount in dollars for parse
+    * @param       text holding the amount
+    * @return      the amount in cents
+    * @throws      NumberFormatException when the text doesn't hold an amount
+    * @throws      ArithmeticException when the amount is too large
+    */
+   private static long parseExact(String text) {
+      String value = text.trim();
+      int position = 0;
+      int length = value.length();
+      boolean negative = false;
+      if (position < length && (value.charAt(position) == '-' || value.charAt(position) == '+')) {
+         negative = (value.charAt(position) == '-');
+         position++;
+      }
+      if (position < length && value.charAt(position) == '$') {
+         position++;
+      }
+
+      long cents = 0;
+      int digits = 0;
+      int fractionDigits = -1;
+      boolean roundUp = false;
+      for (; position < length; position++) {
+         char c = value.charAt(position);
+         if (c == '.' && fractionDigits < 0) {
+            fractionDigits = 0;
+         } else if (c >= '0' && c <= '9') {
+            digits++;
+            if (fractionDigits < SCALE) {
+               cents = Math.addExact(Math.multiplyExact(cents, 10), c - '0');
+               if (fractionDigits >= 0) {
+                  fractionDigits++;
+               }
+            } else if (fractionDigits == SCALE) {
+               roundUp = (c >= '5');
+               fractionDigits++;
+            }
+         } else {
+            throw new NumberFormatException("Not an amount of money: \"" + text + "\"");
+         }
+      }
+      if (digits == 0) {
+         throw new NumberFormatException("Not an amount of money: \"" + text + "\"");
+      }
+      for (int scale = Math.max(fractionDigits, 0); scale < SCALE; scale++) {
+         cents = Math.multiplyExact(cents, 10);
+      }
+      if (roundUp) {
+         cents = Math.addExact(cents, 1);
+      }
+      return negative ? -cents : cents;
+   }
+
+   /**
+    * Formats an amount
+    * @param       cents is the amount
+    * @return      the amount formatted as dollars and cents, such as "$12.50"
+    * @pre         None
+    * @post        None
+    */
+   public static String format(long cents) {
+      return appendTo(new StringBuilder(24), cents).toString();
+   }
+
+   /**
+    * Appends an amount, formatted as dollars and cents, to the given builder
+    * @param       builder the amount is appended to
+    * @param       cents is the amount
+    * @return      the builder given
+    * @pre         None
+    * @post        The builder will end with the formatted amount
+    */
+   public static StringBuilder appendTo(StringBuilder builder, long cents) {
+      builder.append('$');
+      if (cents < 0) {
+         builder.append('-');
+      }
+      long dollars = Math.abs(cents / CENTS_PER_DOLLAR);
+      int remainder = (int) Math.abs(cents % CENTS_PER_DOLLAR);
+      builder.append(dollars).append('.');
+      if (remainder < 10) {
+         builder.append('0');
+      }
+      return builder.append(remainder);
+   }
+}
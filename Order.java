@@ -17,7 +17,18 @@ public class Order implements Serializable {
    /**
     * Used for serialization also
     */
-   private static final String ORDER_STRING = "O";
+   static final String ORDER_STRING = "O";
+
+   /**
+    * The fields that are serialized, which keep the types they had before the waitlisted items were held in a set
+    */
+   private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("id", String.class),
+      new ObjectStreamField("items", List.class),
+      new ObjectStreamField("waitlistedItems", List.class),
+      new ObjectStreamField("client", Client.class),
+      new ObjectStreamField("waitlisted", Boolean.TYPE)
+   };
 
    /**
     * Store the id that was given from the id server
@@ -25,14 +36,16 @@ public class Order implements Serializable {
    private String id;
 
    /**
-    * Data structure to hold the records for the order
+    * Data structure to hold the records for the order, as line items
     */
-   private List<Record> items;
+   private LineItems items;
 
    /**
-    * Data structure to hold the waitlisted items for this order
+    * Data structure to hold the waitlisted items for this order, in the order they were waitlisted, where an item
+    * is only held once and is removed without searching for it. Its size is the number of line items still
+    * outstanding. It is serialized as a list
     */
-   private List<WaitlistItem> waitlistedItems;
+   private Set<WaitlistItem> waitlistedItems;
 
    /**
     * Order's client that made the order
@@ -50,9 +63,22 @@ public class Order implements Serializable {
     * @see         Client
     */
    public Order(Client client) {
-      this.id = ORDER_STRING + (OrderIdServer.instance()).getId();
-      this.items = new LinkedList<Record>();
-      this.waitlistedItems = new LinkedList<WaitlistItem>();
+      this.id = ORDER_STRING + (IdServer.instance()).getId(IdServer.ORDER);
+      this.items = new LineItems();
+      this.waitlistedItems = new LinkedHashSet<WaitlistItem>();
+      this.client = client;
+   }
+
+   /**
+    * Constructor for an Order read from a snapshot, which keeps the id it was given
+    * @param       id of the order
+    * @param       client that the order is associated to
+    * @see         Snapshot
+    */
+   private Order(String id, Client client) {
+      this.id = id;
+      this.items = new LineItems();
+      this.waitlistedItems = new LinkedHashSet<WaitlistItem>();
       this.client = client;
    }
 
@@ -61,7 +87,7 @@ public class Order implements Serializable {
     * @return      Returns the orders's id
     * @pre         None
     * @post        None
-    * @see         OrderIdServer
+    * @see         IdServer
     */
    public String getId() {
       return id;
@@ -86,7 +112,20 @@ public class Order implements Serializable {
     * @see         Record
     */
    public void addRecord(Record record) {
-      items.add(record);
+      items.add(record.getProduct(), record.getQuantity(), record.getPrice());
+   }
+
+   /**
+    * Adds a line to the order's records, without making a record for it
+    * @param       product of the line
+    * @param       quantity of the product
+    * @param       price per item of the product, in cents
+    * @pre         None
+    * @post        The line will be added to this order
+    * @see         LineItems
+    */
+   void addLine(Product product, int quantity, long price) {
+      items.add(product, quantity, price);
    }
 
    /**
@@ -104,11 +143,11 @@ public class Order implements Serializable {
     * Remove a waitlisted item from the order's waitlisted items
     * @param       item to be removed from the order's waitlisted items
     * @pre         None
-    * @post        A waitlisted item will be removed from this order
+    * @post        The waitlisted item will no longer be held by this order
     * @see         WaitlistItem
     */
    public void removeWaitlistItem(WaitlistItem item) {
-      waitlistedItems.add(item);
+      waitlistedItems.remove(item);
    }
 
    /**
@@ -130,7 +169,29 @@ public class Order implements Serializable {
     * @see         WaitlistItem
     */
    public boolean hasWaitlistedItems() {
-      return waitlistedItems.size() != 0;
+      return !waitlistedItems.isEmpty();
+   }
+
+   /**
+    * Query the number of the order's line items that are still waitlisted
+    * @return      Returns the number of waitlisted items the order is waiting on
+    * @pre         None
+    * @post        None
+    * @see         WaitlistItem
+    */
+   public int getWaitlistedItemCount() {
+      return waitlistedItems.size();
+   }
+
+   /**
+    * Query the number of records in the order
+    * @return      Returns the number of the order's records
+    * @pre         None
+    * @post        None
+    * @see         Record
+    */
+   public int getRecordCount() {
+      return items.size();
    }
 
    /**
@@ -144,6 +205,99 @@ public class Order implements Serializable {
       return items.iterator();
    }
 
+   /**
+    * Query the order's records as line items, which are gone through by position without making records
+    * @return      Returns the order's line items
+    * @pre         None
+    * @post        None
+    * @see         LineItems
+    */
+   LineItems getLines() {
+      return items;
+   }
+
+   /**
+    * Writes this order to a snapshot, with its records and references to its waitlisted items
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeSnapshot(Snapshot.Output output) throws IOException {
+      output.writeId(id);
+      items.writeSnapshot(output);
+      output.writeVarInt(waitlistedItems.size());
+      for (Iterator<WaitlistItem> waitlisted = waitlistedItems.iterator(); waitlisted.hasNext();) {
+         output.writeItem(waitlisted.next());
+      }
+   }
+
+   /**
+    * Reads an order written by writeSnapshot. The order's waitlisted items are added by the snapshot once they
+    * have been read
+    * @param       input is the snapshot being read
+    * @param       client that the order is associated to
+    * @return      the order read
+    * @throws      IOException when the snapshot can't be read
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   static Order readSnapshot(Snapshot.Input input, Client client) throws IOException {
+      Order order = new Order(input.readId(ORDER_STRING), client);
+      order.items.readSnapshot(input);
+      input.addOrder(order, input.readItemIndexes());
+      return order;
+   }
+
+   /**
+    * Helper function for the store function in Warehouse, which will be used during serialization
+    * @throws      IOException when the serialized output stream fails to write successfully
+    * @pre         None
+    * @post        This order will have been written, with its waitlisted items as a list
+    */
+   private void writeObject(ObjectOutputStream output) throws IOException {
+      ObjectOutputStream.PutField fields = output.putFields();
+      fields.put("id", id);
+      fields.put("items", items.toList());
+      fields.put("waitlistedItems", new LinkedList<WaitlistItem>(waitlistedItems));
+      fields.put("client", client);
+      fields.put("waitlisted", waitlisted);
+      output.writeFields();
+   }
+
+   /**
+    * Helper function for the retrieve function in Warehouse, which will be used during deserialization. Data
+    * written before removing a waitlisted item worked can hold an item more than once, or hold items that were
+    * filled long ago, so once everything has been read only the items still on their product's waitlist are kept
+    * @throws      IOException when the serialized input stream fails to read successfully
+    * @throws      ClassNotFoundException when a serialized class can't be found
+    * @pre         None
+    * @post        This order will have been read, holding each of its waitlisted items once
+    */
+   @SuppressWarnings("unchecked")
+   private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = input.readFields();
+      id = (String) fields.get("id", null);
+      items = new LineItems((List<Record>) fields.get("items", null));
+      waitlistedItems = new LinkedHashSet<WaitlistItem>((List<WaitlistItem>) fields.get("waitlistedItems", null));
+      client = (Client) fields.get("client", null);
+      waitlisted = fields.get("waitlisted", false);
+
+      // ahead of the clients, which drop the orders left with nothing waitlisted
+      input.registerValidation(new ObjectInputValidation() {
+         public void validateObject() {
+            for (Iterator<WaitlistItem> waitlist = waitlistedItems.iterator(); waitlist.hasNext();) {
+               WaitlistItem item = waitlist.next();
+               if (!item.getProduct().isWaitlisted(item)) {
+                  waitlist.remove();
+               }
+            }
+         }
+      }, 1);
+   }
+
    /**
     * Generate a string when the object is used is scalar context which holds are relevent information
     * @return      Returns the formated string of relevant information about the object
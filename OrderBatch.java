@@ -0,0 +1,465 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A batch of client orders processed together, such as the orders released at the end of the day. The orders are
+ * given stock in a fixed priority order, by default the order their ids were handed out in, so the batch fills and
+ * waitlists exactly what processing the orders one after another in that order would
+ * <p>
+ * Each product gives out its stock to its line items on its own, so the products are handled side by side on a
+ * fork-join pool, and so are the clients, whose orders are then invoiced from the stock they were given. Once the
+ * batch is processed it holds the result of every order
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Warehouse
+ */
+public class OrderBatch {
+
+   /**
+    * Orders the orders by the order their ids were handed out in
+    */
+   public static final Comparator<Order> BY_ORDER_ID = new Comparator<Order>() {
+      public int compare(Order first, Order second) {
+
+         // ids share a prefix, so a shorter id was handed out earlier
+         String firstId = first.getId();
+         String secondId = second.getId();
+         if (firstId.length() != secondId.length()) {
+            return firstId.length() - secondId.length();
+         }
+         return firstId.compareTo(secondId);
+      }
+   };
+
+   /**
+    * The number of shares of work the products, and clients, are spread across for each thread of the pool, so a
+    * thread that finishes its share early can take another
+    */
+   private static final int SHARES_PER_THREAD = 2;
+
+   /**
+    * The order the orders are given stock in
+    */
+   private final Comparator<Order> priority;
+
+   /**
+    * The result of every order of the batch, in the order the orders were added
+    */
+   private final List<Result> results;
+
+   /**
+    * Constructor for an OrderBatch whose orders are given stock in the order their ids were handed out in
+    */
+   public OrderBatch() {
+      this(BY_ORDER_ID);
+   }
+
+   /**
+    * Constructor for an OrderBatch whose orders are given stock in the order given
+    * @param       priority is the order the orders are given stock in, where ties are broken by the order the orders
+    *              were added in
+    */
+   public OrderBatch(Comparator<Order> priority) {
+      this.priority = priority;
+      this.results = new ArrayList<Result>();
+   }
+
+   /**
+    * Adds an order to the batch
+    * @param       clientId of the client the order belongs to
+    * @param       orderId of the order to be processed
+    * @pre         The batch hasn't been processed
+    * @post        The order will be processed with the batch
+    */
+   public void add(String clientId, String orderId) {
+      results.add(new Result(clientId, orderId));
+   }
+
+   /**
+    * Queries the number of orders in the batch
+    * @return      the number of orders added
+    * @pre         None
+    * @post        None
+    */
+   public int size() {
+      return results.size();
+   }
+
+   /**
+    * Queries the results of the orders of the batch
+    * @return      An iterator to navigate through the result of every order, in the order the orders were added
+    * @pre         None
+    * @post        None
+    * @see         Result
+    */
+   public Iterator<Result> getResults() {
+      return Collections.unmodifiableList(results).iterator();
+   }
+
+   /**
+    * Queries the ids of the clients the orders of the batch belong to
+    * @return      the ids of the clients
+    * @pre         None
+    * @post        None
+    */
+   Set<String> getClientIds() {
+      Set<String> clientIds = new HashSet<String>();
+      for (Result result : results) {
+         clientIds.add(result.clientId);
+      }
+      return clientIds;
+   }
+
+   /**
+    * Finds the client, and the order, of every order of the batch, marking the orders that can't be found
+    * @param       clients to search for the clients within
+    * @return      the ids of the clients, and of the products, the found orders hold, which have to be locked while
+    *              the batch is processed
+    * @pre         The caller holds the locks for the clients of the batch
+    * @post        The orders that can't be found will have CLIENT_NOT_FOUND, or ORDER_NOT_FOUND, as their status
+    */
+   Set<String> resolve(ClientList clients) {
+      Set<String> ids = new HashSet<String>();
+      for (Result result : results) {
+         ids.add(result.clientId);
+         result.client = clients.find(result.clientId);
+         result.order = (result.client == null) ? null : result.client.findOrder(result.orderId);
+         if (result.client == null) {
+            result.status = Warehouse.CLIENT_NOT_FOUND;
+         } else if (result.order == null) {
+            result.status = Warehouse.ORDER_NOT_FOUND;
+         } else {
+            result.status = Warehouse.SUCCESS;
+            LineItems lines = result.order.getLines();
+            for (int line = 0; line < lines.size(); line++) {
+               ids.add(lines.getProduct(line).getId());
+            }
+         }
+      }
+      return ids;
+   }
+
+   /**
+    * Processes the orders of the batch that were found, in three steps: every product gives out its stock to its
+    * line items in priority order, every client's orders are invoiced from the stock they were given, and every
+    * product waitlists its line items that weren't filled in priority order. Within each step the products, or
+    * clients, are spread across a share of work for each thread of the pool, and every share goes through the
+    * orders in priority order, skipping what isn't its own, so the orders are still gone through in the order
+    * their line items were made in
+    * @param       pool the steps are run on
+    * @return      the results of the orders processed, in priority order
+    * @pre         The batch has been resolved, and the caller holds the locks for the ids resolve returned
+    * @post        The orders found will be filled with the stock in hand, and the rest will be waitlisted
+    */
+   List<Result> process(ForkJoinPool pool) {
+      final List<Result> processed = new ArrayList<Result>();
+      for (Result result : results) {
+         if (result.status == Warehouse.SUCCESS) {
+            result.reserved = new int[result.order.getRecordCount()];
+            processed.add(result);
+         }
+      }
+
+      // a stable sort, so ties keep the order the orders were added in
+      Collections.sort(processed, new Comparator<Result>() {
+         public int compare(Result first, Result second) {
+            return priority.compare(first.order, second.order);
+         }
+      });
+
+      int threads = pool.getParallelism();
+      final int shares = (threads == 1) ? 1 : threads * SHARES_PER_THREAD;
+      forEach(pool, shares, new Step() {
+         public void apply(int share) {
+            for (Result result : processed) {
+               LineItems lines = result.order.getLines();
+               for (int line = 0; line < lines.size(); line++) {
+                  Product product = lines.getProduct(line);
+                  if (shareOf(product.getId(), shares) == share) {
+                     result.reserved[line] = product.reserveUpTo(lines.getQuantity(line));
+                  }
+               }
+            }
+         }
+      });
+
+      // the invoices are made on the threads of the pool, at the time the caller pinned for the batch
+      final long millis = Transaction.now();
+      forEach(pool, shares, new Step() {
+         public void apply(int share) {
+            Long unpinnedTime = Transaction.pinTime(millis);
+            try {
+               for (Result result : processed) {
+                  if (shareOf(result.clientId, shares) == share) {
+                     result.fill();
+                  }
+               }
+            } finally {
+               Transaction.restoreTime(unpinnedTime);
+            }
+         }
+      });
+
+      forEach(pool, shares, new Step() {
+         public void apply(int share) {
+            for (Result result : processed) {
+               for (WaitlistItem item : result.waitlisted) {
+                  if (item != null && shareOf(item.getProduct().getId(), shares) == share) {
+                     item.getProduct().addToWaitlist(item);
+                  }
+               }
+            }
+         }
+      });
+      return processed;
+   }
+
+   /**
+    * Queries the share of work a product, or client, belongs to
+    * @param       id of the product, or client
+    * @param       shares is the number of shares of work
+    * @return      the share the product, or client, belongs to
+    */
+   private static int shareOf(String id, int shares) {
+      return (id.hashCode() & Integer.MAX_VALUE) % shares;
+   }
+
+   /**
+    * Applies a step to every share of work, splitting the shares across the pool. A single share is worked on by
+    * the caller, since there is nothing to run beside it
+    * @param       pool the step is run on
+    * @param       shares is the number of shares of work
+    * @param       step to be applied
+    */
+   private static void forEach(ForkJoinPool pool, int shares, Step step) {
+      if (shares == 1) {
+         step.apply(0);
+      } else {
+         pool.invoke(new Split(0, shares, step));
+      }
+   }
+
+   /**
+    * Work done to a share of the products, or clients, of a batch
+    */
+   private interface Step {
+
+      /**
+       * Does the work of one share
+       * @param       share to be worked on
+       */
+      void apply(int share);
+   }
+
+   /**
+    * Applies a step to a range of shares of work, splitting the range in half until it holds a single share
+    */
+   private static class Split extends RecursiveAction {
+
+      /**
+       * Used for serialization
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * The first share of the range
+       */
+      private final int from;
+
+      /**
+       * The share after the last share of the range
+       */
+      private final int to;
+
+      /**
+       * The step to be applied
+       */
+      private final Step step;
+
+      /**
+       * Constructor for a Split
+       * @param       from is the first share of the range
+       * @param       to is the share after the last share of the range
+       * @param       step to be applied
+       */
+      Split(int from, int to, Step step) {
+         this.from = from;
+         this.to = to;
+         this.step = step;
+      }
+
+      /**
+       * Applies the step to the range, or splits it
+       */
+      protected void compute() {
+         if (to - from == 1) {
+            step.apply(from);
+         } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new Split(from, middle, step), new Split(middle, to, step));
+         }
+      }
+   }
+
+   /**
+    * The result of processing one order of a batch
+    */
+   public static class Result {
+
+      /**
+       * The id of the client the order belongs to
+       */
+      private final String clientId;
+
+      /**
+       * The id of the order
+       */
+      private final String orderId;
+
+      /**
+       * Static int status of the order, which is one of Warehouse's statuses
+       */
+      private int status;
+
+      /**
+       * The id of the invoice the order was given, or null when nothing was filled
+       */
+      private String invoiceId;
+
+      /**
+       * The quantity filled from stock, across every line item of the order
+       */
+      private int filledQuantity;
+
+      /**
+       * The quantity waitlisted, across every line item of the order
+       */
+      private int waitlistedQuantity;
+
+      /**
+       * The client the order belongs to, once it has been found
+       */
+      private Client client;
+
+      /**
+       * The order, once it has been found
+       */
+      private Order order;
+
+      /**
+       * The quantity each line item of the order was given from stock
+       */
+      private int[] reserved;
+
+      /**
+       * The waitlist item made for each line item of the order that wasn't filled entirely
+       */
+      private WaitlistItem[] waitlisted;
+
+      /**
+       * Constructor for a Result of an order that hasn't been processed
+       * @param       clientId of the client the order belongs to
+       * @param       orderId of the order
+       */
+      private Result(String clientId, String orderId) {
+         this.clientId = clientId;
+         this.orderId = orderId;
+         this.status = Warehouse.OPERATION_FAILED;
+      }
+
+      /**
+       * Invoices the order from the stock it was given, and waitlists the rest on the order
+       * @pre         The caller holds the locks for the client and for the products of the order
+       * @post        The order will be filled, and the waitlist items for the products will be made
+       */
+      private void fill() {
+         Invoice latest = client.getLatestInvoice();
+         waitlisted = client.fillOrder(order, reserved);
+         Invoice invoice = client.getLatestInvoice();
+         invoiceId = (invoice == latest) ? null : invoice.getId();
+         for (int i = 0; i < reserved.length; i++) {
+            filledQuantity += reserved[i];
+            if (waitlisted[i] != null) {
+               waitlistedQuantity += waitlisted[i].getQuantity();
+            }
+         }
+      }
+
+      /**
+       * Query the id of the client the order belongs to
+       * @return      Returns the client's id
+       * @pre         None
+       * @post        None
+       */
+      public String getClientId() {
+         return clientId;
+      }
+
+      /**
+       * Query the id of the order
+       * @return      Returns the order's id
+       * @pre         None
+       * @post        None
+       */
+      public String getOrderId() {
+         return orderId;
+      }
+
+      /**
+       * Query the status of the order
+       * @return      Static int status (which includes: CLIENT_NOT_FOUND, ORDER_NOT_FOUND, SUCCESS, and
+       *              OPERATION_FAILED for an order that hasn't been processed)
+       * @pre         None
+       * @post        None
+       * @see         Warehouse
+       */
+      public int getStatus() {
+         return status;
+      }
+
+      /**
+       * Query the id of the invoice the order was given
+       * @return      Returns the invoice's id if anything was filled; otherwise, null
+       * @pre         None
+       * @post        None
+       */
+      public String getInvoiceId() {
+         return invoiceId;
+      }
+
+      /**
+       * Query the quantity filled from stock
+       * @return      Returns the quantity filled, across every line item of the order
+       * @pre         None
+       * @post        None
+       */
+      public int getFilledQuantity() {
+         return filledQuantity;
+      }
+
+      /**
+       * Query the quantity waitlisted
+       * @return      Returns the quantity waitlisted, across every line item of the order
+       * @pre         None
+       * @post        None
+       */
+      public int getWaitlistedQuantity() {
+         return waitlistedQuantity;
+      }
+
+      /**
+       * Generate a string when the object is used is scalar context which holds are relevent information
+       * @return      Returns the formated string of relevant information about the object
+       * @pre         None
+       * @post        None
+       */
+      public String toString() {
+         return String.format(
+            "[%s] for client [%s] has status [%d], invoice: [%s], filled: [%d], waitlisted: [%d]",
+            orderId, clientId, status, invoiceId, filledQuantity, waitlistedQuantity
+         );
+      }
+   }
+}
@@ -0,0 +1,172 @@
+import java.util.*;
+
+/**
+ * Compares processing a day's orders one at a time through Warehouse.processClientOrder against processing them
+ * together through Warehouse.processClientOrders. Each round builds the same warehouse, with journaling turned off,
+ * where the orders have been placed but not processed, and the stock of the products only fills some of them, so
+ * both stock and waitlists are worked on. The two ways are checked to leave the same balances and stock
+ * <p>
+ * Usage: java OrderBatchBenchmark [clients] [products] [orders] [rounds]
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         OrderBatch
+ */
+public class OrderBatchBenchmark {
+
+   /**
+    * The number of items each order is for
+    */
+   private static final int ITEMS_PER_ORDER = 4;
+
+   /**
+    * The number of rounds run before the timed rounds, so the timed rounds run compiled code. The batch is only run
+    * once a round, so it takes more rounds than the loop to be compiled
+    */
+   private static final int WARMUP_ROUNDS = 15;
+
+   /**
+    * Private OrderBatchBenchmark constructor, since the benchmark is only run through main
+    */
+   private OrderBatchBenchmark() {}
+
+   /**
+    * Times both ways of processing the orders
+    * @param       args are the number of clients, products, orders, and timed rounds
+    */
+   public static void main(String[] args) {
+      int clients = argument(args, 0, 2000);
+      int products = argument(args, 1, 500);
+      int orders = argument(args, 2, 20000);
+      int rounds = argument(args, 3, 10);
+
+      Journal.instance().setEnabled(false);
+      System.out.println(
+         "Warehouse of " + clients + " clients, and " + products + " products, processing " + orders + " orders on "
+         + Runtime.getRuntime().availableProcessors() + " processors"
+      );
+
+      String loopState = null, batchState = null;
+      long loopNanos = 0, batchNanos = 0;
+      for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+         String[][] placed = build(clients, products, orders);
+         settle();
+         long start = System.nanoTime();
+         for (String[] order : placed) {
+            Warehouse.instance().processClientOrder(order[0], order[1]);
+         }
+         long loop = System.nanoTime() - start;
+         loopState = state();
+
+         placed = build(clients, products, orders);
+         OrderBatch batch = new OrderBatch();
+         for (String[] order : placed) {
+            batch.add(order[0], order[1]);
+         }
+         settle();
+         start = System.nanoTime();
+         Warehouse.instance().processClientOrders(batch);
+         long batched = System.nanoTime() - start;
+         batchState = state();
+
+         if (round >= WARMUP_ROUNDS) {
+            loopNanos += loop;
+            batchNanos += batched;
+         }
+      }
+
+      System.out.printf("%-12s %12s %14s%n", "way", "ms", "orders/s");
+      report("loop", loopNanos, orders, rounds);
+      report("batch", batchNanos, orders, rounds);
+      System.out.printf("speedup      %12.2fx%n", (double) loopNanos / batchNanos);
+      System.out.println(loopState.equals(batchState) ? "Both ways agree" : "The two ways disagree");
+   }
+
+   /**
+    * Parses the argument at the given position
+    * @param       args given to main
+    * @param       position of the argument
+    * @param       fallback used when the argument isn't given
+    * @return      the argument at the position given if there is one; otherwise, the fallback
+    */
+   private static int argument(String[] args, int position, int fallback) {
+      return args.length > position ? Integer.parseInt(args[position]) : fallback;
+   }
+
+   /**
+    * Builds an empty warehouse, stocks its products with about half of what the orders want, and places the orders
+    * @param       clients to be added
+    * @param       products to be added
+    * @param       orders to be placed, spread across the clients
+    * @return      the client id, and order id, of every order placed, in the order they were placed
+    */
+   private static String[][] build(int clients, int products, int orders) {
+      Warehouse.clear();
+      Warehouse warehouse = Warehouse.instance();
+      Random random = new Random(42);
+
+      String[] productIds = new String[products];
+      for (int i = 0; i < products; i++) {
+         productIds[i] = warehouse.addProduct("Product " + i, 100 + random.nextInt(10000)).getId();
+         warehouse.processShipment(productIds[i], (orders * ITEMS_PER_ORDER * 3 / 2) / products, null);
+      }
+
+      String[] clientIds = new String[clients];
+      for (int c = 0; c < clients; c++) {
+         clientIds[c] = warehouse.addClient("Client " + c).getId();
+      }
+
+      String[][] placed = new String[orders][];
+      for (int o = 0; o < orders; o++) {
+         String clientId = clientIds[random.nextInt(clients)];
+         String orderId = warehouse.createOrder(clientId);
+         for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+            warehouse.addToOrder(clientId, orderId, productIds[random.nextInt(products)], 1 + random.nextInt(5));
+         }
+         placed[o] = new String[] { clientId, orderId };
+      }
+      return placed;
+   }
+
+   /**
+    * Collects the warehouses built before, so collecting them doesn't land in the time taken to process the orders
+    */
+   private static void settle() {
+      System.gc();
+   }
+
+   /**
+    * Describes the balances of the clients, and the stock and waitlists of the products, so the two ways can be
+    * compared. Ids are left out, since each round hands out new ones
+    * @return      the description
+    */
+   private static String state() {
+      Warehouse warehouse = Warehouse.instance();
+      StringBuilder state = new StringBuilder();
+      for (Iterator<Client> clients = warehouse.getClients(); clients.hasNext();) {
+         state.append(clients.next().getBalance()).append(' ');
+      }
+      for (Iterator<Product> products = warehouse.getProducts(); products.hasNext();) {
+         Product product = products.next();
+         state.append(product.getQuantity()).append('/');
+         for (Iterator<WaitlistItem> items = product.getWaitlistedOrders(); items.hasNext();) {
+            state.append(items.next().getQuantity()).append(',');
+         }
+         state.append(' ');
+      }
+      return state.toString();
+   }
+
+   /**
+    * Prints the results for one way of processing the orders
+    * @param       way the orders were processed
+    * @param       nanos is the total time spent processing
+    * @param       orders processed each round
+    * @param       rounds that were timed
+    */
+   private static void report(String way, long nanos, int orders, int rounds) {
+      double millis = nanos / 1e6 / rounds;
+      System.out.printf("%-12s %12.2f %14.0f%n", way, millis, orders / (millis / 1e3));
+   }
+}
@@ -1,9 +1,15 @@
 import java.util.*;
 import java.lang.*;
 import java.io.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Holds the information for the product
+ * <p>
+ * The quantity in stock is changed with compare-and-set, through tryReserve, reserveUpTo, release, and receive, so
+ * many threads can take stock from a product at once without locking it, and stock is never taken twice or taken
+ * below zero
+ * <p>
  * @author      Shion Steel Hart <shionhart@gmail.com>
  * @version     1.0
  * @since       1.0
@@ -18,7 +24,26 @@ public class Product implements Serializable {
    /**
     * Used for serialization also
     */
-   private static final String PRODUCT_STRING = "P";
+   static final String PRODUCT_STRING = "P";
+
+   /**
+    * The fields written when a product is serialized, which keep the price a float so the data saved before prices
+    * were held in cents can still be read
+    */
+   private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("id", String.class),
+      new ObjectStreamField("name", String.class),
+      new ObjectStreamField("quantity", Integer.TYPE),
+      new ObjectStreamField("price", Float.TYPE),
+      new ObjectStreamField("supplierIds", List.class),
+      new ObjectStreamField("waitlistedOrders", Queue.class)
+   };
+
+   /**
+    * Changes the quantity in stock atomically, without an atomic object for every product
+    */
+   private static final AtomicIntegerFieldUpdater<Product> QUANTITY =
+      AtomicIntegerFieldUpdater.newUpdater(Product.class, "quantity");
 
    /**
     * Store the id that was given from the id server
@@ -31,14 +56,14 @@ public class Product implements Serializable {
    private String name;
    
    /**
-    * Product's quantity in stock
+    * Product's quantity in stock, only changed through QUANTITY
     */
-   private int quantity;
+   private volatile int quantity;
 
    /**
-    * Product's price
+    * Product's price, in cents
     */
-   private float price;
+   private long price;
 
    /**
     * Data structure to hold the supplierIds associated with this product
@@ -48,20 +73,36 @@ public class Product implements Serializable {
    /**
     * Data structure to hold the waitlisted orders for this product
     */
-   private Queue<WaitlistItem> waitlistedOrders;
+   private WaitlistQueue waitlistedOrders;
 
    /**
     * Constructor for the Product
     * @param       name of the product
-    * @param       price of the product
+    * @param       price of the product, in cents
     */
-   public Product(String name, float price) {
-      this.id = PRODUCT_STRING + (ProductIdServer.instance()).getId();
+   public Product(String name, long price) {
+      this.id = PRODUCT_STRING + (IdServer.instance()).getId(IdServer.PRODUCT);
       this.name = name;
       this.price = price;
       this.quantity = 0;
       this.supplierIds = new LinkedList<String>();
-      this.waitlistedOrders = new LinkedList<WaitlistItem>();
+      this.waitlistedOrders = new WaitlistQueue();
+   }
+
+   /**
+    * Constructor for a Product read from a snapshot, which keeps the id it was given
+    * @param       id of the product
+    * @param       name of the product
+    * @param       price of the product, in cents
+    * @see         Snapshot
+    */
+   private Product(String id, String name, long price) {
+      this.id = id;
+      this.name = name;
+      this.price = price;
+      this.quantity = 0;
+      this.supplierIds = new LinkedList<String>();
+      this.waitlistedOrders = new WaitlistQueue();
    }
 
    /**
@@ -81,7 +122,7 @@ public class Product implements Serializable {
     * @post       The quantity of this product will be set to the amount specified
     */
    public void setQuantity(int amount) {
-      quantity = amount;
+      QUANTITY.set(this, amount);
    }
 
    /**
@@ -89,9 +130,70 @@ public class Product implements Serializable {
     * @param      amount is what the amount the product's quantity will be increased
     * @pre        The amount specified is a positive integer
     * @post       The quantity of this product will be increased the amount specified
+    * @see        #receive
     */
    public void increaseQuantity(int amount) {
-      quantity += amount;
+      receive(amount);
+   }
+
+   /**
+    * Takes the given amount from the product's stock, only if all of it is in stock
+    * @param      amount to be taken from stock
+    * @return     true if the amount was taken; otherwise, false, and the stock is left as it was
+    * @pre        The amount specified is a positive integer
+    * @post       The quantity of this product will be reduced the amount specified, if it was in stock
+    */
+   public boolean tryReserve(int amount) {
+      while (true) {
+         int current = quantity;
+         if (current < amount) {
+            return false;
+         }
+         if (QUANTITY.compareAndSet(this, current, current - amount)) {
+            return true;
+         }
+      }
+   }
+
+   /**
+    * Takes as much of the given amount from the product's stock as is in stock
+    * @param      amount wanted from stock
+    * @return     the amount taken, which is less than the amount wanted when the stock runs out
+    * @pre        The amount specified is a positive integer
+    * @post       The quantity of this product will be reduced the amount returned
+    */
+   public int reserveUpTo(int amount) {
+      while (true) {
+         int current = quantity;
+         int taken = Math.min(current, amount);
+         if (taken <= 0) {
+            return 0;
+         }
+         if (QUANTITY.compareAndSet(this, current, current - taken)) {
+            return taken;
+         }
+      }
+   }
+
+   /**
+    * Puts stock that was taken, but not used, back in stock
+    * @param      amount that was taken by tryReserve or reserveUpTo
+    * @pre        The amount specified is a positive integer, and was taken from this product
+    * @post       The quantity of this product will be increased the amount specified
+    */
+   public void release(int amount) {
+      QUANTITY.addAndGet(this, amount);
+   }
+
+   /**
+    * Adds stock received in a shipment
+    * @param      amount received
+    * @return     the quantity in stock once the amount is added
+    * @pre        The amount specified is a positive integer
+    * @post       The quantity of this product will be increased the amount specified
+    */
+   public int receive(int amount) {
+      return QUANTITY.addAndGet(this, amount);
    }
 
    /**
@@ -109,7 +211,7 @@ public class Product implements Serializable {
     * @return     Returns the product's id
     * @pre        None
     * @post       None
-    * @see        ProductIdServer
+    * @see        IdServer
     */
    public String getId() {
       return id;
@@ -117,11 +219,12 @@ public class Product implements Serializable {
 
    /**
     * Query the product's price
-    * @return     Returns the product's price
+    * @return     Returns the product's price, in cents
     * @pre        None
     * @post       None
+    * @see        Money
     */
-   public float getPrice() {
+   public long getPrice() {
       return price;
    }
 
@@ -143,7 +246,7 @@ public class Product implements Serializable {
     * @see        Order
     */
    public boolean hasWaitlistedOrders() {
-      return waitlistedOrders.size() != 0;
+      return !waitlistedOrders.isEmpty();
    }
 
    /**
@@ -222,16 +325,30 @@ public class Product implements Serializable {
    }
 
    /**
-    * Removes a waitlist item from the product's waitlisted items
+    * Removes a waitlist item from the product's waitlisted items, wherever it is in the waitlist, without searching
+    * for it
     * @param       item to be removed from the product's waitlisted items
     * @pre         None
     * @post        The waitlist item will be removed from this product
     * @see         WaitlistItem
+    * @see         WaitlistQueue
     */
    public void removeWaitlistItem(WaitlistItem item) {
       waitlistedOrders.remove(item);
    }
 
+   /**
+    * Queries whether a waitlist item is still on the product's waitlist
+    * @param       item to be checked
+    * @return      true if the item is waitlisted for this product; otherwise, false
+    * @pre         None
+    * @post        None
+    * @see         WaitlistQueue
+    */
+   boolean isWaitlisted(WaitlistItem item) {
+      return waitlistedOrders.contains(item);
+   }
+
    /**
     * Query the product's waitlisted items
     * @return      Returns an in iterator of the product's waitlisted items
@@ -243,6 +360,85 @@ public class Product implements Serializable {
       return waitlistedOrders.iterator();
    }
 
+   /**
+    * Writes this product to a snapshot, without its waitlist, which the snapshot writes once every order exists
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeSnapshot(Snapshot.Output output) throws IOException {
+      output.writeId(id);
+      output.writeString(name);
+      output.writeMoney(price);
+      output.writeVarInt(quantity);
+      output.writeVarInt(supplierIds.size());
+      for (Iterator<String> sids = supplierIds.iterator(); sids.hasNext();) {
+         output.writeId(sids.next());
+      }
+   }
+
+   /**
+    * Reads a product written by writeSnapshot
+    * @param       input is the snapshot being read
+    * @return      the product read
+    * @throws      IOException when the snapshot can't be read
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   static Product readSnapshot(Snapshot.Input input) throws IOException {
+      Product product = new Product(input.readId(PRODUCT_STRING), input.readString(), input.readMoney());
+      product.quantity = input.readVarInt();
+      for (int count = input.readVarInt(); count > 0; count--) {
+         product.supplierIds.add(input.readId(Supplier.SUPPLIER_STRING));
+      }
+      return product;
+   }
+
+   /**
+    * Helper function for the save function in Warehouse, which will be used during serialization
+    * @throws      IOException when the serialized output stream fails to write successfully
+    * @pre         None
+    * @post        This product will have been written, with its price in dollars
+    */
+   private void writeObject(ObjectOutputStream output) throws IOException {
+      ObjectOutputStream.PutField fields = output.putFields();
+      fields.put("id", id);
+      fields.put("name", name);
+      fields.put("quantity", quantity);
+      fields.put("price", Money.toFloat(price));
+      fields.put("supplierIds", supplierIds);
+      Queue<WaitlistItem> waitlist = new LinkedList<WaitlistItem>();
+      for (WaitlistItem item : waitlistedOrders) {
+         waitlist.add(item);
+      }
+      fields.put("waitlistedOrders", waitlist);
+      output.writeFields();
+   }
+
+   /**
+    * Helper function for the retrieve function in Warehouse, which will be used during deserialization
+    * @throws      IOException when the serialized input stream fails to read successfully
+    * @throws      ClassNotFoundException when a serialized class can't be found
+    * @pre         None
+    * @post        This product will have been read, with its price converted to cents
+    */
+   @SuppressWarnings("unchecked")
+   private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = input.readFields();
+      id = (String) fields.get("id", null);
+      name = (String) fields.get("name", null);
+      quantity = fields.get("quantity", 0);
+      price = Money.fromFloat(fields.get("price", 0f));
+      supplierIds = (List<String>) fields.get("supplierIds", null);
+      waitlistedOrders = new WaitlistQueue();
+      for (WaitlistItem item : (Queue<WaitlistItem>) fields.get("waitlistedOrders", null)) {
+         waitlistedOrders.add(item);
+      }
+   }
+
    /**
     * Generate a string when the object is used is scalar context which holds are relevent information
     * @return      Returns the formated string of relevant information about the object
@@ -251,8 +447,8 @@ public class Product implements Serializable {
     */
    public String toString() {
       return String.format(
-         "[%s] is a product with name: [%s], price per item: [$%.2f], and quantity: [%s]", 
-         id, name, price, quantity
+         "[%s] is a product with name: [%s], price per item: [%s], and quantity: [%s]", 
+         id, name, Money.format(price), quantity
       );
    }
 }
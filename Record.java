@@ -13,6 +13,16 @@ public class Record implements Serializable {
     * Used for serialization
     */
    private static final long serialVersionUID = 1L;
+
+   /**
+    * The fields written when a record is serialized, which keep the price a float so the data saved before prices
+    * were held in cents can still be read
+    */
+   private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("product", Product.class),
+      new ObjectStreamField("quantity", Integer.TYPE),
+      new ObjectStreamField("price", Float.TYPE)
+   };
    
    /**
     * The record's product
@@ -25,18 +35,18 @@ public class Record implements Serializable {
    private int quantity;
    
    /**
-    * The price per item of the product
+    * The price per item of the product, in cents
     */
-   private float price;
+   private long price;
 
    /**
     * Constructor for the Record
     * @param       product of the record
     * @param       quantity of the product of the record
-    * @param       price of the product of the record
+    * @param       price of the product of the record, in cents
     * @see         Product
     */
-   public Record(Product product, int quantity, float price) {
+   public Record(Product product, int quantity, long price) {
       this.product = product;
       this.quantity = quantity;
       this.price = price;
@@ -55,11 +65,12 @@ public class Record implements Serializable {
 
    /**
     * Query the record's price per product
-    * @return      Returns the record's price per product item
+    * @return      Returns the record's price per product item, in cents
     * @pre         None
     * @post        None
+    * @see         Money
     */
-   public float getPrice() {
+   public long getPrice() {
       return price;
    }
 
@@ -73,6 +84,34 @@ public class Record implements Serializable {
       return quantity;
    }
 
+   /**
+    * Helper function for the save function in Warehouse, which will be used during serialization
+    * @throws      IOException when the serialized output stream fails to write successfully
+    * @pre         None
+    * @post        This record will have been written, with its price in dollars
+    */
+   private void writeObject(ObjectOutputStream output) throws IOException {
+      ObjectOutputStream.PutField fields = output.putFields();
+      fields.put("product", product);
+      fields.put("quantity", quantity);
+      fields.put("price", Money.toFloat(price));
+      output.writeFields();
+   }
+
+   /**
+    * Helper function for the retrieve function in Warehouse, which will be used during deserialization
+    * @throws      IOException when the serialized input stream fails to read successfully
+    * @throws      ClassNotFoundException when a serialized class can't be found
+    * @pre         None
+    * @post        This record will have been read, with its price converted to cents
+    */
+   private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = input.readFields();
+      product = (Product) fields.get("product", null);
+      quantity = fields.get("quantity", 0);
+      price = Money.fromFloat(fields.get("price", 0f));
+   }
+
    /**
     * Generate a string when the object is used is scalar context which holds are relevent information
     * @return      Returns the formated string of relevant information about the object
@@ -81,8 +120,8 @@ public class Record implements Serializable {
     */
    public String toString() {
       return String.format(
-         "product: [%s], quantity: [%s], and price per item [$%.2f]",
-         product, quantity, price
+         "product: [%s], quantity: [%s], and price per item [%s]",
+         product, quantity, Money.format(price)
       );
    }
 }
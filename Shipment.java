@@ -0,0 +1,276 @@
+import java.util.*;
+
+/**
+ * A receipt of many products at once, which fills the waitlisted orders of each product without asking about each
+ * one. Each line of the receipt fills its product's waitlisted items in the order they were waitlisted, in a single
+ * pass, and what is left over goes into stock. Everything filled for a client by the receipt is put on one invoice,
+ * so a client waiting on many products is billed once
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Warehouse
+ */
+public class Shipment {
+
+   /**
+    * The lines of the receipt, in the order they were added
+    */
+   private final List<Line> lines;
+
+   /**
+    * The invoice given to each client the receipt filled items for, in the order the clients were first filled
+    */
+   private final Map<Client, Invoice> invoices;
+
+   /**
+    * Constructor for an empty Shipment
+    */
+   public Shipment() {
+      this.lines = new ArrayList<Line>();
+      this.invoices = new LinkedHashMap<Client, Invoice>();
+   }
+
+   /**
+    * Adds a line to the receipt
+    * @param       productId of the product received
+    * @param       quantity of the product received
+    * @pre         The shipment hasn't been received, and the quantity is a positive integer
+    * @post        The line will be received with the shipment
+    */
+   public void add(String productId, int quantity) {
+      lines.add(new Line(productId, quantity));
+   }
+
+   /**
+    * Queries the number of lines of the receipt
+    * @return      the number of lines added
+    * @pre         None
+    * @post        None
+    */
+   public int size() {
+      return lines.size();
+   }
+
+   /**
+    * Queries the lines of the receipt
+    * @return      An iterator to navigate through the lines, in the order they were added
+    * @pre         None
+    * @post        None
+    * @see         Line
+    */
+   public Iterator<Line> getLines() {
+      return Collections.unmodifiableList(lines).iterator();
+   }
+
+   /**
+    * Queries the invoices the receipt gave
+    * @return      An iterator to navigate through the invoices, one for each client items were filled for
+    * @pre         None
+    * @post        None
+    * @see         Invoice
+    */
+   public Iterator<Invoice> getInvoices() {
+      return Collections.unmodifiableCollection(invoices.values()).iterator();
+   }
+
+   /**
+    * Queries the ids of the products received
+    * @return      the ids of the products
+    * @pre         None
+    * @post        None
+    */
+   Set<String> getProductIds() {
+      Set<String> productIds = new HashSet<String>();
+      for (Line line : lines) {
+         productIds.add(line.productId);
+      }
+      return productIds;
+   }
+
+   /**
+    * Finds the product of every line, marking the lines whose product can't be found, and works out which clients
+    * the receipt will fill items for, without filling them
+    * @param       inventory to search for the products within
+    * @return      the ids of the products, and of the clients, that have to be locked while the receipt is received
+    * @pre         The caller holds the locks for the products of the receipt
+    * @post        The lines whose product can't be found will have PRODUCT_NOT_FOUND as their status
+    */
+   Set<String> resolve(Inventory inventory) {
+      Set<String> ids = new HashSet<String>();
+      Map<Product, Integer> received = new LinkedHashMap<Product, Integer>();
+      for (Line line : lines) {
+         ids.add(line.productId);
+         line.product = inventory.find(line.productId);
+         if (line.product == null) {
+            line.status = Warehouse.PRODUCT_NOT_FOUND;
+         } else {
+            line.status = Warehouse.SUCCESS;
+            Integer quantity = received.get(line.product);
+            received.put(line.product, (quantity == null ? 0 : quantity) + line.quantity);
+         }
+      }
+
+      // the lines of a product fill its waitlist one after another, so together they reach as far as their total
+      for (Map.Entry<Product, Integer> product : received.entrySet()) {
+         int remaining = product.getValue();
+         for (Iterator<WaitlistItem> items = product.getKey().getWaitlistedOrders(); remaining > 0 && items.hasNext();) {
+            WaitlistItem item = items.next();
+            ids.add(item.getOrder().getClient().getId());
+            remaining -= item.getQuantity();
+         }
+      }
+      return ids;
+   }
+
+   /**
+    * Receives the lines whose product was found, filling each product's waitlisted items in the order they were
+    * waitlisted, putting what is left over into stock, and then billing each client filled on a single invoice
+    * @pre         The receipt has been resolved, and the caller holds the locks for the ids resolve returned
+    * @post        The waitlisted items will be filled with the quantities received, the rest will be in stock, and
+    *              every client filled will have been given one invoice
+    */
+   void receive() {
+      for (Line line : lines) {
+         if (line.status != Warehouse.SUCCESS) {
+            continue;
+         }
+
+         int remaining = line.quantity;
+         WaitlistItem item;
+         while (remaining > 0 && (item = line.product.getNextWaitlistedOrder()) != null) {
+            Client client = item.getOrder().getClient();
+            Invoice invoice = invoices.get(client);
+            if (invoice == null) {
+               invoice = new Invoice(client);
+               invoices.put(client, invoice);
+            }
+
+            int filled = Math.min(item.getQuantity(), remaining);
+            if (filled == item.getQuantity()) {
+               line.product.removeWaitlistItem(item);
+            }
+            client.fillWaitlistedOrderItem(item.getOrder(), item, filled, invoice);
+            line.filledQuantity += filled;
+            remaining -= filled;
+         }
+
+         // what no waitlisted item was waiting for goes into stock
+         if (remaining > 0) {
+            line.product.receive(remaining);
+         }
+      }
+
+      for (Map.Entry<Client, Invoice> client : invoices.entrySet()) {
+         client.getKey().bill(client.getValue());
+      }
+   }
+
+   /**
+    * A line of a receipt, which is a quantity of a product received, and what became of it
+    */
+   public static class Line {
+
+      /**
+       * The id of the product received
+       */
+      private final String productId;
+
+      /**
+       * The quantity of the product received
+       */
+      private final int quantity;
+
+      /**
+       * Static int status of the line, which is one of Warehouse's statuses
+       */
+      private int status;
+
+      /**
+       * The quantity that filled waitlisted items
+       */
+      private int filledQuantity;
+
+      /**
+       * The product received, once it has been found
+       */
+      private Product product;
+
+      /**
+       * Constructor for a Line that hasn't been received
+       * @param       productId of the product received
+       * @param       quantity of the product received
+       */
+      private Line(String productId, int quantity) {
+         this.productId = productId;
+         this.quantity = quantity;
+         this.status = Warehouse.OPERATION_FAILED;
+      }
+
+      /**
+       * Query the id of the product received
+       * @return      Returns the product's id
+       * @pre         None
+       * @post        None
+       */
+      public String getProductId() {
+         return productId;
+      }
+
+      /**
+       * Query the quantity received
+       * @return      Returns the quantity received
+       * @pre         None
+       * @post        None
+       */
+      public int getQuantity() {
+         return quantity;
+      }
+
+      /**
+       * Query the status of the line
+       * @return      Static int status (which includes: PRODUCT_NOT_FOUND, SUCCESS, and OPERATION_FAILED for a line
+       *              that hasn't been received)
+       * @pre         None
+       * @post        None
+       * @see         Warehouse
+       */
+      public int getStatus() {
+         return status;
+      }
+
+      /**
+       * Query the quantity that filled waitlisted items
+       * @return      Returns the quantity filled
+       * @pre         None
+       * @post        None
+       */
+      public int getFilledQuantity() {
+         return filledQuantity;
+      }
+
+      /**
+       * Query the quantity put into stock
+       * @return      Returns the quantity left over once the waitlisted items were filled, if the line was
+       *              received; otherwise, 0
+       * @pre         None
+       * @post        None
+       */
+      public int getStockedQuantity() {
+         return (status == Warehouse.SUCCESS) ? quantity - filledQuantity : 0;
+      }
+
+      /**
+       * Generate a string when the object is used is scalar context which holds are relevent information
+       * @return      Returns the formated string of relevant information about the object
+       * @pre         None
+       * @post        None
+       */
+      public String toString() {
+         return String.format(
+            "[%s] received [%d] with status [%d], filled: [%d], stocked: [%d]",
+            productId, quantity, status, filledQuantity, getStockedQuantity()
+         );
+      }
+   }
+}
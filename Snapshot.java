@@ -0,0 +1,1216 @@
+import java.util.*;
+import java.util.zip.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * Compact binary format the Warehouse is saved in. Objects refer to each other by id in place of object
+ * references, numbers are stored as variable length integers, and repeated strings are stored once in a string
+ * table that is built while the snapshot is written
+ * <p>
+ * A snapshot holds, in order: the magic number and version, the history (orders, invoices, and transactions) of
+ * each client, the index, the position of each client's history with the times of its first and last transactions,
+ * and a trailer holding the position of the index,
+ * the position of the history positions, and a CRC32 checksum of both. The index holds the sequence number of the
+ * last journal entry in the snapshot, the IdServer's high-water marks, the products, the suppliers, the clients,
+ * the waitlist of each product, and the waitlisted items
+ * <p>
+ * A snapshot is read by mapping the file into memory and reading only the index. The history of a client is read
+ * from the mapped file the first time it is used, so retrieving the warehouse doesn't take longer as the history
+ * grows. Each history has its own string table and CRC32 checksum so it can be read on its own, and a history
+ * that was never read is copied as is when the warehouse is saved again. The clients whose orders are waitlisted
+ * are read with the index, because the waitlisted items refer to their orders. A client's older transactions may
+ * be kept in its archive instead of its history, and the index records how far into the archive they go
+ * <p>
+ * A snapshot is written in two steps, so the warehouse can keep changing while most of it is written. Capturing
+ * the snapshot writes the index, and the histories of the clients with waitlisted orders, to memory. The rest of
+ * the histories are written afterwards, and a client whose history is about to change before it was written has
+ * its history written to memory first, so the snapshot holds the warehouse as it was when it was captured
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+public class Snapshot {
+
+   /**
+    * Marks the start of a snapshot, and tells it apart from the serialized objects the Warehouse was saved as before
+    */
+   public static final int MAGIC = 0x5748534E; // "WHSN"
+
+   /**
+    * The version of the snapshot format, which is the only version read
+    */
+   public static final int VERSION = 8;
+
+   /**
+    * The number of kinds of ids in the IdServer
+    */
+   private static final int ID_KINDS = 5;
+
+   /**
+    * The size of the magic number and version at the start of a snapshot
+    */
+   private static final int HEADER_LENGTH = 8;
+
+   /**
+    * The size of the trailer at the end of a snapshot, which holds the position of the index, the position of the
+    * history positions, and their checksum
+    */
+   private static final int TRAILER_LENGTH = 12;
+
+   /**
+    * The largest snapshot that can be written, or read, since a snapshot is mapped as one buffer and its positions
+    * are ints
+    */
+   private static final long MAX_LENGTH = Integer.MAX_VALUE;
+
+   /**
+    * The snapshot that has been captured, but not completely written, if there is one
+    */
+   private static volatile Capture pending;
+
+   /**
+    * Private Snapshot constructor, since a snapshot is only written and read through the static methods
+    */
+   private Snapshot() {}
+
+   /**
+    * Queries the start of the given stream to find out if it holds a snapshot, without consuming anything
+    * @param       input to be checked, which must support mark and reset
+    * @return      true if the stream starts with a snapshot; otherwise, false
+    * @throws      IOException when the stream can't be read
+    * @pre         None
+    * @post        None
+    */
+   public static boolean isSnapshot(InputStream input) throws IOException {
+      input.mark(4);
+      try {
+         return new DataInputStream(input).readInt() == MAGIC;
+      } catch(EOFException eofe) {
+         return false;
+      } finally {
+         input.reset();
+      }
+   }
+
+   /**
+    * Queries the sequence number of the last journal entry held by the snapshot in the given file, without reading
+    * the rest of the snapshot
+    * @param       file holding the snapshot
+    * @return      the sequence number if the file holds a snapshot; otherwise, 0, which is the case when the file
+    *              doesn't exist, or holds a serialized Warehouse, which was stored before the journal existed
+    * @throws      IOException when the file can't be read, or holds a damaged snapshot
+    * @pre         None
+    * @post        None
+    * @see         Journal
+    */
+   public static long readSequence(File file) throws IOException {
+      if (!file.exists()) {
+         return 0;
+      }
+      try (RandomAccessFile data = new RandomAccessFile(file, "r")) {
+         long length = data.length();
+         if (length < HEADER_LENGTH + TRAILER_LENGTH || data.readInt() != MAGIC) {
+            return 0;
+         }
+         data.seek(length - TRAILER_LENGTH);
+         int indexOffset = data.readInt();
+         if (indexOffset < HEADER_LENGTH || indexOffset >= length - TRAILER_LENGTH) {
+            throw new IOException("Warehouse snapshot is damaged");
+         }
+         byte[] sequence = new byte[(int) Math.min(10, length - TRAILER_LENGTH - indexOffset)];
+         data.seek(indexOffset);
+         data.readFully(sequence);
+         return new Input(ByteBuffer.wrap(sequence), new HashMap<Integer, Product>()).readVarLong();
+      }
+   }
+
+   /**
+    * Writes a snapshot of the whole warehouse to the given stream
+    * @param       stream to write the snapshot to
+    * @param       sequence of the last journal entry the warehouse holds
+    * @throws      IOException when the snapshot can't be written, or would be larger than a snapshot can be
+    * @pre         No other snapshot is being written
+    * @post        The stream will hold a snapshot of the warehouse
+    * @see         Journal
+    */
+   public static void write(OutputStream stream, long sequence) throws IOException {
+      capture(sequence).writeTo(stream);
+   }
+
+   /**
+    * Captures a snapshot of the whole warehouse, to be written by Capture.writeTo. Until it is written, the history
+    * of a client is written to memory before it changes
+    * @param       sequence of the last journal entry the warehouse holds
+    * @return      the captured snapshot
+    * @throws      IOException when the snapshot can't be captured
+    * @throws      IllegalStateException when another snapshot has been captured, but not written
+    * @pre         The warehouse isn't changing
+    * @post        The snapshot will hold the warehouse as it is now
+    * @see         Capture
+    */
+   public static Capture capture(long sequence) throws IOException {
+      synchronized (Snapshot.class) {
+         if (pending != null) {
+            throw new IllegalStateException("Another snapshot is being written");
+         }
+         Capture capture = new Capture(sequence);
+         pending = capture;
+         return capture;
+      }
+   }
+
+   /**
+    * Writes the history of the given client to memory if it is part of a snapshot that is being written, and
+    * hasn't been written yet. This is called before the history of a client changes
+    * @param       client whose history is about to change
+    * @pre         None
+    * @post        The snapshot being written will hold the history of the client as it was when it was captured
+    * @see         Client
+    */
+   static void preserve(Client client) {
+      Capture capture = pending;
+      if (capture != null) {
+         capture.preserve(client);
+      }
+   }
+
+   /**
+    * Clears the snapshot being written, once it has been written or has failed
+    * @param       capture that was being written
+    */
+   private static void finish(Capture capture) {
+      synchronized (Snapshot.class) {
+         if (pending == capture) {
+            pending = null;
+         }
+      }
+   }
+
+   /**
+    * Reads a snapshot from the given file into the Inventory, SupplierList, ClientList, and IdServer. The file is
+    * mapped into memory, and stays mapped while the history of any client hasn't been read from it
+    * @param       file to read the snapshot from
+    * @return      the sequence number of the last journal entry the snapshot holds
+    * @throws      IOException when the file doesn't hold a whole, valid, snapshot
+    * @pre         The Inventory, SupplierList, and ClientList are empty
+    * @post        The Inventory, SupplierList, ClientList, and IdServer will hold what the snapshot holds
+    * @see         Journal
+    */
+   public static long read(File file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+         if (channel.size() > MAX_LENGTH) {
+            throw new IOException(file + " is larger than the " + MAX_LENGTH + " bytes a snapshot can be");
+         }
+         return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+   }
+
+   /**
+    * Reads a snapshot from the given buffer into the Inventory, SupplierList, ClientList, and IdServer. Only the
+    * index is read, and the history of each client is read from the buffer the first time it is used
+    * @param       buffer holding the snapshot, which must not change while the history of any client hasn't been
+    *              read from it
+    * @return      the sequence number of the last journal entry the snapshot holds
+    * @throws      IOException when the buffer doesn't hold a whole, valid, snapshot
+    * @throws      IllegalStateException when the Inventory, SupplierList, or ClientList isn't empty
+    * @pre         The Inventory, SupplierList, and ClientList are empty
+    * @post        The Inventory, SupplierList, ClientList, and IdServer will hold what the snapshot holds
+    * @see         Journal
+    */
+   public static long read(ByteBuffer buffer) throws IOException {
+      if (!Inventory.instance().isEmpty() || !SupplierList.instance().isEmpty() || !ClientList.instance().isEmpty()) {
+         throw new IllegalStateException("A snapshot can only be read into an empty warehouse");
+      }
+      buffer = buffer.duplicate();
+      int limit = buffer.limit();
+      if (limit < HEADER_LENGTH + TRAILER_LENGTH || buffer.getInt(0) != MAGIC) {
+         throw new IOException("Not a warehouse snapshot");
+      }
+      int version = buffer.getInt(4);
+      if (version != VERSION) {
+         throw new IOException("Unsupported warehouse snapshot version " + version);
+      }
+      int indexOffset = buffer.getInt(limit - TRAILER_LENGTH);
+      int positionsOffset = buffer.getInt(limit - TRAILER_LENGTH + 4);
+      int positionsLength = limit - TRAILER_LENGTH - positionsOffset;
+      if (indexOffset < HEADER_LENGTH || positionsOffset < indexOffset || positionsLength < 0
+         || checksum(buffer, indexOffset, positionsOffset + positionsLength - indexOffset)
+            != buffer.getInt(limit - TRAILER_LENGTH + 8)) {
+         throw new IOException("Warehouse snapshot is damaged");
+      }
+      Input input = new Input(
+         slice(buffer, indexOffset, positionsOffset - indexOffset), new HashMap<Integer, Product>()
+      );
+      Input positions = new Input(slice(buffer, positionsOffset, positionsLength), input.products);
+
+      long sequence = input.readVarLong();
+      IdServer ids = IdServer.instance();
+      for (int kind = 0; kind < ID_KINDS; kind++) {
+         ids.advancePast(kind, input.readVarInt() - 1);
+      }
+
+      Inventory inventory = Inventory.instance();
+      for (int count = input.readVarInt(); count > 0; count--) {
+         Product product = Product.readSnapshot(input);
+         inventory.insertProduct(product);
+         input.products.put(Inventory.parseId(product.getId()), product);
+      }
+
+      SupplierList supplierList = SupplierList.instance();
+      for (int count = input.readVarInt(); count > 0; count--) {
+         supplierList.insertSupplier(Supplier.readSnapshot(input));
+      }
+
+      ClientList clientList = ClientList.instance();
+      for (int count = input.readVarInt(); count > 0; count--) {
+         Client client = Client.readSnapshot(input);
+         int offset = positions.readVarInt();
+         int length = positions.readVarInt();
+         boolean eager = positions.data.readBoolean();
+         long[] times = positions.data.readBoolean()
+            ? new long[] { positions.readVarLong(), positions.readVarLong() } : null;
+         Region history = new Region(buffer, offset, length, times, input.products);
+         if (history.offset < HEADER_LENGTH || history.length < 4 || history.offset + history.length > indexOffset) {
+            throw new IOException("Warehouse snapshot is damaged");
+         }
+         if (eager) {
+            client.readHistory(history.open(input));
+         } else {
+            client.deferHistory(history);
+         }
+         clientList.insertClient(client);
+         input.clients.add(client);
+      }
+
+      List<int[]> productWaitlists = new ArrayList<int[]>();
+      for (Iterator<Product> products = inventory.getProducts(); products.hasNext();) {
+         products.next();
+         productWaitlists.add(input.readItemIndexes());
+      }
+
+      WaitlistItem[] items = new WaitlistItem[input.readVarInt()];
+      for (int i = 0; i < items.length; i++) {
+         items[i] = WaitlistItem.readSnapshot(input);
+      }
+
+      // link the waitlisted items now that every order and item exists
+      for (int i = 0; i < input.waitlistedOrders.size(); i++) {
+         Order order = input.waitlistedOrders.get(i);
+         for (int index : input.waitlistedOrderItems.get(i)) {
+            order.addWaitlistItem(item(items, index));
+         }
+      }
+      Iterator<Product> products = inventory.getProducts();
+      for (int[] indexes : productWaitlists) {
+         Product product = products.next();
+         for (int index : indexes) {
+            product.addToWaitlist(item(items, index));
+         }
+      }
+      return sequence;
+   }
+
+   /**
+    * Queries the waitlisted item at the given position in the table of waitlisted items
+    * @param       items is the table of waitlisted items
+    * @param       index of the waitlisted item
+    * @return      the waitlisted item
+    * @throws      IOException when there is no waitlisted item at the position given
+    */
+   private static WaitlistItem item(WaitlistItem[] items, int index) throws IOException {
+      if (index >= items.length) {
+         throw new IOException("Reference to a missing waitlisted item");
+      }
+      return items[index];
+   }
+
+   /**
+    * Computes the CRC32 checksum of part of the given buffer
+    * @param       buffer holding the bytes
+    * @param       offset of the first byte
+    * @param       length of the bytes
+    * @return      the checksum of the bytes
+    */
+   private static int checksum(ByteBuffer buffer, int offset, int length) {
+      CRC32 checksum = new CRC32();
+      checksum.update(slice(buffer, offset, length));
+      return (int) checksum.getValue();
+   }
+
+   /**
+    * Makes the Output a segment of a client's archived transactions is written to, which has its own string table
+    * @param       data is the stream the segment is written to
+    * @return      the Output
+    * @see         HistoryArchive
+    */
+   static Output segmentOutput(DataOutputStream data) {
+      return new Output(data);
+   }
+
+   /**
+    * Makes the Input a segment of a client's archived transactions is read from
+    * @param       buffer holding the segment
+    * @return      the Input
+    * @see         HistoryArchive
+    */
+   static Input segmentInput(ByteBuffer buffer) {
+      return new Input(buffer, new HashMap<Integer, Product>());
+   }
+
+   /**
+    * Queries part of the given buffer, without changing the buffer
+    * @param       buffer holding the bytes
+    * @param       offset of the first byte
+    * @param       length of the bytes
+    * @return      a buffer holding only the bytes asked for
+    */
+   private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+      ByteBuffer slice = buffer.duplicate();
+      slice.limit(offset + length).position(offset);
+      return slice.slice();
+   }
+
+   /**
+    * Counts the elements of the given iterator
+    * @param       elements to be counted
+    * @return      the number of elements
+    */
+   private static int count(Iterator<?> elements) {
+      int count = 0;
+      for (; elements.hasNext(); elements.next()) {
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * A snapshot that has been captured, and is waiting to be written. It holds the index, and the histories of the
+    * clients with waitlisted orders, in memory, and writes the rest of the histories when it is written
+    */
+   public static class Capture {
+
+      /**
+       * The index, without the positions of the histories
+       */
+      private final byte[] index;
+
+      /**
+       * The clients, in the order of the index
+       */
+      private final List<Client> clients = new ArrayList<Client>();
+
+      /**
+       * The position of each client in the index
+       */
+      private final Map<Client, Integer> positions = new IdentityHashMap<Client, Integer>();
+
+      /**
+       * The history of each client, with its checksum, once it has been written to memory
+       */
+      private final byte[][] histories;
+
+      /**
+       * The history of each client within the snapshot it was read from, for the clients whose histories haven't
+       * been read
+       */
+      private final Region[] stored;
+
+      /**
+       * Whether each client's history was read with the index
+       */
+      private final boolean[] eager;
+
+      /**
+       * The times of the first and last transactions in each client's history, once it has been written to
+       * memory, or null for a history without transactions
+       */
+      private final long[][] times;
+
+      /**
+       * Whether each client's history has been written, or no longer needs to be written to memory
+       */
+      private final boolean[] taken;
+
+      /**
+       * The Output the index was written to, whose table of waitlisted items the histories share
+       */
+      private final Output indexOutput;
+
+      /**
+       * The time the snapshot was captured, in nanoseconds
+       */
+      private final long capturedAt;
+
+      /**
+       * The time spent capturing the snapshot, during which the warehouse couldn't change, in nanoseconds
+       */
+      private final long captureNanos;
+
+      /**
+       * The number of histories written so far
+       */
+      private volatile int historiesWritten;
+
+      /**
+       * The number of bytes written so far
+       */
+      private volatile long bytesWritten;
+
+      /**
+       * Constructor for the Capture, which captures the warehouse as it is now
+       * @param       sequence of the last journal entry the warehouse holds
+       * @throws      IOException when the snapshot can't be captured
+       */
+      private Capture(long sequence) throws IOException {
+         capturedAt = System.nanoTime();
+         Warehouse warehouse = Warehouse.instance();
+         ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+         indexOutput = new Output(new DataOutputStream(indexBytes));
+
+         // the owners of waitlisted items are read with the index, so their orders exist when the items are read
+         Set<Client> owners = Collections.newSetFromMap(new IdentityHashMap<Client, Boolean>());
+         for (Iterator<Product> products = warehouse.getProducts(); products.hasNext();) {
+            for (Iterator<WaitlistItem> items = products.next().getWaitlistedOrders(); items.hasNext();) {
+               owners.add(items.next().getOrder().getClient());
+            }
+         }
+
+         for (Iterator<Client> c = warehouse.getClients(); c.hasNext();) {
+            Client client = c.next();
+            indexOutput.clientPositions.put(client, clients.size());
+            positions.put(client, clients.size());
+            clients.add(client);
+         }
+         histories = new byte[clients.size()][];
+         stored = new Region[clients.size()];
+         eager = new boolean[clients.size()];
+         times = new long[clients.size()][];
+         taken = new boolean[clients.size()];
+
+         for (int i = 0; i < clients.size(); i++) {
+            Client client = clients.get(i);
+            stored[i] = client.getStoredHistory();
+            if (stored[i] == null && (owners.contains(client) || client.hasWaitlistedOrders())) {
+               histories[i] = encode(i);
+               eager[i] = true;
+            }
+            taken[i] = (stored[i] != null || eager[i]);
+         }
+
+         indexOutput.writeVarLong(sequence);
+         IdServer ids = IdServer.instance();
+         for (int kind = 0; kind < ID_KINDS; kind++) {
+            indexOutput.writeVarInt(ids.getHighWaterMark(kind));
+         }
+
+         indexOutput.writeVarInt(count(warehouse.getProducts()));
+         for (Iterator<Product> products = warehouse.getProducts(); products.hasNext();) {
+            products.next().writeSnapshot(indexOutput);
+         }
+
+         indexOutput.writeVarInt(count(warehouse.getSuppliers()));
+         for (Iterator<Supplier> suppliers = warehouse.getSuppliers(); suppliers.hasNext();) {
+            suppliers.next().writeSnapshot(indexOutput);
+         }
+
+         indexOutput.writeVarInt(clients.size());
+         for (Client client : clients) {
+            client.writeSnapshot(indexOutput);
+         }
+
+         for (Iterator<Product> products = warehouse.getProducts(); products.hasNext();) {
+            Product product = products.next();
+            indexOutput.writeVarInt(count(product.getWaitlistedOrders()));
+            for (Iterator<WaitlistItem> items = product.getWaitlistedOrders(); items.hasNext();) {
+               indexOutput.writeItem(items.next());
+            }
+         }
+
+         indexOutput.writeVarInt(indexOutput.items.size());
+         for (WaitlistItem item : indexOutput.items) {
+            item.writeSnapshot(indexOutput);
+         }
+         indexOutput.frozen = true;
+         index = indexBytes.toByteArray();
+         captureNanos = System.nanoTime() - capturedAt;
+      }
+
+      /**
+       * Writes the history of the client at the given position, followed by its checksum, to memory, along with
+       * the times of its first and last transactions
+       * @param       position of the client whose history is written
+       * @return      the history written
+       * @throws      IOException when the history can't be written
+       */
+      private byte[] encode(int position) throws IOException {
+         Client client = clients.get(position);
+         ByteArrayOutputStream history = new ByteArrayOutputStream();
+         DataOutputStream data = new DataOutputStream(history);
+         client.writeHistory(new Output(data, indexOutput));
+         times[position] = client.getTransactionTimes();
+         CRC32 checksum = new CRC32();
+         checksum.update(history.toByteArray(), 0, history.size());
+         data.writeInt((int) checksum.getValue());
+         return history.toByteArray();
+      }
+
+      /**
+       * Writes the history of the given client to memory, if it is part of this snapshot and hasn't been written
+       * @param       client whose history is about to change
+       */
+      private synchronized void preserve(Client client) {
+         Integer position = positions.get(client);
+         if (position == null || taken[position]) {
+            return;
+         }
+         try {
+            histories[position] = encode(position);
+         } catch(IOException ioe) {
+            throw new UncheckedIOException("Failed to preserve the history of client " + client.getId(), ioe);
+         }
+         taken[position] = true;
+      }
+
+      /**
+       * Queries the history of the client at the given position, writing it to memory if it hasn't been already
+       * @param       position of the client
+       * @return      the history of the client, followed by its checksum
+       * @throws      IOException when the history can't be written
+       */
+      private synchronized byte[] take(int position) throws IOException {
+         if (!taken[position]) {
+            histories[position] = encode(position);
+            taken[position] = true;
+         }
+         byte[] history = histories[position];
+         histories[position] = null;
+         return history;
+      }
+
+      /**
+       * Writes the snapshot to the given stream. The warehouse may change while it is written
+       * @param       stream to write the snapshot to
+       * @throws      IOException when the snapshot can't be written, or would be larger than a snapshot can be
+       * @pre         The snapshot hasn't been written
+       * @post        The stream will hold the snapshot
+       */
+      public void writeTo(OutputStream stream) throws IOException {
+         try {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+
+            ByteArrayOutputStream positionBytes = new ByteArrayOutputStream();
+            Output positionOutput = new Output(new DataOutputStream(positionBytes));
+            for (int i = 0; i < clients.size(); i++) {
+               int offset = data.size();
+               long[] historyTimes;
+               if (stored[i] != null) {
+                  checkRoom(data, stored[i].length);
+                  stored[i].copyTo(data);
+                  historyTimes = stored[i].times;
+               } else {
+                  byte[] history = take(i);
+                  checkRoom(data, history.length);
+                  data.write(history);
+                  historyTimes = times[i];
+               }
+               positionOutput.writeVarInt(offset);
+               positionOutput.writeVarInt(data.size() - offset);
+               positionOutput.data.writeBoolean(eager[i]);
+               positionOutput.data.writeBoolean(historyTimes != null);
+               if (historyTimes != null) {
+                  positionOutput.writeVarLong(historyTimes[0]);
+                  positionOutput.writeVarLong(historyTimes[1]);
+               }
+               historiesWritten = i + 1;
+               bytesWritten = data.size();
+            }
+
+            checkRoom(data, (long) index.length + positionBytes.size());
+            int indexOffset = data.size();
+            data.write(index);
+            int positionsOffset = data.size();
+            positionBytes.writeTo(data);
+
+            CRC32 checksum = new CRC32();
+            checksum.update(index);
+            checksum.update(positionBytes.toByteArray(), 0, positionBytes.size());
+            data.writeInt(indexOffset);
+            data.writeInt(positionsOffset);
+            data.writeInt((int) checksum.getValue());
+            data.flush();
+            bytesWritten = data.size();
+         } finally {
+            finish(this);
+         }
+      }
+
+      /**
+       * Checks that the given number of bytes can still be written without the snapshot growing past the largest
+       * snapshot that can be read, so a warehouse too large to store fails to save rather than to retrieve
+       * @param       data is the stream the snapshot is being written to
+       * @param       length of what is about to be written
+       * @throws      IOException when the snapshot would be too large
+       */
+      private static void checkRoom(DataOutputStream data, long length) throws IOException {
+         if (data.size() + length + TRAILER_LENGTH > MAX_LENGTH) {
+            throw new IOException(
+               "The warehouse is too large to be stored as a snapshot, which can't be larger than " + MAX_LENGTH
+               + " bytes"
+            );
+         }
+      }
+
+      /**
+       * Queries the number of client histories in the snapshot
+       * @return      the number of client histories
+       */
+      public int getHistoryCount() {
+         return clients.size();
+      }
+
+      /**
+       * Queries the number of client histories written so far
+       * @return      the number of client histories written
+       */
+      public int getHistoriesWritten() {
+         return historiesWritten;
+      }
+
+      /**
+       * Queries the number of bytes written so far
+       * @return      the number of bytes written
+       */
+      public long getBytesWritten() {
+         return bytesWritten;
+      }
+
+      /**
+       * Queries the time spent capturing the snapshot, during which the warehouse couldn't change
+       * @return      the time spent capturing, in nanoseconds
+       */
+      public long getCaptureNanos() {
+         return captureNanos;
+      }
+
+      /**
+       * Queries the time since the snapshot was captured
+       * @return      the time since the snapshot was captured, in nanoseconds
+       */
+      public long getAgeNanos() {
+         return System.nanoTime() - capturedAt;
+      }
+   }
+
+   /**
+    * The history of a client within a snapshot that hasn't been read yet, followed by its CRC32 checksum
+    */
+   public static class Region {
+
+      /**
+       * The snapshot the history is in
+       */
+      private final ByteBuffer buffer;
+
+      /**
+       * The position of the history in the snapshot
+       */
+      private final int offset;
+
+      /**
+       * The length of the history, including its checksum
+       */
+      private final int length;
+
+      /**
+       * The times of the first and last transactions in the history, or null for a history without transactions
+       */
+      private final long[] times;
+
+      /**
+       * The products read with the index, keyed by the number of their id
+       */
+      private final Map<Integer, Product> products;
+
+      /**
+       * Constructor for the Region
+       * @param       buffer is the snapshot the history is in
+       * @param       offset of the history in the snapshot
+       * @param       length of the history, including its checksum
+       * @param       times of the first and last transactions in the history, or null if it has none
+       * @param       products read with the index, keyed by the number of their id
+       */
+      private Region(ByteBuffer buffer, int offset, int length, long[] times, Map<Integer, Product> products) {
+         this.buffer = buffer;
+         this.offset = offset;
+         this.length = length;
+         this.times = times;
+         this.products = products;
+      }
+
+      /**
+       * Queries the times of the first and last transactions in the history, which are known without reading it
+       * @return      the times, in milliseconds since the epoch, of the first and last transactions; or null if the
+       *              history has no transactions
+       */
+      long[] getTransactionTimes() {
+         return (times == null) ? null : times.clone();
+      }
+
+      /**
+       * Opens the history for reading, after checking it isn't damaged
+       * @return      the input the history is read from
+       * @throws      IOException when the history is damaged
+       */
+      Input open() throws IOException {
+         return new Input(history(), products);
+      }
+
+      /**
+       * Opens the history for reading while the index is read, after checking it isn't damaged
+       * @param       index is the input the index is being read from, whose products and orders are shared
+       * @return      the input the history is read from
+       * @throws      IOException when the history is damaged
+       */
+      private Input open(Input index) throws IOException {
+         return new Input(history(), index);
+      }
+
+      /**
+       * Queries the history, without its checksum, after checking it isn't damaged
+       * @return      a buffer holding only the history
+       * @throws      IOException when the history is damaged
+       */
+      private ByteBuffer history() throws IOException {
+         if (checksum(buffer, offset, length - 4) != buffer.getInt(offset + length - 4)) {
+            throw new IOException("Warehouse snapshot is damaged");
+         }
+         return slice(buffer, offset, length - 4);
+      }
+
+      /**
+       * Copies the history, with its checksum, as is
+       * @param       data is the stream the history is copied to
+       * @throws      IOException when the history can't be copied
+       */
+      private void copyTo(DataOutputStream data) throws IOException {
+         byte[] bytes = new byte[length];
+         slice(buffer, offset, length).get(bytes);
+         data.write(bytes);
+      }
+   }
+
+   /**
+    * Stream the objects of the warehouse write themselves to when a snapshot is written
+    */
+   public static class Output {
+
+      /**
+       * The stream the snapshot is written to
+       */
+      private final DataOutputStream data;
+
+      /**
+       * The position of each string in the string table
+       */
+      private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+      /**
+       * The position of each waitlisted item in the table of waitlisted items
+       */
+      private final Map<WaitlistItem, Integer> itemIndexes;
+
+      /**
+       * The table of waitlisted items, in the order they were first referred to
+       */
+      private final List<WaitlistItem> items;
+
+      /**
+       * The position of each client in the index
+       */
+      private final Map<Client, Integer> clientPositions;
+
+      /**
+       * Whether the table of waitlisted items has been written, after which no item can be added to it
+       */
+      private boolean frozen;
+
+      /**
+       * Constructor for the Output the index is written to
+       * @param       data is the stream the index is written to
+       */
+      private Output(DataOutputStream data) {
+         this.data = data;
+         this.itemIndexes = new IdentityHashMap<WaitlistItem, Integer>();
+         this.items = new ArrayList<WaitlistItem>();
+         this.clientPositions = new IdentityHashMap<Client, Integer>();
+      }
+
+      /**
+       * Constructor for the Output the history of a client is written to, which has its own string table
+       * @param       data is the stream the history is written to
+       * @param       index is the Output the index is written to, whose table of waitlisted items is shared
+       */
+      private Output(DataOutputStream data, Output index) {
+         this.data = data;
+         this.itemIndexes = index.itemIndexes;
+         this.items = index.items;
+         this.clientPositions = index.clientPositions;
+         this.frozen = index.frozen;
+      }
+
+      /**
+       * Writes an integer using as few bytes as its size allows, seven bits to a byte
+       * @param       value to be written, which is expected to be small and not negative
+       * @throws      IOException when the value can't be written
+       */
+      public void writeVarInt(int value) throws IOException {
+         while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+         }
+         data.writeByte(value);
+      }
+
+      /**
+       * Writes a long using as few bytes as its size allows, seven bits to a byte
+       * @param       value to be written, which is expected to be small and not negative
+       * @throws      IOException when the value can't be written
+       */
+      public void writeVarLong(long value) throws IOException {
+         while ((value & ~0x7FL) != 0) {
+            data.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+         }
+         data.writeByte((int) value);
+      }
+
+      /**
+       * Writes an amount of money, which may be negative, as a variable length integer
+       * @param       cents is the amount to be written
+       * @throws      IOException when the value can't be written
+       * @see         Money
+       */
+      public void writeMoney(long cents) throws IOException {
+         writeVarLong((cents << 1) ^ (cents >> 63));
+      }
+
+      /**
+       * Writes a string through the string table, so a string that was already written is written as its position
+       * in the table
+       * @param       value to be written
+       * @throws      IOException when the value can't be written
+       */
+      public void writeString(String value) throws IOException {
+         Integer position = strings.get(value);
+         if (position != null) {
+            writeVarInt(position + 1);
+         } else {
+            strings.put(value, strings.size());
+            writeVarInt(0);
+            data.writeUTF(value);
+         }
+      }
+
+      /**
+       * Writes a string that is unlikely to be repeated, without adding it to the string table
+       * @param       value to be written
+       * @throws      IOException when the value can't be written
+       */
+      public void writeText(String value) throws IOException {
+         data.writeUTF(value);
+      }
+
+      /**
+       * Writes an id as the number handed out by the IdServer, without its one letter prefix
+       * @param       id to be written
+       * @throws      IOException when the id can't be written
+       * @see         IdServer
+       */
+      public void writeId(String id) throws IOException {
+         writeVarInt(Integer.parseInt(id.substring(1)));
+      }
+
+      /**
+       * Writes a waitlisted item as its position in the table of waitlisted items, adding it to the table if it
+       * hasn't been referred to yet
+       * @param       item to be written
+       * @throws      IOException when the item can't be written
+       * @see         WaitlistItem
+       */
+      public void writeItem(WaitlistItem item) throws IOException {
+         Integer position = itemIndexes.get(item);
+         if (position == null) {
+            if (frozen) {
+               throw new IOException("Waitlisted item missing from the index");
+            }
+            position = items.size();
+            itemIndexes.put(item, position);
+            items.add(item);
+         }
+         writeVarInt(position);
+      }
+
+      /**
+       * Writes an order as the position of its client in the index and the number of its id
+       * @param       order to be written
+       * @throws      IOException when the order can't be written
+       * @see         Order
+       */
+      public void writeOrder(Order order) throws IOException {
+         Integer position = clientPositions.get(order.getClient());
+         if (position == null) {
+            throw new IOException("Reference to an order of a missing client");
+         }
+         writeVarInt(position);
+         writeId(order.getId());
+      }
+   }
+
+   /**
+    * Stream the objects of the warehouse read themselves from when a snapshot is read
+    */
+   public static class Input {
+
+      /**
+       * The stream the snapshot is read from
+       */
+      private final DataInputStream data;
+
+      /**
+       * The string table, in the order the strings were first read
+       */
+      private final List<String> strings = new ArrayList<String>();
+
+      /**
+       * The products read so far, keyed by the number of their id
+       */
+      private final Map<Integer, Product> products;
+
+      /**
+       * The clients read so far, in the order of the index
+       */
+      private final List<Client> clients;
+
+      /**
+       * The orders with waitlisted items, which are linked once the waitlisted items have been read
+       */
+      private final List<Order> waitlistedOrders;
+
+      /**
+       * The positions of the waitlisted items of each order in waitlistedOrders
+       */
+      private final List<int[]> waitlistedOrderItems;
+
+      /**
+       * Constructor for the Input the index, or a history read after the index, is read from
+       * @param       buffer the index, or history, is read from
+       * @param       products read with the index, keyed by the number of their id
+       */
+      private Input(ByteBuffer buffer, Map<Integer, Product> products) {
+         this.data = new DataInputStream(new BufferInputStream(buffer));
+         this.products = products;
+         this.clients = new ArrayList<Client>();
+         this.waitlistedOrders = new ArrayList<Order>();
+         this.waitlistedOrderItems = new ArrayList<int[]>();
+      }
+
+      /**
+       * Constructor for the Input a history read with the index is read from, which has its own string table
+       * @param       buffer the history is read from
+       * @param       index is the Input the index is read from, whose products and orders are shared
+       */
+      private Input(ByteBuffer buffer, Input index) {
+         this.data = new DataInputStream(new BufferInputStream(buffer));
+         this.products = index.products;
+         this.clients = index.clients;
+         this.waitlistedOrders = index.waitlistedOrders;
+         this.waitlistedOrderItems = index.waitlistedOrderItems;
+      }
+
+      /**
+       * Reads an integer written by Output.writeVarInt
+       * @return      the value read
+       * @throws      IOException when the value can't be read
+       */
+      public int readVarInt() throws IOException {
+         int value = 0;
+         for (int shift = 0; shift < 35; shift += 7) {
+            int next = data.readUnsignedByte();
+            value |= (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+               return value;
+            }
+         }
+         throw new IOException("Malformed variable length integer");
+      }
+
+      /**
+       * Reads a long written by Output.writeVarLong
+       * @return      the value read
+       * @throws      IOException when the value can't be read
+       */
+      public long readVarLong() throws IOException {
+         long value = 0;
+         for (int shift = 0; shift < 70; shift += 7) {
+            int next = data.readUnsignedByte();
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+               return value;
+            }
+         }
+         throw new IOException("Malformed variable length integer");
+      }
+
+      /**
+       * Reads an amount of money written by Output.writeMoney
+       * @return      the amount read, in cents
+       * @throws      IOException when the value can't be read
+       * @see         Money
+       */
+      public long readMoney() throws IOException {
+         long value = readVarLong();
+         return (value >>> 1) ^ -(value & 1);
+      }
+
+      /**
+       * Reads a string written by Output.writeString
+       * @return      the value read
+       * @throws      IOException when the value can't be read
+       */
+      public String readString() throws IOException {
+         int position = readVarInt();
+         if (position == 0) {
+            String value = data.readUTF();
+            strings.add(value);
+            return value;
+         }
+         if (position > strings.size()) {
+            throw new IOException("Malformed string table reference");
+         }
+         return strings.get(position - 1);
+      }
+
+      /**
+       * Reads a string written by Output.writeText
+       * @return      the value read
+       * @throws      IOException when the value can't be read
+       */
+      public String readText() throws IOException {
+         return data.readUTF();
+      }
+
+      /**
+       * Reads an id written by Output.writeId
+       * @param       prefix of the id
+       * @return      the id read
+       * @throws      IOException when the id can't be read
+       */
+      public String readId(String prefix) throws IOException {
+         return prefix + readVarInt();
+      }
+
+      /**
+       * Reads a reference to a product, by the number of its id
+       * @return      the product referred to
+       * @throws      IOException when the product hasn't been read
+       */
+      public Product readProduct() throws IOException {
+         Product product = products.get(readVarInt());
+         if (product == null) {
+            throw new IOException("Reference to a missing product");
+         }
+         return product;
+      }
+
+      /**
+       * Reads a reference to an order written by Output.writeOrder
+       * @return      the order referred to
+       * @throws      IOException when the order hasn't been read
+       */
+      public Order readOrder() throws IOException {
+         int position = readVarInt();
+         if (position >= clients.size()) {
+            throw new IOException("Reference to an order of a missing client");
+         }
+         Order order = clients.get(position).findOrder(readId(Order.ORDER_STRING));
+         if (order == null) {
+            throw new IOException("Reference to a missing order");
+         }
+         return order;
+      }
+
+      /**
+       * Records an order that was read, so its waitlisted items can be linked to it
+       * @param       order that was read
+       * @param       itemIndexes are the positions of the order's waitlisted items in the table of waitlisted items
+       */
+      public void addOrder(Order order, int[] itemIndexes) {
+         if (itemIndexes.length != 0) {
+            waitlistedOrders.add(order);
+            waitlistedOrderItems.add(itemIndexes);
+         }
+      }
+
+      /**
+       * Reads a list of references to waitlisted items written by Output.writeItem
+       * @return      the positions of the waitlisted items in the table of waitlisted items
+       * @throws      IOException when the references can't be read
+       */
+      public int[] readItemIndexes() throws IOException {
+         int[] indexes = new int[readVarInt()];
+         for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = readVarInt();
+         }
+         return indexes;
+      }
+   }
+
+   /**
+    * Stream that reads from a buffer, such as a mapped file
+    */
+   private static class BufferInputStream extends InputStream {
+
+      /**
+       * The buffer read from
+       */
+      private final ByteBuffer buffer;
+
+      /**
+       * Constructor for the BufferInputStream
+       * @param       buffer to read from
+       */
+      private BufferInputStream(ByteBuffer buffer) {
+         this.buffer = buffer;
+      }
+
+      /**
+       * Reads the next byte
+       * @return      the byte read, or -1 at the end of the buffer
+       */
+      public int read() {
+         return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+      }
+
+      /**
+       * Reads the next bytes
+       * @param       bytes to read into
+       * @param       offset of the first byte read into
+       * @param       length of the bytes wanted
+       * @return      the number of bytes read, or -1 at the end of the buffer
+       */
+      public int read(byte[] bytes, int offset, int length) {
+         if (!buffer.hasRemaining()) {
+            return -1;
+         }
+         length = Math.min(length, buffer.remaining());
+         buffer.get(bytes, offset, length);
+         return length;
+      }
+   }
+}
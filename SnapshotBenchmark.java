@@ -0,0 +1,238 @@
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+
+/**
+ * Compares storing, and retrieving, the warehouse as a serialized Warehouse object against storing, and retrieving,
+ * it as a binary snapshot. A warehouse of the size given is built through the Warehouse, with journaling turned
+ * off, and each format is then written to, and read from, memory a number of times. Reading a snapshot is timed
+ * both with the history of every client read, and with only the index read, which is what retrieving the
+ * warehouse does before the first command
+ * <p>
+ * Usage: java SnapshotBenchmark [clients] [products] [ordersPerClient] [rounds]
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Snapshot
+ */
+public class SnapshotBenchmark {
+
+   /**
+    * The number of items each order is for
+    */
+   private static final int ITEMS_PER_ORDER = 3;
+
+   /**
+    * The number of suppliers each product is associated with
+    */
+   private static final int SUPPLIERS_PER_PRODUCT = 2;
+
+   /**
+    * The number of rounds run before the timed rounds, so the timed rounds run compiled code
+    */
+   private static final int WARMUP_ROUNDS = 3;
+
+   /**
+    * Private SnapshotBenchmark constructor, since the benchmark is only run through main
+    */
+   private SnapshotBenchmark() {}
+
+   /**
+    * The stack size of the thread the benchmark runs on, since serializing the warehouse recurses through every
+    * object reachable from it, and overflows the default stack once the warehouse is large
+    */
+   private static final long STACK_SIZE = 1L << 29;
+
+   /**
+    * Runs the benchmark on a thread with a stack large enough for serializing the warehouse
+    * @param       args are the number of clients, products, orders per client, and timed rounds
+    */
+   public static void main(final String[] args) throws InterruptedException {
+      Thread benchmark = new Thread(null, new Runnable() {
+         public void run() {
+            try {
+               benchmark(args);
+            } catch(Exception e) {
+               e.printStackTrace();
+            }
+         }
+      }, "snapshot-benchmark", STACK_SIZE);
+      benchmark.start();
+      benchmark.join();
+   }
+
+   /**
+    * Builds the warehouse, and then times both formats
+    * @param       args are the number of clients, products, orders per client, and timed rounds
+    */
+   private static void benchmark(String[] args) throws Exception {
+      int clients = argument(args, 0, 2000);
+      int products = argument(args, 1, 500);
+      int ordersPerClient = argument(args, 2, 5);
+      int rounds = argument(args, 3, 10);
+
+      Journal.instance().setEnabled(false);
+      build(clients, products, ordersPerClient);
+      System.out.println(
+         "Warehouse of " + clients + " clients, " + products + " products, and "
+         + (clients * ordersPerClient) + " orders"
+      );
+
+      byte[] serialized = writeSerialized();
+      byte[] snapshot = writeSnapshot();
+      for (int round = 0; round < WARMUP_ROUNDS; round++) {
+         writeSerialized();
+         readSerialized(serialized);
+         writeSnapshot();
+         readSnapshot(snapshot);
+         readHistories();
+      }
+
+      long serializedWrite = 0, serializedRead = 0, snapshotWrite = 0, snapshotRead = 0, historyRead = 0;
+      for (int round = 0; round < rounds; round++) {
+         long start = System.nanoTime();
+         writeSerialized();
+         serializedWrite += System.nanoTime() - start;
+
+         start = System.nanoTime();
+         readSerialized(serialized);
+         serializedRead += System.nanoTime() - start;
+
+         start = System.nanoTime();
+         writeSnapshot();
+         snapshotWrite += System.nanoTime() - start;
+
+         start = System.nanoTime();
+         readSnapshot(snapshot);
+         snapshotRead += System.nanoTime() - start;
+
+         start = System.nanoTime();
+         readHistories();
+         historyRead += System.nanoTime() - start;
+      }
+
+      System.out.printf("%-12s %12s %12s %12s%n", "format", "bytes", "write ms", "read ms");
+      report("serialized", serialized.length, serializedWrite, serializedRead, rounds);
+      report("snapshot", snapshot.length, snapshotWrite, snapshotRead + historyRead, rounds);
+      report("index only", snapshot.length, snapshotWrite, snapshotRead, rounds);
+   }
+
+   /**
+    * Parses the argument at the given position
+    * @param       args given to main
+    * @param       position of the argument
+    * @param       fallback used when the argument isn't given
+    * @return      the argument at the position given if there is one; otherwise, the fallback
+    */
+   private static int argument(String[] args, int position, int fallback) {
+      return args.length > position ? Integer.parseInt(args[position]) : fallback;
+   }
+
+   /**
+    * Builds a warehouse where every product has suppliers and some stock, and every client has processed orders,
+    * so the warehouse holds invoices, transactions, and waitlisted items
+    * @param       clients to be added
+    * @param       products to be added
+    * @param       ordersPerClient is the number of orders each client places
+    */
+   private static void build(int clients, int products, int ordersPerClient) {
+      Warehouse warehouse = Warehouse.instance();
+      Random random = new Random(42);
+
+      String[] supplierIds = new String[Math.max(1, products / 10)];
+      for (int i = 0; i < supplierIds.length; i++) {
+         supplierIds[i] = warehouse.addSupplier("Supplier " + i).getId();
+      }
+
+      String[] productIds = new String[products];
+      for (int i = 0; i < products; i++) {
+         productIds[i] = warehouse.addProduct("Product " + i, 100 + random.nextInt(10000)).getId();
+         for (int s = 0; s < SUPPLIERS_PER_PRODUCT; s++) {
+            warehouse.associateProductAndSupplier(productIds[i], supplierIds[random.nextInt(supplierIds.length)]);
+         }
+         warehouse.processShipment(productIds[i], 200 + random.nextInt(400), null);
+      }
+
+      for (int c = 0; c < clients; c++) {
+         String clientId = warehouse.addClient("Client " + c).getId();
+         for (int o = 0; o < ordersPerClient; o++) {
+            String orderId = warehouse.createOrder(clientId);
+            for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+               warehouse.addToOrder(clientId, orderId, productIds[random.nextInt(products)], 1 + random.nextInt(5));
+            }
+            warehouse.processClientOrder(clientId, orderId);
+         }
+         warehouse.acceptClientPayment(clientId, random.nextInt(10000));
+      }
+   }
+
+   /**
+    * Writes the warehouse the way it was stored before snapshots were used
+    * @return      the bytes written
+    */
+   private static byte[] writeSerialized() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream output = new ObjectOutputStream(bytes);
+      output.writeObject(Warehouse.instance());
+      output.writeObject(IdServer.instance());
+      output.writeLong(Journal.instance().getSequence());
+      output.close();
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Reads a warehouse written by writeSerialized into an empty warehouse
+    * @param       bytes written by writeSerialized
+    */
+   private static void readSerialized(byte[] bytes) throws IOException, ClassNotFoundException {
+      Warehouse.clear();
+      ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+      input.readObject();
+      IdServer.retrieve(input);
+      input.readLong();
+      input.close();
+   }
+
+   /**
+    * Writes the warehouse as a snapshot
+    * @return      the bytes written
+    */
+   private static byte[] writeSnapshot() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Snapshot.write(bytes, Journal.instance().getSequence());
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Reads a snapshot written by writeSnapshot into an empty warehouse
+    * @param       bytes written by writeSnapshot
+    */
+   private static void readSnapshot(byte[] bytes) throws IOException {
+      Warehouse.clear();
+      Snapshot.read(ByteBuffer.wrap(bytes));
+   }
+
+   /**
+    * Reads the history of every client, which a snapshot leaves until the history is first used
+    */
+   private static void readHistories() {
+      for (Iterator<Client> clients = Warehouse.instance().getClients(); clients.hasNext();) {
+         clients.next().hasOrders();
+      }
+   }
+
+   /**
+    * Prints the results for one format
+    * @param       format that was timed
+    * @param       size of the stored warehouse, in bytes
+    * @param       writeNanos is the total time spent writing
+    * @param       readNanos is the total time spent reading
+    * @param       rounds that were timed
+    */
+   private static void report(String format, int size, long writeNanos, long readNanos, int rounds) {
+      System.out.printf(
+         "%-12s %12d %12.2f %12.2f%n", format, size, writeNanos / 1e6 / rounds, readNanos / 1e6 / rounds
+      );
+   }
+}
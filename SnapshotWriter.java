@@ -0,0 +1,435 @@
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Saves the warehouse as a snapshot, either on the caller's thread or in the background. A snapshot is captured on
+ * the caller's thread, which only takes as long as writing the index, and the rest of it is written to a temporary
+ * file that then replaces the stored data, so the stored data is always a whole snapshot. Once the snapshot is
+ * stored the journal entries it holds are discarded
+ * <p>
+ * The stored data being replaced may still be mapped by the warehouse, for the client histories not yet read from
+ * it, and some platforms, such as Windows, don't let a mapped file be replaced or deleted, though they let it be
+ * renamed. So the stored data is renamed out of the way, as retired data, before the snapshot takes its place, and
+ * retired data is deleted once nothing maps it. Retrieving puts retired data back when a crash left no stored data
+ * <p>
+ * Only one snapshot is written at a time. The writer keeps track of the snapshot being written, and of how long the
+ * snapshots written took, so saving can be monitored
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Snapshot
+ * @see         Journal
+ */
+public class SnapshotWriter {
+
+   /**
+    * The end of the name of retired data, which follows the name of the stored data and a number
+    */
+   private static final String RETIRED_SUFFIX = ".old";
+
+   /**
+    * Singleton instance of self
+    */
+   private static SnapshotWriter writer;
+
+   /**
+    * The snapshot being written, or null when no snapshot is being written
+    */
+   private Snapshot.Capture current;
+
+   /**
+    * The sequence number of the last journal entry held by the snapshot being written
+    */
+   private long currentSequence;
+
+   /**
+    * The number of snapshots stored
+    */
+   private long completed;
+
+   /**
+    * The number of snapshots that failed to be stored
+    */
+   private long failed;
+
+   /**
+    * The time the last snapshot stored took to capture, during which the warehouse couldn't change, in nanoseconds
+    */
+   private long lastCaptureNanos;
+
+   /**
+    * The time the last snapshot stored took to capture, write, and store, in nanoseconds
+    */
+   private long lastDurationNanos;
+
+   /**
+    * The size of the last snapshot stored, in bytes
+    */
+   private long lastSize;
+
+   /**
+    * The sequence number of the last journal entry held by the last snapshot stored
+    */
+   private long lastSequence;
+
+   /**
+    * Private SnapshotWriter constructor
+    */
+   private SnapshotWriter() {}
+
+   /**
+    * Singleton SnapshotWriter Constructor
+    * <p>
+    * This grabs, or creates, the SnapshotWriter
+    * <p>
+    * @return the SnapshotWriter singleton instance
+    */
+   public static synchronized SnapshotWriter instance() {
+      if (writer == null) {
+         return (writer = new SnapshotWriter());
+      } else {
+         return writer;
+      }
+   }
+
+   /**
+    * Saves the warehouse on the caller's thread, after any snapshot being written in the background is stored
+    * @return      true if the snapshot was stored; otherwise, false
+    * @pre         None
+    * @post        The stored data will hold the warehouse as it is now
+    */
+   public boolean save() {
+      Snapshot.Capture capture;
+      long sequence;
+      synchronized (this) {
+         await();
+         capture = capture();
+         if (capture == null) {
+            return false;
+         }
+         sequence = currentSequence;
+      }
+      return store(capture, sequence);
+   }
+
+   /**
+    * Captures a snapshot of the warehouse on the caller's thread, and writes it on a background thread, so the
+    * warehouse can keep changing while the snapshot is written
+    * @return      true if the snapshot was captured; otherwise, false, which is the case while another snapshot is
+    *              being written
+    * @pre         None
+    * @post        The stored data will hold the warehouse as it is now, once the snapshot has been written
+    */
+   public synchronized boolean start() {
+      if (current != null) {
+         return false;
+      }
+      final Snapshot.Capture capture = capture();
+      if (capture == null) {
+         return false;
+      }
+      final long sequence = currentSequence;
+
+      // not a daemon, so the program doesn't exit halfway through writing the snapshot
+      new Thread("snapshot-writer") {
+         public void run() {
+            store(capture, sequence);
+         }
+      }.start();
+      return true;
+   }
+
+   /**
+    * Waits until the snapshot being written, if there is one, has been stored
+    * @pre         None
+    * @post        No snapshot will be being written
+    */
+   public synchronized void await() {
+      boolean interrupted = false;
+      while (current != null) {
+         try {
+            wait();
+         } catch(InterruptedException ie) {
+            interrupted = true;
+         }
+      }
+      if (interrupted) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Captures a snapshot of the warehouse, and makes it the snapshot being written. Every lock of the warehouse is
+    * held while capturing, so no change is half made, and every change journaled so far is in the snapshot. The
+    * journal is opened first, if it hasn't been, so the snapshot is numbered after any journal left by an earlier run
+    * @return      the captured snapshot if it was captured; otherwise, null
+    * @pre         The caller holds the lock on this writer, and no snapshot is being written
+    * @post        The snapshot captured will be the snapshot being written
+    */
+   private Snapshot.Capture capture() {
+      LockStripes locks = Warehouse.getLocks();
+      int[] held = locks.lockAll();
+      try {
+         Journal journal = Journal.instance();
+         journal.open();
+         currentSequence = journal.getSequence();
+         current = Snapshot.capture(currentSequence);
+         return current;
+      } catch(IOException ioe) {
+         ioe.printStackTrace();
+         failed++;
+         return null;
+      } catch(UncheckedIOException uioe) {
+         uioe.printStackTrace();
+         failed++;
+         return null;
+      } finally {
+         locks.unlock(held);
+      }
+   }
+
+   /**
+    * Writes the given snapshot to a temporary file, which then replaces the stored data, and discards the journal
+    * entries the snapshot holds
+    * @param       capture is the snapshot to be written
+    * @param       sequence of the last journal entry the snapshot holds
+    * @return      true if the snapshot was stored; otherwise, false
+    * @pre         The snapshot is the snapshot being written
+    * @post        The stored data will hold the snapshot, and no snapshot will be being written
+    */
+   private boolean store(Snapshot.Capture capture, long sequence) {
+      File stored = new File(Warehouse.DATA_FILE);
+      File temporary = new File(Warehouse.DATA_FILE + ".tmp");
+      boolean success = false;
+      try {
+         FileOutputStream file = new FileOutputStream(temporary);
+         try {
+            capture.writeTo(file);
+            file.getFD().sync();
+         } finally {
+            file.close();
+         }
+         retire(stored);
+         Files.move(temporary.toPath(), stored.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+         // the stored data now holds every journaled change up to the snapshot
+         Journal.instance().checkpoint(sequence);
+         success = true;
+         deleteRetired();
+      } catch(IOException ioe) {
+         ioe.printStackTrace();
+         temporary.delete();
+      } catch(RuntimeException re) {
+         re.printStackTrace();
+         temporary.delete();
+      }
+
+      synchronized (this) {
+         if (success) {
+            completed++;
+            lastCaptureNanos = capture.getCaptureNanos();
+            lastDurationNanos = capture.getAgeNanos();
+            lastSize = capture.getBytesWritten();
+            lastSequence = sequence;
+         } else {
+            failed++;
+         }
+         current = null;
+         notifyAll();
+      }
+      return success;
+   }
+
+   /**
+    * Renames the stored data out of the way, so the snapshot replacing it doesn't have to replace a file that may be
+    * mapped
+    * @param       stored data to be retired
+    * @throws      IOException when the stored data can't be renamed
+    * @pre         None
+    * @post        The stored data, if there was any, will have a name of its own among the retired data
+    */
+   private static void retire(File stored) throws IOException {
+      if (!stored.exists()) {
+         return;
+      }
+      int number = 0;
+      while (retired(stored, number).exists()) {
+         number++;
+      }
+      Files.move(stored.toPath(), retired(stored, number).toPath(), StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   /**
+    * Names the retired data with the given number
+    * @param       stored data the retired data was
+    * @param       number of the retired data
+    * @return      the file holding the retired data
+    */
+   private static File retired(File stored, int number) {
+      return new File(stored.getPath() + "." + number + RETIRED_SUFFIX);
+   }
+
+   /**
+    * Finds the retired data left beside the stored data
+    * @return      the files holding retired data, which may be empty
+    */
+   private static File[] findRetired() {
+      final File stored = new File(Warehouse.DATA_FILE).getAbsoluteFile();
+      File[] retired = stored.getParentFile().listFiles(new FileFilter() {
+         public boolean accept(File file) {
+            String name = file.getName();
+            return name.startsWith(stored.getName() + ".") && name.endsWith(RETIRED_SUFFIX);
+         }
+      });
+      return retired == null ? new File[0] : retired;
+   }
+
+   /**
+    * Deletes the retired data that nothing maps any more. Retired data that can't be deleted yet is left for a later
+    * save to delete
+    * @pre         None
+    * @post        The retired data that could be deleted will have been
+    */
+   private static void deleteRetired() {
+      for (File retired : findRetired()) {
+         retired.delete();
+      }
+   }
+
+   /**
+    * Puts back the retired data most recently stored, when a crash between retiring the stored data and storing the
+    * snapshot replacing it left no stored data. The journal still holds every change made after the retired data
+    * was stored, since it is only checkpointed once the snapshot is stored
+    * @throws      IOException when the retired data can't be put back
+    * @pre         No snapshot is being written
+    * @post        The stored data will be there if any retired data was
+    */
+   public static void recover() throws IOException {
+      File stored = new File(Warehouse.DATA_FILE);
+      if (stored.exists()) {
+         return;
+      }
+      File latest = null;
+      for (File retired : findRetired()) {
+         if (latest == null || retired.lastModified() > latest.lastModified()) {
+            latest = retired;
+         }
+      }
+      if (latest != null) {
+         Files.move(latest.toPath(), stored.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+   }
+
+   /**
+    * Queries the writer to find out if a snapshot is being written
+    * @return      true if a snapshot is being written; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   public synchronized boolean isRunning() {
+      return current != null;
+   }
+
+   /**
+    * Queries how much of the snapshot being written has been written
+    * @return      the fraction of the client histories written, from 0 to 1, if a snapshot is being written;
+    *              otherwise, 1
+    * @pre         None
+    * @post        None
+    */
+   public synchronized double getProgress() {
+      if (current == null) {
+         return 1;
+      }
+      int total = current.getHistoryCount();
+      return total == 0 ? 0 : (double) current.getHistoriesWritten() / total;
+   }
+
+   /**
+    * Queries the number of bytes of the snapshot being written that have been written
+    * @return      the number of bytes written if a snapshot is being written; otherwise, 0
+    * @pre         None
+    * @post        None
+    */
+   public synchronized long getBytesWritten() {
+      return current == null ? 0 : current.getBytesWritten();
+   }
+
+   /**
+    * Queries the number of snapshots stored
+    * @return      the number of snapshots stored
+    * @pre         None
+    * @post        None
+    */
+   public synchronized long getCompleted() {
+      return completed;
+   }
+
+   /**
+    * Queries the number of snapshots that failed to be stored
+    * @return      the number of snapshots that failed
+    * @pre         None
+    * @post        None
+    */
+   public synchronized long getFailed() {
+      return failed;
+   }
+
+   /**
+    * Queries the time the last snapshot stored took to capture, during which the warehouse couldn't change
+    * @return      the time taken to capture, in milliseconds
+    * @pre         None
+    * @post        None
+    */
+   public synchronized double getLastCaptureMillis() {
+      return lastCaptureNanos / 1e6;
+   }
+
+   /**
+    * Queries the time the last snapshot stored took to capture, write, and store
+    * @return      the time taken, in milliseconds
+    * @pre         None
+    * @post        None
+    */
+   public synchronized double getLastDurationMillis() {
+      return lastDurationNanos / 1e6;
+   }
+
+   /**
+    * Queries the size of the last snapshot stored
+    * @return      the size, in bytes
+    * @pre         None
+    * @post        None
+    */
+   public synchronized long getLastSize() {
+      return lastSize;
+   }
+
+   /**
+    * Queries the sequence number of the last journal entry held by the last snapshot stored
+    * @return      the sequence number
+    * @pre         None
+    * @post        None
+    */
+   public synchronized long getLastSequence() {
+      return lastSequence;
+   }
+
+   /**
+    * Generate a string when the object is used is scalar context which holds are relevent information
+    * @return      Returns the formated string of relevant information about the object
+    * @pre         None
+    * @post        None
+    */
+   public synchronized String toString() {
+      String state = (current == null)
+         ? "idle"
+         : String.format("writing %.0f%% (%d bytes)", getProgress() * 100, current.getBytesWritten());
+      return String.format(
+         "SnapshotWriter[%s; last: %.2f ms capture, %.2f ms total, %d bytes; %d stored, %d failed]",
+         state, getLastCaptureMillis(), getLastDurationMillis(), lastSize, completed, failed
+      );
+   }
+}
@@ -17,7 +17,7 @@ public class Supplier implements Serializable {
    /**
     * Used for serialization also
     */
-   private static final String SUPPLIER_STRING = "S";
+   static final String SUPPLIER_STRING = "S";
 
    /**
     * Store the id that was given from the id server
@@ -40,7 +40,19 @@ public class Supplier implements Serializable {
     */
    public Supplier(String name) {
       this.name = name;
-      this.id = SUPPLIER_STRING + (SupplierIdServer.instance()).getId();
+      this.id = SUPPLIER_STRING + (IdServer.instance()).getId(IdServer.SUPPLIER);
+      this.productIds = new LinkedList<String>();
+   }
+
+   /**
+    * Constructor for a Supplier read from a snapshot, which keeps the id it was given
+    * @param       id of the supplier
+    * @param       name of the supplier
+    * @see         Snapshot
+    */
+   private Supplier(String id, String name) {
+      this.name = name;
+      this.id = id;
       this.productIds = new LinkedList<String>();
    }
 
@@ -57,7 +69,7 @@ public class Supplier implements Serializable {
    /**
     * Query the supplier's id
     * @return      Returns the supplier's id
-    * @see         SupplierIdServer
+    * @see         IdServer
     * @pre         None
     * @post        None
     */
@@ -69,10 +81,14 @@ public class Supplier implements Serializable {
     * Set the supplier's name
     * @param      newName is what the supplier will be called after this method is called
     * @pre         None
-    * @post        The name of the supplier will be set to the newName specified
+    * @post        The name of the supplier will be set to the newName specified, and the supplier list will find
+    *              the supplier by the new name
+    * @see         SupplierList
     */
    public void setName(String newName) {
+      String oldName = name;
       name = newName;
+      SupplierList.instance().updateName(this, oldName);
    }
   
    /**
@@ -81,7 +97,7 @@ public class Supplier implements Serializable {
     * @return      Returns the supplier's id
     * @pre         None
     * @post        None
-    * @see         SupplierIdServer
+    * @see         IdServer
     */
    public boolean equals(String id) {
       return this.id.equals(id);
@@ -149,6 +165,40 @@ public class Supplier implements Serializable {
       return productIds.remove(productId);
    }
   
+   /**
+    * Writes this supplier to a snapshot
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeSnapshot(Snapshot.Output output) throws IOException {
+      output.writeId(id);
+      output.writeString(name);
+      output.writeVarInt(productIds.size());
+      for (Iterator<String> pids = productIds.iterator(); pids.hasNext();) {
+         output.writeId(pids.next());
+      }
+   }
+
+   /**
+    * Reads a supplier written by writeSnapshot
+    * @param       input is the snapshot being read
+    * @return      the supplier read
+    * @throws      IOException when the snapshot can't be read
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   static Supplier readSnapshot(Snapshot.Input input) throws IOException {
+      Supplier supplier = new Supplier(input.readId(SUPPLIER_STRING), input.readString());
+      for (int count = input.readVarInt(); count > 0; count--) {
+         supplier.productIds.add(input.readId(Product.PRODUCT_STRING));
+      }
+      return supplier;
+   }
+
    /**
     * Generate a string when the object is used is scalar context which holds are relevent information
     * @return      Returns the formated string of relevant information about the object
@@ -3,6 +3,9 @@ import java.io.*;
 
 /**
  * Collection of suppliers
+ * <p>
+ * The methods are synchronized so suppliers can be added, and searched for, from several threads at once
+ * <p>
  * @author      Shion Steel Hart <shionhart@gmail.com>
  * @version     1.0
  * @since       1.0
@@ -17,12 +20,25 @@ public class SupplierList implements Serializable {
    /**
     * Singleton instance of self
     */
-   private static SupplierList supplierList;
+   private static volatile SupplierList supplierList;
 
    /**
     * The data structure used to hold the suppliers, so SupplierList can manage
     */
    private List<Supplier> suppliers = new LinkedList<Supplier>();
+
+   /**
+    * Index of the suppliers keyed by supplier id. This isn't serialized, it is rebuilt from the list of suppliers
+    * the first time it is needed
+    */
+   private transient Map<String, Supplier> supplierIndex;
+
+   /**
+    * Index of the suppliers keyed by their lower cased name, sorted so names can be searched by prefix. Several
+    * suppliers may share a name. This isn't serialized, it is rebuilt from the list of suppliers the first time it
+    * is needed
+    */
+   private transient NavigableMap<String, List<Supplier>> nameIndex;
    
    /**
     * Private SupplierList constructor
@@ -37,11 +53,26 @@ public class SupplierList implements Serializable {
     * @return the SupplierList singleton instance 
     */
    public static SupplierList instance() {
-      if (supplierList == null) {
-         return (supplierList = new SupplierList());
-      } else {
-         return supplierList;
+      SupplierList current = supplierList;
+      if (current == null) {
+         synchronized (SupplierList.class) {
+            if (supplierList == null) {
+               supplierList = new SupplierList();
+            }
+            current = supplierList;
+         }
       }
+      return current;
+   }
+
+   /**
+    * Drops the SupplierList, so the next call to instance creates an empty one
+    * @pre         None
+    * @post        The SupplierList will be empty the next time it is used
+    * @see         Warehouse
+    */
+   static void clear() {
+      supplierList = null;
    }
 
    /**
@@ -51,19 +82,20 @@ public class SupplierList implements Serializable {
     * @post        None
     * @see         Supplier
     */
-   public boolean isEmpty() {
+   public synchronized boolean isEmpty() {
       return suppliers.size() == 0;
    }
 
    /**
     * Queries the list of suppliers
-    * @return      An iterator to navigate through the list of suppliers
+    * @return      An iterator to navigate through the list of suppliers as it is now, which isn't affected by
+    *              suppliers added while it is used
     * @pre         None
     * @post        None
     * @see         Supplier
     */
-   public Iterator<Supplier> getSuppliers(){
-      return suppliers.iterator();
+   public synchronized Iterator<Supplier> getSuppliers(){
+      return new ArrayList<Supplier>(suppliers).iterator();
    }
 
    /**
@@ -74,8 +106,34 @@ public class SupplierList implements Serializable {
     * @post        A supplier will be added to the supplier list
     * @see         Supplier
     */
-   public boolean insertSupplier(Supplier supplier) {
-      return suppliers.add(supplier);
+   public synchronized boolean insertSupplier(Supplier supplier) {
+      buildIndexes();
+      if (supplierIndex.containsKey(supplier.getId())) {
+         return false;
+      }
+      if (suppliers.add(supplier)) {
+         supplierIndex.put(supplier.getId(), supplier);
+         indexName(supplier);
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Moves a supplier within the name index after its name has changed
+    * @param       supplier whose name has changed
+    * @param       oldName the supplier was indexed under before the change
+    * @pre         None
+    * @post        The supplier will be found by its new name, and no longer by its old name
+    * @see         Supplier
+    */
+   public synchronized void updateName(Supplier supplier, String oldName) {
+      buildIndexes();
+      if (supplierIndex.get(supplier.getId()) != supplier) {
+         return;
+      }
+      unindexName(supplier, oldName);
+      indexName(supplier);
    }
 
    /**
@@ -86,14 +144,110 @@ public class SupplierList implements Serializable {
     * @post        None
     * @see         Supplier
     */
-   public Supplier find(String supplierId) {
-      for (Iterator<Supplier> allSuppliers = suppliers.iterator(); allSuppliers.hasNext();) {
-         Supplier supplier = allSuppliers.next();
-         if (supplier.getId().equals(supplierId)) {
-            return supplier;
+   public synchronized Supplier find(String supplierId) {
+      buildIndexes();
+      return supplierIndex.get(supplierId);
+   }
+
+   /**
+    * Searches for the suppliers with the given name, ignoring case
+    * @param       name of the suppliers to search for within the list of suppliers
+    * @return      An iterator to navigate through the suppliers with the given name
+    * @pre         None
+    * @post        None
+    * @see         Supplier
+    */
+   public synchronized Iterator<Supplier> findByName(String name) {
+      buildIndexes();
+      List<Supplier> named = nameIndex.get(nameKey(name));
+      if (named == null) {
+         return Collections.<Supplier>emptyList().iterator();
+      }
+      return new ArrayList<Supplier>(named).iterator();
+   }
+
+   /**
+    * Searches for the suppliers whose name starts with the given prefix, ignoring case
+    * @param       prefix of the names of the suppliers to search for within the list of suppliers
+    * @return      An iterator to navigate through the matching suppliers, ordered by name
+    * @pre         None
+    * @post        None
+    * @see         Supplier
+    */
+   public synchronized Iterator<Supplier> findByNamePrefix(String prefix) {
+      buildIndexes();
+      String key = nameKey(prefix);
+      List<Supplier> matches = new ArrayList<Supplier>();
+      for (List<Supplier> named : nameIndex.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+         matches.addAll(named);
+      }
+      return matches.iterator();
+   }
+
+   /**
+    * Converts a supplier name into the key used by the name index
+    * @param       name of a supplier
+    * @return      The key the name is indexed under
+    * @pre         None
+    * @post        None
+    */
+   private static String nameKey(String name) {
+      return name.toLowerCase(Locale.ROOT);
+   }
+
+   /**
+    * Adds the supplier to the name index under its current name
+    * @param       supplier to be added to the name index
+    * @pre         The indexes have been built
+    * @post        The supplier will be found by its current name
+    * @see         Supplier
+    */
+   private void indexName(Supplier supplier) {
+      String key = nameKey(supplier.getName());
+      List<Supplier> named = nameIndex.get(key);
+      if (named == null) {
+         named = new ArrayList<Supplier>(1);
+         nameIndex.put(key, named);
+      }
+      named.add(supplier);
+   }
+
+   /**
+    * Removes the supplier from the name index under the given name
+    * @param       supplier to be removed from the name index
+    * @param       name the supplier is indexed under
+    * @pre         The indexes have been built
+    * @post        The supplier will no longer be found by the given name
+    * @see         Supplier
+    */
+   private void unindexName(Supplier supplier, String name) {
+      String key = nameKey(name);
+      List<Supplier> named = nameIndex.get(key);
+      if (named != null) {
+         named.remove(supplier);
+         if (named.isEmpty()) {
+            nameIndex.remove(key);
+         }
+      }
+   }
+
+   /**
+    * Builds the id and name indexes from the list of suppliers if they don't exist yet
+    * (which is the case after the SupplierList has been retrieved)
+    * @pre         None
+    * @post        The indexes will hold every supplier in the list of suppliers
+    * @see         Supplier
+    */
+   private void buildIndexes() {
+      if (supplierIndex == null) {
+         supplierIndex = new HashMap<String, Supplier>();
+         nameIndex = new TreeMap<String, List<Supplier>>();
+         for (Iterator<Supplier> allSuppliers = suppliers.iterator(); allSuppliers.hasNext();) {
+            Supplier supplier = allSuppliers.next();
+            supplierIndex.put(supplier.getId(), supplier);
+            indexName(supplier);
          }
       }
-      return null;
    }
 
    /**
@@ -102,7 +256,7 @@ public class SupplierList implements Serializable {
     * @pre         None
     * @post        None
     */
-   public String toString() {
+   public synchronized String toString() {
       return suppliers.toString();
    }
   
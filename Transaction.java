@@ -15,19 +15,86 @@ public class Transaction implements Serializable {
    private static final long serialVersionUID = 1L;
 
    /**
-    * The type of the transaction
+    * The fields that are serialized, which are the type, the description rendered as text, and the date, as they
+    * were before transactions were held as events
     */
-   private String type;
+   private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("type", String.class),
+      new ObjectStreamField("description", String.class),
+      new ObjectStreamField("date", Calendar.class)
+   };
 
    /**
-    * The description for the transaction
+    * The kind of a transaction whose type and description were given as text
     */
-   private String description;
+   static final int TEXT = 0;
 
    /**
-    * The date of the transaction occuring
+    * The kind of a transaction recording an order being made
     */
-   private Calendar date;
+   static final int ORDER = 1;
+
+   /**
+    * The kind of a transaction recording an invoice being made
+    */
+   static final int INVOICE = 2;
+
+   /**
+    * The kind of a transaction recording a charge to the balance
+    */
+   static final int CHARGE = 3;
+
+   /**
+    * The kind of a transaction recording a payment towards the balance
+    */
+   static final int PAYMENT = 4;
+
+   /**
+    * The time the transactions made on each thread occur at, while a change to the warehouse has pinned it, so every
+    * transaction of the change, and the journal entry of the change, have the same time; otherwise, null, so
+    * transactions occur when they are made
+    */
+   private static final ThreadLocal<Long> pinnedTime = new ThreadLocal<Long>();
+
+   /**
+    * The kind of the transaction, which decides what the other fields hold
+    */
+   private transient int kind;
+
+   /**
+    * The type of the transaction, for a transaction given as text; otherwise, null
+    */
+   private transient String type;
+
+   /**
+    * The description of the transaction, for a transaction given as text; otherwise, null
+    */
+   private transient String description;
+
+   /**
+    * The id of the order, or invoice, the transaction refers to; otherwise, null
+    */
+   private transient String reference;
+
+   /**
+    * The number of items of the order, or invoice, when the transaction occured
+    */
+   private transient int count;
+
+   /**
+    * The cost of the invoice, or the amount charged or paid, in cents
+    */
+   private transient long amount;
+
+   /**
+    * The balance of the client once the amount was charged or paid, in cents
+    */
+   private transient long balance;
+
+   /**
+    * The time of the transaction occuring, in milliseconds since the epoch
+    */
+   private transient long millis;
 
    /**
     * Constructor for the Transaction
@@ -35,10 +102,126 @@ public class Transaction implements Serializable {
     * @param       description of the transactions that is occuring
     */
    public Transaction (String type, String description) {
+      this(TEXT, null, 0, 0, 0, now());
       this.type = type;
       this.description = description;
-      date = new GregorianCalendar();
-      date.setTimeInMillis(System.currentTimeMillis());
+   }
+
+   /**
+    * Constructor for a Transaction held as an event, whose description is only rendered when it is asked for
+    * @param       kind of the transaction
+    * @param       reference is the id of the order, or invoice, the transaction refers to
+    * @param       count of the items of the order, or invoice
+    * @param       amount of the transaction, in cents
+    * @param       balance of the client once the amount was charged or paid, in cents
+    * @param       millis is the time the transaction occured, in milliseconds since the epoch
+    */
+   private Transaction(int kind, String reference, int count, long amount, long balance, long millis) {
+      this.kind = kind;
+      this.reference = reference;
+      this.count = count;
+      this.amount = amount;
+      this.balance = balance;
+      this.millis = millis;
+   }
+
+   /**
+    * Queries the time transactions made now occur at
+    * @return      the time pinned on this thread if there is one; otherwise, the current time, in milliseconds since
+    *              the epoch
+    * @pre         None
+    * @post        None
+    */
+   static long now() {
+      Long pinned = pinnedTime.get();
+      return (pinned == null) ? System.currentTimeMillis() : pinned.longValue();
+   }
+
+   /**
+    * Pins the time the transactions made on this thread occur at to now, keeping a time that is already pinned,
+    * such as the time of a journal entry being replayed
+    * @return      the time pinned before, or null if there was none, to be given to restoreTime once the change is
+    *              made
+    * @pre         None
+    * @post        Transactions made on this thread will occur at the pinned time until restoreTime is called
+    */
+   static Long pinTime() {
+      return pinTime(now());
+   }
+
+   /**
+    * Pins the time the transactions made on this thread occur at
+    * @param       millis is the time to be pinned, in milliseconds since the epoch
+    * @return      the time pinned before, or null if there was none, to be given to restoreTime once the change is
+    *              made
+    * @pre         None
+    * @post        Transactions made on this thread will occur at the pinned time until restoreTime is called
+    */
+   static Long pinTime(long millis) {
+      Long previous = pinnedTime.get();
+      pinnedTime.set(Long.valueOf(millis));
+      return previous;
+   }
+
+   /**
+    * Restores the time pinned on this thread before pinTime was called
+    * @param       previous is the time pinTime returned
+    * @pre         None
+    * @post        Transactions made on this thread will occur at the previous pinned time, or when they are made
+    */
+   static void restoreTime(Long previous) {
+      if (previous == null) {
+         pinnedTime.remove();
+      } else {
+         pinnedTime.set(previous);
+      }
+   }
+
+   /**
+    * Makes the transaction recording an order being received
+    * @param       order that was received
+    * @return      the transaction, occuring now
+    * @pre         None
+    * @post        None
+    */
+   static Transaction order(Order order) {
+      return new Transaction(ORDER, order.getId(), order.getRecordCount(), 0, 0, now());
+   }
+
+   /**
+    * Makes the transaction recording an invoice being created
+    * @param       invoice that was created
+    * @param       cost of the invoice, in cents
+    * @return      the transaction, occuring now
+    * @pre         None
+    * @post        None
+    */
+   static Transaction invoice(Invoice invoice, long cost) {
+      return new Transaction(INVOICE, invoice.getId(), invoice.getRecordCount(), cost, 0, now());
+   }
+
+   /**
+    * Makes the transaction recording a charge being applied
+    * @param       amount charged, in cents
+    * @param       balance once the charge was applied, in cents
+    * @return      the transaction, occuring now
+    * @pre         None
+    * @post        None
+    */
+   static Transaction charge(long amount, long balance) {
+      return new Transaction(CHARGE, null, 0, amount, balance, now());
+   }
+
+   /**
+    * Makes the transaction recording a payment being received
+    * @param       amount paid, in cents
+    * @param       balance once the payment was received, in cents
+    * @return      the transaction, occuring now
+    * @pre         None
+    * @post        None
+    */
+   static Transaction payment(long amount, long balance) {
+      return new Transaction(PAYMENT, null, 0, amount, balance, now());
    }
 
    /**
@@ -50,9 +233,10 @@ public class Transaction implements Serializable {
     * @see         Calendar
     */
    public boolean onDate(Calendar date) {
-      return ((date.get(Calendar.YEAR)  == this.date.get(Calendar.YEAR)) &&
-              (date.get(Calendar.MONTH) == this.date.get(Calendar.MONTH)) &&
-              (date.get(Calendar.DATE)  == this.date.get(Calendar.DATE)));
+      Calendar occured = calendar();
+      return ((date.get(Calendar.YEAR)  == occured.get(Calendar.YEAR)) &&
+              (date.get(Calendar.MONTH) == occured.get(Calendar.MONTH)) &&
+              (date.get(Calendar.DATE)  == occured.get(Calendar.DATE)));
    }
   
    /**
@@ -62,17 +246,43 @@ public class Transaction implements Serializable {
     * @post        None
     */
    public String getType() {
-      return type;
+      switch (kind) {
+         case ORDER:   return "ORDER";
+         case INVOICE: return "INVOICE";
+         case CHARGE:
+         case PAYMENT: return "BILLING";
+         default:      return type;
+      }
    }
    
    /**
-    * Query the transaction's description
+    * Query the transaction's description, which is rendered from the event each time it is asked for
     * @return      Returns the transaction's description
     * @pre         None
     * @post        None
     */
    public String getDescription() {
-      return description;
+      switch (kind) {
+         case ORDER:
+            return String.format("Order recieved: [[%s] is an order with [%d] items]", reference, count);
+         case INVOICE:
+            return String.format(
+               "Invoice created: [[%s] is an invoice for [%d] item(s)], total cost: [%s]",
+               reference, count, Money.format(amount)
+            );
+         case CHARGE:
+            return String.format(
+               "Charge was applied for [%s]. Updated balance on account [%s]",
+               Money.format(amount), Money.format(balance)
+            );
+         case PAYMENT:
+            return String.format(
+               "Payment was received for [%s]. Remaining balance on account [%s]",
+               Money.format(amount), Money.format(balance)
+            );
+         default:
+            return description;
+      }
    }
   
    /**
@@ -82,9 +292,138 @@ public class Transaction implements Serializable {
     * @post        None
     */
    public String getDate() {
+      Calendar date = calendar();
       return date.get(Calendar.MONTH) + "/" + date.get(Calendar.DATE) + "/" + date.get(Calendar.YEAR);
    }
+
+   /**
+    * Query the time of the transaction
+    * @return      Returns the time the transaction occured, in milliseconds since the epoch
+    * @pre         None
+    * @post        None
+    */
+   public long getTime() {
+      return millis;
+   }
+
+   /**
+    * Moves the time of the transaction forward to the given time, if it occured before it
+    * @param       time the transaction can't occur before, in milliseconds since the epoch
+    * @pre         None
+    * @post        The transaction will occur at, or after, the time given
+    */
+   void notBefore(long time) {
+      millis = Math.max(millis, time);
+   }
+
+   /**
+    * Makes a calendar set to the time of the transaction
+    * @return      the calendar
+    */
+   private Calendar calendar() {
+      Calendar date = new GregorianCalendar();
+      date.setTimeInMillis(millis);
+      return date;
+   }
   
+   /**
+    * Writes this transaction to a snapshot, as its kind followed by what that kind of transaction holds
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeSnapshot(Snapshot.Output output) throws IOException {
+      output.writeVarInt(kind);
+      switch (kind) {
+         case ORDER:
+            output.writeId(reference);
+            output.writeVarInt(count);
+            break;
+         case INVOICE:
+            output.writeId(reference);
+            output.writeVarInt(count);
+            output.writeMoney(amount);
+            break;
+         case CHARGE:
+         case PAYMENT:
+            output.writeMoney(amount);
+            output.writeMoney(balance);
+            break;
+         default:
+            output.writeString(type);
+            output.writeText(description);
+      }
+      output.writeVarLong(millis);
+   }
+
+   /**
+    * Reads a transaction written by writeSnapshot
+    * @param       input is the snapshot being read
+    * @return      the transaction read
+    * @throws      IOException when the snapshot can't be read
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   static Transaction readSnapshot(Snapshot.Input input) throws IOException {
+      int kind = input.readVarInt();
+      Transaction transaction;
+      switch (kind) {
+         case ORDER:
+            transaction = new Transaction(ORDER, input.readId(Order.ORDER_STRING), input.readVarInt(), 0, 0, 0);
+            break;
+         case INVOICE:
+            transaction = new Transaction(
+               INVOICE, input.readId(Invoice.INVOICE_STRING), input.readVarInt(), input.readMoney(), 0, 0
+            );
+            break;
+         case CHARGE:
+         case PAYMENT:
+            transaction = new Transaction(kind, null, 0, input.readMoney(), input.readMoney(), 0);
+            break;
+         case TEXT:
+            transaction = new Transaction(TEXT, null, 0, 0, 0, 0);
+            transaction.type = input.readString();
+            transaction.description = input.readText();
+            break;
+         default:
+            throw new IOException("Unknown transaction kind " + kind);
+      }
+      transaction.millis = input.readVarLong();
+      return transaction;
+   }
+
+   /**
+    * Helper function for the store function in Warehouse, which will be used during serialization
+    * @throws      IOException when the serialized output stream fails to write successfully
+    * @pre         None
+    * @post        This transaction will have been written with its description rendered
+    */
+   private void writeObject(ObjectOutputStream output) throws IOException {
+      ObjectOutputStream.PutField fields = output.putFields();
+      fields.put("type", getType());
+      fields.put("description", getDescription());
+      fields.put("date", calendar());
+      output.writeFields();
+   }
+
+   /**
+    * Helper function for the retrieve function in Warehouse, which will be used during deserialization
+    * @throws      IOException when the serialized input stream fails to read successfully
+    * @throws      ClassNotFoundException when a serialized class can't be found
+    * @pre         None
+    * @post        This transaction will have been read as text
+    */
+   private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = input.readFields();
+      kind = TEXT;
+      type = (String) fields.get("type", null);
+      description = (String) fields.get("description", null);
+      millis = ((Calendar) fields.get("date", null)).getTimeInMillis();
+   }
+
    /**
     * Generate a string when the object is used is scalar context which holds are relevent information
     * @return      Returns the formated string of relevant information about the object
@@ -92,6 +431,6 @@ public class Transaction implements Serializable {
     * @post        None
     */
    public String toString(){
-      return String.format("%s\t%10s\t%s", getDate(), type, description);
+      return String.format("%s\t%10s\t%s", getDate(), getType(), getDescription());
    }
 }
\ No newline at end of file
@@ -84,6 +84,9 @@ public class Ui {
                return tokenizer.nextToken();
             }
          } catch (IOException ioe) {
+
+            // exiting stops a snapshot being saved in the background halfway, so it is waited for
+            SnapshotWriter.instance().await();
             System.exit(0);
          }
       } while (true);
@@ -223,10 +226,10 @@ public class Ui {
     */
    public void addProduct() {
       String name = getToken("Enter product name");
-      float price;
+      long price;
       do {
          String sprice = getToken("Enter product price");
-         price = Float.parseFloat(sprice);
+         price = Money.parse(sprice);
          if (price < 0) {
             System.out.println("Invalid product price, price must be greater than 0. Please try again.");
          }
@@ -461,8 +464,12 @@ public class Ui {
          System.out.println("Client id: " + clientId + " has invoice(s)");
          for (Iterator<Invoice> invoices = warehouse.getInvoices(clientId); invoices.hasNext();) {
             Invoice invoice = invoices.next();
-            System.out.println("\t" + invoice);
+            System.out.println("\t" + invoice + ", total cost: [" + Money.format(invoice.calculateCost()) + "]");
          }
+         System.out.println(
+            "Invoiced: [" + Money.format(client.getInvoicedTotal()) + "], paid: [" + Money.format(client.getPaidTotal())
+            + "], outstanding: [" + Money.format(client.getOutstanding()) + "]"
+         );
       }
       else {
          System.out.println("Client id: " + clientId + " doesn't have any invoices.");
@@ -618,19 +625,19 @@ public class Ui {
       } while (client == null);
 
       String clientBalance = warehouse.getClientBalanceStr(clientId);
-      float currentBalance = warehouse.getClientBalance(clientId);
-      float payment;
+      long currentBalance = warehouse.getClientBalance(clientId);
+      long payment;
       boolean paymentLtZero;
       boolean paymentGtBalance;
       do {
          String spayment = getToken("Enter payment amount to apply to account");
-         payment = Float.parseFloat(spayment);
+         payment = Money.parse(spayment);
 
          // This means payment is less than 0
-         paymentLtZero = (Float.compare(payment, 0) < 0);
+         paymentLtZero = (Long.compare(payment, 0) < 0);
          
          // this means payment > clientBalance
-         paymentGtBalance = (Float.compare(payment, currentBalance) > 0);
+         paymentGtBalance = (Long.compare(payment, currentBalance) > 0);
          if (paymentLtZero) {
             System.out.println("Invalid payment amount, payment must be greater than 0. Please try again.");
          }
@@ -647,8 +654,8 @@ public class Ui {
             break;
          case Warehouse.SUCCESS:
             System.out.println(String.format(
-               "Payment [$%.2f] has been accepted and applyed to client id [%s]'s account.",
-               payment, clientId
+               "Payment [%s] has been accepted and applyed to client id [%s]'s account.",
+               Money.format(payment), clientId
             ));
             break;
          default:
@@ -830,7 +837,7 @@ public class Ui {
 
          for (Iterator<Client> clients = warehouse.getClientsWithUnpaidBalance(); clients.hasNext();) {
             Client client = clients.next();
-            System.out.println("\t" + client);
+            System.out.println("\t" + client + ", outstanding: [" + client.getFormattedBalance() + "]");
          }
       }
       else {
@@ -948,10 +955,10 @@ public class Ui {
     * Helper function to save the system's data into a file
     */
    private void save() {
-      if (warehouse.save()) {
-         System.out.println("The warehouse has been successfully saved in the file WarehouseData\n");
+      if (Warehouse.saveInBackground()) {
+         System.out.println("The warehouse is being saved in the file WarehouseData in the background\n");
       } else {
-         System.out.println("There has been an error in saving\n");
+         System.out.println("The warehouse is already being saved; try again once it is done\n");
       }
    }
 
@@ -959,6 +966,10 @@ public class Ui {
     * Helper function to retrieve the system's data from a file
     */
    private void retrieve() {
+      if (Warehouse.isInUse()) {
+         System.out.println("The warehouse is already in use, so the stored data wasn't retrieved\n");
+         return;
+      }
       try {
          Warehouse tempWarehouse = Warehouse.retrieve();
          
@@ -0,0 +1,119 @@
+import java.util.*;
+
+/**
+ * Shows that walking the waitlists costs the same however long the warehouse has been running. Every period each
+ * client places orders that nothing is in stock for, so they are waitlisted, and a shipment then fills exactly what
+ * was waitlisted the period before. The waitlists should hold one period's orders at any time, so walking every
+ * client's waitlisted orders, and every item of those orders, should take as long in the last period as in the
+ * first. Filled items that stayed on their order made the walk grow with every period
+ * <p>
+ * Usage: java WaitlistBenchmark [clients] [products] [ordersPerPeriod] [periods]
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Order
+ * @see         WaitlistQueue
+ */
+public class WaitlistBenchmark {
+
+   /**
+    * The number of items each order is for
+    */
+   private static final int ITEMS_PER_ORDER = 3;
+
+   /**
+    * The number of times the waitlists are walked each period, so the time taken is long enough to measure
+    */
+   private static final int WALKS = 50;
+
+   /**
+    * Private WaitlistBenchmark constructor, since the benchmark is only run through main
+    */
+   private WaitlistBenchmark() {}
+
+   /**
+    * Runs the periods, timing the walk of the waitlists after each one
+    * @param       args are the number of clients, products, orders per period, and periods
+    */
+   public static void main(String[] args) {
+      int clients = argument(args, 0, 500);
+      int products = argument(args, 1, 100);
+      int ordersPerPeriod = argument(args, 2, 2000);
+      int periods = argument(args, 3, 20);
+
+      Journal.instance().setEnabled(false);
+      Warehouse warehouse = Warehouse.instance();
+      Random random = new Random(42);
+      String[] productIds = new String[products];
+      for (int i = 0; i < products; i++) {
+         productIds[i] = warehouse.addProduct("Product " + i, 100 + random.nextInt(10000)).getId();
+      }
+      String[] clientIds = new String[clients];
+      for (int c = 0; c < clients; c++) {
+         clientIds[c] = warehouse.addClient("Client " + c).getId();
+      }
+      System.out.println(
+         "Warehouse of " + clients + " clients, and " + products + " products, waitlisting " + ordersPerPeriod
+         + " orders a period"
+      );
+
+      System.out.printf("%-8s %10s %12s %12s %12s%n", "period", "orders", "outstanding", "walked", "us/walk");
+      int[] waitlisted = new int[products];
+      for (int period = 1; period <= periods; period++) {
+
+         // fill what the period before waitlisted, which every period but the first has
+         Shipment shipment = new Shipment();
+         for (int i = 0; i < products; i++) {
+            if (waitlisted[i] > 0) {
+               shipment.add(productIds[i], waitlisted[i]);
+            }
+         }
+         warehouse.receiveShipment(shipment);
+
+         Arrays.fill(waitlisted, 0);
+         for (int o = 0; o < ordersPerPeriod; o++) {
+            String clientId = clientIds[random.nextInt(clients)];
+            String orderId = warehouse.createOrder(clientId);
+            for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+               int product = random.nextInt(products);
+               int quantity = 1 + random.nextInt(5);
+               warehouse.addToOrder(clientId, orderId, productIds[product], quantity);
+               waitlisted[product] += quantity;
+            }
+            warehouse.processClientOrder(clientId, orderId);
+         }
+
+         int orders = 0, outstanding = 0, walked = 0;
+         long start = System.nanoTime();
+         for (int walk = 0; walk < WALKS; walk++) {
+            orders = 0;
+            outstanding = 0;
+            walked = 0;
+            for (String clientId : clientIds) {
+               for (Iterator<Order> waitlist = warehouse.getClientWaitlistedOrders(clientId); waitlist.hasNext();) {
+                  Order order = waitlist.next();
+                  orders++;
+                  outstanding += order.getWaitlistedItemCount();
+                  for (Iterator<WaitlistItem> items = order.getWaitlistedItems(); items.hasNext(); items.next()) {
+                     walked++;
+                  }
+               }
+            }
+         }
+         long nanos = System.nanoTime() - start;
+         System.out.printf("%-8d %10d %12d %12d %12.1f%n", period, orders, outstanding, walked, nanos / 1e3 / WALKS);
+      }
+   }
+
+   /**
+    * Parses the argument at the given position
+    * @param       args given to main
+    * @param       position of the argument
+    * @param       fallback used when the argument isn't given
+    * @return      the argument at the position given if there is one; otherwise, the fallback
+    */
+   private static int argument(String[] args, int position, int fallback) {
+      return args.length > position ? Integer.parseInt(args[position]) : fallback;
+   }
+}
@@ -29,6 +29,22 @@ public class WaitlistItem implements Serializable {
     * The quantity of the product that is being waited for
     */
    private int quantity;
+
+   /**
+    * The waitlist this item is in, or null when it isn't waitlisted. This, and the links to the items around it,
+    * belong to the waitlist, and aren't serialized, since the waitlist is serialized as a list
+    */
+   transient WaitlistQueue queue;
+
+   /**
+    * The item waitlisted before this item in its waitlist
+    */
+   transient WaitlistItem previousInQueue;
+
+   /**
+    * The item waitlisted after this item in its waitlist
+    */
+   transient WaitlistItem nextInQueue;
    
    /**
     * Constructor for the WaitlistItem
@@ -83,6 +99,33 @@ public class WaitlistItem implements Serializable {
       quantity -= amount;
    }
 
+   /**
+    * Writes this waitlisted item to a snapshot, referring to its product and order by id
+    * @param       output is the snapshot being written
+    * @throws      IOException when the snapshot can't be written
+    * @pre         None
+    * @post        None
+    * @see         Snapshot
+    */
+   void writeSnapshot(Snapshot.Output output) throws IOException {
+      output.writeId(product.getId());
+      output.writeOrder(order);
+      output.writeVarInt(quantity);
+   }
+
+   /**
+    * Reads a waitlisted item written by writeSnapshot
+    * @param       input is the snapshot being read
+    * @return      the waitlisted item read
+    * @throws      IOException when the snapshot can't be read
+    * @pre         The waitlisted item's product and order have been read
+    * @post        None
+    * @see         Snapshot
+    */
+   static WaitlistItem readSnapshot(Snapshot.Input input) throws IOException {
+      return new WaitlistItem(input.readProduct(), input.readOrder(), input.readVarInt());
+   }
+
    /**
     * Generate a string when the object is used is scalar context which holds are relevent information
     * @return      Returns the formated string of relevant information about the object
@@ -0,0 +1,159 @@
+import java.util.*;
+
+/**
+ * The waitlist of a product, kept in the order the items were waitlisted. The items are linked to each other
+ * through fields of the items themselves, so adding an item, looking at the first item, and removing any item
+ * takes the same time however long the waitlist is, and no node is made for each item
+ * <p>
+ * An item is only ever in one waitlist, the waitlist of its product
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         WaitlistItem
+ * @see         Product
+ */
+public class WaitlistQueue implements Iterable<WaitlistItem> {
+
+   /**
+    * The item waitlisted first, or null when the waitlist is empty
+    */
+   private WaitlistItem head;
+
+   /**
+    * The item waitlisted last, or null when the waitlist is empty
+    */
+   private WaitlistItem tail;
+
+   /**
+    * The number of items in the waitlist
+    */
+   private int size;
+
+   /**
+    * Adds an item to the end of the waitlist
+    * @param       item to be added
+    * @pre         The item isn't in a waitlist
+    * @post        The item will be the last item of the waitlist
+    * @throws      IllegalStateException when the item is already in a waitlist
+    */
+   public void add(WaitlistItem item) {
+      if (item.queue != null) {
+         throw new IllegalStateException("The item is already waitlisted");
+      }
+      item.queue = this;
+      item.previousInQueue = tail;
+      item.nextInQueue = null;
+      if (tail == null) {
+         head = item;
+      } else {
+         tail.nextInQueue = item;
+      }
+      tail = item;
+      size++;
+   }
+
+   /**
+    * Queries the item waitlisted first
+    * @return      the first item if the waitlist has items; otherwise, null
+    * @pre         None
+    * @post        None
+    */
+   public WaitlistItem peek() {
+      return head;
+   }
+
+   /**
+    * Removes an item from the waitlist, wherever it is in the waitlist
+    * @param       item to be removed
+    * @return      true if the item was in this waitlist; otherwise, false
+    * @pre         None
+    * @post        The item will no longer be in the waitlist
+    */
+   public boolean remove(WaitlistItem item) {
+      if (item.queue != this) {
+         return false;
+      }
+      if (item.previousInQueue == null) {
+         head = item.nextInQueue;
+      } else {
+         item.previousInQueue.nextInQueue = item.nextInQueue;
+      }
+      if (item.nextInQueue == null) {
+         tail = item.previousInQueue;
+      } else {
+         item.nextInQueue.previousInQueue = item.previousInQueue;
+      }
+      item.queue = null;
+      item.previousInQueue = null;
+      item.nextInQueue = null;
+      size--;
+      return true;
+   }
+
+   /**
+    * Queries whether the given item is in this waitlist
+    * @param       item to be checked
+    * @return      true if the item is in this waitlist; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   public boolean contains(WaitlistItem item) {
+      return item.queue == this;
+   }
+
+   /**
+    * Queries the number of items in the waitlist
+    * @return      the number of items
+    * @pre         None
+    * @post        None
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Queries whether the waitlist is empty
+    * @return      true if there are no items in the waitlist; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   /**
+    * Queries the items of the waitlist
+    * @return      An iterator to navigate through the items, in the order they were waitlisted, which may remove
+    *              the item it last returned
+    * @pre         None
+    * @post        None
+    */
+   public Iterator<WaitlistItem> iterator() {
+      return new Iterator<WaitlistItem>() {
+         private WaitlistItem next = head;
+         private WaitlistItem last;
+
+         public boolean hasNext() {
+            return next != null;
+         }
+
+         public WaitlistItem next() {
+            if (next == null) {
+               throw new NoSuchElementException();
+            }
+            last = next;
+            next = next.nextInQueue;
+            return last;
+         }
+
+         public void remove() {
+            if (last == null) {
+               throw new IllegalStateException();
+            }
+            WaitlistQueue.this.remove(last);
+            last = null;
+         }
+      };
+   }
+}
@@ -1,10 +1,19 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.text.*;
 import java.io.*;
 
 
 /**
  * The Facade to the entire system
+ * <p>
+ * The facade may be used by many threads at once. Each call takes the locks for the clients, products, and
+ * suppliers it works on, from a fixed set of locks the ids are spread across, so calls working on different
+ * clients and products run side by side. The locks are always taken in the same order, and a call that only
+ * learns which products, or which client, it needs once it has looked at an order or a waitlist takes its locks
+ * again with them all, so two calls never wait on each other. Objects handed out by the facade are only safe to
+ * change through the facade
+ * <p>
  * @author      Shion Steel Hart <shionhart@gmail.com>
  * @version     1.0
  * @since       1.0
@@ -16,10 +25,30 @@ public class Warehouse implements Serializable {
     */
    private static final long serialVersionUID = 1L;
 
+   /**
+    * The file the warehouse is stored in
+    */
+   public static final String DATA_FILE = "WarehouseData";
+
    /**
     * Singleton instance of self
     */
-   private static Warehouse warehouse;
+   private static volatile Warehouse warehouse;
+
+   /**
+    * The number of locks the ids of the clients, products, and suppliers are spread across
+    */
+   private static final int LOCK_STRIPES = 64;
+
+   /**
+    * The locks guarding the clients, products, and suppliers, keyed by their ids
+    */
+   private static final LockStripes locks = new LockStripes(LOCK_STRIPES);
+
+   /**
+    * Times, and counts, the calls made to the warehouse
+    */
+   private static final WarehouseMetrics metrics = WarehouseMetrics.instance();
 
    /**
     * Used to manage the clients
@@ -59,27 +88,70 @@ public class Warehouse implements Serializable {
    /**
     * Singleton Warehouse Constructor
     * <p>
-    * This grabs, or creates, the following instances: 
-    * ProductIdServer, SupplierIdServer, ClientIdServer, OrderIdServer, and 
-    * InvoiceIdServer. All of which are managed by the Warehouse.
+    * This grabs, or creates, the IdServer, which is managed by the Warehouse.
     * <p>
     * @return the Warehouse singleton instance 
     */
    public static Warehouse instance() {
-      if (warehouse == null) {
-
-         // instantiate all singletons
-         ProductIdServer.instance(); 
-         SupplierIdServer.instance(); 
-         ClientIdServer.instance(); 
-         OrderIdServer.instance(); 
-         InvoiceIdServer.instance(); 
-
-         return (warehouse = new Warehouse());
-      } 
-      else {
-         return warehouse;
+      Warehouse current = warehouse;
+      if (current == null) {
+         synchronized (Warehouse.class) {
+            if (warehouse == null) {
+
+               // instantiate all singletons
+               IdServer.instance(); 
+
+               warehouse = new Warehouse();
+            }
+            current = warehouse;
+         }
       }
+      return current;
+   }
+
+   /**
+    * Queries the locks guarding the clients, products, and suppliers, so the whole warehouse can be held still
+    * while a snapshot of it is captured
+    * @return      the locks guarding the clients, products, and suppliers
+    * @pre         None
+    * @post        None
+    * @see         SnapshotWriter
+    */
+   static LockStripes getLocks() {
+      return locks;
+   }
+
+   /**
+    * Copies what the given iterator navigates through, so it can be navigated through once the locks guarding
+    * it have been released
+    * @param       items to be copied
+    * @return      An iterator to navigate through the copy
+    * @pre         The caller holds the locks guarding the items
+    * @post        None
+    */
+   private static <T> Iterator<T> copyOf(Iterator<T> items) {
+      List<T> copy = new ArrayList<T>();
+      while (items.hasNext()) {
+         copy.add(items.next());
+      }
+      return copy.iterator();
+   }
+
+   /**
+    * Drops the warehouse and everything in it, so stored data can be loaded into an empty warehouse
+    * @pre         None
+    * @post        The warehouse, inventory, supplier list, and client list will be empty, and the IdServer will
+    *              start over, the next time they are used
+    */
+   static void clear() {
+
+      // the clients handed over to be archived are archived first, so nothing is archived for a dropped warehouse
+      HistoryArchive.instance().await();
+      warehouse = null;
+      Inventory.clear();
+      SupplierList.clear();
+      ClientList.clear();
+      IdServer.clear();
    }
 
    /**
@@ -90,7 +162,12 @@ public class Warehouse implements Serializable {
     * @see         Client
     * @see         ClientList
     */
-   public boolean hasClients() { return !clientList.isEmpty(); }
+   public boolean hasClients() {
+      long start = metrics.start();
+      boolean has = !clientList.isEmpty();
+      metrics.record(WarehouseMetrics.HAS_CLIENTS, SUCCESS, start);
+      return has;
+   }
 
    /**
     * Queries the inventory to find out if it has products in the inventory
@@ -100,7 +177,12 @@ public class Warehouse implements Serializable {
     * @see         Product
     * @see         Inventory
     */
-   public boolean hasProducts() { return !inventory.isEmpty(); }
+   public boolean hasProducts() {
+      long start = metrics.start();
+      boolean has = !inventory.isEmpty();
+      metrics.record(WarehouseMetrics.HAS_PRODUCTS, SUCCESS, start);
+      return has;
+   }
 
    /**
     * Queries the supplier list to find out if it has suppliers
@@ -110,7 +192,12 @@ public class Warehouse implements Serializable {
     * @see         Supplier
     * @see         SupplierList
     */
-   public boolean hasSuppliers() { return !supplierList.isEmpty(); }
+   public boolean hasSuppliers() {
+      long start = metrics.start();
+      boolean has = !supplierList.isEmpty();
+      metrics.record(WarehouseMetrics.HAS_SUPPLIERS, SUCCESS, start);
+      return has;
+   }
 
    /**
     * Queries the client list and returns whether or not there are any clients 
@@ -123,7 +210,12 @@ public class Warehouse implements Serializable {
     * @see         ClientList
     * @see         Order
     */
-   public boolean hasClientsWithUnpaidBalance() { return clientList.hasUnpaid(); }
+   public boolean hasClientsWithUnpaidBalance() {
+      long start = metrics.start();
+      boolean has = clientList.hasUnpaid();
+      metrics.record(WarehouseMetrics.HAS_CLIENTS_WITH_UNPAID_BALANCE, SUCCESS, start);
+      return has;
+   }
 
 
    /**
@@ -138,11 +230,25 @@ public class Warehouse implements Serializable {
     * @see         Order
     */
    public boolean clientHasOrders(String clientId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return false;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return false;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            boolean has = client.hasOrders();
+            status = SUCCESS;
+            return has;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.CLIENT_HAS_ORDERS, status, start);
       }
-      return client.hasOrders();
    }
 
    /**
@@ -158,11 +264,25 @@ public class Warehouse implements Serializable {
     * @see         WaitlistItem
     */
    public boolean clientHasWaitlistedOrders(String clientId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return false;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return false;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            boolean has = client.hasWaitlistedOrders();
+            status = SUCCESS;
+            return has;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.CLIENT_HAS_WAITLISTED_ORDERS, status, start);
       }
-      return client.hasWaitlistedOrders();
    }
 
    /**
@@ -177,11 +297,25 @@ public class Warehouse implements Serializable {
     * @see         Invoice
     */
    public boolean clientHasInvoices(String clientId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return false;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return false;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            boolean has = client.hasInvoices();
+            status = SUCCESS;
+            return has;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.CLIENT_HAS_INVOICES, status, start);
       }
-      return client.hasInvoices();
    }
 
    /**
@@ -196,11 +330,25 @@ public class Warehouse implements Serializable {
     * @see         Transaction
     */
    public boolean clientHasTransactions(String clientId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return false;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return false;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            boolean has = client.hasTransactions();
+            status = SUCCESS;
+            return has;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.CLIENT_HAS_TRANSACTIONS, status, start);
       }
-      return client.hasTransactions();
    }
 
    /**
@@ -213,12 +361,30 @@ public class Warehouse implements Serializable {
     * @see         ClientList
     */
    public Client addClient(String name) {
-      Client client = new Client(name);
-
-      if (clientList.insertClient(client)) {         
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = new Client(name);
+         long sequence = 0;
+
+         // held until the client is journaled, so nothing done to the client is journaled before it
+         int[] held = locks.lock(client.getId());
+         try {
+            if (!clientList.insertClient(client)) {
+               return null;
+            }
+            sequence = Journal.instance().enqueue(
+               new Journal.Entry(Journal.ADD_CLIENT).putString(name).putString(client.getId())
+            );
+         } finally {
+            locks.unlock(held);
+            Journal.instance().commit(sequence);
+         }
+         status = SUCCESS;
          return client;
+      } finally {
+         metrics.record(WarehouseMetrics.ADD_CLIENT, status, start);
       }
-      return null;
    }
 
    /**
@@ -229,8 +395,11 @@ public class Warehouse implements Serializable {
     * @see         Client
     * @see         ClientList
     */
-   public Iterator<Client> getClients() { 
-      return clientList.getClients(); 
+   public Iterator<Client> getClients() {
+      long start = metrics.start();
+      Iterator<Client> clients = clientList.getClients();
+      metrics.record(WarehouseMetrics.GET_CLIENTS, SUCCESS, start);
+      return clients;
    }
    
    /**
@@ -241,8 +410,28 @@ public class Warehouse implements Serializable {
     * @see         Client
     * @see         ClientList
     */
-   public Iterator<Client> getClientsWithUnpaidBalance() { 
-      return clientList.getUnpaid(); 
+   public Iterator<Client> getClientsWithUnpaidBalance() {
+      long start = metrics.start();
+      Iterator<Client> clients = clientList.getUnpaid();
+      metrics.record(WarehouseMetrics.GET_CLIENTS_WITH_UNPAID_BALANCE, SUCCESS, start);
+      return clients;
+   }
+
+   /**
+    * Queries the client list for the clients that owe the most
+    * @param       count is the largest number of clients to be returned
+    * @return      An iterator to navigate through, at most, the count clients with the largest unpaid balances,
+    *              from the largest balance owed to the smallest
+    * @pre         None
+    * @post        None
+    * @see         Client
+    * @see         ClientList
+    */
+   public Iterator<Client> getTopDebtors(int count) {
+      long start = metrics.start();
+      Iterator<Client> clients = clientList.getTopDebtors(count);
+      metrics.record(WarehouseMetrics.GET_TOP_DEBTORS, SUCCESS, start);
+      return clients;
    }
 
    /**
@@ -254,7 +443,10 @@ public class Warehouse implements Serializable {
     * @see         SupplierList
     */
    public Iterator<Supplier> getSuppliers() {
-      return supplierList.getSuppliers();
+      long start = metrics.start();
+      Iterator<Supplier> suppliers = supplierList.getSuppliers();
+      metrics.record(WarehouseMetrics.GET_SUPPLIERS, SUCCESS, start);
+      return suppliers;
    }
 
    /**
@@ -266,7 +458,10 @@ public class Warehouse implements Serializable {
     * @see         Inventory
     */
    public Iterator<Product> getProducts() {
-      return inventory.getProducts();
+      long start = metrics.start();
+      Iterator<Product> products = inventory.getProducts();
+      metrics.record(WarehouseMetrics.GET_PRODUCTS, SUCCESS, start);
+      return products;
    }
 
    /**
@@ -274,18 +469,39 @@ public class Warehouse implements Serializable {
     * @param       clientId of the client to search for, and to search within for the order
     * @param       orderId of the order to search for within the client
     * @return      An iterator to navigate through the records of a given client's order, 
+    *              provided the client, and order for that client, exist in the system; otherwise, null
     * @pre         None
     * @post        None
-    *              provided the client, and order for that client, exist in the system
     * @see         Client
     * @see         ClientList
     * @see         Order
     * @see         Record
     */
    public Iterator<Record> getOrderRecords(String clientId, String orderId) {
-      Client client = clientList.find(clientId);
-      Order order = client.findOrder(orderId);
-      return order.getRecords();
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Order order = client.findOrder(orderId);
+            if (order == null) {
+               status = ORDER_NOT_FOUND;
+               return null;
+            }
+            Iterator<Record> records = copyOf(order.getRecords());
+            status = SUCCESS;
+            return records;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_ORDER_RECORDS, status, start);
+      }
    }
 
    /**
@@ -293,7 +509,7 @@ public class Warehouse implements Serializable {
     * @param       clientId of the client to search for, and to search within for the invoice
     * @param       invoiceId of the invoice to search for within the client
     * @return      An iterator to navigate through the records of a given client's invoice, 
-    *              provided the client, and order for that client, exist in the system
+    *              provided the client, and invoice for that client, exist in the system; otherwise, null
     * @pre         None
     * @post        None
     * @see         Client
@@ -302,16 +518,37 @@ public class Warehouse implements Serializable {
     * @see         Record
     */
    public Iterator<Record> getInvoiceRecords(String clientId, String invoiceId) {
-      Client client = clientList.find(clientId);
-      Invoice invoice = client.findInvoice(invoiceId);
-      return invoice.getRecords();
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Invoice invoice = client.findInvoice(invoiceId);
+            if (invoice == null) {
+               status = INVOICE_NOT_FOUND;
+               return null;
+            }
+            Iterator<Record> records = copyOf(invoice.getRecords());
+            status = SUCCESS;
+            return records;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_INVOICE_RECORDS, status, start);
+      }
    }
 
    /**
     * Queries the order for a given client
     * @param       clientId of the client to search for, and return all orders for that client
     * @return      An iterator to navigate through the orders for a client,
-    *              provided the client exists in the system
+    *              provided the client exists in the system; otherwise, null
     * @pre         None
     * @post        None
     * @see         Client
@@ -319,15 +556,32 @@ public class Warehouse implements Serializable {
     * @see         Order
     */
    public Iterator<Order> getOrders(String clientId) {
-      Client client = clientList.find(clientId);
-      return client.getOrders();
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Iterator<Order> orders = copyOf(client.getOrders());
+            status = SUCCESS;
+            return orders;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_ORDERS, status, start);
+      }
    }
 
    /**
     * Queries the invoices for a given client
     * @param       clientId of the client to search for, and return all invoice for that client
     * @return      An iterator to navigate through the invoices for a client,
-    *              provided the client exists in the system
+    *              provided the client exists in the system; otherwise, null
     * @pre         None
     * @post        None
     * @see         Client
@@ -335,8 +589,25 @@ public class Warehouse implements Serializable {
     * @see         Invoice
     */
    public Iterator<Invoice> getInvoices(String clientId) {
-      Client client = clientList.find(clientId);
-      return client.getInvoices();
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Iterator<Invoice> invoices = copyOf(client.getInvoices());
+            status = SUCCESS;
+            return invoices;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_INVOICES, status, start);
+      }
    }
 
    /**
@@ -350,11 +621,25 @@ public class Warehouse implements Serializable {
     * @see         WaitlistItem
     */
    public Iterator<WaitlistItem> getProductWaitlistedOrderItems(String productId) {
-      Product product = inventory.find(productId);
-      if (product == null) {
-         return null;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Product product = inventory.find(productId);
+         if (product == null) {
+            status = PRODUCT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(productId);
+         try {
+            Iterator<WaitlistItem> items = copyOf(product.getWaitlistedOrders());
+            status = SUCCESS;
+            return items;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_PRODUCT_WAITLISTED_ORDER_ITEMS, status, start);
       }
-      return product.getWaitlistedOrders();
    }
 
    /**
@@ -369,11 +654,130 @@ public class Warehouse implements Serializable {
     * @see         Transaction
     */
    public Iterator<Transaction> getClientTransactions(String clientId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return null;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Iterator<Transaction> transactions = copyOf(client.getTransactions());
+            status = SUCCESS;
+            return transactions;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_CLIENT_TRANSACTIONS, status, start);
+      }
+   }
+
+   /**
+    * Queries the transactions for a given client that occured within a range of time, without going through the
+    * client's transactions outside of the range
+    * @param       clientId of the client to search for
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @return      An iterator to navigate through the client's transactions within the range, in the order they
+    *              occured, provided the client exists in the system; otherwise, null
+    * @pre         None
+    * @post        None
+    * @see         Client
+    * @see         Transaction
+    */
+   public Iterator<Transaction> getClientTransactions(String clientId, long from, long to) {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Iterator<Transaction> transactions = copyOf(client.getTransactions(from, to));
+            status = SUCCESS;
+            return transactions;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_CLIENT_TRANSACTIONS_IN_RANGE, status, start);
+      }
+   }
+
+   /**
+    * Queries the transactions of every client that occured within a range of time, such as the billing of a day.
+    * The first query builds an index of the transactions of the histories in memory, while nothing else can change
+    * the warehouse, and later queries only look at the transactions within the range. The clients with archived
+    * transactions within the range, or histories still in the snapshot, are read on their own while their locks
+    * are held, in place of what the index holds for them
+    * @param       from is the start of the range, in milliseconds since the epoch
+    * @param       to is the end of the range, which isn't included, in milliseconds since the epoch
+    * @param       type of the transactions to be returned (such as ORDER, INVOICE, or BILLING), or null for every
+    *              type
+    * @return      An iterator to navigate through the transactions within the range, with their clients, in the
+    *              order they occured
+    * @pre         None
+    * @post        None
+    * @see         ClientList
+    * @see         Transaction
+    */
+   public Iterator<ClientList.Activity> getActivity(long from, long to, String type) {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         if (!clientList.hasActivity()) {
+            int[] held = locks.lockAll();
+            try {
+               clientList.buildActivity();
+            } finally {
+               locks.unlock(held);
+            }
+         }
+         if (from >= to) {
+            status = SUCCESS;
+            return Collections.<ClientList.Activity>emptyIterator();
+         }
+
+         // a client left out of the index is looked for before the index is read, and a client that archived is
+         // looked for after it, so a client whose transactions move in or out of the index meanwhile is read alone
+         Set<Client> separate = clientList.getUnindexedClients(from, to);
+         List<ClientList.Activity> indexed = clientList.getIndexedActivity(from, to, type);
+         clientList.addArchivedClients(separate, from);
+         if (separate.isEmpty()) {
+            status = SUCCESS;
+            return indexed.iterator();
+         }
+
+         List<ClientList.Activity> found = new ArrayList<ClientList.Activity>();
+         for (ClientList.Activity entry : indexed) {
+            if (!separate.contains(entry.getClient())) {
+               found.add(entry);
+            }
+         }
+         for (Client client : separate) {
+            int[] held = locks.lock(client.getId());
+            try {
+               found.addAll(clientList.getClientActivity(client, from, to, type));
+            } finally {
+               locks.unlock(held);
+            }
+         }
+         Collections.sort(found, new Comparator<ClientList.Activity>() {
+            public int compare(ClientList.Activity first, ClientList.Activity second) {
+               return Long.compare(first.getTransaction().getTime(), second.getTransaction().getTime());
+            }
+         });
+         status = SUCCESS;
+         return found.iterator();
+      } finally {
+         metrics.record(WarehouseMetrics.GET_ACTIVITY, status, start);
       }
-      return client.getTransactions();
    }
 
    /**
@@ -389,11 +793,25 @@ public class Warehouse implements Serializable {
     * @see         WaitlistItem
     */
    public Iterator<Order> getClientWaitlistedOrders(String clientId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return null;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Iterator<Order> orders = copyOf(client.getWaitlistedOrders());
+            status = SUCCESS;
+            return orders;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_CLIENT_WAITLISTED_ORDERS, status, start);
       }
-      return client.getWaitlistedOrders();
    }
 
    /**
@@ -408,15 +826,30 @@ public class Warehouse implements Serializable {
     * @see         WaitlistItem
     */
    public Iterator<WaitlistItem> getClientWaitlistedOrderItems(String clientId, String orderId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return null;
-      }
-      Order order = client.findOrder(orderId);
-      if (order == null) {
-         return null;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Order order = client.findOrder(orderId);
+            if (order == null) {
+               status = ORDER_NOT_FOUND;
+               return null;
+            }
+            Iterator<WaitlistItem> items = copyOf(order.getWaitlistedItems());
+            status = SUCCESS;
+            return items;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_CLIENT_WAITLISTED_ORDER_ITEMS, status, start);
       }
-      return order.getWaitlistedItems();
    }
 
    /**
@@ -429,7 +862,10 @@ public class Warehouse implements Serializable {
     * @see         ClientList
     */
    public Client findClient(String clientId) {
-      return clientList.find(clientId);
+      long start = metrics.start();
+      Client client = clientList.find(clientId);
+      metrics.record(WarehouseMetrics.FIND_CLIENT, client == null ? CLIENT_NOT_FOUND : SUCCESS, start);
+      return client;
    }
 
    /**
@@ -444,11 +880,25 @@ public class Warehouse implements Serializable {
     * @see         Order
     */
    public Order findClientOrder(String clientId, String orderId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return null;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Order order = client.findOrder(orderId);
+            status = order == null ? ORDER_NOT_FOUND : SUCCESS;
+            return order;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.FIND_CLIENT_ORDER, status, start);
       }
-      return client.findOrder(orderId);
    }
 
    /**
@@ -463,11 +913,25 @@ public class Warehouse implements Serializable {
     * @see         Invoice
     */
    public Invoice findClientInvoice(String clientId, String invoiceId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return null;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            Invoice invoice = client.findInvoice(invoiceId);
+            status = invoice == null ? INVOICE_NOT_FOUND : SUCCESS;
+            return invoice;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.FIND_CLIENT_INVOICE, status, start);
       }
-      return client.findInvoice(invoiceId);
    }
 
    /**
@@ -480,7 +944,42 @@ public class Warehouse implements Serializable {
     * @see         SupplierList
     */
    public Supplier findSupplier(String supplierId) {
-      return supplierList.find(supplierId);
+      long start = metrics.start();
+      Supplier supplier = supplierList.find(supplierId);
+      metrics.record(WarehouseMetrics.FIND_SUPPLIER, supplier == null ? SUPPLIER_NOT_FOUND : SUCCESS, start);
+      return supplier;
+   }
+
+   /**
+    * Searches for the suppliers in the system with the given name, ignoring case
+    * @param       name of the suppliers to search for within the supplier list
+    * @return      An iterator to navigate through the suppliers with the given name
+    * @pre         None
+    * @post        None
+    * @see         Supplier
+    * @see         SupplierList
+    */
+   public Iterator<Supplier> findSuppliersByName(String name) {
+      long start = metrics.start();
+      Iterator<Supplier> suppliers = supplierList.findByName(name);
+      metrics.record(WarehouseMetrics.FIND_SUPPLIERS_BY_NAME, SUCCESS, start);
+      return suppliers;
+   }
+
+   /**
+    * Searches for the suppliers in the system whose name starts with the given prefix, ignoring case
+    * @param       prefix of the names of the suppliers to search for within the supplier list
+    * @return      An iterator to navigate through the matching suppliers, ordered by name
+    * @pre         None
+    * @post        None
+    * @see         Supplier
+    * @see         SupplierList
+    */
+   public Iterator<Supplier> findSuppliersByNamePrefix(String prefix) {
+      long start = metrics.start();
+      Iterator<Supplier> suppliers = supplierList.findByNamePrefix(prefix);
+      metrics.record(WarehouseMetrics.FIND_SUPPLIERS_BY_NAME_PREFIX, SUCCESS, start);
+      return suppliers;
    }
 
    /**
@@ -493,7 +992,10 @@ public class Warehouse implements Serializable {
     * @see         Inventory
     */
    public Product findProduct(String productId) {
-      return inventory.find(productId);
+      long start = metrics.start();
+      Product product = inventory.find(productId);
+      metrics.record(WarehouseMetrics.FIND_PRODUCT, product == null ? PRODUCT_NOT_FOUND : SUCCESS, start);
+      return product;
    }
 
    /**
@@ -505,44 +1007,95 @@ public class Warehouse implements Serializable {
     * @see         Client
     */
    public String getClientBalanceStr(String clientId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return null;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            String balance = client.getFormattedBalance();
+            status = SUCCESS;
+            return balance;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_CLIENT_BALANCE_STR, status, start);
       }
-      return client.getFormattedBalance();
    }
 
     /**
     * Queries the client's balance for a given client
     * @param       clientId of the client whos balance will be retrieved
-    * @return      The client's balance if the client is in the client list; otherwise null
+    * @return      The client's balance, in cents, if the client is in the client list; otherwise 0
     * @pre         None
     * @post        None
     * @see         Client
+    * @see         Money
     */
-   public float getClientBalance(String clientId) {
-      Client client = clientList.find(clientId);
-      return client.getBalance();
+   public long getClientBalance(String clientId) {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return 0;
+         }
+         int[] held = locks.lock(clientId);
+         try {
+            long balance = client.getBalance();
+            status = SUCCESS;
+            return balance;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.GET_CLIENT_BALANCE, status, start);
+      }
    }
 
    /**
     * Accepts a client's payment and applies it to their account
     * @param       clientId of the client whos balance will be reduced based on the payment amount given
-    * @param       clientPayment the amount wanted to be applied to the client's account
+    * @param       clientPayment the amount, in cents, wanted to be applied to the client's account
     * @return      Static int status of the transaction which will be SUCCESS if the client is in the client list; otherwise CLIENT_NOT_FOUND
     * @pre         The client for the clientId specified must exist and have a balance. Also, the clientPayment but be less than or equal to the balance on
     *              the client's account
     * @post        The client's balance will have been reduced the amount given 
     * @see         Client
     */
-   public int acceptClientPayment(String clientId, float clientPayment) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return CLIENT_NOT_FOUND;
-      }
+   public int acceptClientPayment(String clientId, long clientPayment) {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return status;
+         }
 
-      client.acceptPayment(clientPayment);
-      return SUCCESS;
+         long sequence = 0;
+         int[] held = locks.lock(clientId);
+         Long unpinnedTime = Transaction.pinTime();
+         try {
+            client.acceptPayment(clientPayment);
+            sequence = Journal.instance().enqueue(
+               new Journal.Entry(Journal.ACCEPT_CLIENT_PAYMENT).putString(clientId).putLong(clientPayment)
+            );
+         } finally {
+            Transaction.restoreTime(unpinnedTime);
+            locks.unlock(held);
+            Journal.instance().commit(sequence);
+         }
+         return status = SUCCESS;
+      } finally {
+         metrics.record(WarehouseMetrics.ACCEPT_CLIENT_PAYMENT, status, start);
+      }
    }
 
    /**
@@ -555,19 +1108,35 @@ public class Warehouse implements Serializable {
     * @see         SupplierList
     */
    public Supplier addSupplier(String name) {
-   
-      // Create a new supplier using the parameter given
-      Supplier supplier = new Supplier(name);
-      
-      // Pass the new supplier object to the list
-      if (supplierList.insertSupplier(supplier)) {
-         
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+
+         // Create a new supplier using the parameter given
+         Supplier supplier = new Supplier(name);
+
+         long sequence = 0;
+         int[] held = locks.lock(supplier.getId());
+         try {
+
+            // Pass the new supplier object to the list, and on failure return null
+            if (!supplierList.insertSupplier(supplier)) {
+               return null;
+            }
+            sequence = Journal.instance().enqueue(
+               new Journal.Entry(Journal.ADD_SUPPLIER).putString(name).putString(supplier.getId())
+            );
+         } finally {
+            locks.unlock(held);
+            Journal.instance().commit(sequence);
+         }
+
          // On success return the supplier object created and inserted
+         status = SUCCESS;
          return supplier;
+      } finally {
+         metrics.record(WarehouseMetrics.ADD_SUPPLIER, status, start);
       }
-
-      // On failure return null
-      return null;
    }
 
    /**
@@ -583,23 +1152,43 @@ public class Warehouse implements Serializable {
     * @see         SupplierList
     */
    public int associateProductAndSupplier(String productId, String supplierId) {
-      Product product = inventory.find(productId);
-      Supplier supplier = supplierList.find(supplierId);
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Product product = inventory.find(productId);
+         Supplier supplier = supplierList.find(supplierId);
 
-      if (product == null) {
-         return PRODUCT_NOT_FOUND;
-      }
-      else if (supplier == null) {
-         return SUPPLIER_NOT_FOUND;
-      }
-      else if (product.hasSupplier(supplierId) && supplier.suppliesProduct(productId)) {
-         return ALREADY_EXISTS;
-      }
-      else if (product.addSupplier(supplierId) && supplier.addProduct(productId)) {
-         return SUCCESS;
-      }
-      else {
-         return OPERATION_FAILED;
+         if (product == null) {
+            status = PRODUCT_NOT_FOUND;
+            return status;
+         }
+         else if (supplier == null) {
+            status = SUPPLIER_NOT_FOUND;
+            return status;
+         }
+
+         long sequence = 0;
+         int[] held = locks.lock(productId, supplierId);
+         try {
+            if (product.hasSupplier(supplierId) && supplier.suppliesProduct(productId)) {
+               status = ALREADY_EXISTS;
+               return status;
+            }
+            else if (product.addSupplier(supplierId) && supplier.addProduct(productId)) {
+               sequence = Journal.instance().enqueue(
+                  new Journal.Entry(Journal.ASSOCIATE_PRODUCT_AND_SUPPLIER).putString(productId).putString(supplierId)
+               );
+            }
+            else {
+               return OPERATION_FAILED;
+            }
+         } finally {
+            locks.unlock(held);
+            Journal.instance().commit(sequence);
+         }
+         return status = SUCCESS;
+      } finally {
+         metrics.record(WarehouseMetrics.ASSOCIATE_PRODUCT_AND_SUPPLIER, status, start);
       }
    }
 
@@ -616,50 +1205,87 @@ public class Warehouse implements Serializable {
     * @see         SupplierList
     */
    public int disassociateProductAndSupplier(String productId, String supplierId) {
-      Product product = inventory.find(productId);
-      Supplier supplier = supplierList.find(supplierId);
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Product product = inventory.find(productId);
+         Supplier supplier = supplierList.find(supplierId);
 
-      if (product == null) {
-         return PRODUCT_NOT_FOUND;
-      }
-      else if (supplier == null) {
-         return SUPPLIER_NOT_FOUND;
-      }
-      else if (!product.hasSupplier(supplierId) && !supplier.suppliesProduct(productId)) {
-         return ALREADY_EXISTS;
-      }
-      else if (product.removeSupplier(supplierId) && supplier.removeProduct(productId)) {
-         return SUCCESS;
-      }
-      else {
-         return OPERATION_FAILED;
+         if (product == null) {
+            status = PRODUCT_NOT_FOUND;
+            return status;
+         }
+         else if (supplier == null) {
+            status = SUPPLIER_NOT_FOUND;
+            return status;
+         }
+
+         long sequence = 0;
+         int[] held = locks.lock(productId, supplierId);
+         try {
+            if (!product.hasSupplier(supplierId) && !supplier.suppliesProduct(productId)) {
+               status = ALREADY_EXISTS;
+               return status;
+            }
+            else if (product.removeSupplier(supplierId) && supplier.removeProduct(productId)) {
+               sequence = Journal.instance().enqueue(
+                  new Journal.Entry(Journal.DISASSOCIATE_PRODUCT_AND_SUPPLIER)
+                     .putString(productId).putString(supplierId)
+               );
+            }
+            else {
+               return OPERATION_FAILED;
+            }
+         } finally {
+            locks.unlock(held);
+            Journal.instance().commit(sequence);
+         }
+         return status = SUCCESS;
+      } finally {
+         metrics.record(WarehouseMetrics.DISASSOCIATE_PRODUCT_AND_SUPPLIER, status, start);
       }
    }
 
    /**
     * Creates a product based on the parameters given and adds that product to the inventory
     * @param       name of the product to be added to the inventory
-    * @param       price of the product to be added to the inventory
+    * @param       price of the product to be added to the inventory, in cents
     * @return      The created product object if the insertion into the inventory was successful; otherwise, null
     * @pre         None
     * @post        The product with the name, and price, specified will exist in the system
     * @see         Product
     * @see         Inventory
     */
-   public Product addProduct(String name, float price) {
-   
-      // Create a new product using the parameter given
-      Product product = new Product(name, price);
-      
-      // Pass the new product object to the list
-      if (inventory.insertProduct(product)) {
-         
+   public Product addProduct(String name, long price) {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+
+         // Create a new product using the parameter given
+         Product product = new Product(name, price);
+
+         long sequence = 0;
+         int[] held = locks.lock(product.getId());
+         try {
+
+            // Pass the new product object to the list, and on failure return null
+            if (!inventory.insertProduct(product)) {
+               return null;
+            }
+            sequence = Journal.instance().enqueue(
+               new Journal.Entry(Journal.ADD_PRODUCT).putString(name).putLong(price).putString(product.getId())
+            );
+         } finally {
+            locks.unlock(held);
+            Journal.instance().commit(sequence);
+         }
+
          // On success return the product object created and inserted
+         status = SUCCESS;
          return product;
+      } finally {
+         metrics.record(WarehouseMetrics.ADD_PRODUCT, status, start);
       }
-
-      // On failure return null
-      return null;
    }
 
    /**
@@ -672,13 +1298,34 @@ public class Warehouse implements Serializable {
     * @see         Order
     */
    public String createOrder(String clientId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return null;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return null;
+         }
+         long sequence = 0;
+         int[] held = locks.lock(clientId);
+         Long unpinnedTime = Transaction.pinTime();
+         Order order;
+         try {
+            order = new Order(client);
+            client.addOrder(order);
+            sequence = Journal.instance().enqueue(
+               new Journal.Entry(Journal.CREATE_ORDER).putString(clientId).putString(order.getId())
+            );
+         } finally {
+            Transaction.restoreTime(unpinnedTime);
+            locks.unlock(held);
+            Journal.instance().commit(sequence);
+         }
+         status = SUCCESS;
+         return order.getId();
+      } finally {
+         metrics.record(WarehouseMetrics.CREATE_ORDER, status, start);
       }
-      Order order = new Order(client);
-      client.addOrder(order);
-      return order.getId();
    }
 
    /**
@@ -693,24 +1340,44 @@ public class Warehouse implements Serializable {
     * @see         Order
     */
    public int addToOrder(String clientId, String orderId, String productId, int quantity) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return CLIENT_NOT_FOUND;
-      }
-
-      Order order = client.findOrder(orderId);
-      if (order == null) {
-         return ORDER_NOT_FOUND;
-      }
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return status;
+         }
 
-      Product product = inventory.find(productId);
-      if (product == null) {
-         return PRODUCT_NOT_FOUND;
+         // the product is locked too, so the order is never journaled holding a product that isn't journaled yet
+         long sequence = 0;
+         int[] held = locks.lock(clientId, productId);
+         try {
+            Order order = client.findOrder(orderId);
+            if (order == null) {
+               status = ORDER_NOT_FOUND;
+               return status;
+            }
+
+            Product product = inventory.find(productId);
+            if (product == null) {
+               status = PRODUCT_NOT_FOUND;
+               return status;
+            }
+
+            order.addLine(product, quantity, product.getPrice());
+            sequence = Journal.instance().enqueue(
+               new Journal.Entry(Journal.ADD_TO_ORDER)
+                  .putString(clientId).putString(orderId).putString(productId).putInt(quantity)
+            );
+         } finally {
+            locks.unlock(held);
+            Journal.instance().commit(sequence);
+         }
+         return status = SUCCESS;
+      } finally {
+         metrics.record(WarehouseMetrics.ADD_TO_ORDER, status, start);
       }
-
-      Record record = new Record(product, quantity, product.getPrice());
-      order.addRecord(record);
-      return SUCCESS;
    }
 
    /**
@@ -725,18 +1392,132 @@ public class Warehouse implements Serializable {
     * @see         Order
     */
    public int processClientOrder(String clientId, String orderId) {
-      Client client = clientList.find(clientId);
-      if (client == null) {
-         return CLIENT_NOT_FOUND;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Client client = clientList.find(clientId);
+         if (client == null) {
+            status = CLIENT_NOT_FOUND;
+            return status;
+         }
+
+         // find the products the order holds, which have to be locked along with the client
+         Set<String> productIds;
+         int[] held = locks.lock(clientId);
+         try {
+            Order order = client.findOrder(orderId);
+            if (order == null) {
+               status = ORDER_NOT_FOUND;
+               return status;
+            }
+            productIds = getProductIds(order);
+         } finally {
+            locks.unlock(held);
+         }
+
+         while (true) {
+            long sequence = 0;
+            productIds.add(clientId);
+            held = locks.lock(productIds);
+            Long unpinnedTime = Transaction.pinTime();
+            try {
+               Order order = client.findOrder(orderId);
+               if (order == null) {
+                  status = ORDER_NOT_FOUND;
+                  return status;
+               }
+
+               // products added to the order since it was looked at may not be locked, so look again
+               productIds = getProductIds(order);
+               if (!locks.covers(held, productIds)) {
+                  continue;
+               }
+
+               Invoice latest = client.getLatestInvoice();
+               client.processOrder(order);
+               Invoice invoice = client.getLatestInvoice();
+               sequence = Journal.instance().enqueue(
+                  new Journal.Entry(Journal.PROCESS_CLIENT_ORDER).putString(clientId).putString(orderId)
+                     .putString(invoice == latest ? "" : invoice.getId())
+               );
+               break;
+            } finally {
+               Transaction.restoreTime(unpinnedTime);
+               locks.unlock(held);
+               Journal.instance().commit(sequence);
+            }
+         }
+         return status = SUCCESS;
+      } finally {
+         metrics.record(WarehouseMetrics.PROCESS_CLIENT_ORDER, status, start);
       }
+   }
 
-      Order order = client.findOrder(orderId);
-      if (order == null) {
-         return ORDER_NOT_FOUND;
+   /**
+    * Processes a batch of client orders together. Stock is given to the orders in the batch's priority order, so
+    * the orders are filled, and waitlisted, as if they were processed one after another in that order, while the
+    * products, and clients, of the batch are worked on side by side
+    * @param       batch of orders to be processed
+    * @return      An iterator to navigate through the result of every order of the batch, in the order the orders
+    *              were added to the batch
+    * @pre         The orders are completed and are ready to be processed
+    * @post        The orders found will be processed and filled with the items in stock, items not filled will be
+    *              waitlisted
+    * @see         OrderBatch
+    */
+   public Iterator<OrderBatch.Result> processClientOrders(OrderBatch batch) {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Set<String> ids = batch.getClientIds();
+         while (true) {
+            long sequence = 0;
+            int[] held = locks.lock(ids);
+            Long unpinnedTime = Transaction.pinTime();
+            try {
+
+               // orders may hold products that aren't locked yet, so lock again with them
+               ids = batch.resolve(clientList);
+               if (!locks.covers(held, ids)) {
+                  continue;
+               }
+
+               // journaled one order at a time, in priority order, so replaying them one at a time fills them the same
+               for (OrderBatch.Result result : batch.process(ForkJoinPool.commonPool())) {
+                  sequence = Journal.instance().enqueue(
+                     new Journal.Entry(Journal.PROCESS_CLIENT_ORDER)
+                        .putString(result.getClientId()).putString(result.getOrderId())
+                        .putString(result.getInvoiceId() == null ? "" : result.getInvoiceId())
+                  );
+               }
+               break;
+            } finally {
+               Transaction.restoreTime(unpinnedTime);
+               locks.unlock(held);
+               Journal.instance().commit(sequence);
+            }
+         }
+         status = SUCCESS;
+         return batch.getResults();
+      } finally {
+         metrics.record(WarehouseMetrics.PROCESS_CLIENT_ORDERS, status, start);
       }
+   }
 
-      client.processOrder(order);
-      return SUCCESS;
+   /**
+    * Queries the ids of the products an order holds
+    * @param       order whose products are wanted
+    * @return      the ids of the products held by the order
+    * @pre         The caller holds the lock for the client of the order
+    * @post        None
+    */
+   private static Set<String> getProductIds(Order order) {
+      Set<String> productIds = new HashSet<String>();
+      LineItems lines = order.getLines();
+      for (int line = 0; line < lines.size(); line++) {
+         productIds.add(lines.getProduct(line).getId());
+      }
+      return productIds;
    }
     
    /**
@@ -751,113 +1532,397 @@ public class Warehouse implements Serializable {
     * @see         WaitlistItem
     */
    public boolean productHasWaitlistedOrderItems(String productId) {
-      Product product = inventory.find(productId);
-      if (product == null) {
-         return false;
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Product product = inventory.find(productId);
+         if (product == null) {
+            status = PRODUCT_NOT_FOUND;
+            return false;
+         }
+
+         int[] held = locks.lock(productId);
+         try {
+            boolean has = product.hasWaitlistedOrders();
+            status = SUCCESS;
+            return has;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.PRODUCT_HAS_WAITLISTED_ORDER_ITEMS, status, start);
       }
+   }
 
-      return product.hasWaitlistedOrders();
+   /**
+    * Searches for the waitlisted item, of the given product, that belongs to the given order
+    * @param       productId of the product whose waitlisted items are searched
+    * @param       orderId of the order the waitlisted item belongs to
+    * @return      The found waitlisted item if the product, and a waitlisted item for the order, exist; otherwise, null
+    * @pre         None
+    * @post        None
+    * @see         Product
+    * @see         WaitlistItem
+    */
+   public WaitlistItem findWaitlistItem(String productId, String orderId) {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Product product = inventory.find(productId);
+         if (product == null) {
+            status = PRODUCT_NOT_FOUND;
+            return null;
+         }
+         int[] held = locks.lock(productId);
+         try {
+            for (Iterator<WaitlistItem> items = product.getWaitlistedOrders(); items.hasNext();) {
+               WaitlistItem item = items.next();
+               if (item.getOrder().getId().equals(orderId)) {
+                  status = SUCCESS;
+                  return item;
+               }
+            }
+            status = ORDER_NOT_FOUND;
+            return null;
+         } finally {
+            locks.unlock(held);
+         }
+      } finally {
+         metrics.record(WarehouseMetrics.FIND_WAITLIST_ITEM, status, start);
+      }
    }
 
    /**
     * Process a shipment for a given quality of a product, provided the product exists.
     * @param       productId of the product for the received shipment
     * @param       quantity of the product received in the shipment
-    * @param       item which is a specific waitlisted order to be filled; if null, the products will 
-    *              fill the next waitlisted order in line
+    * @param       item which is a specific waitlisted order to be filled; if null, or no longer waitlisted by the
+    *              time the product is locked, the products will fill the next waitlisted order in line
     * @pre         None
     * @post        None
-    * @return      the remaining quantity of the product, from the shipment, that can be used elsewhere
+    * @return      the remaining quantity of the product, from the shipment, that can be used elsewhere, which is 0
+    *              once there are no waitlisted items left and the shipment has gone into stock
     * @see         Product
     * @see         Inventory
     * @see         WaitlistItem
     */
    public int processShipment(String productId, int quantity, WaitlistItem item) {
-      Product product = inventory.find(productId);
-      if (product == null) {
-         return -1;
-      }
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Product product = inventory.find(productId);
+         if (product == null) {
+            status = PRODUCT_NOT_FOUND;
+            return -1;
+         }
 
-      if (!productHasWaitlistedOrderItems(productId)) {
-         
-         // fill update inventory quantity
-         product.increaseQuantity(quantity);
-         return quantity;
+         int remaining;
+         while (true) {
+
+            // find the client whose order is filled, which has to be locked along with the product
+            String clientId = null;
+            int[] held = locks.lock(productId);
+            try {
+               WaitlistItem next = (item == null || !product.isWaitlisted(item))
+                  ? product.getNextWaitlistedOrder() : item;
+               if (next != null) {
+                  clientId = next.getOrder().getClient().getId();
+               }
+            } finally {
+               locks.unlock(held);
+            }
+
+            long sequence = 0;
+            held = locks.lock(productId, clientId);
+            Long unpinnedTime = Transaction.pinTime();
+            try {
+
+               // an item looked up before the product was locked may have been filled since, and filling it again
+               // would bill its client twice, so the next item in line is filled in its place
+               WaitlistItem requested = (item != null && product.isWaitlisted(item)) ? item : null;
+               Journal.Entry entry = new Journal.Entry(Journal.PROCESS_SHIPMENT).putString(productId)
+                  .putInt(quantity).putString(requested == null ? "" : requested.getOrder().getId());
+
+               if (!product.hasWaitlistedOrders()) {
+
+                  // fill update inventory quantity, which uses up the shipment, and bills no one
+                  product.receive(quantity);
+                  sequence = Journal.instance().enqueue(entry.putString(""));
+                  remaining = 0;
+                  break;
+               }
+
+               WaitlistItem filled = requested;
+               if (filled == null) {
+
+                  // fill first item in queue
+                  filled = product.getNextWaitlistedOrder();
+               }
+
+               // another shipment may have filled the item looked at, so look again
+               Client client = filled.getOrder().getClient();
+               if (!client.getId().equals(clientId)) {
+                  continue;
+               }
+
+               // an item filled entirely leaves the waitlist, even when nothing is left over
+               boolean entirely = (filled.getQuantity() <= quantity);
+               remaining = client.processWaitlistedOrderItem(filled.getOrder(), filled, quantity);
+               if (entirely) {
+                  product.removeWaitlistItem(filled);
+               }
+               sequence = Journal.instance().enqueue(entry.putString(client.getLatestInvoice().getId()));
+               break;
+            } finally {
+               Transaction.restoreTime(unpinnedTime);
+               locks.unlock(held);
+               Journal.instance().commit(sequence);
+            }
+         }
+         status = SUCCESS;
+         return remaining;
+      } finally {
+         metrics.record(WarehouseMetrics.PROCESS_SHIPMENT, status, start);
       }
-      
-      if (item == null) {
-
-         // fill first item in queue
-         item = product.getNextWaitlistedOrder();
+   }
+   
+   /**
+    * Receives a shipment of many products at once. Each product's waitlisted items are filled in the order they were
+    * waitlisted, what is left over goes into stock, and each client filled is given one invoice for the whole
+    * shipment
+    * @param       shipment to be received
+    * @return      An iterator to navigate through the lines of the shipment, in the order they were added, each
+    *              telling how much of it was filled and stocked
+    * @pre         The shipment hasn't been received
+    * @post        The waitlisted items will be filled with the quantities received, and the rest will be in stock
+    * @see         Shipment
+    */
+   public Iterator<Shipment.Line> receiveShipment(Shipment shipment) {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
+      try {
+         Set<String> ids = shipment.getProductIds();
+         while (true) {
+            long sequence = 0;
+            int[] held = locks.lock(ids);
+            Long unpinnedTime = Transaction.pinTime();
+            try {
+
+               // the clients whose items will be filled are only known from the waitlists, so lock again with them
+               ids = shipment.resolve(inventory);
+               if (!locks.covers(held, ids)) {
+                  continue;
+               }
+
+               shipment.receive();
+               Journal.Entry entry = new Journal.Entry(Journal.RECEIVE_SHIPMENT).putInt(shipment.size());
+               for (Iterator<Shipment.Line> lines = shipment.getLines(); lines.hasNext();) {
+                  Shipment.Line line = lines.next();
+                  entry.putString(line.getProductId()).putInt(line.getQuantity());
+               }
+               List<Invoice> invoices = new ArrayList<Invoice>();
+               for (Iterator<Invoice> i = shipment.getInvoices(); i.hasNext();) {
+                  invoices.add(i.next());
+               }
+               entry.putInt(invoices.size());
+               for (Invoice invoice : invoices) {
+                  entry.putString(invoice.getId());
+               }
+               sequence = Journal.instance().enqueue(entry);
+               break;
+            } finally {
+               Transaction.restoreTime(unpinnedTime);
+               locks.unlock(held);
+               Journal.instance().commit(sequence);
+            }
+         }
+         status = SUCCESS;
+         return shipment.getLines();
+      } finally {
+         metrics.record(WarehouseMetrics.RECEIVE_SHIPMENT, status, start);
       }
+   }
 
-      Client client = item.getOrder().getClient();
-      quantity = client.processWaitlistedOrderItem(item.getOrder(), item, quantity);
+   /**
+    * Queries whether the warehouse is in use, in which case stored data can't be retrieved into it. The warehouse
+    * is in use once it holds anything, or its journal has been opened, which is the case once anything has been
+    * changed, saved, or retrieved
+    * @return      true if the warehouse is in use; otherwise, false
+    * @pre         None
+    * @post        None
+    * @see         Journal
+    */
+   public static boolean isInUse() {
 
-      if (quantity > 0) {
-         product.removeWaitlistItem(item);
-      }
-      return quantity;
+      // nothing is made here, since serialized data only fills a client list, inventory, or supplier list not made
+      Warehouse current = warehouse;
+      return (current != null
+         && (!current.clientList.isEmpty() || !current.inventory.isEmpty() || !current.supplierList.isEmpty()))
+         || Journal.instance().isOpen();
    }
-   
+
    /**
-    * Retrieve a previously stored state for the Warehouse from a file called WarehouseData 
-    * that holds the serialized Warehouse object
-    * @return      the stored Warehouse object that was retrieved 
+    * Retrieve a previously stored state for the Warehouse from a file called WarehouseData, 
+    * and then replay the changes made after it was stored from the journal. The file may be a
+    * binary snapshot, whose client histories are read the first time they are used, or a serialized
+    * Warehouse object stored before snapshots were used
+    * @return      the stored Warehouse object that was retrieved if the stored data, and the journal, could be read,
+    *              and replayed; otherwise, null, with the warehouse left empty and the journal left as it is. A
+    *              warehouse already in use is left as it is, and ALREADY_EXISTS recorded, with null returned
     * @pre         None
-    * @post        The warehouse and all components of it will be loaded
-    * @see         ProductIdServer
-    * @see         SupplierIdServer
-    * @see         ClientIdServer
-    * @see         OrderIdServer
-    * @see         InvoiceIdServer
+    * @post        The warehouse and all components of it will be loaded, unless it was already in use
+    * @see         IdServer
+    * @see         Journal
+    * @see         Snapshot
     */
    public static Warehouse retrieve() {
+      long start = metrics.start();
+      int status = OPERATION_FAILED;
       try {
-         FileInputStream file = new FileInputStream("WarehouseData");
-         ObjectInputStream input = new ObjectInputStream(file);
-         input.readObject();
-         ProductIdServer.retrieve(input);
-         SupplierIdServer.retrieve(input);
-         ClientIdServer.retrieve(input);
-         OrderIdServer.retrieve(input);
-         InvoiceIdServer.retrieve(input);         
+
+         // loading stored data into a warehouse in use would mix the two
+         if (isInUse()) {
+            status = ALREADY_EXISTS;
+            return null;
+         }
+         long sequence = 0;
+         try {
+            SnapshotWriter.recover();
+            boolean snapshot;
+            InputStream file = new BufferedInputStream(new FileInputStream(DATA_FILE));
+            try {
+               snapshot = Snapshot.isSnapshot(file);
+               if (!snapshot) {
+                  sequence = retrieveSerialized(file);
+               }
+            } finally {
+               file.close();
+            }
+
+            // a snapshot is mapped, so only its index is read now
+            if (snapshot) {
+               sequence = Snapshot.read(new File(DATA_FILE));
+            }
+         } catch(FileNotFoundException fnfe) {
+
+            // without stored data, the journal alone may hold the warehouse
+            if (!new File(Journal.JOURNAL_FILE).exists()) {
+               return null;
+            }
+         } catch(IOException ioe) {
+            ioe.printStackTrace();
+            return null;
+         } catch(ClassNotFoundException cnfe) {
+            cnfe.printStackTrace();
+            return null;
+         }
+
+         // a journal that can't be replayed fails the retrieve, rather than leave a warehouse missing changes
+         try {
+            Journal.instance().replay(instance(), sequence);
+         } catch(IOException ioe) {
+            ioe.printStackTrace();
+            clear();
+            return null;
+         }
+         status = SUCCESS;
          return warehouse;
+      } finally {
+         metrics.record(WarehouseMetrics.RETRIEVE, status, start);
+      }
+   }
+
+   /**
+    * Reads a serialized Warehouse object, as stored before snapshots were used
+    * @param       file that the stored data is being read from
+    * @return      the sequence number of the last journal entry that is part of the stored data
+    * @throws      IOException when the stored data fails to read successfully
+    * @throws      ClassNotFoundException when the stored data holds a class that no longer exists
+    * @see         IdServer
+    */
+   private static long retrieveSerialized(InputStream file) throws IOException, ClassNotFoundException {
+      ObjectInputStream input = new ObjectInputStream(file);
+      input.readObject();
+      if (!IdServer.retrieve(input)) {
+         recoverIds();
+         return 0;
+      }
+      return readJournalSequence(input);
+   }
+
+   /**
+    * Reads the sequence number of the last journal entry that is part of the stored data
+    * @param       input that the stored data is being read from
+    * @return      the sequence number read if the stored data has one; otherwise, 0
+    * @see         Journal
+    */
+   private static long readJournalSequence(ObjectInputStream input) {
+      try {
+         return input.readLong();
       } catch(IOException ioe) {
-         ioe.printStackTrace();
-         return null;
-      } catch(ClassNotFoundException cnfe) {
-         cnfe.printStackTrace();
-         return null;
+
+         // stored before the journal existed
+         return 0;
       }
    }
    
    /**
-    * Store the Warehouse's state into a file called WarehouseData, in a serialized format
-    * @return      true is the storing of the serialized object was successful; otherwise, false 
+    * Moves the IdServer past every id in use in the warehouse, for data that was saved without the IdServer
+    * @pre         The warehouse has been retrieved
+    * @post        The IdServer will not hand out an id that is already in use
+    * @see         IdServer
+    */
+   private static void recoverIds() {
+      IdServer ids = IdServer.instance();
+      for (Iterator<Product> products = warehouse.getProducts(); products.hasNext();) {
+         ids.advancePast(IdServer.PRODUCT, products.next().getId());
+      }
+      for (Iterator<Supplier> suppliers = warehouse.getSuppliers(); suppliers.hasNext();) {
+         ids.advancePast(IdServer.SUPPLIER, suppliers.next().getId());
+      }
+      for (Iterator<Client> clients = warehouse.getClients(); clients.hasNext();) {
+         Client client = clients.next();
+         ids.advancePast(IdServer.CLIENT, client.getId());
+         for (Iterator<Order> orders = client.getOrders(); orders.hasNext();) {
+            ids.advancePast(IdServer.ORDER, orders.next().getId());
+         }
+         for (Iterator<Invoice> invoices = client.getInvoices(); invoices.hasNext();) {
+            ids.advancePast(IdServer.INVOICE, invoices.next().getId());
+         }
+      }
+   }
+
+   /**
+    * Store the Warehouse's state into a file called WarehouseData, as a binary snapshot. The snapshot is
+    * written to a temporary file first, so a crash while saving leaves the previously stored data in place
+    * @return      true is the storing of the snapshot was successful; otherwise, false 
     * @pre         None
-    * @post        A file containing the serialized state that the warehouse was in when this was called
-    * @see         ProductIdServer
-    * @see         SupplierIdServer
-    * @see         ClientIdServer
-    * @see         OrderIdServer
-    * @see         InvoiceIdServer
+    * @post        A file containing the state that the warehouse was in when this was called
+    * @see         SnapshotWriter
     */
    public static boolean save() {
-      try {
-         FileOutputStream file = new FileOutputStream("WarehouseData");
-         ObjectOutputStream output = new ObjectOutputStream(file);
-         output.writeObject(warehouse);
-         output.writeObject(ProductIdServer.instance());
-         output.writeObject(SupplierIdServer.instance());
-         output.writeObject(ClientIdServer.instance());
-         output.writeObject(OrderIdServer.instance());
-         output.writeObject(InvoiceIdServer.instance());
-         return true;
-      } catch(IOException ioe) {
-         ioe.printStackTrace();
-         return false;
-      }
+      long start = metrics.start();
+      instance();
+      boolean saved = SnapshotWriter.instance().save();
+      metrics.record(WarehouseMetrics.SAVE, saved ? SUCCESS : OPERATION_FAILED, start);
+      return saved;
+   }
+
+   /**
+    * Start storing the Warehouse's state into a file called WarehouseData in the background, so the
+    * warehouse can keep changing while it is stored. Only capturing the state holds up the caller
+    * @return      true if storing was started; otherwise, false, which is the case while the warehouse
+    *              is already being stored
+    * @pre         None
+    * @post        Once stored, the file will contain the state that the warehouse was in when this was called
+    * @see         SnapshotWriter
+    */
+   public static boolean saveInBackground() {
+      long start = metrics.start();
+      instance();
+      boolean started = SnapshotWriter.instance().start();
+      metrics.record(WarehouseMetrics.SAVE_IN_BACKGROUND, started ? SUCCESS : OPERATION_FAILED, start);
+      return started;
    }
   
    /**
@@ -0,0 +1,320 @@
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+
+/**
+ * A warehouse built for benchmarks to run against, through the Warehouse, with journaling and archiving turned off,
+ * and kept as a snapshot in memory, so it can be put back the way it was built however much a benchmark changed it.
+ * The JMH benchmarks of the benchmarks module can't refer to the default package, so they reach it through their
+ * Fixture interface, whose methods it has
+ * <p>
+ * A warehouse of a given size has that many clients, and that many products, and each client has had an order of
+ * three items filled, with every other client having paid for it. Only one warehouse exists at a time, so only one
+ * fixture is used at a time
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Warehouse
+ */
+public class WarehouseFixture {
+
+   /**
+    * The number of items each order is for
+    */
+   private static final int ITEMS_PER_ORDER = 3;
+
+   /**
+    * The stock each product starts with
+    */
+   private static final int STOCK = 50;
+
+   /**
+    * The number of clients, products, and invoices picked at random for the lookups to go through, which is a
+    * power of two so a pick can be found with a mask
+    */
+   private static final int PICKS = 1 << 16;
+
+   /**
+    * The snapshot of the warehouse as it was built
+    */
+   private final byte[] snapshot;
+
+   /**
+    * The ids of the clients of the warehouse
+    */
+   private final String[] clientIds;
+
+   /**
+    * The ids of the products of the warehouse
+    */
+   private final String[] productIds;
+
+   /**
+    * The positions of the clients, products, and invoices the lookups go through, in the order they are looked up
+    */
+   private final int[] picks;
+
+   /**
+    * The invoices of the warehouse, which are found again each time the warehouse is restored
+    */
+   private Invoice[] invoices;
+
+   /**
+    * The id of the client, and the id of the order, of each order placed
+    */
+   private String[][] orders;
+
+   /**
+    * The id of the product last waitlisted
+    */
+   private String waitlistedId;
+
+   /**
+    * Constructor for a WarehouseFixture, which builds the warehouse into an empty warehouse
+    * @param       size is the number of clients, and the number of products
+    * @throws      IOException when the warehouse can't be written as a snapshot
+    */
+   public WarehouseFixture(int size) throws IOException {
+      Journal.instance().setEnabled(false);
+      HistoryArchive.instance().setEnabled(false);
+      Warehouse.clear();
+      Warehouse warehouse = Warehouse.instance();
+      Random random = new Random(42);
+
+      String[] supplierIds = new String[Math.max(1, size / 100)];
+      for (int i = 0; i < supplierIds.length; i++) {
+         supplierIds[i] = warehouse.addSupplier("Supplier " + i).getId();
+      }
+
+      productIds = new String[size];
+      for (int i = 0; i < size; i++) {
+         productIds[i] = warehouse.addProduct("Product " + i, 100 + random.nextInt(10000)).getId();
+         warehouse.associateProductAndSupplier(productIds[i], supplierIds[random.nextInt(supplierIds.length)]);
+         warehouse.processShipment(productIds[i], STOCK, null);
+      }
+
+      clientIds = new String[size];
+      for (int c = 0; c < size; c++) {
+         clientIds[c] = warehouse.addClient("Client " + c).getId();
+      }
+
+      picks = new int[PICKS];
+      for (int i = 0; i < PICKS; i++) {
+         picks[i] = random.nextInt(size);
+      }
+
+      placeOrders(size, ITEMS_PER_ORDER);
+      for (int c = 0; c < size; c++) {
+         warehouse.processClientOrder(orders[c][0], orders[c][1]);
+         if (c % 2 == 0) {
+            warehouse.acceptClientPayment(clientIds[c], warehouse.getClientBalance(clientIds[c]));
+         }
+      }
+      orders = null;
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Snapshot.write(bytes, Journal.instance().getSequence());
+      snapshot = bytes.toByteArray();
+      restore();
+   }
+
+   /**
+    * Puts the warehouse back the way it was built, undoing whatever the benchmarks changed. The history of every
+    * client is read, so no benchmark times reading a history, and the invoices of the warehouse are found again
+    * @throws      UncheckedIOException when the snapshot of the warehouse can't be read
+    */
+   public void restore() {
+      Warehouse.clear();
+      try {
+         Snapshot.read(ByteBuffer.wrap(snapshot));
+      } catch(IOException ioe) {
+         throw new UncheckedIOException(ioe);
+      }
+      List<Invoice> found = new ArrayList<Invoice>();
+      for (Iterator<Client> clients = Warehouse.instance().getClients(); clients.hasNext();) {
+         for (Iterator<Invoice> i = clients.next().getInvoices(); i.hasNext();) {
+            found.add(i.next());
+         }
+      }
+      invoices = found.toArray(new Invoice[found.size()]);
+   }
+
+   /**
+    * Finds a client picked at random
+    * @param       pick is the number of the pick, which wraps around
+    * @return      the client found
+    */
+   public Object findClient(int pick) {
+      return ClientList.instance().find(clientIds[picked(pick, clientIds.length)]);
+   }
+
+   /**
+    * Finds a product picked at random
+    * @param       pick is the number of the pick, which wraps around
+    * @return      the product found
+    */
+   public Object findProduct(int pick) {
+      return Inventory.instance().find(productIds[picked(pick, productIds.length)]);
+   }
+
+   /**
+    * Calculates the cost of an invoice picked at random
+    * @param       pick is the number of the pick, which wraps around
+    * @return      the cost of the invoice, in cents
+    */
+   public long calculateCost(int pick) {
+      return invoices[picked(pick, invoices.length)].calculateCost();
+   }
+
+   /**
+    * Finds a product picked at random through the Warehouse, whose calls are timed, and counted, by its metrics
+    * @param       pick is the number of the pick, which wraps around
+    * @return      the product found
+    */
+   public Object findWarehouseProduct(int pick) {
+      return Warehouse.instance().findProduct(productIds[picked(pick, productIds.length)]);
+   }
+
+   /**
+    * Sets how the calls to the Warehouse are timed
+    * @param       sampleInterval is the number of calls for each call that is timed, where 1 times every call, and
+    *              0 turns the metrics off
+    */
+   public void setMetrics(int sampleInterval) {
+      WarehouseMetrics metrics = WarehouseMetrics.instance();
+      metrics.setEnabled(sampleInterval > 0);
+      metrics.setSampleInterval(Math.max(1, sampleInterval));
+   }
+
+   /**
+    * Goes through every client with an unpaid balance
+    * @return      the number of clients with an unpaid balance
+    */
+   public int countUnpaid() {
+      int unpaid = 0;
+      for (Iterator<Client> clients = ClientList.instance().getUnpaid(); clients.hasNext(); clients.next()) {
+         unpaid++;
+      }
+      return unpaid;
+   }
+
+   /**
+    * Places orders, which aren't processed, for the clients in turn, each for products picked at random
+    * @param       count of orders to be placed
+    * @param       items each order is for
+    */
+   public void placeOrders(int count, int items) {
+      Warehouse warehouse = Warehouse.instance();
+      orders = new String[count][];
+      for (int o = 0; o < count; o++) {
+         String clientId = clientIds[o % clientIds.length];
+         String orderId = warehouse.createOrder(clientId);
+         for (int i = 0; i < items; i++) {
+            String productId = productIds[picks[(o * items + i) & (PICKS - 1)]];
+            warehouse.addToOrder(clientId, orderId, productId, 1 + (o + i) % 5);
+         }
+         orders[o] = new String[] {clientId, orderId};
+      }
+   }
+
+   /**
+    * Adds an item, for a product picked at random, to the orders placed, a few items to each order in turn
+    * @param       item is the number of the item
+    * @return      the status of adding the item
+    */
+   public int addToOrder(int item) {
+      String[] order = orders[(item / ITEMS_PER_ORDER) % orders.length];
+      String productId = productIds[picked(item, productIds.length)];
+      return Warehouse.instance().addToOrder(order[0], order[1], productId, 1 + (item & 3));
+   }
+
+   /**
+    * Puts the stock each order placed is for into stock, so processing the orders fills them
+    */
+   public void stockOrders() {
+      Warehouse warehouse = Warehouse.instance();
+      for (String[] order : orders) {
+         for (Iterator<Record> records = warehouse.getOrderRecords(order[0], order[1]); records.hasNext();) {
+            Record record = records.next();
+            record.getProduct().receive(record.getQuantity());
+         }
+      }
+   }
+
+   /**
+    * Processes one of the orders placed
+    * @param       order is the number of the order
+    * @return      the status of processing the order
+    */
+   public int processClientOrder(int order) {
+      return Warehouse.instance().processClientOrder(orders[order][0], orders[order][1]);
+   }
+
+   /**
+    * Adds a product that isn't in stock, and waitlists the given number of orders for it
+    * @param       orders to be waitlisted
+    */
+   public void waitlist(int orders) {
+      Warehouse warehouse = Warehouse.instance();
+      waitlistedId = warehouse.addProduct("Waitlisted", 1000).getId();
+      for (int i = 0; i < orders; i++) {
+         String clientId = clientIds[i % clientIds.length];
+         String orderId = warehouse.createOrder(clientId);
+         warehouse.addToOrder(clientId, orderId, waitlistedId, 1);
+         warehouse.processClientOrder(clientId, orderId);
+      }
+   }
+
+   /**
+    * Receives a shipment of one of the product last waitlisted, which fills the next order in line
+    * @return      the quantity of the shipment that is left over
+    */
+   public int processShipment() {
+      return Warehouse.instance().processShipment(waitlistedId, 1, null);
+   }
+
+   /**
+    * Saves the warehouse in the working directory
+    * @return      true if the warehouse was saved; otherwise, false
+    */
+   public boolean save() {
+      return Warehouse.save();
+   }
+
+   /**
+    * Retrieves the warehouse saved in the working directory into an empty warehouse
+    * @return      true if the warehouse was retrieved; otherwise, false
+    */
+   public boolean retrieve() {
+      Journal.clear();
+      Warehouse.clear();
+      return Warehouse.retrieve() != null;
+   }
+
+   /**
+    * Queries whether the working directory holds stored data, which save would replace
+    * @return      true if there is stored data; otherwise, false
+    */
+   public boolean hasStoredData() {
+      return new File(Warehouse.DATA_FILE).exists() || new File(Journal.JOURNAL_FILE).exists();
+   }
+
+   /**
+    * Removes what save stored in the working directory
+    */
+   public void removeStoredData() {
+      new File(Warehouse.DATA_FILE).delete();
+      new File(Journal.JOURNAL_FILE).delete();
+   }
+
+   /**
+    * Queries the position of a client, product, or invoice picked at random
+    * @param       pick is the number of the pick, which wraps around
+    * @param       count of clients, products, or invoices to pick from
+    * @return      the position picked
+    */
+   private int picked(int pick, int count) {
+      return picks[pick & (PICKS - 1)] % count;
+   }
+}
@@ -0,0 +1,274 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Builds a warehouse of made up clients, products, suppliers, and orders through the Warehouse, so the warehouse
+ * can be sized, and loaded, without typing commands into the Ui. The same settings, and seed, build the same
+ * warehouse every time
+ * <p>
+ * Every product has a supplier, and the products out of stock are picked at the stockout rate. Each client places
+ * the number of orders given, each for the number of lines given, from the products in stock, which are stocked
+ * with enough to fill them, and then each product out of stock is waitlisted by the waitlist depth given of orders,
+ * from clients picked at random. Each client then pays part of its balance, so some clients have unpaid balances
+ * <p>
+ * Run on its own, the warehouse built is stored in WarehouseData, for the Ui or LoadDriver to retrieve
+ * <p>
+ * Usage: java WarehouseGenerator [clients] [products] [suppliers] [ordersPerClient] [linesPerOrder]
+ *        [stockoutPercent] [waitlistDepth] [seed]
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Warehouse
+ * @see         LoadDriver
+ */
+public class WarehouseGenerator {
+
+   /**
+    * The most of a product ordered on one line
+    */
+   private static final int MOST_PER_LINE = 5;
+
+   /**
+    * The number of clients to be added
+    */
+   private int clients = 1000;
+
+   /**
+    * The number of products to be added
+    */
+   private int products = 200;
+
+   /**
+    * The number of suppliers to be added
+    */
+   private int suppliers = 20;
+
+   /**
+    * The number of orders each client places
+    */
+   private int ordersPerClient = 5;
+
+   /**
+    * The number of lines each order has
+    */
+   private int linesPerOrder = 3;
+
+   /**
+    * The share of the products that are out of stock, from 0 to 1
+    */
+   private double stockoutRate = 0.1;
+
+   /**
+    * The number of items waitlisted for each product out of stock
+    */
+   private int waitlistDepth = 10;
+
+   /**
+    * Sets the number of clients to be added
+    * @param       clients to be added
+    * @pre         clients is positive
+    * @post        The warehouse generated will have the number of clients given
+    */
+   public void setClients(int clients) {
+      this.clients = Math.max(1, clients);
+   }
+
+   /**
+    * Sets the number of products to be added
+    * @param       products to be added
+    * @pre         products is positive
+    * @post        The warehouse generated will have the number of products given
+    */
+   public void setProducts(int products) {
+      this.products = Math.max(1, products);
+   }
+
+   /**
+    * Sets the number of suppliers to be added
+    * @param       suppliers to be added
+    * @pre         suppliers is positive
+    * @post        The warehouse generated will have the number of suppliers given
+    */
+   public void setSuppliers(int suppliers) {
+      this.suppliers = Math.max(1, suppliers);
+   }
+
+   /**
+    * Sets the number of orders each client places
+    * @param       ordersPerClient is the number of orders each client places
+    * @pre         ordersPerClient isn't negative
+    * @post        Each client of the warehouse generated will have placed the number of orders given
+    */
+   public void setOrdersPerClient(int ordersPerClient) {
+      this.ordersPerClient = Math.max(0, ordersPerClient);
+   }
+
+   /**
+    * Sets the number of lines each order has
+    * @param       linesPerOrder is the number of lines each order has
+    * @pre         linesPerOrder is positive
+    * @post        Each order placed will have the number of lines given
+    */
+   public void setLinesPerOrder(int linesPerOrder) {
+      this.linesPerOrder = Math.max(1, linesPerOrder);
+   }
+
+   /**
+    * Sets the share of the products that are out of stock
+    * @param       stockoutRate is the share of the products out of stock, from 0 to 1
+    * @pre         None
+    * @post        The share of the products given will be out of stock, and waitlisted
+    */
+   public void setStockoutRate(double stockoutRate) {
+      this.stockoutRate = Math.min(1, Math.max(0, stockoutRate));
+   }
+
+   /**
+    * Sets the number of items waitlisted for each product out of stock
+    * @param       waitlistDepth is the number of items waitlisted for each product out of stock
+    * @pre         waitlistDepth isn't negative
+    * @post        Each product out of stock will have the number of waitlisted items given
+    */
+   public void setWaitlistDepth(int waitlistDepth) {
+      this.waitlistDepth = Math.max(0, waitlistDepth);
+   }
+
+   /**
+    * Builds the warehouse into the Warehouse
+    * @param       seed the made up data is picked with, so the same seed builds the same warehouse
+    * @pre         The warehouse is empty
+    * @post        The warehouse will hold the clients, products, suppliers, and orders generated
+    */
+   public void generate(long seed) {
+      Warehouse warehouse = Warehouse.instance();
+      Random random = new Random(seed);
+
+      String[] supplierIds = new String[suppliers];
+      for (int i = 0; i < suppliers; i++) {
+         supplierIds[i] = warehouse.addSupplier("Supplier " + i).getId();
+      }
+
+      // the products out of stock are picked by shuffling which products are, so exactly the rate given are
+      String[] productIds = new String[products];
+      for (int i = 0; i < products; i++) {
+         productIds[i] = warehouse.addProduct("Product " + i, 100 + random.nextInt(100000)).getId();
+         warehouse.associateProductAndSupplier(productIds[i], supplierIds[random.nextInt(suppliers)]);
+      }
+      int outOfStock = (int) Math.round(products * stockoutRate);
+      List<String> shuffled = new ArrayList<String>(Arrays.asList(productIds));
+      Collections.shuffle(shuffled, random);
+      List<String> stocked = shuffled.subList(outOfStock, products);
+      List<String> waitlisted = shuffled.subList(0, outOfStock);
+
+      String[] clientIds = new String[clients];
+      for (int c = 0; c < clients; c++) {
+         clientIds[c] = warehouse.addClient("Client " + c).getId();
+      }
+
+      // every order is placed before any stock is received, so the stock received is exactly what fills them
+      Map<String, Integer> demand = new HashMap<String, Integer>();
+      List<String[]> orders = new ArrayList<String[]>();
+      if (!stocked.isEmpty()) {
+         for (int c = 0; c < clients; c++) {
+            for (int o = 0; o < ordersPerClient; o++) {
+               String orderId = warehouse.createOrder(clientIds[c]);
+               for (int l = 0; l < linesPerOrder; l++) {
+                  String productId = stocked.get(random.nextInt(stocked.size()));
+                  int quantity = 1 + random.nextInt(MOST_PER_LINE);
+                  warehouse.addToOrder(clientIds[c], orderId, productId, quantity);
+                  Integer ordered = demand.get(productId);
+                  demand.put(productId, (ordered == null ? 0 : ordered) + quantity);
+               }
+               orders.add(new String[] {clientIds[c], orderId});
+            }
+         }
+      }
+      for (String productId : stocked) {
+         Integer ordered = demand.get(productId);
+         warehouse.processShipment(productId, (ordered == null ? 0 : ordered) + random.nextInt(100), null);
+      }
+      for (String[] order : orders) {
+         warehouse.processClientOrder(order[0], order[1]);
+      }
+
+      for (String productId : waitlisted) {
+         for (int w = 0; w < waitlistDepth; w++) {
+            String clientId = clientIds[random.nextInt(clients)];
+            String orderId = warehouse.createOrder(clientId);
+            warehouse.addToOrder(clientId, orderId, productId, 1 + random.nextInt(MOST_PER_LINE));
+            warehouse.processClientOrder(clientId, orderId);
+         }
+      }
+
+      for (String clientId : clientIds) {
+         long balance = warehouse.getClientBalance(clientId);
+         if (balance > 0) {
+            warehouse.acceptClientPayment(clientId, (long) (balance * random.nextDouble()));
+         }
+      }
+   }
+
+   /**
+    * Builds the warehouse with the settings given, and stores it in WarehouseData, unless stored data is already
+    * there, which is left as it is
+    * @param       args are the clients, products, suppliers, orders per client, lines per order, percent of the
+    *              products out of stock, waitlist depth, and seed
+    */
+   public static void main(String[] args) {
+      if (new File(Warehouse.DATA_FILE).exists() || new File(Journal.JOURNAL_FILE).exists()) {
+         System.out.println("The working directory already holds stored data, which would be replaced");
+         return;
+      }
+
+      WarehouseGenerator generator = new WarehouseGenerator();
+      generator.setClients(argument(args, 0, generator.clients));
+      generator.setProducts(argument(args, 1, generator.products));
+      generator.setSuppliers(argument(args, 2, generator.suppliers));
+      generator.setOrdersPerClient(argument(args, 3, generator.ordersPerClient));
+      generator.setLinesPerOrder(argument(args, 4, generator.linesPerOrder));
+      generator.setStockoutRate(argument(args, 5, (int) Math.round(generator.stockoutRate * 100)) / 100.0);
+      generator.setWaitlistDepth(argument(args, 6, generator.waitlistDepth));
+      long seed = argument(args, 7, 42);
+
+      // the stored data is saved once it is built, so nothing needs journaling
+      Journal.instance().setEnabled(false);
+      long start = System.nanoTime();
+      generator.generate(seed);
+      long built = System.nanoTime();
+      if (!Warehouse.save()) {
+         System.out.println("The warehouse could not be stored");
+         return;
+      }
+      System.out.printf(
+         "Built %s in %.1f s, and stored it in %s (%d bytes) in %.1f s%n", generator, (built - start) / 1e9,
+         Warehouse.DATA_FILE, new File(Warehouse.DATA_FILE).length(), (System.nanoTime() - built) / 1e9
+      );
+   }
+
+   /**
+    * Parses the argument at the given position
+    * @param       args given to main
+    * @param       position of the argument
+    * @param       fallback used when the argument isn't given
+    * @return      the argument at the position given if there is one; otherwise, the fallback
+    */
+   private static int argument(String[] args, int position, int fallback) {
+      return args.length > position ? Integer.parseInt(args[position]) : fallback;
+   }
+
+   /**
+    * Creates a string describing the warehouse these settings build
+    * @return      a string describing the settings
+    * @pre         None
+    * @post        None
+    */
+   @Override
+   public String toString() {
+      return String.format(
+         "a warehouse of [%d] clients, [%d] products, and [%d] suppliers, with [%d] orders of [%d] lines per "
+         + "client, [%.0f%%] of the products out of stock, and [%d] items waitlisted for each",
+         clients, products, suppliers, ordersPerClient, linesPerOrder, stockoutRate * 100, waitlistDepth
+      );
+   }
+}
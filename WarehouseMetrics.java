@@ -0,0 +1,569 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.lang.management.*;
+import javax.management.*;
+
+/**
+ * Times, and counts, the calls made to the Warehouse, so the calls that are slow, or that fail, can be found while
+ * the warehouse is in use. Every public operation of the Warehouse has a latency histogram, and a counter for each
+ * status its calls end with, such as SUCCESS or CLIENT_NOT_FOUND, which the Warehouse records to as each call
+ * returns, or OPERATION_FAILED when it throws. Every call is counted, which is one add to a counter spread across
+ * threads, but only one call in every sample interval, picked at random, is timed, since timing a call takes two
+ * reads of the clock, which cost more than the rest of recording it. Nothing is recorded while the metrics are
+ * turned off
+ * <p>
+ * The metrics are read as Operation objects, which hold what the metrics were when they were read, and are shown
+ * through JMX under the name Warehouse:type=Metrics. Calls replayed from the journal while the warehouse is retrieved
+ * repeat calls that were made before, so they aren't recorded
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Warehouse
+ * @see         LatencyHistogram
+ * @see         WarehouseMetricsMXBean
+ */
+public class WarehouseMetrics implements WarehouseMetricsMXBean {
+
+   /**
+    * The name the metrics are shown by through JMX
+    */
+   public static final String OBJECT_NAME = "Warehouse:type=Metrics";
+
+   // the operations of the Warehouse, in the order of OPERATIONS
+   static final int HAS_CLIENTS                        = 0;
+   static final int HAS_PRODUCTS                       = 1;
+   static final int HAS_SUPPLIERS                      = 2;
+   static final int HAS_CLIENTS_WITH_UNPAID_BALANCE    = 3;
+   static final int CLIENT_HAS_ORDERS                  = 4;
+   static final int CLIENT_HAS_WAITLISTED_ORDERS       = 5;
+   static final int CLIENT_HAS_INVOICES                = 6;
+   static final int CLIENT_HAS_TRANSACTIONS            = 7;
+   static final int ADD_CLIENT                         = 8;
+   static final int GET_CLIENTS                        = 9;
+   static final int GET_CLIENTS_WITH_UNPAID_BALANCE    = 10;
+   static final int GET_TOP_DEBTORS                    = 11;
+   static final int GET_SUPPLIERS                      = 12;
+   static final int GET_PRODUCTS                       = 13;
+   static final int GET_ORDER_RECORDS                  = 14;
+   static final int GET_INVOICE_RECORDS                = 15;
+   static final int GET_ORDERS                         = 16;
+   static final int GET_INVOICES                       = 17;
+   static final int GET_PRODUCT_WAITLISTED_ORDER_ITEMS = 18;
+   static final int GET_CLIENT_TRANSACTIONS            = 19;
+   static final int GET_CLIENT_TRANSACTIONS_IN_RANGE   = 20;
+   static final int GET_ACTIVITY                       = 21;
+   static final int GET_CLIENT_WAITLISTED_ORDERS       = 22;
+   static final int GET_CLIENT_WAITLISTED_ORDER_ITEMS  = 23;
+   static final int FIND_CLIENT                        = 24;
+   static final int FIND_CLIENT_ORDER                  = 25;
+   static final int FIND_CLIENT_INVOICE                = 26;
+   static final int FIND_SUPPLIER                      = 27;
+   static final int FIND_SUPPLIERS_BY_NAME             = 28;
+   static final int FIND_SUPPLIERS_BY_NAME_PREFIX      = 29;
+   static final int FIND_PRODUCT                       = 30;
+   static final int GET_CLIENT_BALANCE_STR             = 31;
+   static final int GET_CLIENT_BALANCE                 = 32;
+   static final int ACCEPT_CLIENT_PAYMENT              = 33;
+   static final int ADD_SUPPLIER                       = 34;
+   static final int ASSOCIATE_PRODUCT_AND_SUPPLIER     = 35;
+   static final int DISASSOCIATE_PRODUCT_AND_SUPPLIER  = 36;
+   static final int ADD_PRODUCT                        = 37;
+   static final int CREATE_ORDER                       = 38;
+   static final int ADD_TO_ORDER                       = 39;
+   static final int PROCESS_CLIENT_ORDER               = 40;
+   static final int PROCESS_CLIENT_ORDERS              = 41;
+   static final int PRODUCT_HAS_WAITLISTED_ORDER_ITEMS = 42;
+   static final int FIND_WAITLIST_ITEM                 = 43;
+   static final int PROCESS_SHIPMENT                   = 44;
+   static final int RECEIVE_SHIPMENT                   = 45;
+   static final int RETRIEVE                           = 46;
+   static final int SAVE                               = 47;
+   static final int SAVE_IN_BACKGROUND                 = 48;
+
+   /**
+    * What start returns for a call that isn't recorded
+    */
+   private static final long NOT_RECORDED = 0;
+
+   /**
+    * What start returns for a call that is counted, but not timed
+    */
+   private static final long NOT_TIMED = 1;
+
+   /**
+    * The number of calls for each call that is timed, unless it is changed
+    */
+   private static final int SAMPLE_INTERVAL = 16;
+
+   /**
+    * The names of the operations, which are the names of the Warehouse methods
+    */
+   private static final String[] OPERATIONS = {
+      "hasClients", "hasProducts", "hasSuppliers", "hasClientsWithUnpaidBalance", "clientHasOrders",
+      "clientHasWaitlistedOrders", "clientHasInvoices", "clientHasTransactions", "addClient", "getClients",
+      "getClientsWithUnpaidBalance", "getTopDebtors", "getSuppliers", "getProducts", "getOrderRecords",
+      "getInvoiceRecords", "getOrders", "getInvoices", "getProductWaitlistedOrderItems", "getClientTransactions",
+      "getClientTransactionsInRange", "getActivity", "getClientWaitlistedOrders", "getClientWaitlistedOrderItems",
+      "findClient", "findClientOrder", "findClientInvoice", "findSupplier", "findSuppliersByName",
+      "findSuppliersByNamePrefix", "findProduct", "getClientBalanceStr", "getClientBalance", "acceptClientPayment",
+      "addSupplier", "associateProductAndSupplier", "disassociateProductAndSupplier", "addProduct", "createOrder",
+      "addToOrder", "processClientOrder", "processClientOrders", "productHasWaitlistedOrderItems",
+      "findWaitlistItem", "processShipment", "receiveShipment", "retrieve", "save", "saveInBackground"
+   };
+
+   /**
+    * The names of the statuses a call can end with, in the order of the Warehouse's status codes
+    */
+   private static final String[] STATUSES = {
+      "SUCCESS", "OPERATION_FAILED", "CLIENT_NOT_FOUND", "SUPPLIER_NOT_FOUND", "PRODUCT_NOT_FOUND",
+      "ORDER_NOT_FOUND", "INVOICE_NOT_FOUND", "ALREADY_EXISTS"
+   };
+
+   /**
+    * Singleton instance of self
+    */
+   private static volatile WarehouseMetrics metrics;
+
+   /**
+    * The latency, and statuses, of each operation, which are replaced all at once when the metrics are reset
+    */
+   private volatile Meter[] meters;
+
+   /**
+    * Whether the calls are being timed, and counted
+    */
+   private volatile boolean enabled = true;
+
+   /**
+    * The number of calls for each call that is timed, which is picked at random, where 1 times every call
+    */
+   private volatile int sampleInterval = SAMPLE_INTERVAL;
+
+   /**
+    * The thread replaying the journal, whose calls aren't recorded; otherwise, null
+    */
+   private volatile Thread replayThread;
+
+   /**
+    * What is recorded for one operation
+    */
+   private static class Meter {
+
+      /**
+       * The latency of the calls timed
+       */
+      private final LatencyHistogram latency = new LatencyHistogram();
+
+      /**
+       * The number of calls that ended with each status, which are counted in cells of their own by threads that
+       * count at the same time, so the threads don't wait on each other
+       */
+      private final LongAdder[] statuses = new LongAdder[STATUSES.length];
+
+      /**
+       * Constructor for a Meter without any calls recorded
+       */
+      Meter() {
+         for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = new LongAdder();
+         }
+      }
+   }
+
+   /**
+    * The metrics of one operation, as they were when they were read
+    */
+   public static class Operation {
+
+      /**
+       * The name of the operation
+       */
+      private final String name;
+
+      /**
+       * The number of calls that ended with each status
+       */
+      private final long[] statuses;
+
+      /**
+       * The latency of the calls
+       */
+      private final LatencyHistogram latency;
+
+      /**
+       * Constructor for the metrics of an operation, copied from what has been recorded
+       * @param       name of the operation
+       * @param       meter holding what has been recorded for the operation
+       */
+      private Operation(String name, Meter meter) {
+         this.name = name;
+         this.statuses = new long[STATUSES.length];
+         for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = meter.statuses[i].sum();
+         }
+         this.latency = new LatencyHistogram();
+         latency.add(meter.latency);
+      }
+
+      /**
+       * Queries the name of the operation
+       * @return      the name of the Warehouse method
+       */
+      public String getName() {
+         return name;
+      }
+
+      /**
+       * Queries the number of calls made
+       * @return      the number of calls
+       */
+      public long getCount() {
+         long count = 0;
+         for (long n : statuses) {
+            count += n;
+         }
+         return count;
+      }
+
+      /**
+       * Queries the number of calls that ended with the given status
+       * @param       status of the calls, such as Warehouse.CLIENT_NOT_FOUND
+       * @return      the number of calls that ended with the status
+       */
+      public long getCount(int status) {
+         return status >= 0 && status < statuses.length ? statuses[status] : 0;
+      }
+
+      /**
+       * Queries the number of calls that ended with each status, leaving out the statuses no call ended with
+       * @return      the number of calls, keyed by the name of the status, such as CLIENT_NOT_FOUND
+       */
+      public Map<String, Long> getStatuses() {
+         Map<String, Long> counts = new LinkedHashMap<String, Long>();
+         for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] != 0) {
+               counts.put(STATUSES[i], statuses[i]);
+            }
+         }
+         return counts;
+      }
+
+      /**
+       * Queries the average latency of the calls
+       * @return      the average latency, in nanoseconds
+       */
+      public double getMeanNanos() {
+         return latency.getMean();
+      }
+
+      /**
+       * Queries the latency half of the calls took no longer than
+       * @return      the median latency, in nanoseconds
+       */
+      public long getP50Nanos() {
+         return latency.getPercentile(50);
+      }
+
+      /**
+       * Queries the latency 90 percent of the calls took no longer than
+       * @return      the 90th percentile latency, in nanoseconds
+       */
+      public long getP90Nanos() {
+         return latency.getPercentile(90);
+      }
+
+      /**
+       * Queries the latency 99 percent of the calls took no longer than
+       * @return      the 99th percentile latency, in nanoseconds
+       */
+      public long getP99Nanos() {
+         return latency.getPercentile(99);
+      }
+
+      /**
+       * Queries the latency 99.9 percent of the calls took no longer than
+       * @return      the 99.9th percentile latency, in nanoseconds
+       */
+      public long getP999Nanos() {
+         return latency.getPercentile(99.9);
+      }
+
+      /**
+       * Queries the longest latency of the calls timed
+       * @return      the longest latency, in nanoseconds
+       */
+      public long getMaxNanos() {
+         return latency.getMax();
+      }
+
+      /**
+       * Queries the latency the given percent of the calls took no longer than
+       * @param       percentile of the calls, from 0 to 100
+       * @return      the latency at the percentile, in nanoseconds
+       */
+      public long getPercentile(double percentile) {
+         return latency.getPercentile(percentile);
+      }
+
+      /**
+       * Creates a string describing the metrics of the operation
+       * @return      a string describing the calls, their latency, and their statuses
+       */
+      @Override
+      public String toString() {
+         return String.format(
+            "[%s] was called [%d] times, taking [%.1f] us on average, [%.1f] us at p50, [%.1f] us at p99, and "
+            + "[%.1f] us at most, ending with %s", name, getCount(), getMeanNanos() / 1e3, getP50Nanos() / 1e3,
+            getP99Nanos() / 1e3, getMaxNanos() / 1e3, getStatuses()
+         );
+      }
+   }
+
+   /**
+    * Private singleton WarehouseMetrics constructor
+    */
+   private WarehouseMetrics() {
+      this.meters = newMeters();
+   }
+
+   /**
+    * Singleton WarehouseMetrics constructor, which shows the metrics through JMX the first time it is called
+    * @return the WarehouseMetrics singleton instance
+    */
+   public static WarehouseMetrics instance() {
+      WarehouseMetrics current = metrics;
+      if (current == null) {
+         synchronized (WarehouseMetrics.class) {
+            if (metrics == null) {
+               metrics = new WarehouseMetrics();
+               metrics.register();
+            }
+            current = metrics;
+         }
+      }
+      return current;
+   }
+
+   /**
+    * Shows the metrics through JMX. The metrics are still recorded when they can't be shown
+    * @pre         None
+    * @post        The metrics will be shown under OBJECT_NAME, unless something else is already shown under it
+    */
+   private void register() {
+      try {
+         ObjectName name = new ObjectName(OBJECT_NAME);
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+         }
+      } catch(JMException jme) {
+         jme.printStackTrace();
+      }
+   }
+
+   /**
+    * Makes a meter for each operation
+    * @return      a meter for each operation, in the order of the operations, without any calls recorded
+    */
+   private static Meter[] newMeters() {
+      Meter[] fresh = new Meter[OPERATIONS.length];
+      for (int i = 0; i < fresh.length; i++) {
+         fresh[i] = new Meter();
+      }
+      return fresh;
+   }
+
+   /**
+    * Reads the clock at the start of a call, if the call is picked to be timed
+    * @return      the time the call started, in nanoseconds, for a call that is timed; NOT_TIMED for a call that is
+    *              only counted; or NOT_RECORDED when the metrics are turned off, or the journal is being replayed
+    * @pre         None
+    * @post        None
+    */
+   long start() {
+      if (!enabled || replayThread == Thread.currentThread()) {
+         return NOT_RECORDED;
+      }
+      int interval = sampleInterval;
+      if (interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0) {
+         return NOT_TIMED;
+      }
+
+      // a clock that reads as NOT_RECORDED, or NOT_TIMED, loses the latency of one call, and nothing else
+      return System.nanoTime();
+   }
+
+   /**
+    * Records a call that has ended
+    * @param       operation that was called
+    * @param       status the call ended with, which is one of the Warehouse's status codes
+    * @param       start is what start returned when the call started
+    * @pre         None
+    * @post        The call will be counted, with its latency if it was timed, unless it wasn't to be recorded
+    */
+   void record(int operation, int status, long start) {
+      if (start == NOT_RECORDED) {
+         return;
+      }
+      Meter meter = meters[operation];
+      if (start != NOT_TIMED) {
+         meter.latency.record(System.nanoTime() - start);
+      }
+      meter.statuses[status].increment();
+   }
+
+   /**
+    * Stops recording the calls made by this thread, which is about to replay the journal
+    * @pre         None
+    * @post        The calls this thread makes won't be recorded until endReplay is called
+    * @see         Journal
+    */
+   void startReplay() {
+      replayThread = Thread.currentThread();
+   }
+
+   /**
+    * Records the calls made by the thread that replayed the journal again
+    * @pre         The journal has been replayed
+    * @post        Every call will be recorded again
+    * @see         Journal
+    */
+   void endReplay() {
+      replayThread = null;
+   }
+
+   /**
+    * Queries the metrics of every operation of the Warehouse
+    * @return      the metrics of each operation, as they are now, in the order of the operations
+    * @pre         None
+    * @post        None
+    */
+   public Operation[] getOperations() {
+      Meter[] current = meters;
+      Operation[] operations = new Operation[current.length];
+      for (int i = 0; i < current.length; i++) {
+         operations[i] = new Operation(OPERATIONS[i], current[i]);
+      }
+      return operations;
+   }
+
+   /**
+    * Queries the metrics of one operation of the Warehouse
+    * @param       name of the operation, which is the name of the Warehouse method
+    * @return      the metrics of the operation as they are now if there is an operation of the name given;
+    *              otherwise, null
+    * @pre         None
+    * @post        None
+    */
+   public Operation getOperation(String name) {
+      int operation = Arrays.asList(OPERATIONS).indexOf(name);
+      return operation < 0 ? null : new Operation(name, meters[operation]);
+   }
+
+   /**
+    * Queries the metrics of the operations of the Warehouse that have been called
+    * @return      An iterator to navigate through the metrics of the operations called, as they are now, in the
+    *              order of the operations
+    * @pre         None
+    * @post        None
+    */
+   public Iterator<Operation> getCalledOperations() {
+      List<Operation> called = new ArrayList<Operation>();
+      for (Operation operation : getOperations()) {
+         if (operation.getCount() > 0) {
+            called.add(operation);
+         }
+      }
+      return called.iterator();
+   }
+
+   /**
+    * Queries whether the calls to the Warehouse are being timed, and counted
+    * @return      true if the calls are being timed, and counted; otherwise, false
+    * @pre         None
+    * @post        None
+    */
+   public boolean isEnabled() {
+      return enabled;
+   }
+
+   /**
+    * Turns timing, and counting, the calls to the Warehouse on or off
+    * @param       enabled is true if the calls are to be timed, and counted; otherwise, false
+    * @pre         None
+    * @post        Calls started from now on will only be recorded while the metrics are on
+    */
+   public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+   }
+
+   /**
+    * Queries the number of calls for each call that is timed
+    * @return      the sample interval, where 1 means every call is timed
+    * @pre         None
+    * @post        None
+    */
+   public int getSampleInterval() {
+      return sampleInterval;
+   }
+
+   /**
+    * Sets the number of calls for each call that is timed, which is picked at random. Every call is counted
+    * whatever the interval
+    * @param       interval is the sample interval, where 1 times every call
+    * @throws      IllegalArgumentException when the interval is less than 1
+    * @pre         None
+    * @post        One in every interval calls started from now on will be timed
+    */
+   public void setSampleInterval(int interval) {
+      if (interval < 1) {
+         throw new IllegalArgumentException("Sample interval " + interval + " is less than 1");
+      }
+      sampleInterval = interval;
+   }
+
+   /**
+    * Queries the number of segments of the clients' transactions written to their archives
+    * @return      the number of segments written
+    * @pre         None
+    * @post        None
+    * @see         HistoryArchive
+    */
+   public long getArchivedSegments() {
+      return HistoryArchive.instance().getSegments();
+   }
+
+   /**
+    * Queries the number of segments of the clients' transactions that failed to be written to their archives,
+    * whose transactions were kept in memory
+    * @return      the number of segments that failed to be written
+    * @pre         None
+    * @post        None
+    * @see         HistoryArchive
+    */
+   public long getArchiveFailures() {
+      return HistoryArchive.instance().getFailures();
+   }
+
+   /**
+    * Queries why the last segment that failed to be written to a client's archive failed
+    * @return      the reason it failed, or null if no segment has failed
+    * @pre         None
+    * @post        None
+    * @see         HistoryArchive
+    */
+   public String getLastArchiveFailure() {
+      return HistoryArchive.instance().getLastFailure();
+   }
+
+   /**
+    * Forgets every call timed, and counted, so far
+    * @pre         None
+    * @post        Every operation will have no calls recorded, other than calls ending while it is reset
+    */
+   public void reset() {
+      meters = newMeters();
+   }
+}
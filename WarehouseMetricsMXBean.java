@@ -0,0 +1,75 @@
+/**
+ * What the WarehouseMetrics show through JMX, such as in JConsole, under the name Warehouse:type=Metrics. Each
+ * operation of the Warehouse is shown as a row of its calls, latency percentiles, and the number of calls that
+ * ended with each status
+ * <p>
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         WarehouseMetrics
+ */
+public interface WarehouseMetricsMXBean {
+
+   /**
+    * Queries the metrics of every operation of the Warehouse
+    * @return      the metrics of each operation, as they are now, in the order of the operations
+    */
+   WarehouseMetrics.Operation[] getOperations();
+
+   /**
+    * Queries the metrics of one operation of the Warehouse
+    * @param       name of the operation, which is the name of the Warehouse method
+    * @return      the metrics of the operation as they are now if there is an operation of the name given;
+    *              otherwise, null
+    */
+   WarehouseMetrics.Operation getOperation(String name);
+
+   /**
+    * Queries whether the calls to the Warehouse are being timed, and counted
+    * @return      true if the calls are being timed, and counted; otherwise, false
+    */
+   boolean isEnabled();
+
+   /**
+    * Turns timing, and counting, the calls to the Warehouse on or off
+    * @param       enabled is true if the calls are to be timed, and counted; otherwise, false
+    */
+   void setEnabled(boolean enabled);
+
+   /**
+    * Queries the number of calls for each call that is timed
+    * @return      the sample interval, where 1 means every call is timed
+    */
+   int getSampleInterval();
+
+   /**
+    * Sets the number of calls for each call that is timed, which is picked at random. Every call is counted
+    * whatever the interval
+    * @param       interval is the sample interval, where 1 times every call
+    */
+   void setSampleInterval(int interval);
+
+   /**
+    * Queries the number of segments of the clients' transactions written to their archives
+    * @return      the number of segments written
+    */
+   long getArchivedSegments();
+
+   /**
+    * Queries the number of segments of the clients' transactions that failed to be written to their archives,
+    * whose transactions were kept in memory
+    * @return      the number of segments that failed to be written
+    */
+   long getArchiveFailures();
+
+   /**
+    * Queries why the last segment that failed to be written to a client's archive failed
+    * @return      the reason it failed, or null if no segment has failed
+    */
+   String getLastArchiveFailure();
+
+   /**
+    * Forgets every call timed, and counted, so far
+    */
+   void reset();
+}
@@ -0,0 +1,168 @@
+package warehouse.benchmarks;
+
+import java.util.*;
+import java.lang.reflect.*;
+
+/**
+ * A warehouse built for the benchmarks to run against. The warehouse's classes are in the default package, which a
+ * benchmark can't refer to, so the benchmarks only see the warehouse's WarehouseFixture through this interface,
+ * whose methods are handed to the methods of the same name of the fixture
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+public interface Fixture {
+
+   /**
+    * The name of the class that builds the warehouse, in the default package
+    */
+   String IMPLEMENTATION = "WarehouseFixture";
+
+   /**
+    * Builds a warehouse of the given size through WarehouseFixture
+    * @param       size is the number of clients, and the number of products
+    * @return      the warehouse built
+    * @throws      IllegalStateException when the warehouse can't be built
+    */
+   static Fixture build(int size) {
+      final Object fixture;
+      final Map<Method, Method> methods = new HashMap<Method, Method>();
+      try {
+         Class<?> implementation = Class.forName(IMPLEMENTATION);
+         fixture = implementation.getConstructor(int.class).newInstance(size);
+
+         // looked up once, so a call only costs the reflective call, which is the same at every size
+         for (Method method : Fixture.class.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+               methods.put(method, implementation.getMethod(method.getName(), method.getParameterTypes()));
+            }
+         }
+      } catch(InvocationTargetException ite) {
+         throw new IllegalStateException("Failed to build a warehouse of " + size, ite.getCause());
+      } catch(ReflectiveOperationException roe) {
+         throw new IllegalStateException("Failed to build a warehouse of " + size, roe);
+      }
+      return (Fixture) Proxy.newProxyInstance(
+         Fixture.class.getClassLoader(), new Class<?>[] {Fixture.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+               Method target = methods.get(method);
+               if (target == null) {
+                  return method.invoke(this, args);
+               }
+               try {
+                  return target.invoke(fixture, args);
+               } catch(InvocationTargetException ite) {
+                  throw ite.getCause();
+               }
+            }
+         }
+      );
+   }
+
+   /**
+    * Puts the warehouse back the way it was built, undoing whatever the benchmarks changed
+    */
+   void restore();
+
+   /**
+    * Finds a client picked at random
+    * @param       pick is the number of the pick, which wraps around
+    * @return      the client found
+    */
+   Object findClient(int pick);
+
+   /**
+    * Finds a product picked at random
+    * @param       pick is the number of the pick, which wraps around
+    * @return      the product found
+    */
+   Object findProduct(int pick);
+
+   /**
+    * Calculates the cost of an invoice picked at random
+    * @param       pick is the number of the pick, which wraps around
+    * @return      the cost of the invoice, in cents
+    */
+   long calculateCost(int pick);
+
+   /**
+    * Finds a product picked at random through the Warehouse, whose calls are timed, and counted, by its metrics
+    * @param       pick is the number of the pick, which wraps around
+    * @return      the product found
+    */
+   Object findWarehouseProduct(int pick);
+
+   /**
+    * Sets how the calls to the Warehouse are timed
+    * @param       sampleInterval is the number of calls for each call that is timed, where 1 times every call, and
+    *              0 turns the metrics off
+    */
+   void setMetrics(int sampleInterval);
+
+   /**
+    * Goes through every client with an unpaid balance
+    * @return      the number of clients with an unpaid balance
+    */
+   int countUnpaid();
+
+   /**
+    * Places orders, which aren't processed, for the clients in turn, each for products picked at random
+    * @param       count of orders to be placed
+    * @param       items each order is for
+    */
+   void placeOrders(int count, int items);
+
+   /**
+    * Adds an item, for a product picked at random, to the orders placed, a few items to each order in turn
+    * @param       item is the number of the item
+    * @return      the status of adding the item
+    */
+   int addToOrder(int item);
+
+   /**
+    * Puts the stock each order placed is for into stock, so processing the orders fills them
+    */
+   void stockOrders();
+
+   /**
+    * Processes one of the orders placed
+    * @param       order is the number of the order
+    * @return      the status of processing the order
+    */
+   int processClientOrder(int order);
+
+   /**
+    * Adds a product that isn't in stock, and waitlists the given number of orders for it
+    * @param       orders to be waitlisted
+    */
+   void waitlist(int orders);
+
+   /**
+    * Receives a shipment of one of the product last waitlisted, which fills the next order in line
+    * @return      the quantity of the shipment that is left over
+    */
+   int processShipment();
+
+   /**
+    * Saves the warehouse in the working directory
+    * @return      true if the warehouse was saved; otherwise, false
+    */
+   boolean save();
+
+   /**
+    * Retrieves the warehouse saved in the working directory into an empty warehouse
+    * @return      true if the warehouse was retrieved; otherwise, false
+    */
+   boolean retrieve();
+
+   /**
+    * Queries whether the working directory holds stored data, which save would replace
+    * @return      true if there is stored data; otherwise, false
+    */
+   boolean hasStoredData();
+
+   /**
+    * Removes what save stored in the working directory
+    */
+   void removeStoredData();
+}
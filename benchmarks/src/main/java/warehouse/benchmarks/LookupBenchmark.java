@@ -0,0 +1,56 @@
+package warehouse.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times the lookups of the warehouse, which don't change it, for clients, products, and invoices picked at random
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LookupBenchmark extends WarehouseState {
+
+   /**
+    * The number of the next pick
+    */
+   private int pick;
+
+   /**
+    * Times ClientList.find
+    * @return      the client found
+    */
+   @Benchmark
+   public Object clientListFind() {
+      return fixture.findClient(pick++);
+   }
+
+   /**
+    * Times Inventory.find
+    * @return      the product found
+    */
+   @Benchmark
+   public Object inventoryFind() {
+      return fixture.findProduct(pick++);
+   }
+
+   /**
+    * Times Invoice.calculateCost
+    * @return      the cost of the invoice
+    */
+   @Benchmark
+   public long invoiceCalculateCost() {
+      return fixture.calculateCost(pick++);
+   }
+
+   /**
+    * Times going through ClientList.getUnpaid, where every other client has an unpaid balance
+    * @return      the number of clients with an unpaid balance
+    */
+   @Benchmark
+   public int clientListGetUnpaid() {
+      return fixture.countUnpaid();
+   }
+}
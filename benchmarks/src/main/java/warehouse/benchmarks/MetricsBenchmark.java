@@ -0,0 +1,47 @@
+package warehouse.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times what the metrics add to a call of the Warehouse, by timing the same lookup with the metrics off, with every
+ * call timed, and with one call in every sixteen timed, which is how the metrics start out. The lookup itself is
+ * timed by LookupBenchmark.inventoryFind
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         LookupBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MetricsBenchmark extends WarehouseState {
+
+   /**
+    * The number of calls for each call that is timed, where 0 turns the metrics off
+    */
+   @Param({"0", "1", "16"})
+   public int sampleInterval;
+
+   /**
+    * The number of the next pick
+    */
+   private int pick;
+
+   /**
+    * Sets how the calls are timed, before each iteration, since the warehouse is only built by the time an
+    * iteration starts
+    */
+   @Setup(Level.Iteration)
+   public void configure() {
+      fixture.setMetrics(sampleInterval);
+   }
+
+   /**
+    * Times Warehouse.findProduct, which is timed, and counted, by the metrics
+    * @return      the product found
+    */
+   @Benchmark
+   public Object warehouseFindProduct() {
+      return fixture.findWarehouseProduct(pick++);
+   }
+}
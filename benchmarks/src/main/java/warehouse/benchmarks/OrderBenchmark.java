@@ -0,0 +1,93 @@
+package warehouse.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+ * Times the calls of the Warehouse that fill orders. Each iteration runs a fixed number of calls, and whatever they
+ * need that isn't being timed, such as the orders processClientOrder processes, is made before the iteration starts
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OrderBenchmark extends WarehouseState {
+
+   /**
+    * The number of items addToOrder adds each iteration
+    */
+   private static final int ITEMS = 100000;
+
+   /**
+    * The number of orders processClientOrder processes each iteration
+    */
+   private static final int ORDERS = 10000;
+
+   /**
+    * The number of shipments processShipment receives each iteration, from a waitlist twice as long
+    */
+   private static final int SHIPMENTS = 1000;
+
+   /**
+    * Makes what the next iteration of the benchmark being run needs
+    * @param       params of the benchmark being run
+    */
+   @Setup(Level.Iteration)
+   public void prepare(BenchmarkParams params) {
+      String benchmark = params.getBenchmark();
+      if (benchmark.endsWith(".addToOrder")) {
+         fixture.placeOrders(ITEMS / 3 + 1, 0);
+      } else if (benchmark.endsWith(".processClientOrder")) {
+
+         // every order is stocked before it is processed, so each iteration fills every order it processes
+         fixture.placeOrders(ORDERS, 3);
+         fixture.stockOrders();
+      } else if (benchmark.endsWith(".processShipment")) {
+         fixture.waitlist(SHIPMENTS * 2);
+      }
+   }
+
+   /**
+    * Times Warehouse.addToOrder
+    * @return      the sum of the statuses
+    */
+   @Benchmark
+   @OperationsPerInvocation(ITEMS)
+   public long addToOrder() {
+      long status = 0;
+      for (int i = 0; i < ITEMS; i++) {
+         status += fixture.addToOrder(i);
+      }
+      return status;
+   }
+
+   /**
+    * Times Warehouse.processClientOrder
+    * @return      the sum of the statuses
+    */
+   @Benchmark
+   @OperationsPerInvocation(ORDERS)
+   public long processClientOrder() {
+      long status = 0;
+      for (int i = 0; i < ORDERS; i++) {
+         status += fixture.processClientOrder(i);
+      }
+      return status;
+   }
+
+   /**
+    * Times Warehouse.processShipment filling the front of a deep waitlist
+    * @return      the sum of what was left over
+    */
+   @Benchmark
+   @OperationsPerInvocation(SHIPMENTS)
+   public long processShipment() {
+      long remaining = 0;
+      for (int i = 0; i < SHIPMENTS; i++) {
+         remaining += fixture.processShipment();
+      }
+      return remaining;
+   }
+}
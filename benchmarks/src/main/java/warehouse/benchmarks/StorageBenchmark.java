@@ -0,0 +1,68 @@
+package warehouse.benchmarks;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+ * Times saving the warehouse, and retrieving it, in the working directory, which mustn't already hold stored data.
+ * Retrieving only reads the index of the snapshot, as the histories are read the first time they are used
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StorageBenchmark extends WarehouseState {
+
+   /**
+    * Builds the warehouse, refusing to run where saving would replace stored data
+    * @throws      IllegalStateException when the working directory holds stored data
+    */
+   @Override
+   public void build() {
+      super.build();
+      if (fixture.hasStoredData()) {
+         throw new IllegalStateException("The working directory already holds stored data, which saving would replace");
+      }
+   }
+
+   /**
+    * Saves the warehouse before each iteration of retrieve, so there is something to retrieve
+    * @param       params of the benchmark being run
+    */
+   @Setup(Level.Iteration)
+   public void prepare(BenchmarkParams params) {
+      if (params.getBenchmark().endsWith(".retrieve")) {
+         fixture.save();
+      }
+   }
+
+   /**
+    * Removes what was stored
+    */
+   @TearDown(Level.Trial)
+   public void removeStoredData() {
+      fixture.removeStoredData();
+   }
+
+   /**
+    * Times Warehouse.save
+    * @return      true if the warehouse was saved
+    */
+   @Benchmark
+   public boolean save() {
+      return fixture.save();
+   }
+
+   /**
+    * Times Warehouse.retrieve
+    * @return      true if the warehouse was retrieved
+    */
+   @Benchmark
+   public boolean retrieve() {
+      return fixture.retrieve();
+   }
+}
@@ -0,0 +1,37 @@
+package warehouse.benchmarks;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The warehouse a benchmark runs against, built once for every size the benchmark is run at. A warehouse of a given
+ * size has that many clients, and that many products, and sizes of a million take a heap of a few gigabytes
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Fixture
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public abstract class WarehouseState {
+
+   /**
+    * The number of clients, and the number of products, of the warehouse
+    */
+   @Param({"1000", "10000", "100000", "1000000"})
+   public int size;
+
+   /**
+    * The warehouse being timed
+    */
+   protected Fixture fixture;
+
+   /**
+    * Builds the warehouse
+    */
+   @Setup(Level.Trial)
+   public void build() {
+      fixture = Fixture.build(size);
+   }
+}
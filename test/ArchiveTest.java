@@ -0,0 +1,127 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests archiving the clients' older transactions on the HistoryArchive's background thread
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         HistoryArchive
+ * @see         Client
+ */
+public class ArchiveTest {
+
+   /**
+    * The time the archived transactions are made at, which is long before the cutoff
+    */
+   private static final long OLD = 946684800000L; // 2000-01-01
+
+   /**
+    * The warehouse being tested
+    */
+   private Warehouse warehouse;
+
+   /**
+    * The archive being tested, which archives every transaction but the latest of each client
+    */
+   private HistoryArchive archive;
+
+   /**
+    * Starts every test from an empty warehouse, which isn't journaled, without stored data
+    */
+   @Before
+   public void setUp() {
+      Journal.instance().setEnabled(false);
+      HistoryArchive.clear();
+      Warehouse.clear();
+      StoredFiles.delete();
+      archive = HistoryArchive.instance();
+      archive.setRetention(1, 0);
+      warehouse = Warehouse.instance();
+   }
+
+   /**
+    * Deletes what the test stored, and puts the archive back the way it was
+    */
+   @After
+   public void tearDown() {
+      HistoryArchive.clear();
+      Warehouse.clear();
+      StoredFiles.delete();
+   }
+
+   /**
+    * A client's older transactions are moved to its archive in the background, and are still found in order
+    */
+   @Test
+   public void olderTransactionsAreArchivedInTheBackground() {
+      Client client = pay(4);
+      archive.await();
+
+      assertEquals(0, archive.getFailures());
+      assertTrue(archive.getSegments() > 0);
+      assertEquals(archive.getSegments(), WarehouseMetrics.instance().getArchivedSegments());
+      assertEquals(OLD, client.getArchivedUntil());
+      assertEquals(1, count(client.getRecentTransactions()));
+
+      int paid = 0;
+      for (Iterator<Transaction> transactions = client.getTransactions(); transactions.hasNext();) {
+         paid++;
+         String amount = "[" + Money.format(100 * paid) + "]";
+         assertTrue(transactions.next().getDescription().startsWith("Payment was received for " + amount));
+      }
+      assertEquals(4, paid);
+   }
+
+   /**
+    * A segment that can't be written is counted, and shown through the metrics, and its transactions stay in
+    * memory
+    */
+   @Test
+   public void failedSegmentIsCountedAndKeepsTheTransactions() throws IOException {
+      // a file in the way of the archive directory fails every segment
+      assertTrue(new File(HistoryArchive.ARCHIVE_DIRECTORY).createNewFile());
+      Client client = pay(4);
+      archive.await();
+
+      assertEquals(0, archive.getSegments());
+      assertTrue(archive.getFailures() > 0);
+      assertEquals(archive.getFailures(), WarehouseMetrics.instance().getArchiveFailures());
+      assertNotNull(WarehouseMetrics.instance().getLastArchiveFailure());
+      assertEquals(Long.MIN_VALUE, client.getArchivedUntil());
+      assertEquals(4, count(client.getRecentTransactions()));
+   }
+
+   /**
+    * Adds a client, and has it make payments of 100, 200, and so on, long before the cutoff
+    * @param       payments is the number of payments made
+    * @return      the client
+    */
+   private Client pay(int payments) {
+      Client client = warehouse.addClient("Client");
+      Long unpinnedTime = Transaction.pinTime(OLD);
+      try {
+         for (int i = 1; i <= payments; i++) {
+            assertEquals(Warehouse.SUCCESS, warehouse.acceptClientPayment(client.getId(), 100 * i));
+         }
+      } finally {
+         Transaction.restoreTime(unpinnedTime);
+      }
+      return client;
+   }
+
+   /**
+    * Counts what is left of an iterator
+    * @param       iterator to be counted
+    * @return      the number of elements left
+    */
+   private static int count(Iterator<?> iterator) {
+      int count = 0;
+      for (; iterator.hasNext(); iterator.next()) {
+         count++;
+      }
+      return count;
+   }
+}
@@ -0,0 +1,150 @@
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the journal brings the warehouse back after a crash, and never replays the changes of one warehouse
+ * on top of another. A crash is simulated by dropping the journal and the warehouse without saving
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Journal
+ */
+public class JournalTest {
+
+   /**
+    * Starts every test from an empty warehouse, without stored data, that journals every change
+    */
+   @Before
+   public void setUp() {
+      restart();
+      StoredFiles.delete();
+      HistoryArchive.instance().setEnabled(false);
+   }
+
+   /**
+    * Deletes what the test stored
+    */
+   @After
+   public void tearDown() {
+      restart();
+      StoredFiles.delete();
+   }
+
+   /**
+    * Every change made before a crash is there once the warehouse is retrieved
+    */
+   @Test
+   public void changesSurviveACrash() {
+      Warehouse warehouse = Warehouse.instance();
+      String clientId = warehouse.addClient("Ann").getId();
+      String productId = warehouse.addProduct("Widget", 250).getId();
+      String orderId = warehouse.createOrder(clientId);
+      assertEquals(Warehouse.SUCCESS, warehouse.addToOrder(clientId, orderId, productId, 2));
+      assertEquals(Warehouse.SUCCESS, warehouse.processClientOrder(clientId, orderId));
+      assertEquals(Warehouse.SUCCESS, warehouse.acceptClientPayment(clientId, 100));
+      long balance = warehouse.getClientBalance(clientId);
+
+      restart();
+      warehouse = Warehouse.retrieve();
+      assertNotNull(warehouse);
+      assertEquals("Ann", warehouse.findClient(clientId).getName());
+      assertNotNull(warehouse.findClientOrder(clientId, orderId));
+      assertEquals(balance, warehouse.getClientBalance(clientId));
+      assertEquals(1, count(warehouse.getClientWaitlistedOrders(clientId)));
+   }
+
+   /**
+    * A warehouse started without retrieving sets aside the journal it finds, rather than discarding the changes
+    * in it, and a retrieve after it crashes brings back the new warehouse alone
+    */
+   @Test
+   public void newWarehouseSetsAsideAnUnreplayedJournal() {
+      Warehouse.instance().addClient("Ann");
+
+      restart();
+      Warehouse.instance().addClient("Bob");
+      assertTrue(new File(Journal.JOURNAL_FILE + ".0.unreplayed").length() > 0);
+
+      restart();
+      Warehouse warehouse = Warehouse.retrieve();
+      assertNotNull(warehouse);
+      assertEquals(Arrays.asList("Bob"), names(warehouse));
+   }
+
+   /**
+    * A new warehouse is numbered after the stored data, and the journal left beside it, so a retrieve after it
+    * crashes doesn't replay its changes on top of the stored data of the warehouse before it
+    */
+   @Test
+   public void newWarehouseIsNotReplayedOnOlderStoredData() throws IOException {
+      Warehouse.instance().addClient("Ann");
+      assertTrue(Warehouse.save());
+      long stored = Snapshot.readSequence(new File(Warehouse.DATA_FILE));
+      Warehouse.instance().addClient("Carl");
+      long last = Journal.instance().getSequence();
+      assertTrue(last > stored);
+
+      restart();
+      Warehouse.instance().addClient("Bob");
+      assertTrue(Journal.instance().getSequence() > last);
+
+      restart();
+      Warehouse warehouse = Warehouse.retrieve();
+      assertNotNull(warehouse);
+      assertEquals(Arrays.asList("Bob"), names(warehouse));
+   }
+
+   /**
+    * An id pinned in the IdServer is handed out in place of the next id from the counter, which then goes past it
+    */
+   @Test
+   public void pinnedIdsAreHandedOutInTheirPlace() {
+      Warehouse warehouse = Warehouse.instance();
+      IdServer.instance().pin(IdServer.CLIENT, "C7");
+      assertEquals("C7", warehouse.addClient("Ann").getId());
+      assertEquals("C8", warehouse.addClient("Bob").getId());
+      IdServer.instance().unpin();
+
+      restart();
+      warehouse = Warehouse.retrieve();
+      assertNotNull(warehouse.findClient("C7"));
+      assertEquals("C9", warehouse.addClient("Carl").getId());
+   }
+
+   /**
+    * Drops the journal, and the warehouse, without saving, as a crash would
+    */
+   private static void restart() {
+      SnapshotWriter.instance().await();
+      Journal.clear();
+      Warehouse.clear();
+   }
+
+   /**
+    * Queries the names of the clients of the given warehouse
+    * @param       warehouse holding the clients
+    * @return      the names of the clients, in the order of the client list
+    */
+   private static List<String> names(Warehouse warehouse) {
+      List<String> names = new ArrayList<String>();
+      for (Iterator<Client> clients = warehouse.getClients(); clients.hasNext();) {
+         names.add(clients.next().getName());
+      }
+      return names;
+   }
+
+   /**
+    * Counts what is left of an iterator
+    * @param       iterator to be counted
+    * @return      the number of elements left
+    */
+   private static int count(Iterator<?> iterator) {
+      int count = 0;
+      for (; iterator.hasNext(); iterator.next()) {
+         count++;
+      }
+      return count;
+   }
+}
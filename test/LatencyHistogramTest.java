@@ -0,0 +1,116 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the counts, percentiles, and averages a LatencyHistogram finds from the times it counted
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+   /**
+    * A histogram without any times counted reports no time
+    */
+   @Test
+   public void emptyHistogramReportsNoTime() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      assertEquals(0, histogram.getCount());
+      assertEquals(0, histogram.getMax());
+      assertEquals(0, histogram.getPercentile(50), 0);
+      assertEquals(0, histogram.getMean(), 0);
+   }
+
+   /**
+    * Times shorter than the number of buckets a power of two is split into are counted exactly
+    */
+   @Test
+   public void shortTimesAreCountedExactly() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (long nanos = 1; nanos <= 60; nanos++) {
+         histogram.record(nanos);
+      }
+      assertEquals(60, histogram.getCount());
+      assertEquals(30, histogram.getPercentile(50));
+      assertEquals(54, histogram.getPercentile(90));
+      assertEquals(60, histogram.getPercentile(100));
+      assertEquals(1, histogram.getPercentile(0));
+      assertEquals(30.5, histogram.getMean(), 1e-9);
+   }
+
+   /**
+    * Longer times are found within the width of their bucket, which is at most a sixty-fourth of the time,
+    * and the longest time is kept exactly
+    */
+   @Test
+   public void longTimesAreFoundWithinTheirBucket() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (long micros = 1; micros <= 100000; micros++) {
+         histogram.record(micros * 1000 + 7);
+      }
+      assertEquals(100000, histogram.getCount());
+      assertEquals(100000007, histogram.getMax());
+      assertNear(50000007, histogram.getPercentile(50));
+      assertNear(90000007, histogram.getPercentile(90));
+      assertNear(99000007, histogram.getPercentile(99));
+      assertNear(99900007, histogram.getPercentile(99.9));
+      assertEquals(100000007, histogram.getPercentile(100));
+      assertNear(50000507, (long) histogram.getMean());
+   }
+
+   /**
+    * A percentile is never lower than the time at it, since it is the highest time of the bucket holding it
+    */
+   @Test
+   public void percentileIsTheHighestTimeOfItsBucket() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(1000);
+      histogram.record(1000000);
+      assertTrue(histogram.getPercentile(50) >= 1000);
+      assertTrue(histogram.getPercentile(50) < 1016);
+      assertEquals(1000000, histogram.getPercentile(99));
+   }
+
+   /**
+    * A negative time, such as from a clock set back, is counted as no time
+    */
+   @Test
+   public void negativeTimeIsCountedAsNoTime() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(-5);
+      assertEquals(1, histogram.getCount());
+      assertEquals(0, histogram.getPercentile(100));
+      assertEquals(0, histogram.getMax());
+   }
+
+   /**
+    * Adding a histogram counts its times along with the times already counted, and keeps the longer of the longest
+    * times
+    */
+   @Test
+   public void addedHistogramIsCountedToo() {
+      LatencyHistogram first = new LatencyHistogram();
+      LatencyHistogram second = new LatencyHistogram();
+      for (int i = 0; i < 10; i++) {
+         first.record(10);
+         second.record(20);
+      }
+      second.record(5000);
+      first.add(second);
+      assertEquals(21, first.getCount());
+      assertEquals(5000, first.getMax());
+      assertEquals(10, first.getPercentile(40));
+      assertEquals(20, first.getPercentile(90));
+      assertEquals(11, second.getCount());
+   }
+
+   /**
+    * Checks that a time found is within the width of the bucket of the time expected
+    * @param       expected time, in nanoseconds
+    * @param       found time, in nanoseconds
+    */
+   private static void assertNear(long expected, long found) {
+      assertEquals(expected, found, expected / 64.0);
+   }
+}
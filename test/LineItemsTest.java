@@ -0,0 +1,170 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the line items of orders and invoices, as they are held, handed out, and stored
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         LineItems
+ * @see         Order
+ * @see         Invoice
+ */
+public class LineItemsTest {
+
+   /**
+    * The products the lines are for
+    */
+   private Product[] products;
+
+   /**
+    * Starts every test from an empty warehouse, which isn't journaled or archived, without stored data
+    */
+   @Before
+   public void setUp() {
+      SnapshotWriter.instance().await();
+      Journal.clear();
+      Warehouse.clear();
+      StoredFiles.delete();
+      Journal.instance().setEnabled(false);
+      HistoryArchive.instance().setEnabled(false);
+      products = new Product[9];
+      for (int i = 0; i < products.length; i++) {
+         products[i] = new Product("Product " + i, 100 * (i + 1));
+      }
+   }
+
+   /**
+    * Deletes what the test stored
+    */
+   @After
+   public void tearDown() {
+      SnapshotWriter.instance().await();
+      Journal.clear();
+      Warehouse.clear();
+      StoredFiles.delete();
+   }
+
+   /**
+    * Lines added past the room made for the first lines are kept, in the order they were added
+    */
+   @Test
+   public void linesAreKeptInOrderAsTheyGrow() {
+      LineItems lines = new LineItems();
+      assertEquals(0, lines.size());
+      assertEquals(0, lines.total());
+      for (int i = 0; i < products.length; i++) {
+         lines.add(products[i], i + 1, products[i].getPrice());
+      }
+
+      assertEquals(products.length, lines.size());
+      long total = 0;
+      for (int i = 0; i < products.length; i++) {
+         assertSame(products[i], lines.getProduct(i));
+         assertEquals(i + 1, lines.getQuantity(i));
+         assertEquals(products[i].getPrice(), lines.getPrice(i));
+         total += (i + 1) * products[i].getPrice();
+      }
+      assertEquals(total, lines.total());
+      assertLines(lines.iterator());
+      assertLines(lines.toList().iterator());
+      assertLines(new LineItems(lines.toList()).iterator());
+   }
+
+   /**
+    * The iterator of the lines makes a record for each line, and ends once every line has been reached
+    */
+   @Test(expected = NoSuchElementException.class)
+   public void iteratorEndsAfterTheLastLine() {
+      LineItems lines = new LineItems();
+      lines.add(products[0], 1, products[0].getPrice());
+      Iterator<Record> records = lines.iterator();
+      assertTrue(records.hasNext());
+      assertSame(products[0], records.next().getProduct());
+      assertFalse(records.hasNext());
+      records.next();
+   }
+
+   /**
+    * An invoice totals its lines as they are added, whether as records or as lines, at the price of each line
+    */
+   @Test
+   public void invoiceTotalsItsLines() {
+      Client client = new Client("Client");
+      Invoice invoice = new Invoice(client);
+      assertTrue(invoice.isEmpty());
+      invoice.addRecord(new Record(products[0], 3, 150));
+      invoice.addLine(products[1], 2, products[1].getPrice());
+
+      assertFalse(invoice.isEmpty());
+      assertEquals(2, invoice.getRecordCount());
+      assertEquals(3 * 150 + 2 * products[1].getPrice(), invoice.calculateCost());
+      Iterator<Record> records = invoice.getRecords();
+      assertEquals(150, records.next().getPrice());
+      assertSame(products[1], records.next().getProduct());
+   }
+
+   /**
+    * The lines of an order, and of its invoice, are retrieved from a snapshot as they were stored
+    */
+   @Test
+   public void linesAreRetrievedAsStored() {
+      Warehouse warehouse = Warehouse.instance();
+      String clientId = warehouse.addClient("Client").getId();
+      String[] productIds = new String[5];
+      for (int i = 0; i < productIds.length; i++) {
+         productIds[i] = warehouse.addProduct("Product " + i, 100 * (i + 1)).getId();
+         warehouse.processShipment(productIds[i], 10, null);
+      }
+      String orderId = warehouse.createOrder(clientId);
+      for (int i = 0; i < productIds.length; i++) {
+         warehouse.addToOrder(clientId, orderId, productIds[i], i + 1);
+      }
+      assertEquals(Warehouse.SUCCESS, warehouse.processClientOrder(clientId, orderId));
+      String invoiceId = warehouse.findClient(clientId).getLatestInvoice().getId();
+      String order = describe(warehouse.findClientOrder(clientId, orderId).getRecords());
+      String invoice = describe(warehouse.findClientInvoice(clientId, invoiceId).getRecords());
+      long cost = warehouse.findClientInvoice(clientId, invoiceId).calculateCost();
+      assertTrue(Warehouse.save());
+
+      SnapshotWriter.instance().await();
+      Journal.clear();
+      Warehouse.clear();
+      warehouse = Warehouse.retrieve();
+      assertNotNull(warehouse);
+      assertEquals(order, describe(warehouse.findClientOrder(clientId, orderId).getRecords()));
+      assertEquals(invoice, describe(warehouse.findClientInvoice(clientId, invoiceId).getRecords()));
+      assertEquals(cost, warehouse.findClientInvoice(clientId, invoiceId).calculateCost());
+      assertEquals(1 * 100 + 2 * 200 + 3 * 300 + 4 * 400 + 5 * 500, cost);
+   }
+
+   /**
+    * Checks that the given records are the lines added by linesAreKeptInOrderAsTheyGrow
+    * @param       records to be checked
+    */
+   private void assertLines(Iterator<Record> records) {
+      for (int i = 0; i < products.length; i++) {
+         Record record = records.next();
+         assertSame(products[i], record.getProduct());
+         assertEquals(i + 1, record.getQuantity());
+         assertEquals(products[i].getPrice(), record.getPrice());
+      }
+      assertFalse(records.hasNext());
+   }
+
+   /**
+    * Describes the given records by the id of their products, their quantities, and their prices
+    * @param       records to be described
+    * @return      the description of the records
+    */
+   private static String describe(Iterator<Record> records) {
+      StringBuilder description = new StringBuilder();
+      while (records.hasNext()) {
+         Record record = records.next();
+         description.append(record.getProduct().getId()).append(' ').append(record.getQuantity()).append(' ')
+            .append(record.getPrice()).append('\n');
+      }
+      return description.toString();
+   }
+}
@@ -0,0 +1,73 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests how a LoadDriver reads its mix of operations, and picks its operations by the mix
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         LoadDriver
+ */
+public class LoadDriverTest {
+
+   /**
+    * Starts every test from an empty warehouse, which isn't journaled or archived
+    */
+   @Before
+   public void setUp() {
+      Journal.instance().setEnabled(false);
+      HistoryArchive.instance().setEnabled(false);
+      Warehouse.clear();
+   }
+
+   /**
+    * The mix is read in any order, with spaces around its parts, and the kinds left out weigh nothing
+    */
+   @Test
+   public void mixIsReadByKind() {
+      assertArrayEquals(new int[] {40, 10, 20, 30}, LoadDriver.parseMix("order=40,shipment=10,payment=20,query=30"));
+      assertArrayEquals(new int[] {60, 0, 0, 40}, LoadDriver.parseMix(" query = 40 , order=60"));
+   }
+
+   /**
+    * A kind of operation the driver doesn't know is refused
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void unknownKindIsRefused() {
+      LoadDriver.parseMix("order=40,refund=10");
+   }
+
+   /**
+    * A kind without a weight is refused
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void kindWithoutAWeightIsRefused() {
+      LoadDriver.parseMix("order");
+   }
+
+   /**
+    * A weight that isn't a number is refused
+    */
+   @Test(expected = NumberFormatException.class)
+   public void weightThatIsNotANumberIsRefused() {
+      LoadDriver.parseMix("order=many");
+   }
+
+   /**
+    * The operations are picked in proportion to their weights, and a kind that weighs nothing is never picked
+    */
+   @Test
+   public void operationsArePickedByWeight() {
+      LoadDriver driver = new LoadDriver(LoadDriver.parseMix("order=50,payment=25,query=25"));
+      Random random = new Random(42);
+      int[] picked = new int[4];
+      for (int i = 0; i < 40000; i++) {
+         picked[driver.pick(random)]++;
+      }
+      assertEquals(20000, picked[0], 600);
+      assertEquals(0, picked[1]);
+      assertEquals(10000, picked[2], 600);
+      assertEquals(10000, picked[3], 600);
+   }
+}
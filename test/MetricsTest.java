@@ -0,0 +1,156 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the calls to the Warehouse are counted by the status they end with, and that the calls replayed from the
+ * journal aren't counted again
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         WarehouseMetrics
+ */
+public class MetricsTest {
+
+   /**
+    * The metrics being tested
+    */
+   private WarehouseMetrics metrics;
+
+   /**
+    * Starts every test from an empty warehouse, without stored data, that journals every change, with every call
+    * timed, and no call counted
+    */
+   @Before
+   public void setUp() {
+      restart();
+      StoredFiles.delete();
+      HistoryArchive.instance().setEnabled(false);
+      metrics = WarehouseMetrics.instance();
+      metrics.setEnabled(true);
+      metrics.setSampleInterval(1);
+      metrics.reset();
+   }
+
+   /**
+    * Deletes what the test stored, and puts the metrics back the way they were
+    */
+   @After
+   public void tearDown() {
+      restart();
+      StoredFiles.delete();
+      metrics.setSampleInterval(16);
+      metrics.reset();
+   }
+
+   /**
+    * A call for a client, order, product, or supplier that doesn't exist is counted by what wasn't found
+    */
+   @Test
+   public void callsForWhatIsMissingAreCountedAsNotFound() {
+      Warehouse warehouse = Warehouse.instance();
+      String clientId = warehouse.addClient("Ann").getId();
+      String productId = warehouse.addProduct("Widget", 250).getId();
+
+      assertNull(warehouse.getOrders("C-missing"));
+      assertNull(warehouse.getOrderRecords(clientId, "O-missing"));
+      assertNull(warehouse.getInvoiceRecords(clientId, "I-missing"));
+      assertNull(warehouse.findProduct("P-missing"));
+      assertEquals(Warehouse.SUPPLIER_NOT_FOUND, warehouse.associateProductAndSupplier(productId, "S-missing"));
+      assertEquals(-1, warehouse.processShipment("P-missing", 1, null));
+
+      assertCounted("getOrders", Warehouse.CLIENT_NOT_FOUND, 1);
+      assertCounted("getOrderRecords", Warehouse.ORDER_NOT_FOUND, 1);
+      assertCounted("getInvoiceRecords", Warehouse.INVOICE_NOT_FOUND, 1);
+      assertCounted("findProduct", Warehouse.PRODUCT_NOT_FOUND, 1);
+      assertCounted("associateProductAndSupplier", Warehouse.SUPPLIER_NOT_FOUND, 1);
+      assertCounted("processShipment", Warehouse.PRODUCT_NOT_FOUND, 1);
+   }
+
+   /**
+    * A call that succeeds is counted as a success, and a call that throws is counted as failed, and nothing else
+    */
+   @Test
+   public void callThatThrowsIsCountedAsFailed() {
+      Warehouse warehouse = Warehouse.instance();
+      String clientId = warehouse.addClient("Ann").getId();
+      assertEquals(Warehouse.SUCCESS, warehouse.acceptClientPayment(clientId, 100));
+      assertNotNull(warehouse.getOrders(clientId));
+      try {
+         warehouse.processClientOrders(null);
+         fail("A batch that isn't there was processed");
+      } catch(NullPointerException npe) {
+         // the failure is still counted
+      }
+
+      assertCounted("addClient", Warehouse.SUCCESS, 1);
+      assertCounted("acceptClientPayment", Warehouse.SUCCESS, 1);
+      assertCounted("getOrders", Warehouse.SUCCESS, 1);
+      assertCounted("processClientOrders", Warehouse.OPERATION_FAILED, 1);
+   }
+
+   /**
+    * A warehouse already in use isn't retrieved into, and the retrieve is counted as finding the warehouse already
+    * there
+    */
+   @Test
+   public void retrieveIntoAWarehouseInUseIsCounted() {
+      Warehouse.instance().addClient("Ann");
+      assertNull(Warehouse.retrieve());
+      assertCounted("retrieve", Warehouse.ALREADY_EXISTS, 1);
+   }
+
+   /**
+    * The calls replayed from the journal when the warehouse is retrieved were counted when they were first made,
+    * so only the retrieve is counted
+    */
+   @Test
+   public void replayedCallsAreNotCountedAgain() {
+      Warehouse warehouse = Warehouse.instance();
+      String clientId = warehouse.addClient("Ann").getId();
+      String productId = warehouse.addProduct("Widget", 250).getId();
+      String orderId = warehouse.createOrder(clientId);
+      assertEquals(Warehouse.SUCCESS, warehouse.addToOrder(clientId, orderId, productId, 2));
+      assertEquals(Warehouse.SUCCESS, warehouse.processClientOrder(clientId, orderId));
+      assertEquals(Warehouse.SUCCESS, warehouse.acceptClientPayment(clientId, 100));
+
+      restart();
+      metrics.reset();
+      warehouse = Warehouse.retrieve();
+      assertNotNull(warehouse);
+      assertNotNull(warehouse.findClientOrder(clientId, orderId));
+
+      assertCounted("retrieve", Warehouse.SUCCESS, 1);
+      assertCounted("findClientOrder", Warehouse.SUCCESS, 1);
+      List<String> called = new ArrayList<String>();
+      for (Iterator<WarehouseMetrics.Operation> operations = metrics.getCalledOperations(); operations.hasNext();) {
+         called.add(operations.next().getName());
+      }
+      assertEquals(Arrays.asList("findClientOrder", "retrieve"), called);
+
+      // the replay is over, so the calls are counted again
+      assertEquals(Warehouse.SUCCESS, warehouse.acceptClientPayment(clientId, 100));
+      assertCounted("acceptClientPayment", Warehouse.SUCCESS, 1);
+   }
+
+   /**
+    * Checks that an operation has been called only the given number of times, each ending with the given status
+    * @param       name of the operation
+    * @param       status every call ended with
+    * @param       calls is the number of calls
+    */
+   private void assertCounted(String name, int status, long calls) {
+      WarehouseMetrics.Operation operation = metrics.getOperation(name);
+      assertEquals(name, calls, operation.getCount(status));
+      assertEquals(name, calls, operation.getCount());
+   }
+
+   /**
+    * Drops the journal and the warehouse without saving, as a crash would
+    */
+   private static void restart() {
+      SnapshotWriter.instance().await();
+      Journal.clear();
+      Warehouse.clear();
+   }
+}
@@ -0,0 +1,92 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests parsing, and formatting, amounts of money held in cents
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Money
+ */
+public class MoneyTest {
+
+   /**
+    * Amounts are parsed with or without a sign, a dollar sign, a decimal point, and cents
+    */
+   @Test
+   public void parsesAmounts() {
+      assertEquals(1200, Money.parse("12"));
+      assertEquals(1250, Money.parse("12.5"));
+      assertEquals(1250, Money.parse("$12.50"));
+      assertEquals(-75, Money.parse("-0.75"));
+      assertEquals(-500, Money.parse("-$5"));
+      assertEquals(300, Money.parse("+3"));
+      assertEquals(50, Money.parse(".5"));
+      assertEquals(500, Money.parse("5."));
+      assertEquals(710, Money.parse("  7.10 "));
+      assertEquals(0, Money.parse("0"));
+   }
+
+   /**
+    * Digits past the cents are rounded half up, away from zero
+    */
+   @Test
+   public void roundsPastTheCents() {
+      assertEquals(101, Money.parse("1.005"));
+      assertEquals(100, Money.parse("1.0049"));
+      assertEquals(-101, Money.parse("-1.005"));
+      assertEquals(1000, Money.parse("9.999"));
+   }
+
+   /**
+    * Text that isn't an amount, or an amount too large for a long, is refused
+    */
+   @Test
+   public void refusesWhatIsntAnAmount() {
+      String[] malformed = { "", " ", "$", "-", ".", "abc", "1.2.3", "1,000", "$-5", "12$", "99999999999999999999" };
+      for (String text : malformed) {
+         try {
+            Money.parse(text);
+            fail("Parsed \"" + text + "\"");
+         } catch(NumberFormatException nfe) {
+            // expected
+         }
+      }
+   }
+
+   /**
+    * Amounts are formatted as dollars and two digits of cents, the way "$%.2f" formatted them as floats
+    */
+   @Test
+   public void formatsAmounts() {
+      assertEquals("$0.00", Money.format(0));
+      assertEquals("$0.05", Money.format(5));
+      assertEquals("$-0.05", Money.format(-5));
+      assertEquals("$1234.56", Money.format(123456));
+      assertEquals("$-1.00", Money.format(-100));
+      assertEquals(String.format("$%.2f", -12.3f), Money.format(-1230));
+      assertEquals("$92233720368547758.07", Money.format(Long.MAX_VALUE));
+      assertEquals("$-92233720368547758.08", Money.format(Long.MIN_VALUE));
+   }
+
+   /**
+    * Formatting an amount, and parsing it back, gives the amount again
+    */
+   @Test
+   public void parsesWhatItFormats() {
+      long[] amounts = { 0, 1, -1, 99, 100, -12345, 1000000007 };
+      for (long cents : amounts) {
+         assertEquals(cents, Money.parse(Money.format(cents).replace("$", "")));
+      }
+   }
+
+   /**
+    * Amounts held as floats, as serialized data holds them, are converted to the nearest cent
+    */
+   @Test
+   public void convertsFloats() {
+      assertEquals(1999, Money.fromFloat(19.99f));
+      assertEquals(-1, Money.fromFloat(-0.01f));
+      assertEquals(1999, Money.fromFloat(Money.toFloat(1999)));
+   }
+}
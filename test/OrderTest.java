@@ -0,0 +1,193 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the bookkeeping of the waitlisted items of an order, and of the waitlisted orders of its client
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Order
+ */
+public class OrderTest {
+
+   /**
+    * The warehouse being tested
+    */
+   private Warehouse warehouse;
+
+   /**
+    * The client the orders are for
+    */
+   private Client client;
+
+   /**
+    * Starts every test from an empty warehouse, which isn't journaled or archived
+    */
+   @Before
+   public void setUp() {
+      Journal.instance().setEnabled(false);
+      HistoryArchive.instance().setEnabled(false);
+      Warehouse.clear();
+      warehouse = Warehouse.instance();
+      client = warehouse.addClient("Client");
+   }
+
+   /**
+    * Removing the only waitlisted item of an order leaves the order with nothing waitlisted
+    */
+   @Test
+   public void removingAnItemEmptiesTheWaitlist() {
+      Product product = warehouse.addProduct("Product", 100);
+      Order order = waitlistedOrder(product.getId(), 2);
+      assertTrue(order.hasWaitlistedItems());
+
+      WaitlistItem item = order.getWaitlistedItems().next();
+      order.removeWaitlistItem(item);
+      assertFalse(order.hasWaitlistedItems());
+      assertEquals(0, order.getWaitlistedItemCount());
+      assertFalse(order.getWaitlistedItems().hasNext());
+   }
+
+   /**
+    * An order stays waitlisted by its client until every line of it is filled, and then leaves the waitlist
+    */
+   @Test
+   public void filledOrderLeavesTheClientsWaitlist() {
+      Product first = warehouse.addProduct("First", 100);
+      Product second = warehouse.addProduct("Second", 200);
+      Order order = waitlistedOrder(first.getId(), 2, second.getId(), 3);
+
+      warehouse.processShipment(first.getId(), 2, null);
+      assertEquals(1, count(warehouse.getClientWaitlistedOrders(client.getId())));
+      assertEquals(1, order.getWaitlistedItemCount());
+
+      warehouse.processShipment(second.getId(), 3, null);
+      assertFalse(order.hasWaitlistedItems());
+      assertFalse(client.hasWaitlistedOrders());
+      assertEquals(0, count(warehouse.getClientWaitlistedOrders(client.getId())));
+   }
+
+   /**
+    * An order short of several products is waitlisted by its client once, with an item for each product
+    */
+   @Test
+   public void orderWithSeveralShortLinesIsWaitlistedOnce() {
+      Product first = warehouse.addProduct("First", 100);
+      Product second = warehouse.addProduct("Second", 200);
+      Product third = warehouse.addProduct("Third", 300);
+      Order order = waitlistedOrder(first.getId(), 1, second.getId(), 2, third.getId(), 3);
+
+      assertEquals(3, order.getWaitlistedItemCount());
+      assertEquals(1, count(warehouse.getClientWaitlistedOrders(client.getId())));
+      assertSame(order, warehouse.getClientWaitlistedOrders(client.getId()).next());
+   }
+
+   /**
+    * An order partly in stock across several products is invoiced for what was in stock, waitlisted for the rest,
+    * and leaves the waitlist once shipments fill the rest, with the client charged once for every unit
+    */
+   @Test
+   public void partlyFilledOrderIsFilledByLaterShipments() {
+      Product first = warehouse.addProduct("First", 100);
+      Product second = warehouse.addProduct("Second", 200);
+      Product third = warehouse.addProduct("Third", 300);
+      warehouse.processShipment(first.getId(), 2, null);
+      warehouse.processShipment(third.getId(), 1, null);
+
+      Order order = waitlistedOrder(first.getId(), 5, second.getId(), 3, third.getId(), 1);
+      assertEquals(2, order.getWaitlistedItemCount());
+      assertEquals(0, first.getQuantity());
+      assertEquals(0, third.getQuantity());
+      assertEquals(2 * 100 + 300, client.getLatestInvoice().calculateCost());
+      assertEquals(2 * 100 + 300, warehouse.getClientBalance(client.getId()));
+
+      assertEquals(0, warehouse.processShipment(first.getId(), 3, null));
+      assertEquals(1, order.getWaitlistedItemCount());
+      assertEquals(1, count(warehouse.getClientWaitlistedOrders(client.getId())));
+
+      // what is left over from filling an item is handed back, and goes into stock once nothing is waitlisted
+      assertEquals(2, warehouse.processShipment(second.getId(), 5, null));
+      assertEquals(0, warehouse.processShipment(second.getId(), 2, null));
+      assertEquals(2, second.getQuantity());
+      assertFalse(order.hasWaitlistedItems());
+      assertFalse(client.hasWaitlistedOrders());
+      assertEquals(5 * 100 + 3 * 200 + 300, warehouse.getClientBalance(client.getId()));
+      assertEquals(3, count(warehouse.getInvoices(client.getId())));
+   }
+
+   /**
+    * A shipment asked to fill a waitlisted item that has since left the waitlist, because its order was cancelled,
+    * fills the next item in line in its place, rather than the cancelled item
+    */
+   @Test
+   public void shipmentForACancelledItemFillsTheNextInLine() {
+      Product product = warehouse.addProduct("Product", 100);
+      Order cancelled = waitlistedOrder(product.getId(), 2);
+      Client other = warehouse.addClient("Other");
+      String otherOrderId = warehouse.createOrder(other.getId());
+      warehouse.addToOrder(other.getId(), otherOrderId, product.getId(), 3);
+      warehouse.processClientOrder(other.getId(), otherOrderId);
+
+      // there is no facade call to cancel an order, so its item is taken off the waitlist the way filling it would
+      WaitlistItem item = warehouse.findWaitlistItem(product.getId(), cancelled.getId());
+      cancelled.removeWaitlistItem(item);
+      product.removeWaitlistItem(item);
+      assertNull(warehouse.findWaitlistItem(product.getId(), cancelled.getId()));
+
+      assertEquals(0, warehouse.processShipment(product.getId(), 3, item));
+      assertEquals(0, warehouse.getClientBalance(client.getId()));
+      assertEquals(3 * 100, warehouse.getClientBalance(other.getId()));
+      assertFalse(warehouse.productHasWaitlistedOrderItems(product.getId()));
+      assertEquals(0, count(warehouse.getInvoices(client.getId())));
+   }
+
+   /**
+    * A shipment asked to fill a waitlisted item another shipment already filled fills the next item in line, so
+    * the client of the filled item isn't charged twice
+    */
+   @Test
+   public void shipmentForAFilledItemFillsTheNextInLine() {
+      Product product = warehouse.addProduct("Product", 100);
+      Order filled = waitlistedOrder(product.getId(), 2);
+      WaitlistItem item = warehouse.findWaitlistItem(product.getId(), filled.getId());
+      Client other = warehouse.addClient("Other");
+      String otherOrderId = warehouse.createOrder(other.getId());
+      warehouse.addToOrder(other.getId(), otherOrderId, product.getId(), 2);
+      warehouse.processClientOrder(other.getId(), otherOrderId);
+
+      assertEquals(0, warehouse.processShipment(product.getId(), 2, item));
+      assertEquals(0, warehouse.processShipment(product.getId(), 2, item));
+      assertEquals(2 * 100, warehouse.getClientBalance(client.getId()));
+      assertEquals(2 * 100, warehouse.getClientBalance(other.getId()));
+      assertFalse(warehouse.productHasWaitlistedOrderItems(product.getId()));
+   }
+
+   /**
+    * Makes an order for products, and processes it, so every line of it that isn't in stock is waitlisted
+    * @param       lines are the id of each product, followed by the quantity of it
+    * @return      the order made
+    */
+   private Order waitlistedOrder(Object... lines) {
+      String orderId = warehouse.createOrder(client.getId());
+      for (int line = 0; line < lines.length; line += 2) {
+         int status = warehouse.addToOrder(client.getId(), orderId, (String) lines[line], (Integer) lines[line + 1]);
+         assertEquals(Warehouse.SUCCESS, status);
+      }
+      assertEquals(Warehouse.SUCCESS, warehouse.processClientOrder(client.getId(), orderId));
+      return client.findOrder(orderId);
+   }
+
+   /**
+    * Counts what is left of an iterator
+    * @param       iterator to be counted
+    * @return      the number of elements left
+    */
+   private static int count(Iterator<?> iterator) {
+      int count = 0;
+      for (; iterator.hasNext(); iterator.next()) {
+         count++;
+      }
+      return count;
+   }
+}
@@ -0,0 +1,162 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests storing the warehouse as a snapshot, and retrieving it
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Snapshot
+ * @see         Warehouse
+ */
+public class StorageTest {
+
+   /**
+    * Starts every test from an empty warehouse without stored data
+    */
+   @Before
+   public void setUp() {
+      restart();
+      StoredFiles.delete();
+      HistoryArchive.instance().setEnabled(false);
+   }
+
+   /**
+    * Deletes what the test stored
+    */
+   @After
+   public void tearDown() {
+      restart();
+      StoredFiles.delete();
+   }
+
+   /**
+    * A stored warehouse is retrieved with its clients, products, suppliers, orders, invoices, balances, and
+    * waitlists as they were
+    */
+   @Test
+   public void retrievedWarehouseMatchesTheStoredOne() {
+      Warehouse warehouse = Warehouse.instance();
+      String clientId = warehouse.addClient("Ann").getId();
+      String stockedId = warehouse.addProduct("Stocked", 250).getId();
+      String missingId = warehouse.addProduct("Missing", 1000).getId();
+      String supplierId = warehouse.addSupplier("Supplier").getId();
+      assertEquals(Warehouse.SUCCESS, warehouse.associateProductAndSupplier(stockedId, supplierId));
+      warehouse.processShipment(stockedId, 10, null);
+      String orderId = warehouse.createOrder(clientId);
+      warehouse.addToOrder(clientId, orderId, stockedId, 4);
+      warehouse.addToOrder(clientId, orderId, missingId, 2);
+      assertEquals(Warehouse.SUCCESS, warehouse.processClientOrder(clientId, orderId));
+      assertEquals(Warehouse.SUCCESS, warehouse.acceptClientPayment(clientId, 300));
+      long balance = warehouse.getClientBalance(clientId);
+      assertTrue(Warehouse.save());
+
+      restart();
+      warehouse = Warehouse.retrieve();
+      assertNotNull(warehouse);
+      assertEquals("Ann", warehouse.findClient(clientId).getName());
+      assertEquals(balance, warehouse.getClientBalance(clientId));
+      assertEquals(6, warehouse.findProduct(stockedId).getQuantity());
+      assertEquals(1, count(warehouse.getInvoices(clientId)));
+      assertEquals(1, count(warehouse.getProductWaitlistedOrderItems(missingId)));
+      assertEquals(1, count(warehouse.getClientWaitlistedOrders(clientId)));
+      assertEquals("Supplier", warehouse.findSupplier(supplierId).getName());
+      assertEquals(Warehouse.ALREADY_EXISTS, warehouse.associateProductAndSupplier(stockedId, supplierId));
+
+      // the ids handed out next follow the ids stored
+      assertEquals("C2", warehouse.addClient("Bob").getId());
+   }
+
+   /**
+    * Retrieving into a warehouse in use is refused, and leaves the warehouse as it was, rather than mixing the
+    * stored data into it
+    */
+   @Test
+   public void retrieveLeavesAWarehouseInUseAsItIs() {
+      Warehouse warehouse = Warehouse.instance();
+      String clientId = warehouse.addClient("Ann").getId();
+      String productId = warehouse.addProduct("Missing", 100).getId();
+      String orderId = warehouse.createOrder(clientId);
+      warehouse.addToOrder(clientId, orderId, productId, 1);
+      warehouse.processClientOrder(clientId, orderId);
+      assertTrue(Warehouse.save());
+      warehouse.addClient("Bob");
+
+      assertTrue(Warehouse.isInUse());
+      assertNull(Warehouse.retrieve());
+      assertSame(warehouse, Warehouse.instance());
+      assertEquals(2, count(warehouse.getClients()));
+      assertEquals(1, count(warehouse.getProductWaitlistedOrderItems(productId)));
+   }
+
+   /**
+    * The transactions of histories left in the snapshot are found by time without reading the histories, from the
+    * times the snapshot keeps of each history, which are kept when the history is copied into the next snapshot
+    */
+   @Test
+   public void activityOfStoredHistoriesIsFoundWithoutReadingThem() {
+      Warehouse warehouse = Warehouse.instance();
+      String annId = warehouse.addClient("Ann").getId();
+      String bobId = warehouse.addClient("Bob").getId();
+      pay(warehouse, annId, 100, 1000);
+      pay(warehouse, annId, 200, 2000);
+      pay(warehouse, bobId, 300, 3000);
+      assertTrue(Warehouse.save());
+
+      for (int retrieved = 0; retrieved < 2; retrieved++) {
+         restart();
+         warehouse = Warehouse.retrieve();
+         assertNotNull(warehouse);
+         List<String> found = new ArrayList<String>();
+         for (Iterator<ClientList.Activity> activity = warehouse.getActivity(2000, 3001, null); activity.hasNext();) {
+            ClientList.Activity entry = activity.next();
+            found.add(entry.getClient().getId() + "@" + entry.getTransaction().getTime());
+         }
+         assertEquals(Arrays.asList(annId + "@2000", bobId + "@3000"), found);
+         assertNotNull(ClientList.instance().find(annId).getStoredHistory());
+         assertNotNull(ClientList.instance().find(bobId).getStoredHistory());
+
+         // the histories that weren't read are copied as they are into the next snapshot
+         assertTrue(Warehouse.save());
+      }
+   }
+
+   /**
+    * Has a client make a payment at the given time
+    * @param       warehouse the client is in
+    * @param       clientId of the client
+    * @param       amount paid, in cents
+    * @param       millis is the time of the payment, in milliseconds since the epoch
+    */
+   private static void pay(Warehouse warehouse, String clientId, long amount, long millis) {
+      Long unpinnedTime = Transaction.pinTime(millis);
+      try {
+         assertEquals(Warehouse.SUCCESS, warehouse.acceptClientPayment(clientId, amount));
+      } finally {
+         Transaction.restoreTime(unpinnedTime);
+      }
+   }
+
+   /**
+    * Drops the journal, and the warehouse, as a program that has ended would
+    */
+   private static void restart() {
+      SnapshotWriter.instance().await();
+      Journal.clear();
+      Warehouse.clear();
+   }
+
+   /**
+    * Counts what is left of an iterator
+    * @param       iterator to be counted
+    * @return      the number of elements left
+    */
+   private static int count(Iterator<?> iterator) {
+      int count = 0;
+      for (; iterator.hasNext(); iterator.next()) {
+         count++;
+      }
+      return count;
+   }
+}
@@ -0,0 +1,50 @@
+import java.io.*;
+
+/**
+ * Deletes what the warehouse stores in the working directory, so every test that stores the warehouse starts, and
+ * ends, without stored data
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         Warehouse
+ * @see         Journal
+ * @see         HistoryArchive
+ */
+public class StoredFiles {
+
+   /**
+    * Private StoredFiles constructor, since it only has static methods
+    */
+   private StoredFiles() {}
+
+   /**
+    * Deletes the stored data, the journal, the archive, and whatever was set aside, or retired, beside them
+    */
+   public static void delete() {
+      File[] files = new File(".").listFiles();
+      if (files == null) {
+         return;
+      }
+      for (File file : files) {
+         String name = file.getName();
+         if (name.startsWith(Warehouse.DATA_FILE) || name.startsWith(Journal.JOURNAL_FILE)
+            || name.equals(HistoryArchive.ARCHIVE_DIRECTORY)) {
+            delete(file);
+         }
+      }
+   }
+
+   /**
+    * Deletes a file, or a directory and everything in it
+    * @param       file to be deleted
+    */
+   private static void delete(File file) {
+      File[] children = file.listFiles();
+      if (children != null) {
+         for (File child : children) {
+            delete(child);
+         }
+      }
+      file.delete();
+   }
+}
@@ -0,0 +1,119 @@
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a WarehouseGenerator builds the warehouse its settings ask for, the same way for the same seed
+ * @author      Shion Steel Hart <shionhart@gmail.com>
+ * @version     1.0
+ * @since       1.0
+ * @see         WarehouseGenerator
+ */
+public class WarehouseGeneratorTest {
+
+   /**
+    * Starts every test from an empty warehouse, which isn't journaled or archived
+    */
+   @Before
+   public void setUp() {
+      Journal.instance().setEnabled(false);
+      HistoryArchive.instance().setEnabled(false);
+      Warehouse.clear();
+   }
+
+   /**
+    * The warehouse generated has the clients, products, suppliers, and orders the settings ask for, and the
+    * products out of stock are waitlisted to the depth asked for
+    */
+   @Test
+   public void warehouseHasWhatTheSettingsAskFor() {
+      generator().generate(7);
+      Warehouse warehouse = Warehouse.instance();
+      assertEquals(20, count(warehouse.getClients()));
+      assertEquals(10, count(warehouse.getProducts()));
+      assertEquals(3, count(warehouse.getSuppliers()));
+
+      int waitlistedProducts = 0;
+      for (Iterator<Product> products = warehouse.getProducts(); products.hasNext();) {
+         Product product = products.next();
+         int waitlisted = count(product.getWaitlistedOrders());
+         if (waitlisted > 0) {
+            assertEquals(4, waitlisted);
+            assertEquals(0, product.getQuantity());
+            waitlistedProducts++;
+         }
+      }
+      assertEquals(2, waitlistedProducts);
+
+      // each client places its own orders, and the waitlisted orders are placed by clients picked at random
+      int orders = 0;
+      for (Iterator<Client> clients = warehouse.getClients(); clients.hasNext();) {
+         orders += count(clients.next().getOrders());
+      }
+      assertEquals(20 * 2 + 2 * 4, orders);
+   }
+
+   /**
+    * The same seed builds the same warehouse, and another seed builds another
+    */
+   @Test
+   public void sameSeedBuildsTheSameWarehouse() {
+      generator().generate(7);
+      String first = describe();
+      Warehouse.clear();
+      generator().generate(7);
+      assertEquals(first, describe());
+      Warehouse.clear();
+      generator().generate(8);
+      assertNotEquals(first, describe());
+   }
+
+   /**
+    * Makes the generator the tests use
+    * @return      a generator of 20 clients, 10 products, 3 suppliers, 2 orders of 3 lines for each client, and a
+    *              fifth of the products out of stock, each waitlisted by 4 orders
+    */
+   private static WarehouseGenerator generator() {
+      WarehouseGenerator generator = new WarehouseGenerator();
+      generator.setClients(20);
+      generator.setProducts(10);
+      generator.setSuppliers(3);
+      generator.setOrdersPerClient(2);
+      generator.setLinesPerOrder(3);
+      generator.setStockoutRate(0.2);
+      generator.setWaitlistDepth(4);
+      return generator;
+   }
+
+   /**
+    * Describes the warehouse by the balance of each client, and the price and stock of each product
+    * @return      the description of the warehouse
+    */
+   private static String describe() {
+      StringBuilder description = new StringBuilder();
+      Warehouse warehouse = Warehouse.instance();
+      for (Iterator<Client> clients = warehouse.getClients(); clients.hasNext();) {
+         Client client = clients.next();
+         description.append(client.getId()).append(' ').append(client.getBalance()).append('\n');
+      }
+      for (Iterator<Product> products = warehouse.getProducts(); products.hasNext();) {
+         Product product = products.next();
+         description.append(product.getId()).append(' ').append(product.getPrice()).append(' ')
+            .append(product.getQuantity()).append('\n');
+      }
+      return description.toString();
+   }
+
+   /**
+    * Counts what is left of an iterator
+    * @param       iterator to be counted
+    * @return      the number of elements left
+    */
+   private static int count(Iterator<?> iterator) {
+      int count = 0;
+      for (; iterator.hasNext(); iterator.next()) {
+         count++;
+      }
+      return count;
+   }
+}